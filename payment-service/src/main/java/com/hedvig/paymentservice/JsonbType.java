@@ -0,0 +1,108 @@
+package com.hedvig.paymentservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+
+/**
+ * Maps a {@link JsonNode} to a Postgres {@code jsonb} column. Columns using it declare the {@code jsonb}
+ * column definition themselves, since the dialect maps other types, such as {@code uuid}, to the same SQL type.
+ */
+public class JsonbType implements UserType {
+
+  public static final String NAME = "jsonb";
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Override
+  public int[] sqlTypes() {
+    return new int[]{Types.OTHER};
+  }
+
+  @Override
+  public Class returnedClass() {
+    return JsonNode.class;
+  }
+
+  @Override
+  public boolean equals(Object x, Object y) {
+    return Objects.equals(x, y);
+  }
+
+  @Override
+  public int hashCode(Object x) {
+    return Objects.hashCode(x);
+  }
+
+  @Override
+  public Object nullSafeGet(
+    ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner
+  ) throws SQLException {
+    final String json = rs.getString(names[0]);
+    if (json == null) {
+      return null;
+    }
+    return read(json);
+  }
+
+  @Override
+  public void nullSafeSet(
+    PreparedStatement st, Object value, int index, SharedSessionContractImplementor session
+  ) throws SQLException {
+    if (value == null) {
+      st.setNull(index, Types.OTHER);
+      return;
+    }
+    st.setObject(index, write(value), Types.OTHER);
+  }
+
+  @Override
+  public Object deepCopy(Object value) {
+    return value == null ? null : ((JsonNode) value).deepCopy();
+  }
+
+  @Override
+  public boolean isMutable() {
+    return true;
+  }
+
+  @Override
+  public Serializable disassemble(Object value) {
+    return value == null ? null : write(value);
+  }
+
+  @Override
+  public Object assemble(Serializable cached, Object owner) {
+    return cached == null ? null : read((String) cached);
+  }
+
+  @Override
+  public Object replace(Object original, Object target, Object owner) {
+    return deepCopy(original);
+  }
+
+  private static JsonNode read(String json) {
+    try {
+      return objectMapper.readTree(json);
+    } catch (IOException e) {
+      throw new HibernateException("Could not read jsonb value", e);
+    }
+  }
+
+  private static String write(Object value) {
+    try {
+      return objectMapper.writeValueAsString(value);
+    } catch (IOException e) {
+      throw new HibernateException("Could not write jsonb value", e);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package com.hedvig.paymentservice
+
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.InitializingBean
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+
+/**
+ * Prepares the sequences behind the sequence generated ids of entities that used IDENTITY columns
+ * before, which kept Hibernate from batching their inserts. Runs before the entity manager
+ * factory is created, so no id is handed out before the sequences are past the existing rows.
+ *
+ * `generate-ddl` would create missing sequences starting at 1, so this only runs against Postgres
+ * databases that may already contain rows. Other databases rely on the generated schema.
+ *
+ * During a rolling deploy instances of the previous version keep inserting through the column default,
+ * so the default is pointed at the same sequence. Such an insert takes a whole allocation for one row,
+ * which no instance hands out again, so the ids of both versions never collide.
+ */
+@Component
+class SequenceIdentifierMigration(
+    private val jdbcTemplate: JdbcTemplate
+) : InitializingBean {
+
+    override fun afterPropertiesSet() {
+        if (!isPostgres()) {
+            return
+        }
+        SEQUENCES.forEach { migrate(it) }
+    }
+
+    private fun migrate(sequence: IdSequence) {
+        val (table, name, allocationSize) = sequence
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS $name INCREMENT BY $allocationSize")
+        jdbcTemplate.execute("ALTER SEQUENCE $name INCREMENT BY $allocationSize")
+        if (!tableExists(table)) {
+            return
+        }
+        val identitySequence = jdbcTemplate.queryForObject(
+            "SELECT pg_get_serial_sequence(?, 'id')",
+            String::class.java,
+            table
+        )
+        jdbcTemplate.execute("ALTER TABLE $table ALTER COLUMN id SET DEFAULT nextval('$name')")
+
+        // Ids handed out by the identity sequence until the default moved may not be committed yet
+        val highestId = listOfNotNull(
+            jdbcTemplate.queryForObject("SELECT max(id) FROM $table", Long::class.java),
+            identitySequence?.let { lastValueOf(it) }
+        ).maxOrNull() ?: return
+        if (highestId > lastValueOf(name)) {
+            // The pooled optimizer hands out the ids up to the value it gets from the sequence
+            jdbcTemplate.queryForObject("SELECT setval('$name', ?)", Long::class.java, highestId)
+            logger.info("Moved id sequence past existing rows [Sequence: $name] [Value: $highestId]")
+        }
+    }
+
+    private fun lastValueOf(sequence: String): Long =
+        jdbcTemplate.queryForObject("SELECT last_value FROM $sequence", Long::class.java)!!
+
+    private fun tableExists(table: String): Boolean =
+        jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean::class.java, table)!!
+
+    private fun isPostgres(): Boolean =
+        jdbcTemplate.dataSource!!.connection.use { it.metaData.databaseProductName == "PostgreSQL" }
+
+    @Component
+    class EntityManagerFactoryDependsOnMigration :
+        EntityManagerFactoryDependsOnPostProcessor(SequenceIdentifierMigration::class.java)
+
+    private data class IdSequence(val table: String, val name: String, val allocationSize: Int)
+
+    companion object {
+        const val ALLOCATION_SIZE = 50
+        const val ADYEN_NOTIFICATION_SEQUENCE = "adyen_notification_seq"
+        const val ACCOUNT_NOTIFICATION_SEQUENCE = "account_notification_seq"
+
+        // Must match the allocation sizes of the entities' sequence generators
+        private val SEQUENCES = listOf(
+            IdSequence("adyen_notification", ADYEN_NOTIFICATION_SEQUENCE, ALLOCATION_SIZE),
+            IdSequence("account_notification", ACCOUNT_NOTIFICATION_SEQUENCE, 1)
+        )
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
@@ -0,0 +1,65 @@
+package com.hedvig.paymentservice.common
+
+import java.sql.Connection
+import org.slf4j.LoggerFactory
+import org.springframework.jdbc.core.ConnectionCallback
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.SingleConnectionDataSource
+
+/**
+ * Builds indexes on tables that are written to while the index is built. On Postgres they are built
+ * CONCURRENTLY, which leaves an INVALID index behind when the build fails, and `IF NOT EXISTS` would
+ * skip that index from then on. Such an index is dropped and built again. An advisory lock keeps
+ * instances starting at the same time from building, or dropping, the same index.
+ *
+ * Failures are logged rather than thrown, so a missing index never keeps an instance from starting. The
+ * next start tries again.
+ */
+class ConcurrentIndexes(
+    private val jdbcTemplate: JdbcTemplate
+) {
+    fun create(name: String, definition: String) {
+        try {
+            jdbcTemplate.execute(ConnectionCallback<Unit> { connection ->
+                if (connection.metaData.databaseProductName == "PostgreSQL") {
+                    createConcurrently(connection, name, definition)
+                } else {
+                    connection.createStatement().use { it.execute("CREATE INDEX IF NOT EXISTS $name ON $definition") }
+                }
+            })
+        } catch (exception: Exception) {
+            logger.error("Could not create index [Index: $name]", exception)
+        }
+    }
+
+    // The advisory lock belongs to the session, so everything runs on the one connection holding it
+    private fun createConcurrently(connection: Connection, name: String, definition: String) {
+        val session = JdbcTemplate(SingleConnectionDataSource(connection, true))
+        if (session.queryForObject("SELECT pg_try_advisory_lock(hashtext(?))", Boolean::class.java, name) != true) {
+            logger.info("Index is being built by another instance [Index: $name]")
+            return
+        }
+        try {
+            val valid = session.queryForList(
+                "SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)",
+                Boolean::class.java,
+                name
+            ).firstOrNull()
+            if (valid == true) {
+                return
+            }
+            if (valid == false) {
+                logger.warn("Dropping invalid index left behind by a failed build [Index: $name]")
+                session.execute("DROP INDEX CONCURRENTLY IF EXISTS $name")
+            }
+            session.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS $name ON $definition")
+            logger.info("Created index [Index: $name]")
+        } finally {
+            session.queryForObject("SELECT pg_advisory_unlock(hashtext(?))", Boolean::class.java, name)
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
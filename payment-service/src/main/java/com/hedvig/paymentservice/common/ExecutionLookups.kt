@@ -0,0 +1,84 @@
+package com.hedvig.paymentservice.common
+
+import com.hedvig.paymentservice.configuration.readReplica.ReplicaReads
+import graphql.schema.DataFetchingEnvironment
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import org.springframework.web.context.request.RequestAttributes
+import org.springframework.web.context.request.RequestContextHolder
+
+/**
+ * Memoizes repository reads and remote calls for the duration of a single GraphQL execution,
+ * so that query fields resolving overlapping data (e.g. `bankAccount`, `payinMethodStatus` and
+ * `activePaymentMethods`) run each distinct lookup at most once.
+ *
+ * Lookups made outside of [withinExecution] always go straight through, which keeps mutations,
+ * sagas and REST callers unaffected. Lookups made within [ReplicaReads] are memoized apart from the
+ * others, so a field reading from the primary never gets a result read from the replica.
+ */
+object ExecutionLookups {
+    private const val ATTRIBUTE_PREFIX = "com.hedvig.paymentservice.graphQl.executionLookups."
+    private const val REPLICA_KEY_PREFIX = "replica:"
+
+    private val currentLookups = ThreadLocal<ConcurrentMap<String, MemoizedLookup>>()
+
+    fun <T> withinExecution(env: DataFetchingEnvironment, resolve: () -> T): T {
+        val previous = currentLookups.get()
+        currentLookups.set(lookupsFor(env.executionId.toString()))
+        try {
+            return resolve()
+        } finally {
+            if (previous == null) {
+                currentLookups.remove()
+            } else {
+                currentLookups.set(previous)
+            }
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    fun <T> memoize(key: String, lookup: () -> T): T {
+        val lookups = currentLookups.get() ?: return lookup()
+        val scopedKey = if (ReplicaReads.isActive()) REPLICA_KEY_PREFIX + key else key
+
+        // The lookup runs outside of computeIfAbsent, so it may itself memoize lookups of the same execution
+        return lookups.computeIfAbsent(scopedKey) { MemoizedLookup(lookup) }.get() as T
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    private fun lookupsFor(executionId: String): ConcurrentMap<String, MemoizedLookup> {
+        val attributes = RequestContextHolder.getRequestAttributes() ?: return ConcurrentHashMap()
+        val attributeName = ATTRIBUTE_PREFIX + executionId
+
+        synchronized(this) {
+            val existing = attributes.getAttribute(attributeName, RequestAttributes.SCOPE_REQUEST)
+            if (existing != null) {
+                return existing as ConcurrentMap<String, MemoizedLookup>
+            }
+            val lookups = ConcurrentHashMap<String, MemoizedLookup>()
+            attributes.setAttribute(attributeName, lookups, RequestAttributes.SCOPE_REQUEST)
+            return lookups
+        }
+    }
+
+    // Resolved once by whichever field asks first, while concurrent fields asking for it wait for the result
+    private class MemoizedLookup(private val lookup: () -> Any?) {
+        private var resolved = false
+        private var value: Any? = null
+        private var failure: Exception? = null
+
+        @Synchronized
+        fun get(): Any? {
+            if (!resolved) {
+                try {
+                    value = lookup()
+                } catch (e: Exception) {
+                    failure = e
+                }
+                resolved = true
+            }
+            failure?.let { throw it }
+            return value
+        }
+    }
+}
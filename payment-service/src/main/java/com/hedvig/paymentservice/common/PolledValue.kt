@@ -0,0 +1,42 @@
+package com.hedvig.paymentservice.common
+
+import java.time.Duration
+import java.time.Instant
+import org.slf4j.LoggerFactory
+
+/**
+ * The last value read by a poll loop, for gauges that would otherwise query the database on every metrics
+ * scrape. The poll loop calls [refresh], which reads the value again once it is older than the refresh
+ * interval. The value is `null` until it has been read, and after a failed read.
+ */
+class PolledValue<T : Any>(
+    private val refreshInterval: Duration = DEFAULT_REFRESH_INTERVAL,
+    private val read: () -> T?
+) {
+    @Volatile
+    var value: T? = null
+        private set
+
+    @Volatile
+    private var readAt: Instant? = null
+
+    fun refresh(now: Instant = Instant.now()) {
+        val lastReadAt = readAt
+        if (lastReadAt != null && lastReadAt.plus(refreshInterval).isAfter(now)) {
+            return
+        }
+        readAt = now
+        value = try {
+            read()
+        } catch (exception: Exception) {
+            logger.warn("Could not read polled value [Exception: $exception]")
+            null
+        }
+    }
+
+    companion object {
+        private val DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(15)
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
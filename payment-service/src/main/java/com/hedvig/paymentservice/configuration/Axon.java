@@ -1,18 +1,15 @@
 package com.hedvig.paymentservice.configuration;
 
-import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.AdyenTokenRegistrationAuthorisedEventUpcaster;
-import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.AdyenTokenRegistrationAuthorisedEventUpcasterV2;
-import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.PendingAdyenTokenRegistrationCreatedEventUpcaster;
-import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.PendingAdyenTokenRegistrationCreatedEventUpcasterV2;
-import com.hedvig.paymentservice.domain.payments.events.upcasters.ChargeCreatedEventUpcaster;
-import com.hedvig.paymentservice.domain.payments.events.upcasters.PayoutCreatedEventUpCaster;
-import com.hedvig.paymentservice.domain.payments.events.upcasters.PayoutCreatedEventV2UpCaster;
-import com.hedvig.paymentservice.domain.payments.events.upcasters.PayoutCreatedEventV3UpCaster;
-import com.hedvig.paymentservice.domain.payments.events.upcasters.TrustlyAccountCreatedUpCaster;
+import com.hedvig.paymentservice.configuration.upcasting.EventUpcasters;
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster;
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcasterChain;
+import com.hedvig.paymentservice.configuration.upcasting.UpcastingProperties;
+import com.hedvig.paymentservice.domain.payments.initiation.PaymentInitiationEventListener;
+import java.util.ArrayList;
+import java.util.List;
 import org.axonframework.config.EventProcessingConfiguration;
 import org.axonframework.eventhandling.TrackingEventProcessorConfiguration;
 import org.axonframework.messaging.StreamableMessageSource;
-import org.axonframework.serialization.upcasting.event.EventUpcasterChain;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,27 +18,24 @@ import org.springframework.context.annotation.Configuration;
 public class Axon {
 
   @Bean
-  public EventUpcasterChain eventUpcasters() {
-    return new EventUpcasterChain(
-      new TrustlyAccountCreatedUpCaster(),
-      new PayoutCreatedEventUpCaster(),
-      new PayoutCreatedEventV2UpCaster(),
-      new PayoutCreatedEventV3UpCaster(),
-      new ChargeCreatedEventUpcaster(),
-      new AdyenTokenRegistrationAuthorisedEventUpcaster(),
-      new PendingAdyenTokenRegistrationCreatedEventUpcaster(),
-      new AdyenTokenRegistrationAuthorisedEventUpcasterV2(),
-      new PendingAdyenTokenRegistrationCreatedEventUpcasterV2()
-    );
+  public IndexedEventUpcasterChain eventUpcasters(UpcastingProperties properties) {
+    List<IndexedEventUpcaster> upcasters = new ArrayList<>(EventUpcasters.splitting());
+    if (properties.getLegacyUpcastersEnabled()) {
+      upcasters.addAll(EventUpcasters.legacy());
+    }
+    return new IndexedEventUpcasterChain(upcasters);
   }
 
   @Autowired
   public void configure(EventProcessingConfiguration config) {
     config.usingTrackingProcessors();
 
+    config.registerSubscribingEventProcessor(PaymentInitiationEventListener.PROCESSING_GROUP);
+
     config.registerTrackingEventProcessor("Account", x ->
       TrackingEventProcessorConfiguration
         .forSingleThreadedProcessing()
+        .andBatchSize(50)
         .andInitialTrackingToken(StreamableMessageSource::createHeadToken));
 
     config.registerTrackingEventProcessor("BackfillCharges", x ->
@@ -69,5 +63,11 @@ public class Axon {
           TrackingEventProcessorConfiguration
               .forSingleThreadedProcessing()
               .andInitialTrackingToken(StreamableMessageSource::createTailToken));
+
+      config.registerTrackingEventProcessor("MemberPaymentStatus", trackingConfig ->
+          TrackingEventProcessorConfiguration
+              .forSingleThreadedProcessing()
+              .andBatchSize(100)
+              .andInitialTrackingToken(StreamableMessageSource::createTailToken));
   }
 }
@@ -0,0 +1,96 @@
+package com.hedvig.paymentservice.configuration
+
+import java.net.URI
+import java.util.UUID
+import javax.cache.CacheManager
+import javax.cache.Caching
+import org.ehcache.config.builders.CacheConfigurationBuilder
+import org.ehcache.config.builders.ExpiryPolicyBuilder
+import org.ehcache.config.builders.ResourcePoolsBuilder
+import org.ehcache.jsr107.Eh107Configuration
+import org.ehcache.jsr107.EhcacheCachingProvider
+import org.hibernate.cache.jcache.ConfigSettings
+import org.hibernate.cfg.AvailableSettings
+import org.slf4j.LoggerFactory
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+
+/**
+ * Second-level and query cache for the small projections read on almost every Adyen and Trustly
+ * operation. Entities opt in with `@Cache(region = ...)` and repository methods with the
+ * `org.hibernate.cacheable` query hint. Writes through JPA update the entity regions and invalidate
+ * cached query results of the written tables. Disabled by default, see [HibernateCacheProperties.enabled].
+ */
+@Configuration
+class HibernateCache {
+
+    @Bean(destroyMethod = "close")
+    fun hibernateCacheManager(properties: HibernateCacheProperties): CacheManager {
+        val provider = Caching.getCachingProvider(EhcacheCachingProvider::class.java.name)
+        // JCache hands out one manager per URI, every application context gets its own regions
+        val cacheManager = provider.getCacheManager(
+            URI.create("$CACHE_MANAGER_URI-${UUID.randomUUID()}"),
+            javaClass.classLoader
+        )
+
+        EXPIRING_REGIONS.forEach { region ->
+            cacheManager.createCache(region, regionConfiguration(properties, expiring = true))
+        }
+        // Hibernate compares cached query results against these timestamps, they must outlive the results
+        cacheManager.createCache(UPDATE_TIMESTAMPS_REGION, regionConfiguration(properties, expiring = false))
+
+        logger.info("Hibernate cache regions created [Regions: ${cacheManager.cacheNames.toList()}] [TimeToLive: ${properties.timeToLive}]")
+        return cacheManager
+    }
+
+    @Bean
+    fun hibernateCacheCustomizer(
+        properties: HibernateCacheProperties,
+        hibernateCacheManager: CacheManager
+    ) = HibernatePropertiesCustomizer { hibernateProperties ->
+        hibernateProperties[AvailableSettings.GENERATE_STATISTICS] = properties.statistics
+        hibernateProperties[AvailableSettings.USE_SECOND_LEVEL_CACHE] = properties.enabled
+        hibernateProperties[AvailableSettings.USE_QUERY_CACHE] = properties.enabled
+        if (properties.enabled) {
+            hibernateProperties[AvailableSettings.CACHE_REGION_FACTORY] = "jcache"
+            hibernateProperties[ConfigSettings.CACHE_MANAGER] = hibernateCacheManager
+            hibernateProperties[ConfigSettings.MISSING_CACHE_STRATEGY] = "fail"
+        }
+    }
+
+    private fun regionConfiguration(properties: HibernateCacheProperties, expiring: Boolean) =
+        Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(
+                    Any::class.java,
+                    Any::class.java,
+                    ResourcePoolsBuilder.heap(properties.maxEntriesPerRegion)
+                )
+                .withExpiry(
+                    if (expiring) {
+                        ExpiryPolicyBuilder.timeToLiveExpiration(properties.timeToLive)
+                    } else {
+                        ExpiryPolicyBuilder.noExpiration()
+                    }
+                )
+        )
+
+    companion object {
+        const val MEMBER_ADYEN_ACCOUNT_REGION = "member-adyen-account"
+        const val DIRECT_DEBIT_ACCOUNT_ORDER_REGION = "direct-debit-account-order"
+        const val ADYEN_TOKEN_REGISTRATION_REGION = "adyen-token-registration"
+        const val QUERY_RESULTS_REGION = "default-query-results-region"
+        const val UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region"
+
+        private const val CACHE_MANAGER_URI = "payment-service-hibernate-cache"
+        private val EXPIRING_REGIONS = listOf(
+            MEMBER_ADYEN_ACCOUNT_REGION,
+            DIRECT_DEBIT_ACCOUNT_ORDER_REGION,
+            ADYEN_TOKEN_REGISTRATION_REGION,
+            QUERY_RESULTS_REGION
+        )
+
+        val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
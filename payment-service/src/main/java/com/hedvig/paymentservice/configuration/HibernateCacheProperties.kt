@@ -0,0 +1,24 @@
+package com.hedvig.paymentservice.configuration
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.hibernate.cache")
+class HibernateCacheProperties {
+    /**
+     * Off by default: the regions live on each instance, while the projections are written by whichever
+     * instance owns the processor's token. The other instances keep serving the entries they cached before
+     * the write until they expire, including token registrations the Adyen flows expect to be current.
+     * Only turn it on for a single instance, or for reads that may lag by the time to live.
+     */
+    var enabled: Boolean = false
+    var statistics: Boolean = false
+    var maxEntriesPerRegion: Long = 10_000
+
+    /**
+     * How long the other instances may serve a projection after it was written.
+     */
+    var timeToLive: Duration = Duration.ofSeconds(30)
+}
@@ -0,0 +1,12 @@
+package com.hedvig.paymentservice.configuration
+
+import org.springframework.context.annotation.Configuration
+import org.springframework.scheduling.annotation.EnableScheduling
+
+/**
+ * The `@Scheduled` jobs share the `spring.task.scheduling.pool.size` threads, which is sized for one thread
+ * per job. Jobs only claim work and hand it to workers of their own, they never wait for that work to be done.
+ */
+@Configuration
+@EnableScheduling
+class Scheduling
@@ -0,0 +1,98 @@
+package com.hedvig.paymentservice.configuration.aggregateCache
+
+import com.hedvig.paymentservice.domain.adyenTransaction.AdyenPayoutTransaction
+import com.hedvig.paymentservice.domain.adyenTransaction.AdyenTransaction
+import com.hedvig.paymentservice.domain.payments.Member
+import com.hedvig.paymentservice.domain.trustlyOrder.TrustlyOrder
+import io.micrometer.core.instrument.MeterRegistry
+import javax.cache.CacheManager
+import org.axonframework.commandhandling.model.Repository
+import org.axonframework.common.caching.JCacheAdapter
+import org.axonframework.common.lock.PessimisticLockFactory
+import org.axonframework.eventsourcing.EventSourcingRepository
+import org.axonframework.eventsourcing.GenericAggregateFactory
+import org.axonframework.eventsourcing.NoSnapshotTriggerDefinition
+import org.axonframework.eventsourcing.eventstore.EventStore
+import org.axonframework.messaging.annotation.ParameterResolverFactory
+import org.ehcache.config.builders.CacheConfigurationBuilder
+import org.ehcache.config.builders.ExpiryPolicyBuilder
+import org.ehcache.config.builders.ResourcePoolsBuilder
+import org.ehcache.jsr107.Eh107Configuration
+import org.slf4j.LoggerFactory
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+
+/**
+ * Repositories for the aggregates receiving several commands in quick succession during a charge or a
+ * payout. They keep the aggregates they load in a bounded cache per aggregate type, so that the following
+ * commands do not read all events of the aggregate again. The aggregates opt in by naming their
+ * repository in `@Aggregate`.
+ */
+@Configuration
+class AggregateCacheConfiguration(
+    private val eventStore: EventStore,
+    private val parameterResolverFactory: ParameterResolverFactory,
+    private val cacheManager: CacheManager,
+    private val properties: AggregateCacheProperties,
+    private val meterRegistry: MeterRegistry
+) {
+
+    @Bean
+    fun memberAggregateRepository(): Repository<Member> = repository(Member::class.java)
+
+    @Bean
+    fun trustlyOrderAggregateRepository(): Repository<TrustlyOrder> = repository(TrustlyOrder::class.java)
+
+    @Bean
+    fun adyenTransactionAggregateRepository(): Repository<AdyenTransaction> =
+        repository(AdyenTransaction::class.java)
+
+    @Bean
+    fun adyenPayoutTransactionAggregateRepository(): Repository<AdyenPayoutTransaction> =
+        repository(AdyenPayoutTransaction::class.java)
+
+    fun <T> repository(aggregateType: Class<T>): Repository<T> {
+        if (!properties.enabled) {
+            return EventSourcingRepository(
+                GenericAggregateFactory(aggregateType),
+                eventStore,
+                PessimisticLockFactory(),
+                parameterResolverFactory,
+                NoSnapshotTriggerDefinition.INSTANCE
+            )
+        }
+
+        val cacheName = "$CACHE_PREFIX${aggregateType.simpleName}"
+        logger.info(
+            "Caching aggregates [Cache: $cacheName] [MaxEntries: ${properties.maxEntriesPerAggregate}] " +
+                "[TimeToLive: ${properties.timeToLive}]"
+        )
+        return MeteredCachingEventSourcingRepository(
+            GenericAggregateFactory(aggregateType),
+            eventStore,
+            PessimisticLockFactory(),
+            JCacheAdapter(cacheManager.createCache(cacheName, cacheConfiguration())),
+            parameterResolverFactory,
+            meterRegistry.counter(CACHE_GETS, "aggregate", aggregateType.simpleName, "result", "hit"),
+            meterRegistry.counter(CACHE_GETS, "aggregate", aggregateType.simpleName, "result", "miss")
+        )
+    }
+
+    private fun cacheConfiguration() =
+        Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(
+                    Any::class.java,
+                    Any::class.java,
+                    ResourcePoolsBuilder.heap(properties.maxEntriesPerAggregate)
+                )
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(properties.timeToLive))
+        )
+
+    companion object {
+        const val CACHE_PREFIX = "aggregates-"
+        const val CACHE_GETS = "aggregate.cache.gets"
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
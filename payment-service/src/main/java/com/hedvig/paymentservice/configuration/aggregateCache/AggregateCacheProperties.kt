@@ -0,0 +1,27 @@
+package com.hedvig.paymentservice.configuration.aggregateCache
+
+import com.hedvig.paymentservice.configuration.commandBus.ConcurrencyRetryScheduler
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.aggregate-cache")
+class AggregateCacheProperties {
+    /**
+     * Any instance may handle the commands for an aggregate, so a cached copy misses the changes other
+     * instances made to it. A command that appends on top of such a copy fails on the conflicting sequence
+     * number and is retried, but a command handler acting on the stale state, like one looking up a
+     * transaction the copy does not know yet, fails before appending anything and is not retried. The
+     * cache is only safe to enable when a single instance handles the commands.
+     */
+    var enabled: Boolean = false
+    var maxEntriesPerAggregate: Long = 10_000
+
+    /**
+     * An aggregate changed by another instance is only seen here once its cached copy has expired or a
+     * command against it failed. A command failing on the conflicting sequence number evicts the copy and
+     * is retried by the command gateway, see [ConcurrencyRetryScheduler].
+     */
+    var timeToLive: Duration = Duration.ofMinutes(5)
+}
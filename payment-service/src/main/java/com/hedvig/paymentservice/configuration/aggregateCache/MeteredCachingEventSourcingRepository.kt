@@ -0,0 +1,47 @@
+package com.hedvig.paymentservice.configuration.aggregateCache
+
+import io.micrometer.core.instrument.Counter
+import java.util.concurrent.Callable
+import org.axonframework.common.caching.Cache
+import org.axonframework.common.lock.LockFactory
+import org.axonframework.eventsourcing.AggregateFactory
+import org.axonframework.eventsourcing.CachingEventSourcingRepository
+import org.axonframework.eventsourcing.EventSourcedAggregate
+import org.axonframework.eventsourcing.NoSnapshotTriggerDefinition
+import org.axonframework.eventsourcing.eventstore.EventStore
+import org.axonframework.messaging.annotation.ParameterResolverFactory
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork
+
+/**
+ * A caching event sourcing repository counting how many loads were served from the cache. An aggregate
+ * loaded or created in a unit of work that is rolled back is evicted, so that the next command reads it
+ * from the event store again instead of seeing changes that were never stored.
+ */
+class MeteredCachingEventSourcingRepository<T>(
+    aggregateFactory: AggregateFactory<T>,
+    eventStore: EventStore,
+    lockFactory: LockFactory,
+    private val cache: Cache,
+    parameterResolverFactory: ParameterResolverFactory,
+    private val hits: Counter,
+    private val misses: Counter
+) : CachingEventSourcingRepository<T>(
+    aggregateFactory,
+    eventStore,
+    lockFactory,
+    cache,
+    parameterResolverFactory,
+    NoSnapshotTriggerDefinition.INSTANCE
+) {
+    override fun doLoadWithLock(aggregateIdentifier: String, expectedVersion: Long?): EventSourcedAggregate<T> {
+        (if (cache.containsKey(aggregateIdentifier)) hits else misses).increment()
+        CurrentUnitOfWork.get().onRollback { cache.remove(aggregateIdentifier) }
+        return super.doLoadWithLock(aggregateIdentifier, expectedVersion)
+    }
+
+    override fun doCreateNewForLock(factoryMethod: Callable<T>): EventSourcedAggregate<T> {
+        val aggregate = super.doCreateNewForLock(factoryMethod)
+        CurrentUnitOfWork.get().onRollback { cache.remove(aggregate.identifierAsString()) }
+        return aggregate
+    }
+}
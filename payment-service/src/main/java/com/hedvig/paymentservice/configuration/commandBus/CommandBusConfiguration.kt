@@ -0,0 +1,59 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import io.micrometer.core.instrument.MeterRegistry
+import org.axonframework.commandhandling.CommandBus
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway
+import org.axonframework.common.transaction.TransactionManager
+import org.axonframework.messaging.interceptors.CorrelationDataInterceptor
+import org.axonframework.spring.config.AxonConfiguration
+import org.slf4j.LoggerFactory
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+
+/**
+ * Replaces the simple command bus of the Axon auto configuration with a [LaneCommandBus], set up the same
+ * way as the one it replaces, and its command gateway with one retrying commands that failed on a
+ * concurrent change of their aggregate.
+ */
+@Configuration
+class CommandBusConfiguration {
+
+    @Bean
+    fun commandBus(
+        transactionManager: TransactionManager,
+        axonConfiguration: AxonConfiguration,
+        properties: CommandBusProperties,
+        followUpCommandOutbox: FollowUpCommandOutbox,
+        meterRegistry: MeterRegistry
+    ): LaneCommandBus {
+        if (properties.asyncEnabled) {
+            logger.info("Handling commands on worker lanes [Lanes: ${properties.lanes}]")
+        }
+
+        val commandBus = LaneCommandBus(
+            transactionManager,
+            axonConfiguration.messageMonitor(CommandBus::class.java, "commandBus"),
+            properties,
+            followUpCommandOutbox,
+            meterRegistry
+        )
+        commandBus.registerHandlerInterceptor(
+            CorrelationDataInterceptor<CommandMessage<*>>(axonConfiguration.correlationDataProviders())
+        )
+        return commandBus
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    fun concurrencyRetryScheduler(properties: CommandBusProperties) =
+        ConcurrencyRetryScheduler(properties.concurrencyRetryInterval, properties.concurrencyRetries)
+
+    @Bean
+    fun commandGateway(commandBus: CommandBus, retryScheduler: ConcurrencyRetryScheduler): CommandGateway =
+        DefaultCommandGateway(commandBus, retryScheduler)
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
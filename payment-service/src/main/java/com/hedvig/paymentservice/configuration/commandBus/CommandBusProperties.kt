@@ -0,0 +1,39 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.command-bus")
+class CommandBusProperties {
+    /**
+     * Whether commands are handled on the worker lanes. When disabled, every command is handled on the
+     * thread dispatching it, which tests relying on a surrounding transaction need.
+     */
+    var asyncEnabled: Boolean = true
+    var lanes: Int = 8
+
+    /**
+     * How many commands may wait for each lane. Commands beyond that fail instead of being queued.
+     */
+    var laneQueueCapacity: Int = 10_000
+
+    /**
+     * How often, and how long apart, a command failing on a concurrent change of its aggregate is sent again.
+     * See [ConcurrencyRetryScheduler].
+     */
+    var concurrencyRetries: Int = 3
+    var concurrencyRetryInterval: Duration = Duration.ofMillis(100)
+
+    /**
+     * How the commands sent on a lane for another lane are handled, see [FollowUpCommandDispatcher]. A
+     * command failing [followUpMaxAttempts] times is given up on, so it no longer holds back the commands
+     * for its aggregate.
+     */
+    var followUpWorkers: Int = 4
+    var followUpMaxAttempts: Int = 10
+    var followUpInitialBackoff: Duration = Duration.ofSeconds(1)
+    var followUpMaxBackoff: Duration = Duration.ofMinutes(10)
+    var followUpClaimTimeout: Duration = Duration.ofMinutes(5)
+}
@@ -0,0 +1,45 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import java.time.Duration
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.commandhandling.gateway.IntervalRetryScheduler
+import org.axonframework.commandhandling.gateway.RetryScheduler
+import org.axonframework.commandhandling.model.ConcurrencyException
+
+/**
+ * Retries the commands that failed because their aggregate was changed by someone else in the meantime,
+ * after the given interval and at most the given number of times. That happens when another instance
+ * handled a command for the same aggregate, which the cached copy of the aggregate here does not know
+ * about yet. The failing command evicts that copy, so the retry loads the aggregate from the event store.
+ *
+ * Any other failure is reported right away, since the command handler may have acted on it.
+ */
+class ConcurrencyRetryScheduler(
+    retryInterval: Duration,
+    maxRetries: Int
+) : RetryScheduler {
+
+    private val executor = Executors.newSingleThreadScheduledExecutor(ThreadFactory { runnable ->
+        Thread(runnable, "command-retry").apply { isDaemon = true }
+    })
+
+    private val delegate = IntervalRetryScheduler(executor, retryInterval.toMillis().toInt(), maxRetries)
+
+    override fun scheduleRetry(
+        commandMessage: CommandMessage<*>,
+        lastFailure: RuntimeException,
+        failures: MutableList<Array<Class<out Throwable>>>,
+        commandDispatch: Runnable
+    ): Boolean =
+        isConcurrencyFailure(lastFailure) &&
+            delegate.scheduleRetry(commandMessage, lastFailure, failures, commandDispatch)
+
+    fun shutdown() {
+        executor.shutdown()
+    }
+
+    private fun isConcurrencyFailure(failure: Throwable): Boolean =
+        generateSequence(failure) { it.cause }.any { it is ConcurrencyException }
+}
@@ -0,0 +1,38 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import java.time.Instant
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.GeneratedValue
+import javax.persistence.GenerationType
+import javax.persistence.Id
+import javax.persistence.Index
+import javax.persistence.SequenceGenerator
+import javax.persistence.Table
+
+/**
+ * A command sent while handling a command on a lane of the [LaneCommandBus], for an aggregate handled on
+ * another lane. It is written in the transaction of the command sending it and handled by
+ * [FollowUpCommandDispatcher] once that transaction has committed, so it is not lost if the service stops
+ * in between. The command is kept serialized with the Axon serializer.
+ */
+@Entity
+@Table(indexes = [Index(name = "idx_follow_up_command_routing_key_pending", columnList = "routing_key,completed_at")])
+class FollowUpCommand(
+    val routingKey: String,
+    val commandType: String,
+    @Column(columnDefinition = "TEXT")
+    val command: String,
+    val createdAt: Instant
+) {
+    // Ids order the commands for an aggregate, so they are drawn one at a time rather than in pooled blocks
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "follow_up_command_id")
+    @SequenceGenerator(name = "follow_up_command_id", sequenceName = "follow_up_command_seq", allocationSize = 1)
+    val id: Long = 0
+    var attempts: Int = 0
+    var claimedAt: Instant? = null
+    var nextAttemptAt: Instant? = null
+    var completedAt: Instant? = null
+    var failed: Boolean = false
+}
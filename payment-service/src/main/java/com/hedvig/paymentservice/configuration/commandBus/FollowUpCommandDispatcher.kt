@@ -0,0 +1,115 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import com.hedvig.paymentservice.common.PolledValue
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.annotation.PreDestroy
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.slf4j.LoggerFactory
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Sends the commands stored in the [FollowUpCommandOutbox] on its own workers, waiting for each to be
+ * handled on its lane. Only the oldest pending command for an aggregate is sent at a time, so the
+ * commands for an aggregate are handled in the order they were sent. A failing command is sent again with
+ * an exponential backoff, holding back the later commands for its aggregate, until it has failed
+ * `follow-up-max-attempts` times. Commands that were in flight when the service stopped are sent again
+ * once their claim expires.
+ */
+@Component
+class FollowUpCommandDispatcher(
+    private val followUpCommandRepository: FollowUpCommandRepository,
+    private val followUpCommandOutbox: FollowUpCommandOutbox,
+    private val commandGateway: CommandGateway,
+    private val properties: CommandBusProperties,
+    meterRegistry: MeterRegistry
+) {
+    private val executor: ExecutorService = Executors.newFixedThreadPool(properties.followUpWorkers) { runnable ->
+        Thread(runnable, "follow-up-commands").apply { isDaemon = true }
+    }
+    private val busy = AtomicInteger()
+
+    private val lagTimer = meterRegistry.timer("command.bus.follow-ups.lag")
+    private val failureCounter = meterRegistry.counter("command.bus.follow-ups.failures")
+
+    private val pendingCommands = PolledValue { followUpCommandRepository.countByCompletedAtIsNull() }
+
+    init {
+        Gauge.builder("command.bus.follow-ups.depth", pendingCommands) { it.value?.toDouble() ?: Double.NaN }
+            .register(meterRegistry)
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.command-bus.follow-up-poll-interval:200}")
+    fun dispatchPendingCommands() {
+        pendingCommands.refresh()
+        val idle = properties.followUpWorkers - busy.get()
+        if (idle <= 0) {
+            return
+        }
+
+        val now = Instant.now()
+        val claimExpiredBefore = now.minus(properties.followUpClaimTimeout)
+
+        followUpCommandRepository
+            .findDispatchable(now, claimExpiredBefore, PageRequest.of(0, idle))
+            .filter { followUpCommandRepository.claim(it.id, now, claimExpiredBefore) == 1 }
+            .forEach { command ->
+                busy.incrementAndGet()
+                executor.execute {
+                    try {
+                        dispatch(command)
+                    } finally {
+                        busy.decrementAndGet()
+                    }
+                }
+            }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+        executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    }
+
+    internal fun dispatch(command: FollowUpCommand) {
+        val attempts = command.attempts + 1
+        try {
+            commandGateway.sendAndWait<Any>(followUpCommandOutbox.payloadOf(command))
+            val completedAt = Instant.now()
+            followUpCommandRepository.markCompleted(command.id, completedAt, false, attempts)
+            lagTimer.record(Duration.between(command.createdAt, completedAt))
+        } catch (exception: Exception) {
+            failureCounter.increment()
+            val context = "[RoutingKey: ${command.routingKey}] [CommandType: ${command.commandType}] " +
+                "[FollowUpCommandId: ${command.id}] [Attempts: $attempts]"
+            if (attempts >= properties.followUpMaxAttempts) {
+                logger.error("Follow-up command failed, giving up on it $context", exception)
+                followUpCommandRepository.markCompleted(command.id, Instant.now(), true, attempts)
+            } else {
+                val nextAttemptAt = Instant.now().plus(backoff(attempts))
+                logger.warn("Follow-up command failed, retrying at $nextAttemptAt $context", exception)
+                followUpCommandRepository.scheduleRetry(command.id, attempts, nextAttemptAt)
+            }
+        }
+    }
+
+    private fun backoff(attempts: Int): Duration {
+        val backoff = properties.followUpInitialBackoff
+            .multipliedBy(1L shl (attempts - 1).coerceAtMost(MAX_BACKOFF_EXPONENT))
+        return if (backoff > properties.followUpMaxBackoff) properties.followUpMaxBackoff else backoff
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val MAX_BACKOFF_EXPONENT = 20
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+    }
+}
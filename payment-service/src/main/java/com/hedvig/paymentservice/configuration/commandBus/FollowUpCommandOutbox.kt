@@ -0,0 +1,35 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import java.time.Instant
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.serialization.SerializedObject
+import org.axonframework.serialization.Serializer
+import org.axonframework.serialization.SimpleSerializedObject
+import org.springframework.stereotype.Component
+
+/**
+ * Stores the commands [LaneCommandBus] hands over to [FollowUpCommandDispatcher]. Must be called within
+ * the transaction of the command sending them.
+ */
+@Component
+class FollowUpCommandOutbox(
+    private val followUpCommandRepository: FollowUpCommandRepository,
+    private val serializer: Serializer
+) {
+    fun enqueue(command: CommandMessage<*>, routingKey: String) {
+        val serialized: SerializedObject<String> = serializer.serialize(command.payload, String::class.java)
+        followUpCommandRepository.save(
+            FollowUpCommand(
+                routingKey = routingKey,
+                commandType = serialized.type.name,
+                command = serialized.data,
+                createdAt = Instant.now()
+            )
+        )
+    }
+
+    fun payloadOf(followUpCommand: FollowUpCommand): Any =
+        serializer.deserialize(
+            SimpleSerializedObject(followUpCommand.command, String::class.java, followUpCommand.commandType, null)
+        )
+}
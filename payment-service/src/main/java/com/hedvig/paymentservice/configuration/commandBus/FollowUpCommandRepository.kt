@@ -0,0 +1,77 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import java.time.Instant
+import org.springframework.data.domain.Pageable
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+@Repository
+interface FollowUpCommandRepository : JpaRepository<FollowUpCommand, Long> {
+    /**
+     * The oldest pending command of each routing key, as long as it is due and not claimed by another
+     * dispatcher. Later commands for the same aggregate are only returned once the ones before are completed.
+     */
+    @Query(
+        "SELECT c FROM FollowUpCommand c " +
+            "WHERE c.completedAt IS NULL " +
+            "AND (c.nextAttemptAt IS NULL OR c.nextAttemptAt <= :now) " +
+            "AND (c.claimedAt IS NULL OR c.claimedAt < :claimExpiredBefore) " +
+            "AND NOT EXISTS (" +
+            "SELECT e.id FROM FollowUpCommand e " +
+            "WHERE e.routingKey = c.routingKey AND e.completedAt IS NULL AND e.id < c.id" +
+            ") " +
+            "ORDER BY c.id"
+    )
+    fun findDispatchable(
+        @Param("now") now: Instant,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant,
+        pageable: Pageable
+    ): List<FollowUpCommand>
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE FollowUpCommand c SET c.claimedAt = :claimedAt " +
+            "WHERE c.id = :id " +
+            "AND c.completedAt IS NULL " +
+            "AND (c.claimedAt IS NULL OR c.claimedAt < :claimExpiredBefore)"
+    )
+    fun claim(
+        @Param("id") id: Long,
+        @Param("claimedAt") claimedAt: Instant,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant
+    ): Int
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE FollowUpCommand c " +
+            "SET c.completedAt = :completedAt, c.failed = :failed, c.attempts = :attempts, c.claimedAt = NULL " +
+            "WHERE c.id = :id"
+    )
+    fun markCompleted(
+        @Param("id") id: Long,
+        @Param("completedAt") completedAt: Instant,
+        @Param("failed") failed: Boolean,
+        @Param("attempts") attempts: Int
+    ): Int
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE FollowUpCommand c " +
+            "SET c.attempts = :attempts, c.nextAttemptAt = :nextAttemptAt, c.claimedAt = NULL " +
+            "WHERE c.id = :id"
+    )
+    fun scheduleRetry(
+        @Param("id") id: Long,
+        @Param("attempts") attempts: Int,
+        @Param("nextAttemptAt") nextAttemptAt: Instant
+    ): Int
+
+    fun countByCompletedAtIsNull(): Long
+}
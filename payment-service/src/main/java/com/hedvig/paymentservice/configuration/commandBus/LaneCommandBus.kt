@@ -0,0 +1,139 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import org.axonframework.commandhandling.CommandCallback
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.commandhandling.SimpleCommandBus
+import org.axonframework.commandhandling.distributed.AnnotationRoutingStrategy
+import org.axonframework.commandhandling.distributed.UnresolvedRoutingKeyPolicy
+import org.axonframework.common.transaction.TransactionManager
+import org.axonframework.messaging.MessageHandler
+import org.axonframework.messaging.unitofwork.CurrentUnitOfWork
+import org.axonframework.monitoring.MessageMonitor
+
+/**
+ * A command bus handling commands on a fixed set of single threaded lanes. Commands are routed to a lane
+ * by the identifier of the aggregate they target, so that the commands for one aggregate are handled one
+ * at a time and in the order they were sent, while commands for different aggregates are handled in
+ * parallel. Commands without a target aggregate are spread over the lanes at random.
+ *
+ * Commands sent while handling a command, by the command handler itself or by the event handlers
+ * subscribed to its events, like sagas, are routed like any other command. The ones for the same lane are
+ * handled right away, within the unit of work of the command sending them, since waiting for them to pass
+ * through the queue of the lane they are sent from would never end. The ones for another lane are stored
+ * in the [FollowUpCommandOutbox] in the transaction of the command sending them, and are reported as
+ * accepted right away. [FollowUpCommandDispatcher] sends them once that transaction has committed, and
+ * again when they fail, so they neither act on an outcome that was rolled back nor get lost when the
+ * service stops. Their senders never see the outcome of handling them.
+ *
+ * The lane queues are bounded. A command that does not fit into its lane's queue fails right away
+ * rather than piling up in memory behind a stuck lane.
+ */
+class LaneCommandBus(
+    transactionManager: TransactionManager,
+    messageMonitor: MessageMonitor<in CommandMessage<*>>,
+    private val properties: CommandBusProperties,
+    private val followUpCommandOutbox: FollowUpCommandOutbox,
+    meterRegistry: MeterRegistry
+) : SimpleCommandBus(transactionManager, messageMonitor) {
+
+    private val routingStrategy = AnnotationRoutingStrategy(UnresolvedRoutingKeyPolicy.RANDOM_KEY)
+
+    private val lanes = if (properties.asyncEnabled) {
+        (0 until properties.lanes).map { Lane(it, properties.laneQueueCapacity, meterRegistry) }
+    } else {
+        emptyList()
+    }
+
+    override fun <C, R> handle(
+        command: CommandMessage<C>,
+        handler: MessageHandler<in CommandMessage<*>>,
+        callback: CommandCallback<in C, R>
+    ) {
+        if (lanes.isEmpty()) {
+            super.handle(command, handler, callback)
+            return
+        }
+
+        val routingKey = routingStrategy.getRoutingKey(command)
+        val lane = laneFor(routingKey)
+        val sendingLane = currentLane.get()
+        when {
+            sendingLane === lane -> super.handle(command, handler, callback)
+            sendingLane != null && CurrentUnitOfWork.isStarted() -> {
+                followUpCommandOutbox.enqueue(command, routingKey)
+                @Suppress("UNCHECKED_CAST")
+                callback.onSuccess(command, null as R)
+            }
+            else -> enqueue(lane, command, handler, callback)
+        }
+    }
+
+    private fun <C, R> enqueue(
+        lane: Lane,
+        command: CommandMessage<C>,
+        handler: MessageHandler<in CommandMessage<*>>,
+        callback: CommandCallback<in C, R>
+    ) {
+        try {
+            lane.execute { super.handle(command, handler, callback) }
+        } catch (exception: RejectedExecutionException) {
+            callback.onFailure(command, exception)
+        }
+    }
+
+    fun shutdown() {
+        lanes.forEach { it.executor.shutdown() }
+        lanes.forEach { it.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS) }
+    }
+
+    private fun laneFor(routingKey: String): Lane =
+        lanes[Math.floorMod(routingKey.hashCode(), lanes.size)]
+
+    private class Lane(index: Int, queueCapacity: Int, meterRegistry: MeterRegistry) {
+        private val queue = LinkedBlockingQueue<Runnable>(queueCapacity)
+
+        val executor = ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, ThreadFactory { runnable ->
+            Thread(Runnable {
+                currentLane.set(this@Lane)
+                runnable.run()
+            }, "command-bus-lane-$index").apply { isDaemon = true }
+        })
+
+        private val timer: Timer = meterRegistry.timer("command.bus.lane.latency", "lane", index.toString())
+
+        init {
+            Gauge.builder("command.bus.lane.depth", queue) { it.size.toDouble() }
+                .tag("lane", index.toString())
+                .register(meterRegistry)
+        }
+
+        /**
+         * Runs the task on this lane, recording the time from now until the task is done, so that the
+         * latency includes the time spent waiting behind other commands for the same lane.
+         */
+        fun execute(task: () -> Unit) {
+            val queuedAt = System.nanoTime()
+            executor.execute {
+                try {
+                    task()
+                } finally {
+                    timer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS)
+                }
+            }
+        }
+    }
+
+    companion object {
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+
+        private val currentLane = ThreadLocal<Lane?>()
+    }
+}
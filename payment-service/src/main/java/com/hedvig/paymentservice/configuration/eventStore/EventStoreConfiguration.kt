@@ -0,0 +1,32 @@
+package com.hedvig.paymentservice.configuration.eventStore
+
+import org.axonframework.eventsourcing.eventstore.EventStorageEngine
+import org.axonframework.eventsourcing.eventstore.EventStore
+import org.axonframework.spring.config.AxonConfiguration
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+
+/**
+ * Replaces the embedded event store of the Axon auto configuration with a [NotifyingEventStore]. While
+ * notifications are available the store is polled far less often, since the tracking processors are
+ * woken by [EventStoreNotificationListener] instead.
+ */
+@Configuration
+class EventStoreConfiguration {
+
+    @Bean
+    fun eventStore(
+        storageEngine: EventStorageEngine,
+        axonConfiguration: AxonConfiguration,
+        notifier: EventStoreNotifier,
+        properties: EventStoreNotificationProperties
+    ): NotifyingEventStore {
+        val pollInterval = if (notifier.available) properties.fallbackPollInterval else properties.pollInterval
+        return NotifyingEventStore(
+            storageEngine,
+            axonConfiguration.messageMonitor(EventStore::class.java, "eventStore"),
+            pollInterval.toMillis(),
+            notifier::eventsAppended
+        )
+    }
+}
@@ -0,0 +1,99 @@
+package com.hedvig.paymentservice.configuration.eventStore
+
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.SQLException
+import javax.annotation.PreDestroy
+import org.postgresql.PGConnection
+import org.slf4j.LoggerFactory
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+
+/**
+ * Listens on [EventStoreNotificationProperties.channel] and makes the event store fetch new events on
+ * every notification. Holds a connection of its own to the primary database, outside of the pool, since
+ * it is never given back. When the connection is lost, or fetching fails, it reconnects and fetches once,
+ * to pick up the events whose notifications went by in the meantime.
+ */
+@Component
+class EventStoreNotificationListener(
+    private val eventStore: NotifyingEventStore,
+    private val notifier: EventStoreNotifier,
+    private val dataSourceProperties: DataSourceProperties,
+    private val properties: EventStoreNotificationProperties
+) {
+    @Volatile
+    private var running = false
+    private var thread: Thread? = null
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun start() {
+        if (!notifier.available) {
+            logger.info("Event store notifications unavailable, polling for new events [PollInterval: ${properties.pollInterval}]")
+            return
+        }
+
+        running = true
+        thread = Thread(Runnable { listen() }, "event-store-notifications").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    @PreDestroy
+    fun stop() {
+        running = false
+        thread?.interrupt()
+    }
+
+    private fun listen() {
+        while (running) {
+            try {
+                connect().use { connection ->
+                    connection.createStatement().use { it.execute("LISTEN ${properties.channel}") }
+                    logger.info("Listening for appended events [Channel: ${properties.channel}]")
+                    eventStore.fetchNewEvents()
+
+                    val pgConnection = connection.unwrap(PGConnection::class.java)
+                    while (running) {
+                        val notifications = pgConnection.getNotifications(WAIT_MILLIS)
+                        if (!notifications.isNullOrEmpty()) {
+                            eventStore.fetchNewEvents()
+                        }
+                    }
+                }
+            } catch (exception: Exception) {
+                if (!running) {
+                    return
+                }
+                // Anything escaping here would end the thread, and with it the notifications, for good
+                val context = "[Channel: ${properties.channel}] [ReconnectDelay: ${properties.reconnectDelay}]"
+                if (exception is SQLException) {
+                    logger.warn("Lost connection listening for appended events $context", exception)
+                } else {
+                    logger.error("Failed fetching appended events, reconnecting $context", exception)
+                }
+                try {
+                    Thread.sleep(properties.reconnectDelay.toMillis())
+                } catch (interrupted: InterruptedException) {
+                    return
+                }
+            }
+        }
+    }
+
+    private fun connect(): Connection =
+        DriverManager.getConnection(
+            dataSourceProperties.determineUrl(),
+            dataSourceProperties.determineUsername(),
+            dataSourceProperties.determinePassword()
+        )
+
+    companion object {
+        private const val WAIT_MILLIS = 10_000
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
@@ -0,0 +1,25 @@
+package com.hedvig.paymentservice.configuration.eventStore
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.event-store.notifications")
+class EventStoreNotificationProperties {
+    var enabled: Boolean = true
+    var channel: String = "payment_service_events"
+
+    /**
+     * How often the event store is polled for events appended by other instances when notifications are
+     * unavailable, as on databases other than Postgres.
+     */
+    var pollInterval: Duration = Duration.ofSeconds(1)
+
+    /**
+     * How often the event store is still polled while notifications are used, which bounds the delay of
+     * events whose notification was lost while the listening connection was down.
+     */
+    var fallbackPollInterval: Duration = Duration.ofSeconds(10)
+    var reconnectDelay: Duration = Duration.ofSeconds(5)
+}
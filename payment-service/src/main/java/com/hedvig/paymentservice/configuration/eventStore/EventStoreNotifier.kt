@@ -0,0 +1,26 @@
+package com.hedvig.paymentservice.configuration.eventStore
+
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+
+/**
+ * Issues a Postgres NOTIFY on [EventStoreNotificationProperties.channel] in the transaction appending
+ * events. Postgres delivers it once the transaction commits, and only once however many units of work
+ * appended events in that transaction.
+ */
+@Component
+class EventStoreNotifier(
+    private val jdbcTemplate: JdbcTemplate,
+    private val properties: EventStoreNotificationProperties
+) {
+    val available: Boolean by lazy { properties.enabled && isPostgres() }
+
+    fun eventsAppended() {
+        if (available) {
+            jdbcTemplate.execute("NOTIFY ${properties.channel}")
+        }
+    }
+
+    private fun isPostgres(): Boolean =
+        jdbcTemplate.dataSource!!.connection.use { it.metaData.databaseProductName == "PostgreSQL" }
+}
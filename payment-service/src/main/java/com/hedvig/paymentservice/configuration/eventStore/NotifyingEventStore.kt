@@ -0,0 +1,45 @@
+package com.hedvig.paymentservice.configuration.eventStore
+
+import java.util.concurrent.TimeUnit
+import org.axonframework.eventhandling.EventMessage
+import org.axonframework.eventsourcing.eventstore.EmbeddedEventStore
+import org.axonframework.eventsourcing.eventstore.EventStorageEngine
+import org.axonframework.monitoring.MessageMonitor
+
+/**
+ * An embedded event store announcing its appends and fetching new events as soon as it is told about
+ * appends made elsewhere, instead of only once its poll interval has passed.
+ */
+class NotifyingEventStore(
+    storageEngine: EventStorageEngine,
+    messageMonitor: MessageMonitor<in EventMessage<*>>,
+    pollIntervalMillis: Long,
+    private val eventsAppended: () -> Unit
+) : EmbeddedEventStore(
+    storageEngine,
+    messageMonitor,
+    CACHED_EVENTS,
+    pollIntervalMillis,
+    CLEANUP_DELAY_MILLIS,
+    TimeUnit.MILLISECONDS
+) {
+    override fun prepareCommit(events: List<EventMessage<*>>) {
+        super.prepareCommit(events)
+        if (events.isNotEmpty()) {
+            eventsAppended()
+        }
+    }
+
+    /**
+     * Makes the event store fetch new events right away if it is waiting for its next poll, so that the
+     * processors reading from it see events appended by other instances.
+     */
+    fun fetchNewEvents() {
+        afterCommit(emptyList())
+    }
+
+    companion object {
+        private const val CACHED_EVENTS = 10_000
+        private const val CLEANUP_DELAY_MILLIS = 10_000L
+    }
+}
@@ -0,0 +1,65 @@
+package com.hedvig.paymentservice.configuration.payloadBlobs
+
+import com.adyen.model.checkout.PaymentsResponse
+import com.hedvig.paymentservice.services.adyen.dtos.AdyenPaymentsResponse
+import com.thoughtworks.xstream.XStream
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.converters.reflection.ReflectionConverter
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+
+/**
+ * Writes [AdyenPaymentsResponse]s as a reference to the full response in the [PayloadBlobStore], next to the
+ * only fields read from events: the result code and the recurring detail reference. They are read back as
+ * responses holding just those fields, without touching the blob store. Responses written in full, as they
+ * were before, are still read in full.
+ *
+ * Without a blob store the converter only reads, and responses are written in full.
+ */
+class AdyenPaymentsResponseConverter(
+    xStream: XStream,
+    private val payloadBlobStore: (() -> PayloadBlobStore)?
+) : ReflectionConverter(xStream.mapper, xStream.reflectionProvider, AdyenPaymentsResponse::class.java) {
+
+    override fun marshal(source: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
+        if (payloadBlobStore == null) {
+            super.marshal(source, writer, context)
+            return
+        }
+        val response = source as AdyenPaymentsResponse
+        writer.addAttribute(BLOB_ATTRIBUTE, response.payloadReference ?: payloadBlobStore().store(response))
+        response.paymentsResponse.resultCode?.let { writeNode(writer, RESULT_CODE, it.name) }
+        response.getRecurringDetailReference()?.let { writeNode(writer, RECURRING_DETAIL_REFERENCE, it) }
+    }
+
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Any {
+        val payloadReference = reader.getAttribute(BLOB_ATTRIBUTE) ?: return super.unmarshal(reader, context)
+
+        val paymentsResponse = PaymentsResponse()
+        while (reader.hasMoreChildren()) {
+            reader.moveDown()
+            when (reader.nodeName) {
+                RESULT_CODE ->
+                    paymentsResponse.resultCode = PaymentsResponse.ResultCodeEnum.valueOf(reader.value)
+                RECURRING_DETAIL_REFERENCE ->
+                    paymentsResponse.additionalData =
+                        mapOf(AdyenPaymentsResponse.RECURRING_DETAIL_REFERENCE to reader.value)
+            }
+            reader.moveUp()
+        }
+        return AdyenPaymentsResponse(paymentsResponse, payloadReference)
+    }
+
+    private fun writeNode(writer: HierarchicalStreamWriter, name: String, value: String) {
+        writer.startNode(name)
+        writer.setValue(value)
+        writer.endNode()
+    }
+
+    companion object {
+        private const val BLOB_ATTRIBUTE = "blob"
+        private const val RESULT_CODE = "resultCode"
+        private const val RECURRING_DETAIL_REFERENCE = "recurringDetailReference"
+    }
+}
@@ -0,0 +1,20 @@
+package com.hedvig.paymentservice.configuration.payloadBlobs
+
+import java.time.Instant
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.Id
+
+/**
+ * A provider payload kept out of the events that carry it, stored once under the SHA-256 hash of its
+ * serialized form. Rows are written by [PayloadBlobStore], this mapping only declares the table.
+ */
+@Entity
+class PayloadBlob(
+    @Id
+    @Column(length = 64)
+    val hash: String,
+    @Column(columnDefinition = "TEXT")
+    val content: String,
+    val createdAt: Instant
+)
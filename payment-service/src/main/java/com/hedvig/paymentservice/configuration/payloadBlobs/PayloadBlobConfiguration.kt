@@ -0,0 +1,40 @@
+package com.hedvig.paymentservice.configuration.payloadBlobs
+
+import org.axonframework.serialization.Serializer
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Primary
+
+/**
+ * Gives the events a serializer of their own, which keeps large provider payloads out of them, see
+ * [AdyenPaymentsResponseConverter]. The Axon auto configuration uses the `eventSerializer` for the event
+ * store only. Everything else, like sagas, tracking tokens, provider calls and dead letters, is written in
+ * full by the primary serializer, which still reads responses written to the blob store.
+ */
+@Configuration
+class PayloadBlobConfiguration {
+
+    @Bean
+    @Primary
+    fun serializer(): Serializer =
+        XStreamSerializer().apply {
+            xStream.registerConverter(AdyenPaymentsResponseConverter(xStream, null))
+        }
+
+    @Bean
+    @Qualifier("eventSerializer")
+    fun eventSerializer(
+        properties: PayloadBlobProperties,
+        payloadBlobStore: ObjectProvider<PayloadBlobStore>
+    ): Serializer =
+        XStreamSerializer().apply {
+            if (properties.enabled) {
+                xStream.registerConverter(AdyenPaymentsResponseConverter(xStream) { payloadBlobStore.getObject() })
+            } else {
+                xStream.registerConverter(AdyenPaymentsResponseConverter(xStream, null))
+            }
+        }
+}
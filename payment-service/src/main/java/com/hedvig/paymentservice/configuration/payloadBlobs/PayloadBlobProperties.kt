@@ -0,0 +1,14 @@
+package com.hedvig.paymentservice.configuration.payloadBlobs
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.payload-blobs")
+class PayloadBlobProperties {
+    /**
+     * Whether provider payloads in new events are written to the blob store. Events written either way can
+     * always be read.
+     */
+    var enabled: Boolean = true
+}
@@ -0,0 +1,49 @@
+package com.hedvig.paymentservice.configuration.payloadBlobs
+
+import com.thoughtworks.xstream.XStream
+import java.security.MessageDigest
+import java.sql.Timestamp
+import java.time.Instant
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+
+/**
+ * Content addressed storage of the provider payloads referenced from events. A payload is stored once no
+ * matter how many events carry it, and is written in the transaction appending the event. Nothing in the
+ * service reads the payloads back, the events keep every field their handlers read; they are kept for
+ * looking into what a provider answered.
+ */
+@Component
+class PayloadBlobStore(
+    private val jdbcTemplate: JdbcTemplate
+) {
+    private val xStream = XStream()
+
+    private val postgres by lazy {
+        jdbcTemplate.dataSource!!.connection.use { it.metaData.databaseProductName == "PostgreSQL" }
+    }
+
+    fun store(payload: Any): String {
+        val content = xStream.toXML(payload)
+        val hash = hash(content)
+        jdbcTemplate.update(
+            if (postgres) INSERT_IF_ABSENT_POSTGRES else INSERT_IF_ABSENT,
+            hash,
+            content,
+            Timestamp.from(Instant.now())
+        )
+        return hash
+    }
+
+    private fun hash(content: String): String =
+        MessageDigest.getInstance("SHA-256")
+            .digest(content.toByteArray(Charsets.UTF_8))
+            .joinToString("") { "%02x".format(it) }
+
+    companion object {
+        private const val INSERT_IF_ABSENT_POSTGRES =
+            "INSERT INTO payload_blob (hash, content, created_at) VALUES (?, ?, ?) ON CONFLICT (hash) DO NOTHING"
+        private const val INSERT_IF_ABSENT =
+            "MERGE INTO payload_blob (hash, content, created_at) KEY (hash) VALUES (?, ?, ?)"
+    }
+}
@@ -0,0 +1,10 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+/**
+ * Runs the annotated method, or every method of the annotated class, within [ReplicaReads.within].
+ * Only for lookups that tolerate data a few seconds old.
+ */
+@Target(AnnotationTarget.FUNCTION, AnnotationTarget.CLASS)
+@Retention(AnnotationRetention.RUNTIME)
+@MustBeDocumented
+annotation class ReadFromReplica
@@ -0,0 +1,16 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import org.aspectj.lang.ProceedingJoinPoint
+import org.aspectj.lang.annotation.Around
+import org.aspectj.lang.annotation.Aspect
+import org.springframework.stereotype.Component
+
+@Aspect
+@Component
+class ReadFromReplicaAspect {
+    @Around(
+        "@annotation(com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica) || " +
+            "@within(com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica)"
+    )
+    fun readFromReplica(joinPoint: ProceedingJoinPoint): Any? = ReplicaReads.within { joinPoint.proceed() }
+}
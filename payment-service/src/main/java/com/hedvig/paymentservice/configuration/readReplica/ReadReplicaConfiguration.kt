@@ -0,0 +1,63 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import com.zaxxer.hikari.HikariDataSource
+import io.micrometer.core.instrument.MeterRegistry
+import javax.sql.DataSource
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.context.annotation.Primary
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy
+
+/**
+ * Replaces the auto-configured datasource with one routing between the primary, configured with the
+ * usual `spring.datasource` properties, and the replica configured under `hedvig.read-replica.datasource`.
+ */
+@Configuration
+@ConditionalOnProperty("hedvig.read-replica.enabled", havingValue = "true")
+class ReadReplicaConfiguration {
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    fun primaryDataSourceProperties() = DataSourceProperties()
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    fun primaryDataSource(
+        @Qualifier("primaryDataSourceProperties") primaryDataSourceProperties: DataSourceProperties
+    ): HikariDataSource =
+        primaryDataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource::class.java).build()
+
+    @Bean
+    @ConfigurationProperties("hedvig.read-replica.datasource")
+    fun replicaDataSourceProperties() = DataSourceProperties()
+
+    @Bean
+    @ConfigurationProperties("hedvig.read-replica.datasource.hikari")
+    fun replicaDataSource(
+        @Qualifier("replicaDataSourceProperties") replicaDataSourceProperties: DataSourceProperties
+    ): HikariDataSource =
+        replicaDataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource::class.java).build()
+            .apply { isReadOnly = true }
+
+    @Bean
+    fun replicaLagMonitor(
+        @Qualifier("replicaDataSource") replicaDataSource: DataSource,
+        properties: ReadReplicaProperties,
+        meterRegistry: MeterRegistry
+    ) = ReplicaLagMonitor(replicaDataSource, properties, meterRegistry).apply { checkLag() }
+
+    @Bean
+    @Primary
+    fun dataSource(
+        @Qualifier("primaryDataSource") primaryDataSource: DataSource,
+        @Qualifier("replicaDataSource") replicaDataSource: DataSource,
+        replicaLagMonitor: ReplicaLagMonitor
+    ): DataSource = LazyConnectionDataSourceProxy(
+        ReadReplicaRoutingDataSource(primaryDataSource, replicaDataSource, replicaLagMonitor)
+    )
+}
@@ -0,0 +1,20 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.read-replica")
+class ReadReplicaProperties {
+    var enabled: Boolean = false
+
+    /**
+     * Reads go to the primary when the replica is further behind than this, or when the lag cannot be
+     * determined.
+     */
+    var maxLag: Duration = Duration.ofSeconds(10)
+
+    var lagQuery: String = "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+        "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END"
+}
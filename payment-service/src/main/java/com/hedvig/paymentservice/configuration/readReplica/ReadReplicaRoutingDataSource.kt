@@ -0,0 +1,40 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import javax.sql.DataSource
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource
+import org.springframework.transaction.support.TransactionSynchronizationManager
+
+/**
+ * Hands out replica connections to read-only transactions within [ReplicaReads] while the replica keeps
+ * up, and primary connections to everything else, including the Axon event and token stores.
+ *
+ * The lookup has to happen once the transaction is set up, so this must be wrapped in a
+ * [org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy].
+ */
+class ReadReplicaRoutingDataSource(
+    primary: DataSource,
+    replica: DataSource,
+    private val lagMonitor: ReplicaLagMonitor
+) : AbstractRoutingDataSource() {
+
+    init {
+        setTargetDataSources(mapOf<Any, Any>(Route.PRIMARY to primary, Route.REPLICA to replica))
+        setDefaultTargetDataSource(primary)
+        afterPropertiesSet()
+    }
+
+    public override fun determineCurrentLookupKey(): Route =
+        if (ReplicaReads.isActive() &&
+            TransactionSynchronizationManager.isCurrentTransactionReadOnly() &&
+            lagMonitor.isReplicaUsable()
+        ) {
+            Route.REPLICA
+        } else {
+            Route.PRIMARY
+        }
+
+    enum class Route {
+        PRIMARY,
+        REPLICA
+    }
+}
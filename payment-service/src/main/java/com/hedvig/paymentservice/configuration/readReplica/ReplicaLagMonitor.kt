@@ -0,0 +1,59 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Duration
+import javax.sql.DataSource
+import org.slf4j.LoggerFactory
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.scheduling.annotation.Scheduled
+
+/**
+ * Measures how far the replica is behind the primary. The replica counts as usable only while the last
+ * measurement succeeded and was within [ReadReplicaProperties.maxLag].
+ */
+class ReplicaLagMonitor(
+    replicaDataSource: DataSource,
+    private val properties: ReadReplicaProperties,
+    meterRegistry: MeterRegistry
+) {
+    private val replica = JdbcTemplate(replicaDataSource).apply { queryTimeout = QUERY_TIMEOUT_SECONDS }
+
+    @Volatile
+    private var lag: Duration? = null
+
+    init {
+        Gauge.builder("datasource.replica.lag") { lag?.toMillis()?.div(1000.0) ?: Double.NaN }
+            .description("Replication lag of the read replica in seconds")
+            .register(meterRegistry)
+        Gauge.builder("datasource.replica.usable") { if (isReplicaUsable()) 1.0 else 0.0 }
+            .register(meterRegistry)
+    }
+
+    fun isReplicaUsable(): Boolean {
+        val lag = lag ?: return false
+        return lag <= properties.maxLag
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.read-replica.lag-check-interval:5000}")
+    fun checkLag() {
+        val wasUsable = isReplicaUsable()
+        lag = try {
+            val seconds = replica.queryForObject(properties.lagQuery, Double::class.java)
+            seconds?.let { Duration.ofMillis((it * 1000).toLong()) }
+        } catch (e: Exception) {
+            logger.warn("Could not determine replication lag of the read replica [Exception: $e]")
+            null
+        }
+
+        val isUsable = isReplicaUsable()
+        if (wasUsable != isUsable) {
+            logger.info("Read replica usability changed [Usable: $isUsable] [Lag: $lag] [MaxLag: ${properties.maxLag}]")
+        }
+    }
+
+    companion object {
+        private const val QUERY_TIMEOUT_SECONDS = 2
+        val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
@@ -0,0 +1,31 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+/**
+ * Marks the reads of the current thread as allowed to be served by the read replica. Only read-only
+ * transactions started within [within] are routed there, see [ReadReplicaRoutingDataSource].
+ *
+ * Command-side code never opts in, as it has to see its own writes. This includes Spring Data finder
+ * methods, which run in read-only transactions of their own.
+ *
+ * Relies on `spring.jpa.open-in-view` being off. An entity manager held open for the whole request keeps
+ * the connection of its first transaction, so writes after a replica read would be sent to the replica.
+ */
+object ReplicaReads {
+    private val depth = ThreadLocal.withInitial { 0 }
+
+    fun <T> within(read: () -> T): T {
+        depth.set(depth.get() + 1)
+        try {
+            return read()
+        } finally {
+            val remaining = depth.get() - 1
+            if (remaining == 0) {
+                depth.remove()
+            } else {
+                depth.set(remaining)
+            }
+        }
+    }
+
+    fun isActive(): Boolean = depth.get() > 0
+}
@@ -0,0 +1,65 @@
+package com.hedvig.paymentservice.configuration.sagaStore
+
+import javax.cache.CacheManager
+import org.axonframework.common.caching.JCacheAdapter
+import org.axonframework.common.jpa.EntityManagerProvider
+import org.axonframework.eventhandling.saga.repository.CachingSagaStore
+import org.axonframework.eventhandling.saga.repository.SagaStore
+import org.axonframework.eventhandling.saga.repository.jpa.JpaSagaStore
+import org.axonframework.serialization.Serializer
+import org.ehcache.config.builders.CacheConfigurationBuilder
+import org.ehcache.config.builders.ExpiryPolicyBuilder
+import org.ehcache.config.builders.ResourcePoolsBuilder
+import org.ehcache.jsr107.Eh107Configuration
+import org.slf4j.LoggerFactory
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+
+/**
+ * The JPA saga store, optionally fronted by a bounded cache of saga instances and of the sagas found
+ * per association value. See [SagaStoreProperties.cacheEnabled] for when the cache may be enabled.
+ */
+@Configuration
+class SagaStoreConfiguration {
+
+    @Bean
+    fun sagaStore(
+        serializer: Serializer,
+        entityManagerProvider: EntityManagerProvider,
+        cacheManager: CacheManager,
+        properties: SagaStoreProperties
+    ): SagaStore<Any> {
+        val jpaSagaStore = JpaSagaStore(serializer, entityManagerProvider)
+        if (!properties.cacheEnabled) {
+            return jpaSagaStore
+        }
+
+        logger.info(
+            "Caching saga instances [MaxCachedSagas: ${properties.maxCachedSagas}] " +
+                "[TimeToLive: ${properties.cacheTimeToLive}]"
+        )
+        return CachingSagaStore(
+            jpaSagaStore,
+            JCacheAdapter(cacheManager.createCache(ASSOCIATIONS_CACHE, cacheConfiguration(properties))),
+            JCacheAdapter(cacheManager.createCache(SAGAS_CACHE, cacheConfiguration(properties)))
+        )
+    }
+
+    private fun cacheConfiguration(properties: SagaStoreProperties) =
+        Eh107Configuration.fromEhcacheCacheConfiguration(
+            CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(
+                    Any::class.java,
+                    Any::class.java,
+                    ResourcePoolsBuilder.heap(properties.maxCachedSagas)
+                )
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(properties.cacheTimeToLive))
+        )
+
+    companion object {
+        const val ASSOCIATIONS_CACHE = "saga-associations"
+        const val SAGAS_CACHE = "sagas"
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
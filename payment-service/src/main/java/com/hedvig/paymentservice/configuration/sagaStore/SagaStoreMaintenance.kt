@@ -0,0 +1,52 @@
+package com.hedvig.paymentservice.configuration.sagaStore
+
+import com.hedvig.paymentservice.common.ConcurrentIndexes
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Indexes the association values sagas are looked up by on every event they handle, and removes saga
+ * rows that can no longer be reached: associations of sagas that are gone and sagas without any
+ * association left. Ended sagas are deleted by the saga store itself.
+ */
+@Component
+class SagaStoreMaintenance(
+    private val jdbcTemplate: JdbcTemplate
+) {
+    private val indexes = ConcurrentIndexes(jdbcTemplate)
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun createIndexes() {
+        indexes.create(LOOKUP_INDEX, "association_value_entry (saga_type, association_key, association_value)")
+        indexes.create(SAGA_INDEX, "association_value_entry (saga_id, saga_type)")
+    }
+
+    @Scheduled(
+        initialDelayString = "\${hedvig.saga-store.cleanup-interval:3600000}",
+        fixedDelayString = "\${hedvig.saga-store.cleanup-interval:3600000}"
+    )
+    fun removeUnreachableSagas() {
+        val associations = jdbcTemplate.update(
+            "DELETE FROM association_value_entry a " +
+                "WHERE NOT EXISTS (SELECT 1 FROM saga_entry s WHERE s.saga_id = a.saga_id)"
+        )
+        val sagas = jdbcTemplate.update(
+            "DELETE FROM saga_entry s " +
+                "WHERE NOT EXISTS (SELECT 1 FROM association_value_entry a WHERE a.saga_id = s.saga_id)"
+        )
+        if (associations > 0 || sagas > 0) {
+            logger.info("Removed unreachable saga rows [Sagas: $sagas] [Associations: $associations]")
+        }
+    }
+
+    companion object {
+        const val LOOKUP_INDEX = "idx_association_value_entry_lookup"
+        const val SAGA_INDEX = "idx_association_value_entry_saga"
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
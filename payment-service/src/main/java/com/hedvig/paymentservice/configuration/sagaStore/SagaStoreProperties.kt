@@ -0,0 +1,18 @@
+package com.hedvig.paymentservice.configuration.sagaStore
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.saga-store")
+class SagaStoreProperties {
+    /**
+     * Sagas are handled by subscribing processors, so any instance may load and update a saga. The cache
+     * is only safe to enable when a single instance handles saga events, since the caches of the other
+     * instances would not see its changes.
+     */
+    var cacheEnabled: Boolean = false
+    var maxCachedSagas: Long = 10_000
+    var cacheTimeToLive: Duration = Duration.ofMinutes(10)
+}
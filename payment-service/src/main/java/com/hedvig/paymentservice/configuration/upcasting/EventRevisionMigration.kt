@@ -0,0 +1,163 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import java.sql.ResultSet
+import java.sql.Timestamp
+import java.time.Instant
+import java.util.stream.Collectors.toList
+import java.util.stream.Stream
+import org.axonframework.eventsourcing.eventstore.GenericDomainEventEntry
+import org.axonframework.serialization.Serializer
+import org.axonframework.serialization.SimpleSerializedType
+import org.axonframework.serialization.upcasting.event.InitialEventRepresentation
+import org.slf4j.LoggerFactory
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+
+/**
+ * Rewrites the stored events handled by the legacy upcasters to their latest revision, so those upcasters
+ * can be disabled. Meant to be run once by an instance started with the migration enabled, while no other
+ * instance is appending events.
+ *
+ * Events are rewritten in place in batches, following the global index. Each batch is committed with the
+ * position it reached, so an interrupted migration carries on from there when started again. Events the
+ * upcasters turn into several events are left as they are.
+ */
+@Component
+@ConditionalOnProperty(name = ["hedvig.upcasting.migration.enabled"], havingValue = "true")
+class EventRevisionMigration(
+    private val jdbcTemplate: JdbcTemplate,
+    private val serializer: Serializer,
+    transactionManager: PlatformTransactionManager,
+    private val properties: UpcastingProperties
+) {
+    private val transactionTemplate = TransactionTemplate(transactionManager)
+    private val upcasterChain = IndexedEventUpcasterChain(EventUpcasters.legacy())
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun migrate() {
+        jdbcTemplate.execute(
+            "CREATE TABLE IF NOT EXISTS $PROGRESS_TABLE " +
+                "(id VARCHAR(64) PRIMARY KEY, last_global_index BIGINT NOT NULL, completed_at TIMESTAMP)"
+        )
+        val progress = jdbcTemplate.query(
+            "SELECT last_global_index, completed_at FROM $PROGRESS_TABLE WHERE id = ?",
+            { rs, _ -> Pair(rs.getLong("last_global_index"), rs.getTimestamp("completed_at")) },
+            MIGRATION_ID
+        ).firstOrNull()
+        if (progress?.second != null) {
+            logger.info("Event revision migration already completed [CompletedAt: ${progress.second}]")
+            return
+        }
+
+        var lastGlobalIndex = progress?.first ?: -1L
+        var rewritten = 0
+        var left = 0
+        do {
+            val batch = transactionTemplate.execute { migrateBatch(lastGlobalIndex) }!!
+            lastGlobalIndex = batch.lastGlobalIndex
+            rewritten += batch.rewritten
+            left += batch.left
+            logger.info(
+                "Migrated events to their latest revision " +
+                    "[GlobalIndex: $lastGlobalIndex] [Rewritten: $rewritten] [Left: $left]"
+            )
+        } while (batch.size == properties.migration.batchSize)
+
+        jdbcTemplate.update(
+            "UPDATE $PROGRESS_TABLE SET completed_at = ? WHERE id = ?",
+            Timestamp.from(Instant.now()),
+            MIGRATION_ID
+        )
+        logger.info(
+            "Event revision migration completed, legacy upcasters can be disabled " +
+                "[Rewritten: $rewritten] [Left: $left]"
+        )
+    }
+
+    private fun migrateBatch(afterGlobalIndex: Long): Batch {
+        val payloadTypes = upcasterChain.upcastedTypes.map { it.name }.distinct()
+        val placeholders = payloadTypes.joinToString(", ") { "?" }
+        val events = jdbcTemplate.query(
+            "SELECT global_index, type, aggregate_identifier, sequence_number, event_identifier, time_stamp, " +
+                "payload_type, payload_revision, payload, meta_data FROM domain_event_entry " +
+                "WHERE global_index > ? AND payload_type IN ($placeholders) " +
+                "ORDER BY global_index LIMIT ?",
+            { rs, _ -> toStoredEvent(rs) },
+            afterGlobalIndex,
+            *payloadTypes.toTypedArray(),
+            properties.migration.batchSize
+        )
+
+        var rewritten = 0
+        var left = 0
+        events
+            .filter { (_, entry) ->
+                upcasterChain.canUpcast(SimpleSerializedType(entry.payloadType, entry.payloadRevision))
+            }
+            .forEach { (globalIndex, entry) ->
+                val upcasted = upcasterChain
+                    .upcast(Stream.of(InitialEventRepresentation(entry, serializer)))
+                    .collect(toList())
+                if (upcasted.size != 1) {
+                    left++
+                    return@forEach
+                }
+                val event = upcasted.single()
+                jdbcTemplate.update(
+                    "UPDATE domain_event_entry SET payload = ?, payload_type = ?, payload_revision = ? " +
+                        "WHERE global_index = ?",
+                    event.getData(ByteArray::class.java).data,
+                    event.type.name,
+                    event.type.revision,
+                    globalIndex
+                )
+                rewritten++
+            }
+
+        val lastGlobalIndex = events.lastOrNull()?.first ?: afterGlobalIndex
+        saveProgress(lastGlobalIndex)
+        return Batch(events.size, lastGlobalIndex, rewritten, left)
+    }
+
+    private fun saveProgress(lastGlobalIndex: Long) {
+        val updated = jdbcTemplate.update(
+            "UPDATE $PROGRESS_TABLE SET last_global_index = ? WHERE id = ?",
+            lastGlobalIndex,
+            MIGRATION_ID
+        )
+        if (updated == 0) {
+            jdbcTemplate.update(
+                "INSERT INTO $PROGRESS_TABLE (id, last_global_index) VALUES (?, ?)",
+                MIGRATION_ID,
+                lastGlobalIndex
+            )
+        }
+    }
+
+    private fun toStoredEvent(rs: ResultSet): Pair<Long, GenericDomainEventEntry<ByteArray>> =
+        rs.getLong("global_index") to GenericDomainEventEntry(
+            rs.getString("type"),
+            rs.getString("aggregate_identifier"),
+            rs.getLong("sequence_number"),
+            rs.getString("event_identifier"),
+            rs.getString("time_stamp"),
+            rs.getString("payload_type"),
+            rs.getString("payload_revision"),
+            rs.getBytes("payload"),
+            rs.getBytes("meta_data")
+        )
+
+    private data class Batch(val size: Int, val lastGlobalIndex: Long, val rewritten: Int, val left: Int)
+
+    companion object {
+        const val PROGRESS_TABLE = "event_revision_migration"
+        private const val MIGRATION_ID = "latest-revision"
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
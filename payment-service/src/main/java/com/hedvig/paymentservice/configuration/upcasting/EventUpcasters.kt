@@ -0,0 +1,37 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.AdyenTokenRegistrationAuthorisedEventUpcaster
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.AdyenTokenRegistrationAuthorisedEventUpcasterV2
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.PendingAdyenTokenRegistrationCreatedEventUpcaster
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters.PendingAdyenTokenRegistrationCreatedEventUpcasterV2
+import com.hedvig.paymentservice.domain.payments.events.upcasters.ChargeCreatedEventUpcaster
+import com.hedvig.paymentservice.domain.payments.events.upcasters.PayoutCreatedEventUpCaster
+import com.hedvig.paymentservice.domain.payments.events.upcasters.PayoutCreatedEventV2UpCaster
+import com.hedvig.paymentservice.domain.payments.events.upcasters.PayoutCreatedEventV3UpCaster
+import com.hedvig.paymentservice.domain.payments.events.upcasters.TrustlyAccountCreatedUpCaster
+
+object EventUpcasters {
+    /**
+     * Upcasters that turn one stored event into several. Their events can't be rewritten in place, since
+     * the extra events would need positions of their own in the event store, so they are always needed.
+     */
+    @JvmStatic
+    fun splitting(): List<IndexedEventUpcaster> = listOf(
+        TrustlyAccountCreatedUpCaster()
+    )
+
+    /**
+     * Upcasters of events that [EventRevisionMigration] rewrites to their latest revision.
+     */
+    @JvmStatic
+    fun legacy(): List<IndexedEventUpcaster> = listOf(
+        PayoutCreatedEventUpCaster(),
+        PayoutCreatedEventV2UpCaster(),
+        PayoutCreatedEventV3UpCaster(),
+        ChargeCreatedEventUpcaster(),
+        AdyenTokenRegistrationAuthorisedEventUpcaster(),
+        PendingAdyenTokenRegistrationCreatedEventUpcaster(),
+        AdyenTokenRegistrationAuthorisedEventUpcasterV2(),
+        PendingAdyenTokenRegistrationCreatedEventUpcasterV2()
+    )
+}
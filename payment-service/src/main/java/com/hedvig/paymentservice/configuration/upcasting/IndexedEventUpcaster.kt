@@ -0,0 +1,12 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import org.axonframework.serialization.SerializedType
+import org.axonframework.serialization.upcasting.event.EventUpcaster
+
+/**
+ * An upcaster that tells which payload types and revisions it upcasts, so [IndexedEventUpcasterChain] only
+ * hands it events of those.
+ */
+interface IndexedEventUpcaster : EventUpcaster {
+    fun upcastedTypes(): Set<SerializedType>
+}
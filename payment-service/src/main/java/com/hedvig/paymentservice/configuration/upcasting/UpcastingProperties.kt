@@ -0,0 +1,20 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.upcasting")
+class UpcastingProperties {
+    /**
+     * The upcasters of events that are rewritten in the event store by [EventRevisionMigration]. They are
+     * only safe to disable once the migration has completed against the event store.
+     */
+    var legacyUpcastersEnabled: Boolean = true
+    var migration = Migration()
+
+    class Migration {
+        var enabled: Boolean = false
+        var batchSize: Int = 500
+    }
+}
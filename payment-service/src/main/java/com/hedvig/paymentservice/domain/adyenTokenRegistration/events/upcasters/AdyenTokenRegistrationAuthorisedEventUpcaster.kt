@@ -1,14 +1,19 @@
 package com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters
 
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster
 import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationAuthorisedEvent
+import org.axonframework.serialization.SerializedType
 import org.axonframework.serialization.SimpleSerializedType
 import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation
 import org.axonframework.serialization.upcasting.event.SingleEventUpcaster
 import org.dom4j.Document
 
-class AdyenTokenRegistrationAuthorisedEventUpcaster() : SingleEventUpcaster() {
+class AdyenTokenRegistrationAuthorisedEventUpcaster() : SingleEventUpcaster(), IndexedEventUpcaster {
+  private val initialEvent = SimpleSerializedType(AdyenTokenRegistrationAuthorisedEvent::class.java.typeName, null)
+
+  override fun upcastedTypes(): Set<SerializedType> = setOf(initialEvent)
+
   override fun canUpcast(intermediateRepresentation: IntermediateEventRepresentation): Boolean {
-    val initialEvent = SimpleSerializedType(AdyenTokenRegistrationAuthorisedEvent::class.java.typeName, null)
     return (intermediateRepresentation.type == initialEvent)
   }
 
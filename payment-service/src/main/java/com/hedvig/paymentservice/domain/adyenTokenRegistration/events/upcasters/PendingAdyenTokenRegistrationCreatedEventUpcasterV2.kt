@@ -1,13 +1,18 @@
 package com.hedvig.paymentservice.domain.adyenTokenRegistration.events.upcasters
 
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster
 import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.PendingAdyenTokenRegistrationCreatedEvent
+import org.axonframework.serialization.SerializedType
 import org.axonframework.serialization.SimpleSerializedType
 import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation
 import org.axonframework.serialization.upcasting.event.SingleEventUpcaster
 import org.dom4j.Document
 
-class PendingAdyenTokenRegistrationCreatedEventUpcasterV2 : SingleEventUpcaster() {
+class PendingAdyenTokenRegistrationCreatedEventUpcasterV2 : SingleEventUpcaster(), IndexedEventUpcaster {
   private val targetType = SimpleSerializedType(PendingAdyenTokenRegistrationCreatedEvent::class.java.typeName, "1.0")
+
+  override fun upcastedTypes(): Set<SerializedType> = setOf(targetType)
+
   override fun canUpcast(intermediateRepresentation: IntermediateEventRepresentation): Boolean {
     return intermediateRepresentation.type == targetType
   }
@@ -24,7 +24,7 @@ import org.axonframework.commandhandling.model.AggregateLifecycle.apply
 import org.axonframework.eventsourcing.EventSourcingHandler
 import org.axonframework.spring.stereotype.Aggregate
 
-@Aggregate
+@Aggregate(repository = "adyenPayoutTransactionAggregateRepository")
 class AdyenPayoutTransaction() {
     @AggregateIdentifier
     lateinit var transactionId: UUID
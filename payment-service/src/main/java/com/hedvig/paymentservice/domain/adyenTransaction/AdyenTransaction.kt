@@ -28,7 +28,7 @@ import org.axonframework.eventsourcing.EventSourcingHandler
 import org.axonframework.spring.stereotype.Aggregate
 import org.slf4j.LoggerFactory
 
-@Aggregate
+@Aggregate(repository = "adyenTransactionAggregateRepository")
 class AdyenTransaction() {
     @AggregateIdentifier
     lateinit var transactionId: UUID
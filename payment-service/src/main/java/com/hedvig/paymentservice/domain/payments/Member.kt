@@ -51,7 +51,7 @@ import java.util.ArrayList
 import java.util.UUID
 import javax.money.MonetaryAmount
 
-@Aggregate
+@Aggregate(repository = "memberAggregateRepository")
 class Member() {
     @AggregateIdentifier
     lateinit var memberId: String
@@ -1,17 +1,18 @@
 package com.hedvig.paymentservice.domain.payments.events.upcasters
 
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster
 import com.hedvig.paymentservice.domain.payments.enums.PayinProvider
 import com.hedvig.paymentservice.domain.payments.events.ChargeCreatedEvent
+import org.axonframework.serialization.SerializedType
 import org.axonframework.serialization.SimpleSerializedType
 import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation
 import org.axonframework.serialization.upcasting.event.SingleEventUpcaster
 import org.dom4j.Document
 
-class ChargeCreatedEventUpcaster : SingleEventUpcaster() {
-  override fun canUpcast(intermediateRepresentation: IntermediateEventRepresentation): Boolean {
-    val initialEvent = SimpleSerializedType(ChargeCreatedEvent::class.java.typeName, null)
-    val firstRevision = SimpleSerializedType(ChargeCreatedEvent::class.java.typeName, "1.0")
+class ChargeCreatedEventUpcaster : SingleEventUpcaster(), IndexedEventUpcaster {
+  override fun upcastedTypes(): Set<SerializedType> = setOf(initialEvent, firstRevision)
 
+  override fun canUpcast(intermediateRepresentation: IntermediateEventRepresentation): Boolean {
     return (intermediateRepresentation.type == initialEvent && intermediateRepresentation.type.revision == null) ||
       (intermediateRepresentation.type == firstRevision && intermediateRepresentation.type.revision == firstRevision.revision)
   }
@@ -34,4 +35,9 @@ class ChargeCreatedEventUpcaster : SingleEventUpcaster() {
       document
     }
   }
+
+  companion object {
+    private val initialEvent = SimpleSerializedType(ChargeCreatedEvent::class.java.typeName, null)
+    private val firstRevision = SimpleSerializedType(ChargeCreatedEvent::class.java.typeName, "1.0")
+  }
 }
@@ -1,18 +1,27 @@
 package com.hedvig.paymentservice.domain.payments.events.upcasters;
 
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster;
 import com.hedvig.paymentservice.domain.payments.TransactionCategory;
 import com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent;
+import java.util.Collections;
+import java.util.Set;
+import org.axonframework.serialization.SerializedType;
 import org.axonframework.serialization.SimpleSerializedType;
 import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation;
 import org.axonframework.serialization.upcasting.event.SingleEventUpcaster;
 import org.dom4j.Element;
 
-public class PayoutCreatedEventUpCaster extends SingleEventUpcaster {
+public class PayoutCreatedEventUpCaster extends SingleEventUpcaster implements IndexedEventUpcaster {
 
   private static SimpleSerializedType targetType = new SimpleSerializedType(
     PayoutCreatedEvent.class.getTypeName(), null
   );
 
+  @Override
+  public Set<SerializedType> upcastedTypes() {
+    return Collections.singleton(targetType);
+  }
+
   @Override
   protected boolean canUpcast(IntermediateEventRepresentation intermediateEventRepresentation) {
     return intermediateEventRepresentation.getType().equals(targetType);
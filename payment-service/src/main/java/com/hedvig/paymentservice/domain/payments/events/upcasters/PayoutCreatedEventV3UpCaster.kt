@@ -1,17 +1,21 @@
 package com.hedvig.paymentservice.domain.payments.events.upcasters
 
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster
 import com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent
+import org.axonframework.serialization.SerializedType
 import org.axonframework.serialization.SimpleSerializedType
 import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation
 import org.axonframework.serialization.upcasting.event.SingleEventUpcaster
 import org.dom4j.Document
 
-class PayoutCreatedEventV3UpCaster : SingleEventUpcaster() {
+class PayoutCreatedEventV3UpCaster : SingleEventUpcaster(), IndexedEventUpcaster {
 
     private val targetType = SimpleSerializedType(
         PayoutCreatedEvent::class.java.typeName, "2.0"
     )
 
+    override fun upcastedTypes(): Set<SerializedType> = setOf(targetType)
+
     override fun canUpcast(intermediateEventRepresentation: IntermediateEventRepresentation) =
         intermediateEventRepresentation.type == targetType
 
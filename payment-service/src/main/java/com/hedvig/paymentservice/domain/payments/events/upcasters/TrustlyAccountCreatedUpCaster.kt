@@ -1,16 +1,20 @@
 package com.hedvig.paymentservice.domain.payments.events.upcasters
 
+import com.hedvig.paymentservice.configuration.upcasting.IndexedEventUpcaster
 import com.hedvig.paymentservice.domain.payments.events.DirectDebitConnectedEvent
 import com.hedvig.paymentservice.domain.payments.events.DirectDebitDisconnectedEvent
 import com.hedvig.paymentservice.domain.payments.events.DirectDebitPendingConnectionEvent
 import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent
 import java.util.stream.Stream
+import org.axonframework.serialization.SerializedType
 import org.axonframework.serialization.SimpleSerializedType
 import org.axonframework.serialization.upcasting.event.EventMultiUpcaster
 import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation
 import org.dom4j.Document
 
-class TrustlyAccountCreatedUpCaster : EventMultiUpcaster() {
+class TrustlyAccountCreatedUpCaster : EventMultiUpcaster(), IndexedEventUpcaster {
+
+  override fun upcastedTypes(): Set<SerializedType> = setOf(eventTypes.getValue(TRUSTLY_ACCOUNT_CREATED))
 
   override fun canUpcast(intermediateRepresentation: IntermediateEventRepresentation): Boolean {
     return intermediateRepresentation.type == eventTypes[TRUSTLY_ACCOUNT_CREATED] &&
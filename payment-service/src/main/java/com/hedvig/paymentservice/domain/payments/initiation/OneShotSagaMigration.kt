@@ -0,0 +1,47 @@
+package com.hedvig.paymentservice.domain.payments.initiation
+
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+import org.springframework.transaction.annotation.Transactional
+
+/**
+ * Removes what is left in the saga store of the charge and payout sagas replaced by
+ * [PaymentInitiationEventListener]. Those sagas ended on the event that started them and kept no state,
+ * so an instance is only left behind when its handler failed. Such an instance would have picked up the
+ * next charge or payout of its member instead of a new one being created, which the listener now does
+ * for every event, so the instances are logged and dropped.
+ */
+@Component
+class OneShotSagaMigration(
+    private val jdbcTemplate: JdbcTemplate
+) {
+    @EventListener(ApplicationReadyEvent::class)
+    @Transactional
+    fun migrate() {
+        REMOVED_SAGA_TYPES.forEach { sagaType ->
+            val sagaIds = jdbcTemplate.queryForList(
+                "SELECT saga_id FROM saga_entry WHERE saga_type = ?",
+                String::class.java,
+                sagaType
+            )
+            if (sagaIds.isEmpty()) {
+                return@forEach
+            }
+            jdbcTemplate.update("DELETE FROM association_value_entry WHERE saga_type = ?", sagaType)
+            jdbcTemplate.update("DELETE FROM saga_entry WHERE saga_type = ?", sagaType)
+            logger.info("Removed instances of replaced saga [SagaType: $sagaType] [SagaIds: $sagaIds]")
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+
+        private val REMOVED_SAGA_TYPES = listOf(
+            "com.hedvig.paymentservice.domain.payments.sagas.ChargeSaga",
+            "com.hedvig.paymentservice.domain.payments.sagas.PayoutSaga"
+        )
+    }
+}
@@ -0,0 +1,136 @@
+package com.hedvig.paymentservice.domain.payments.initiation
+
+import com.hedvig.paymentservice.common.UUIDGenerator
+import com.hedvig.paymentservice.domain.adyenTransaction.commands.InitiateAdyenTransactionCommand
+import com.hedvig.paymentservice.domain.adyenTransaction.commands.InitiateAdyenTransactionPayoutCommand
+import com.hedvig.paymentservice.domain.payments.enums.PayinProvider
+import com.hedvig.paymentservice.domain.payments.events.ChargeCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutDetails
+import com.hedvig.paymentservice.domain.swish.commands.InitiateSwishTransactionPayoutCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePaymentOrderCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePayoutOrderCommand
+import com.hedvig.paymentservice.services.providerCalls.PaymentProvider
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallDispatcher
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallQueue
+import com.hedvig.paymentservice.services.trustly.dto.PaymentRequest
+import com.hedvig.paymentservice.services.trustly.dto.PayoutRequest
+import org.axonframework.config.ProcessingGroup
+import org.axonframework.eventhandling.EventHandler
+import org.springframework.stereotype.Component
+
+/**
+ * Starts the provider side of charges and payouts. This used to be done by two sagas that started and
+ * ended on the same event, which cost a saga store write and delete per transaction for no state.
+ *
+ * Runs in a subscribing processor, like the sagas did, so the work is done in the unit of work that
+ * applied the event and commits or rolls back together with it. That unit of work runs on a lane of the
+ * command bus, so the Trustly orders are created by [ProviderCallDispatcher] right before starting them
+ * rather than here, where waiting for them to be created could wait for this unit of work itself.
+ */
+@Component
+@ProcessingGroup(PaymentInitiationEventListener.PROCESSING_GROUP)
+class PaymentInitiationEventListener(
+    private val providerCallQueue: ProviderCallQueue,
+    private val uuidGenerator: UUIDGenerator
+) {
+    @EventHandler
+    fun on(e: ChargeCreatedEvent) {
+        when (e.provider) {
+            PayinProvider.TRUSTLY -> {
+                val hedvigOrderId = uuidGenerator.generateRandom()
+                providerCallQueue.enqueueTrustlyPaymentOrder(
+                    e.transactionId,
+                    hedvigOrderId,
+                    PaymentRequest(e.memberId, e.amount, e.providerId, e.email),
+                    CreatePaymentOrderCommand(
+                        hedvigOrderId,
+                        e.transactionId,
+                        e.memberId,
+                        e.amount,
+                        e.providerId
+                    )
+                )
+            }
+            PayinProvider.ADYEN -> {
+                providerCallQueue.enqueueCommand(
+                    PaymentProvider.ADYEN,
+                    e.memberId,
+                    e.transactionId,
+                    InitiateAdyenTransactionCommand(
+                        e.transactionId,
+                        e.memberId,
+                        e.providerId,
+                        e.amount
+                    )
+                )
+            }
+        }
+    }
+
+    @EventHandler
+    fun on(event: PayoutCreatedEvent) = when (event.payoutDetails) {
+        is PayoutDetails.Trustly -> {
+            val hedvigOrderId = uuidGenerator.generateRandom()
+            providerCallQueue.enqueueTrustlyPayoutOrder(
+                event.transactionId,
+                hedvigOrderId,
+                PayoutRequest(
+                    event.memberId,
+                    event.amount,
+                    event.payoutDetails.accountId,
+                    event.address,
+                    event.countryCode,
+                    event.dateOfBirth,
+                    event.firstName,
+                    event.lastName,
+                    event.category,
+                    event.carrier
+                ),
+                CreatePayoutOrderCommand(
+                    hedvigOrderId,
+                    event.transactionId,
+                    event.memberId,
+                    event.amount,
+                    event.payoutDetails.accountId,
+                    event.address,
+                    event.countryCode,
+                    event.dateOfBirth,
+                    event.firstName,
+                    event.lastName
+                )
+            )
+        }
+        is PayoutDetails.Adyen -> {
+            providerCallQueue.enqueueCommand(
+                PaymentProvider.ADYEN,
+                event.memberId,
+                event.transactionId,
+                InitiateAdyenTransactionPayoutCommand(
+                    event.transactionId,
+                    event.memberId,
+                    event.payoutDetails.shopperReference,
+                    event.amount,
+                    event.email ?: ""
+                )
+            )
+        }
+        is PayoutDetails.Swish -> providerCallQueue.enqueueCommand(
+            PaymentProvider.SWISH,
+            event.memberId,
+            event.transactionId,
+            InitiateSwishTransactionPayoutCommand(
+                event.transactionId,
+                event.memberId,
+                event.payoutDetails.phoneNumber,
+                event.payoutDetails.ssn,
+                event.payoutDetails.message,
+                event.amount
+            )
+        )
+    }
+
+    companion object {
+        const val PROCESSING_GROUP = "PaymentInitiation"
+    }
+}
@@ -106,7 +106,7 @@ class SwishPayoutTransaction() {
     @EventSourcingHandler
     fun on(e: SwishPayoutTransactionCompletedEvent) {
         transactionStatus = SwishPayoutTransactionStatus.COMPLETED
-        commandGateway.sendAndWait<Any>(
+        sendWhenLive(
             PayoutCompletedCommand(
                 memberId = e.memberId,
                 transactionId = e.transactionId,
@@ -119,7 +119,7 @@ class SwishPayoutTransaction() {
     @EventSourcingHandler
     fun on(e: SwishPayoutTransactionCanceledEvent) {
         transactionStatus = SwishPayoutTransactionStatus.CANCELLED
-        commandGateway.sendAndWait<Any>(
+        sendWhenLive(
             PayoutFailedCommand(
                 memberId = e.memberId,
                 transactionId = e.transactionId,
@@ -132,7 +132,7 @@ class SwishPayoutTransaction() {
     @EventSourcingHandler
     fun on(e: SwishPayoutTransactionFailedEvent) {
         transactionStatus = SwishPayoutTransactionStatus.FAILED
-        commandGateway.sendAndWait<Any>(
+        sendWhenLive(
             PayoutFailedCommand(
                 memberId = e.memberId,
                 transactionId = e.transactionId,
@@ -142,6 +142,13 @@ class SwishPayoutTransaction() {
         )
     }
 
+    // The events are also handled when the aggregate is loaded, which must not report the outcome again
+    private fun sendWhenLive(command: Any) {
+        if (AggregateLifecycle.isLive()) {
+            commandGateway.sendAndWait<Any>(command)
+        }
+    }
+
     @CommandHandler
     fun handle(cmd: SwishPayoutTransactionCompletedCommand) {
         if (transactionStatus != SwishPayoutTransactionStatus.COMPLETED) {
@@ -39,7 +39,7 @@ import org.axonframework.eventsourcing.EventSourcingHandler;
 import org.axonframework.spring.stereotype.Aggregate;
 
 @Slf4j
-@Aggregate
+@Aggregate(repository = "trustlyOrderAggregateRepository")
 public class TrustlyOrder {
 
     @AggregateIdentifier
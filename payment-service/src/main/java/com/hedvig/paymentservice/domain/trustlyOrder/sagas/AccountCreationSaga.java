@@ -3,12 +3,11 @@ package com.hedvig.paymentservice.domain.trustlyOrder.sagas;
 import com.hedvig.paymentservice.domain.payments.commands.CreateMemberCommand;
 import com.hedvig.paymentservice.domain.payments.commands.UpdateTrustlyAccountCommand;
 import com.hedvig.paymentservice.domain.trustlyOrder.events.AccountNotificationReceivedEvent;
-import lombok.val;
 import org.axonframework.commandhandling.gateway.CommandGateway;
-import org.axonframework.commandhandling.model.AggregateNotFoundException;
 import org.axonframework.eventhandling.saga.EndSaga;
 import org.axonframework.eventhandling.saga.SagaEventHandler;
 import org.axonframework.eventhandling.saga.StartSaga;
+import org.axonframework.eventsourcing.eventstore.EventStore;
 import org.axonframework.spring.stereotype.Saga;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,18 +19,20 @@ public class AccountCreationSaga {
     private static final Logger log = LoggerFactory.getLogger(AccountCreationSaga.class);
     @Autowired
     transient CommandGateway commandGateway;
+    @Autowired
+    transient EventStore eventStore;
 
     @StartSaga
     @SagaEventHandler(associationProperty = "accountId")
     @EndSaga
     public void on(AccountNotificationReceivedEvent event) {
-        try {
-            updateTrustlyAccount(event);
-        } catch (AggregateNotFoundException e) {
-            log.info("Member was created [MemberId {} ] Since AggregateNotFoundException was thrown when receiving AccountNotificationReceivedEvent", event.getMemberId());
+        // Commands for the member sent from the lane of the order only fail after this handler is done, so
+        // whether the member exists is looked up instead of learnt from the update failing
+        if (!eventStore.readEvents(event.getMemberId()).hasNext()) {
+            log.info("Member was created [MemberId {} ] Since it did not exist when receiving AccountNotificationReceivedEvent", event.getMemberId());
             commandGateway.sendAndWait(new CreateMemberCommand(event.getMemberId()));
-            updateTrustlyAccount(event);
         }
+        updateTrustlyAccount(event);
     }
 
     private void updateTrustlyAccount(AccountNotificationReceivedEvent event) {
@@ -3,6 +3,8 @@ package com.hedvig.paymentservice.graphQl
 import com.coxautodev.graphql.tools.GraphQLQueryResolver
 import com.hedvig.graphql.commons.extensions.getToken
 import com.hedvig.graphql.commons.extensions.getTokenOrNull
+import com.hedvig.paymentservice.common.ExecutionLookups
+import com.hedvig.paymentservice.configuration.readReplica.ReplicaReads
 import com.hedvig.paymentservice.graphQl.types.ActivePaymentMethodsResponse
 import com.hedvig.paymentservice.graphQl.types.ActivePayoutMethodsResponse
 import com.hedvig.paymentservice.graphQl.types.AvailablePaymentMethodsResponse
@@ -32,12 +34,16 @@ class Query(
             logger.error("bankAccount - hedvig.token is missing")
             return null
         }
-        return bankAccountService.getBankAccount(memberId)
+        return lookup(env) {
+            bankAccountService.getBankAccount(memberId)
+        }
     }
 
     fun nextChargeDate(env: DataFetchingEnvironment): LocalDate? {
         val memberId: String = env.getToken()
-        return bankAccountService.getNextChargeDate(memberId)
+        return lookup(env) {
+            bankAccountService.getNextChargeDate(memberId)
+        }
     }
 
     @Deprecated("replaced by 'payinMethodStatus'")
@@ -47,7 +53,9 @@ class Query(
             logger.error("directDebitStatus - hedvig.token is missing")
             return DirectDebitStatus.NEEDS_SETUP
         }
-        return bankAccountService.getDirectDebitStatus(memberId)
+        return primaryLookup(env) {
+            bankAccountService.getDirectDebitStatus(memberId)
+        }
     }
 
     fun payinMethodStatus(env: DataFetchingEnvironment): PayinMethodStatus {
@@ -58,7 +66,9 @@ class Query(
             return PayinMethodStatus.NEEDS_SETUP
         }
 
-        return bankAccountService.getPayinMethodStatus(memberId)
+        return primaryLookup(env) {
+            bankAccountService.getPayinMethodStatus(memberId)
+        }
     }
 
     fun availablePaymentMethods(
@@ -83,7 +93,9 @@ class Query(
             logger.error("activePaymentMethods - hedvig.token is missing")
             return null
         }
-        return adyenService.getActivePayinMethods(memberId)
+        return lookup(env) {
+            adyenService.getActivePayinMethods(memberId)
+        }
     }
 
     fun adyenPublicKey(
@@ -102,7 +114,9 @@ class Query(
         if (!allowTrustlyPayouts) {
             return null
         }
-        val status = adyenService.getLatestPayoutTokenRegistrationStatus(memberId) ?: return null
+        val status = lookup(env) {
+            adyenService.getLatestPayoutTokenRegistrationStatus(memberId)
+        } ?: return null
 
         return ActivePayoutMethodsResponse(status = status)
     }
@@ -114,7 +128,8 @@ class Query(
             logger.error("registerAccountProcessingStatus - hedvig.token is missing")
             return null
         }
-        // Hack for fixing App until we can get a release out
+        // Hack for fixing App until we can get a release out. Should it read the registration again, it
+        // has to use primaryLookup like the other statuses
         return RegisterAccountProcessingStatus.CONFIRMED
     }
 
@@ -123,6 +138,19 @@ class Query(
         return LocalDate.of(YearMonth.now().year, YearMonth.now().month, 27)
     }
 
+    /**
+     * Query fields only read and may be served from the read replica.
+     */
+    private fun <T> lookup(env: DataFetchingEnvironment, resolve: () -> T): T =
+        ExecutionLookups.withinExecution(env) { ReplicaReads.within(resolve) }
+
+    /**
+     * Statuses the app polls right after a mutation changed them, which have to see that write and so
+     * are read from the primary.
+     */
+    private fun <T> primaryLookup(env: DataFetchingEnvironment, resolve: () -> T): T =
+        ExecutionLookups.withinExecution(env, resolve)
+
     companion object {
         val logger = LoggerFactory.getLogger(this.javaClass)!!
     }
@@ -0,0 +1,46 @@
+package com.hedvig.paymentservice.query
+
+import com.hedvig.paymentservice.common.ConcurrentIndexes
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+
+/**
+ * Indexes the projection finders used on hot paths. These tables existed long before the indexes did
+ * and are large, so the indexes are not declared on the entities: `generate-ddl` would build them with
+ * a plain CREATE INDEX, blocking the projection writes for as long as that takes. See [ConcurrentIndexes].
+ */
+@Component
+class ProjectionIndexes(
+    jdbcTemplate: JdbcTemplate
+) {
+    private val indexes = ConcurrentIndexes(jdbcTemplate)
+
+    @EventListener(ApplicationReadyEvent::class)
+    fun createIndexes() {
+        INDEXES.forEach { (name, definition) -> indexes.create(name, definition) }
+    }
+
+    companion object {
+        const val DIRECT_DEBIT_ACCOUNT_ORDER_MEMBER_INDEX = "idx_direct_debit_account_order_member_created_at"
+        const val ACCOUNT_REGISTRATION_MEMBER_INDEX = "idx_account_registration_member"
+        const val ACCOUNT_REGISTRATION_STATUS_INDEX = "idx_account_registration_status_initiated"
+        const val ADYEN_TOKEN_REGISTRATION_MEMBER_INDEX = "idx_adyen_token_registration_member"
+        const val TRUSTLY_ORDER_TRUSTLY_ORDER_ID_INDEX = "idx_trustly_order_trustly_order_id"
+        const val TRANSACTION_HISTORY_TRANSACTION_INDEX = "idx_transaction_history_entity_transaction"
+        const val TRANSACTION_MEMBER_OCCURRED_AT_INDEX = "idx_transaction_member_occurred_at"
+        const val TRANSACTION_MEMBER_UPDATED_AT_INDEX = "idx_transaction_member_updated_at"
+
+        private val INDEXES = mapOf(
+            DIRECT_DEBIT_ACCOUNT_ORDER_MEMBER_INDEX to "direct_debit_account_order (member_id, created_at)",
+            ACCOUNT_REGISTRATION_MEMBER_INDEX to "account_registration (member_id)",
+            ACCOUNT_REGISTRATION_STATUS_INDEX to "account_registration (status, initiated)",
+            ADYEN_TOKEN_REGISTRATION_MEMBER_INDEX to "adyen_token_registration (member_id)",
+            TRUSTLY_ORDER_TRUSTLY_ORDER_ID_INDEX to "trustly_order (trustly_order_id)",
+            TRANSACTION_HISTORY_TRANSACTION_INDEX to "transaction_history_entity (transaction_id)",
+            TRANSACTION_MEMBER_OCCURRED_AT_INDEX to "transaction (member_id, occurred_at, id)",
+            TRANSACTION_MEMBER_UPDATED_AT_INDEX to "transaction (member_id, updated_at, id)"
+        )
+    }
+}
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.query.adyenAccount
 
+import com.hedvig.paymentservice.configuration.HibernateCache
 import com.hedvig.paymentservice.domain.payments.enums.AdyenAccountStatus
 import java.time.Instant
 import javax.persistence.Column
@@ -7,10 +8,13 @@ import javax.persistence.Entity
 import javax.persistence.EnumType
 import javax.persistence.Enumerated
 import javax.persistence.Id
+import org.hibernate.annotations.Cache
+import org.hibernate.annotations.CacheConcurrencyStrategy
 import org.hibernate.annotations.CreationTimestamp
 import org.hibernate.annotations.UpdateTimestamp
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCache.MEMBER_ADYEN_ACCOUNT_REGION)
 data class MemberAdyenAccount(
     @Id
     val memberId: String,
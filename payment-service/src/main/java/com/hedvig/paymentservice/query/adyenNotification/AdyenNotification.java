@@ -1,76 +1,51 @@
 package com.hedvig.paymentservice.query.adyenNotification;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hedvig.paymentservice.JsonbType;
+import com.hedvig.paymentservice.SequenceIdentifierMigration;
 import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Type;
+import org.hibernate.annotations.TypeDef;
 
 import javax.persistence.Column;
-import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.MapKeyColumn;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import javax.persistence.SequenceGenerator;
 
+/**
+ * The notification item as received from Adyen, including its operations and additional data, is kept
+ * in a single jsonb column. See {@link AdyenNotificationPayloadMigration} for the indexes on it.
+ */
 @Data
+@NoArgsConstructor
 @Entity
+@TypeDef(name = JsonbType.NAME, typeClass = JsonbType.class)
 public class AdyenNotification {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "adyen_notification_id")
+  @SequenceGenerator(
+    name = "adyen_notification_id",
+    sequenceName = SequenceIdentifierMigration.ADYEN_NOTIFICATION_SEQUENCE,
+    allocationSize = SequenceIdentifierMigration.ALLOCATION_SIZE
+  )
   private Long id;
-  Long value;
-  String currency;
-  String eventCode;
-  String eventDate;
-  String merchantAccountCode;
-  String merchantReference;
-  String originalReference;
-  String pspReference;
-  String reason;
-  Boolean success;
-  String paymentMethod;
-  @ElementCollection
-  List<String> operations = new ArrayList<>();
-  @ElementCollection
-  @MapKeyColumn(name = "key")
-  @Column(name = "value")
-  Map<String, String> additionalData = new HashMap<>();
 
+  @Type(type = JsonbType.NAME)
+  @Column(columnDefinition = JsonbType.NAME)
+  JsonNode payload;
 
-  public AdyenNotification(long value, String currency, String eventCode, String eventDate, String merchantAccountCode, String merchantReference, String originalReference, String pspReference, String reason, boolean success, String paymentMethod, List<String> operations, Map<String, String> additionalData) {
-    this.value = value;
-    this.currency = currency;
-    this.eventCode = eventCode;
-    this.eventDate = eventDate;
-    this.merchantAccountCode = merchantAccountCode;
-    this.merchantReference = merchantReference;
-    this.originalReference = originalReference;
-    this.pspReference = pspReference;
-    this.reason = reason;
-    this.success = success;
-    this.paymentMethod = paymentMethod;
-    this.operations = operations;
-    this.additionalData = additionalData;
+  public AdyenNotification(JsonNode payload) {
+    this.payload = payload;
   }
 
   public static AdyenNotification fromNotificationRequestItem(NotificationRequestItem item) {
-    return new AdyenNotification(
-      item.getAmount() != null ? item.getAmount().getValue() : 0L,
-      item.getAmount() != null ? item.getAmount().getCurrency() : null,
-      item.getEventCode(),
-      item.getEventDate(),
-      item.getMerchantAccountCode(),
-      item.getMerchantReference(),
-      item.getOriginalReference(),
-      item.getPspReference(),
-      item.getReason(),
-      item.getSuccess(),
-      item.getPaymentMethod(),
-      item.getOperations(),
-      item.getAdditionalData()
-    );
+    return new AdyenNotification(objectMapper.valueToTree(item));
   }
 }
@@ -0,0 +1,99 @@
+package com.hedvig.paymentservice.query.adyenNotification
+
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+
+/**
+ * Creates the expression indexes on the jsonb payload of [AdyenNotification] and backfills the payload
+ * of notifications stored before it existed from the legacy columns and element collection tables.
+ * Only runs against Postgres, since `generate-ddl` cannot express either.
+ */
+@Component
+class AdyenNotificationPayloadMigration(
+    private val jdbcTemplate: JdbcTemplate
+) {
+    @EventListener(ApplicationReadyEvent::class)
+    fun migrate() {
+        if (!isPostgres()) {
+            return
+        }
+        createIndexes()
+        if (hasLegacyTables()) {
+            backfillPayloads()
+        }
+    }
+
+    private fun createIndexes() {
+        jdbcTemplate.execute(
+            "CREATE INDEX IF NOT EXISTS idx_adyen_notification_merchant_reference " +
+                "ON adyen_notification ((payload ->> 'merchantReference'))"
+        )
+        jdbcTemplate.execute(
+            "CREATE INDEX IF NOT EXISTS idx_adyen_notification_psp_reference " +
+                "ON adyen_notification ((payload ->> 'pspReference'))"
+        )
+    }
+
+    private fun backfillPayloads() {
+        var total = 0
+        do {
+            val updated = jdbcTemplate.update(BACKFILL_BATCH, BACKFILL_BATCH_SIZE)
+            total += updated
+        } while (updated > 0)
+        if (total > 0) {
+            logger.info("Backfilled jsonb payload of adyen notifications [Count: $total]")
+        }
+    }
+
+    private fun hasLegacyTables(): Boolean =
+        jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM information_schema.columns " +
+                "WHERE table_name = 'adyen_notification' AND column_name = 'psp_reference'",
+            Int::class.java
+        )!! > 0 &&
+            jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM information_schema.tables " +
+                    "WHERE table_name IN ('adyen_notification_operations', 'adyen_notification_additional_data')",
+                Int::class.java
+            )!! == 2
+
+    private fun isPostgres(): Boolean =
+        jdbcTemplate.dataSource!!.connection.use { it.metaData.databaseProductName == "PostgreSQL" }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+
+        private const val BACKFILL_BATCH_SIZE = 1000
+
+        private const val BACKFILL_BATCH = """
+            UPDATE adyen_notification n SET payload = jsonb_build_object(
+                'amount', jsonb_build_object('value', n.value, 'currency', n.currency),
+                'eventCode', n.event_code,
+                'eventDate', n.event_date,
+                'merchantAccountCode', n.merchant_account_code,
+                'merchantReference', n.merchant_reference,
+                'originalReference', n.original_reference,
+                'pspReference', n.psp_reference,
+                'reason', n.reason,
+                'success', n.success,
+                'paymentMethod', n.payment_method,
+                'operations', COALESCE(
+                    (SELECT jsonb_agg(o.operations) FROM adyen_notification_operations o
+                        WHERE o.adyen_notification_id = n.id),
+                    '[]'::jsonb
+                ),
+                'additionalData', COALESCE(
+                    (SELECT jsonb_object_agg(a.key, a.value) FROM adyen_notification_additional_data a
+                        WHERE a.adyen_notification_id = n.id),
+                    '{}'::jsonb
+                )
+            )
+            WHERE n.id IN (
+                SELECT id FROM adyen_notification WHERE payload IS NULL ORDER BY id LIMIT ?
+            )
+        """
+    }
+}
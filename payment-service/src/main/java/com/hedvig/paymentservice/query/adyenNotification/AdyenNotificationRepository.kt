@@ -1,7 +1,21 @@
 package com.hedvig.paymentservice.query.adyenNotification
 
+import org.springframework.data.jpa.repository.Query
 import org.springframework.data.repository.CrudRepository
+import org.springframework.data.repository.query.Param
 import org.springframework.stereotype.Repository
 
 @Repository
-interface AdyenNotificationRepository : CrudRepository<AdyenNotification, Long>
+interface AdyenNotificationRepository : CrudRepository<AdyenNotification, Long> {
+    @Query(
+        value = "SELECT * FROM adyen_notification WHERE payload ->> 'merchantReference' = :merchantReference",
+        nativeQuery = true
+    )
+    fun findAllByMerchantReference(@Param("merchantReference") merchantReference: String): List<AdyenNotification>
+
+    @Query(
+        value = "SELECT * FROM adyen_notification WHERE payload ->> 'pspReference' = :pspReference",
+        nativeQuery = true
+    )
+    fun findAllByPspReference(@Param("pspReference") pspReference: String): List<AdyenNotification>
+}
@@ -1,6 +1,9 @@
 package com.hedvig.paymentservice.query.adyenTokenRegistration.entities;
 
+import com.hedvig.paymentservice.configuration.HibernateCache;
 import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -14,6 +17,7 @@ import java.util.Objects;
 import java.util.UUID;
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCache.ADYEN_TOKEN_REGISTRATION_REGION)
 public class AdyenTokenRegistration {
     @Id
     private UUID adyenTokenRegistrationId;
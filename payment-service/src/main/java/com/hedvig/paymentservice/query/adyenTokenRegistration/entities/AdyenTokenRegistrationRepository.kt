@@ -2,11 +2,15 @@ package com.hedvig.paymentservice.query.adyenTokenRegistration.entities
 
 import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus
 import java.util.UUID
+import javax.persistence.QueryHint
+import org.hibernate.annotations.QueryHints.CACHEABLE
+import org.springframework.data.jpa.repository.QueryHints
 import org.springframework.data.repository.CrudRepository
 import org.springframework.stereotype.Repository
 
 @Repository
 interface AdyenTokenRegistrationRepository : CrudRepository<AdyenTokenRegistration, UUID> {
+  @QueryHints(QueryHint(name = CACHEABLE, value = "true"))
   fun findByMemberId(memberId: String): List<AdyenTokenRegistration>
   fun findByMemberIdAndTokenStatusAndIsForPayoutIsTrue(
       memberId: String,
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.query.directDebit
 
+import com.hedvig.paymentservice.configuration.HibernateCache
 import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
 import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent
 import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountUpdatedEvent
@@ -9,8 +10,11 @@ import javax.persistence.Entity
 import javax.persistence.EnumType
 import javax.persistence.Enumerated
 import javax.persistence.Id
+import org.hibernate.annotations.Cache
+import org.hibernate.annotations.CacheConcurrencyStrategy
 
 @Entity
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCache.DIRECT_DEBIT_ACCOUNT_ORDER_REGION)
 class DirectDebitAccountOrder(
     @Id
     val hedvigOrderId: UUID,
@@ -1,12 +1,16 @@
 package com.hedvig.paymentservice.query.directDebit
 
 import java.util.*
+import javax.persistence.QueryHint
+import org.hibernate.annotations.QueryHints.CACHEABLE
 import org.springframework.data.jpa.repository.Query
+import org.springframework.data.jpa.repository.QueryHints
 import org.springframework.data.repository.CrudRepository
 import org.springframework.stereotype.Repository
 
 @Repository
 interface DirectDebitAccountOrderRepository : CrudRepository<DirectDebitAccountOrder, UUID> {
+    @QueryHints(QueryHint(name = CACHEABLE, value = "true"))
     fun findAllByMemberId(memberId: String): List<DirectDebitAccountOrder>
 
     @Query(
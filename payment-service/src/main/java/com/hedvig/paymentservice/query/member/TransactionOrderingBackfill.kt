@@ -0,0 +1,35 @@
+package com.hedvig.paymentservice.query.member
+
+import com.hedvig.paymentservice.query.member.entities.TransactionRepository
+import org.slf4j.LoggerFactory
+import org.springframework.boot.context.event.ApplicationReadyEvent
+import org.springframework.context.event.EventListener
+import org.springframework.stereotype.Component
+
+/**
+ * Fills in the orderable occurredAt, and updatedAt, of transactions stored before they existed. The
+ * timestamp column they are copied from is a serialized instant which the database can't compare.
+ */
+@Component
+class TransactionOrderingBackfill(
+    private val transactionRepository: TransactionRepository
+) {
+    @EventListener(ApplicationReadyEvent::class)
+    fun backfill() {
+        var total = 0
+        do {
+            val transactions = transactionRepository.findFirst500ByOccurredAtIsNullAndTimestampIsNotNull()
+            // Setting the timestamp sets occurredAt as well, and saving sets updatedAt
+            transactions.forEach { it.timestamp = it.timestamp }
+            transactionRepository.saveAll(transactions)
+            total += transactions.size
+        } while (transactions.isNotEmpty())
+        if (total > 0) {
+            logger.info("Backfilled occurredAt of transactions [Count: $total]")
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
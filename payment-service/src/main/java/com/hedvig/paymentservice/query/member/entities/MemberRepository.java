@@ -2,12 +2,20 @@ package com.hedvig.paymentservice.query.member.entities;
 
 import java.util.List;
 import java.util.Optional;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface MemberRepository extends CrudRepository<Member, String> {
   Optional<Member> findById(String id);
 
+  /**
+   * The member with its transactions loaded, for callers reading them after the lookup's transaction.
+   */
+  @Query("SELECT DISTINCT m FROM Member m LEFT JOIN FETCH m.transactions WHERE m.id = :id")
+  Optional<Member> findWithTransactionsById(@Param("id") String id);
+
   List<Member> findAllByIdIn(List<String> ids);
 }
@@ -21,6 +21,13 @@ public class Transaction {
   @Convert(converter = InstantByteaConverter.class)
   private Instant timestamp;
 
+  /**
+   * Same as {@link #timestamp}, but stored as a timestamp column so transactions can be ordered on it.
+   */
+  private Instant occurredAt;
+
+  private Instant updatedAt;
+
   @Enumerated(EnumType.STRING)
   private TransactionType transactionType;
 
@@ -31,6 +38,12 @@ public class Transaction {
   @PrimaryKeyJoinColumn(referencedColumnName = "id")
   private Member member;
 
+  @PrePersist
+  @PreUpdate
+  void touch() {
+    this.updatedAt = Instant.now();
+  }
+
   public MonetaryAmount getMoney() {
     return Money.of(this.amount, this.currency);
   }
@@ -54,6 +67,14 @@ public class Transaction {
     return this.timestamp;
   }
 
+  public Instant getOccurredAt() {
+    return this.occurredAt;
+  }
+
+  public Instant getUpdatedAt() {
+    return this.updatedAt;
+  }
+
   public TransactionType getTransactionType() {
     return this.transactionType;
   }
@@ -80,6 +101,7 @@ public class Transaction {
 
   public void setTimestamp(Instant timestamp) {
     this.timestamp = timestamp;
+    this.occurredAt = timestamp;
   }
 
   public void setTransactionType(TransactionType transactionType) {
@@ -1,5 +1,7 @@
 package com.hedvig.paymentservice.query.member.entities;
 
+import org.springframework.data.domain.Persistable;
+
 import javax.annotation.Nullable;
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
@@ -7,8 +9,12 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
 
+/**
+ * Ids are assigned on creation, {@link #isNew()} lets {@code save} persist new entities straight away
+ * instead of merging them, which would first select the row.
+ */
 @Entity
-public class TransactionHistoryEntity {
+public class TransactionHistoryEntity implements Persistable<UUID> {
   @Id
   private UUID id;
 
@@ -31,6 +37,9 @@ public class TransactionHistoryEntity {
   @Nullable
   private String reason = null;
 
+  @Transient
+  private boolean isNew = true;
+
   public TransactionHistoryEntity() {
   }
 
@@ -51,6 +60,7 @@ public class TransactionHistoryEntity {
     this.reason = reason;
   }
 
+  @Override
   public UUID getId() {
     return id;
   }
@@ -81,4 +91,15 @@ public class TransactionHistoryEntity {
   public String getReason() {
     return reason;
   }
+
+  @Override
+  public boolean isNew() {
+    return isNew;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markNotNew() {
+    this.isNew = false;
+  }
 }
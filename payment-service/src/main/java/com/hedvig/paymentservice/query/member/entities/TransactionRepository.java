@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.query.member.entities;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
@@ -7,6 +8,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -23,4 +25,45 @@ public interface TransactionRepository extends CrudRepository<Transaction, UUID>
     @Param("periodEnd") Instant periodEnd,
     @Param("transactionIds") Iterable <UUID> transactionIds
   );
+
+  @Query(
+    "SELECT t FROM Transaction t " +
+      "WHERE t.member.id = :memberId " +
+      "AND t.occurredAt IS NOT NULL " +
+      "ORDER BY t.occurredAt, t.id"
+  )
+  List<Transaction> findFirstPageByMemberId(
+    @Param("memberId") String memberId,
+    Pageable pageable
+  );
+
+  @Query(
+    "SELECT t FROM Transaction t " +
+      "WHERE t.member.id = :memberId " +
+      "AND (t.occurredAt > :occurredAt OR (t.occurredAt = :occurredAt AND t.id > :id)) " +
+      "ORDER BY t.occurredAt, t.id"
+  )
+  List<Transaction> findPageByMemberIdAfter(
+    @Param("memberId") String memberId,
+    @Param("occurredAt") Instant occurredAt,
+    @Param("id") UUID id,
+    Pageable pageable
+  );
+
+  @Query(
+    "SELECT t FROM Transaction t " +
+      "WHERE t.member.id = :memberId " +
+      "AND (t.updatedAt > :updatedAt OR (t.updatedAt = :updatedAt AND t.id > :id)) " +
+      "AND t.updatedAt < :settledBefore " +
+      "ORDER BY t.updatedAt, t.id"
+  )
+  List<Transaction> findChangedByMemberIdSince(
+    @Param("memberId") String memberId,
+    @Param("updatedAt") Instant updatedAt,
+    @Param("id") UUID id,
+    @Param("settledBefore") Instant settledBefore,
+    Pageable pageable
+  );
+
+  List<Transaction> findFirst500ByOccurredAtIsNullAndTimestampIsNotNull();
 }
@@ -0,0 +1,73 @@
+package com.hedvig.paymentservice.query.memberPaymentStatus
+
+import com.hedvig.paymentservice.domain.accountRegistration.enums.AccountRegistrationStatus
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus
+import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
+import com.hedvig.paymentservice.domain.payments.enums.AdyenAccountStatus
+import com.hedvig.paymentservice.query.directDebit.DirectDebitAccountOrder
+import com.hedvig.paymentservice.services.adyen.util.AdyenMerchantPicker.Market
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.Entity
+import javax.persistence.EnumType
+import javax.persistence.Enumerated
+import javax.persistence.Id
+import javax.persistence.Index
+import javax.persistence.Table
+
+/**
+ * The latest state of everything that makes up the payment setup of a member, kept in one row so it can
+ * be read with a single primary key lookup. Maintained by [MemberPaymentStatusEventListener].
+ */
+@Entity
+@Table(indexes = [Index(name = "idx_member_payment_status_account_registration", columnList = "latest_account_registration_id")])
+class MemberPaymentStatus(
+    @Id
+    val memberId: String
+) {
+    var latestDirectDebitOrderId: UUID? = null
+    var latestDirectDebitOrderCreatedAt: Instant? = null
+    var trustlyAccountId: String? = null
+    var bank: String? = null
+    var descriptor: String? = null
+    @Enumerated(EnumType.STRING)
+    var directDebitStatus: DirectDebitStatus? = null
+
+    var latestAccountRegistrationId: UUID? = null
+    var latestAccountRegistrationInitiatedAt: Instant? = null
+    @Enumerated(EnumType.STRING)
+    var accountRegistrationStatus: AccountRegistrationStatus? = null
+
+    var hasAdyenAccount: Boolean = false
+    var adyenMerchantAccount: String? = null
+    /**
+     * The market of [adyenMerchantAccount], the only market of a member that follows from its events
+     */
+    @Enumerated(EnumType.STRING)
+    var market: Market? = null
+    @Enumerated(EnumType.STRING)
+    var adyenAccountStatus: AdyenAccountStatus? = null
+
+    var latestAdyenTokenRegistrationId: UUID? = null
+    var latestAdyenTokenRegistrationCreatedAt: Instant? = null
+    @Enumerated(EnumType.STRING)
+    var latestAdyenTokenRegistrationStatus: AdyenTokenRegistrationStatus? = null
+
+    var latestPayoutTokenRegistrationId: UUID? = null
+    var latestPayoutTokenRegistrationCreatedAt: Instant? = null
+    @Enumerated(EnumType.STRING)
+    var payoutTokenRegistrationStatus: AdyenTokenRegistrationStatus? = null
+
+    fun latestDirectDebitAccountOrder(): DirectDebitAccountOrder? {
+        val hedvigOrderId = latestDirectDebitOrderId ?: return null
+        return DirectDebitAccountOrder(
+            hedvigOrderId = hedvigOrderId,
+            memberId = memberId,
+            trustlyAccountId = trustlyAccountId!!,
+            bank = bank,
+            descriptor = descriptor,
+            directDebitStatus = directDebitStatus,
+            createdAt = latestDirectDebitOrderCreatedAt!!
+        )
+    }
+}
@@ -0,0 +1,258 @@
+package com.hedvig.paymentservice.query.memberPaymentStatus
+
+import com.hedvig.paymentservice.configuration.MerchantAccounts
+import com.hedvig.paymentservice.domain.accountRegistration.enums.AccountRegistrationStatus
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationCancellationReceivedEvent
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationConfirmationReceivedEvent
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationNotificationReceivedEvent
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationRequestCreatedEvent
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationResponseReceivedEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationAuthorisedEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationAuthorisedFromNotificationEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationCanceledEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationCanceledFromNotificationEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.PendingAdyenTokenRegistrationCreatedEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.PendingAdyenTokenRegistrationUpdatedEvent
+import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
+import com.hedvig.paymentservice.domain.payments.events.AdyenAccountCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.AdyenAccountUpdatedEvent
+import com.hedvig.paymentservice.domain.payments.events.DirectDebitConnectedEvent
+import com.hedvig.paymentservice.domain.payments.events.DirectDebitDisconnectedEvent
+import com.hedvig.paymentservice.domain.payments.events.DirectDebitPendingConnectionEvent
+import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountUpdatedEvent
+import com.hedvig.paymentservice.services.adyen.util.AdyenMerchantPicker.Market
+import java.time.Instant
+import java.util.UUID
+import org.axonframework.config.ProcessingGroup
+import org.axonframework.eventhandling.EventHandler
+import org.axonframework.eventhandling.Timestamp
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+
+/**
+ * Keeps [MemberPaymentStatus] in line with the direct debit order, account registration, Adyen account
+ * and Adyen token registration projections. "Latest" follows the same rules as those projections are
+ * read with: the direct debit order and token registrations created last and the account registration
+ * initiated last.
+ */
+@Component
+@ProcessingGroup(MemberPaymentStatusProjection.PROCESSING_GROUP)
+class MemberPaymentStatusEventListener(
+    private val memberPaymentStatusRepository: MemberPaymentStatusRepository,
+    private val merchantAccounts: MerchantAccounts
+) {
+    @EventHandler
+    fun on(event: TrustlyAccountCreatedEvent, @Timestamp timestamp: Instant) {
+        update(event.memberId) {
+            setLatestDirectDebitOrder(event.hedvigOrderId, event.trustlyAccountId, event.bank, event.descriptor, timestamp)
+        }
+    }
+
+    @EventHandler
+    fun on(event: TrustlyAccountUpdatedEvent, @Timestamp timestamp: Instant) {
+        update(event.memberId) {
+            if (latestDirectDebitOrderId != event.hedvigOrderId) {
+                setLatestDirectDebitOrder(event.hedvigOrderId, event.trustlyAccountId, event.bank, event.descriptor, timestamp)
+            }
+        }
+    }
+
+    @EventHandler
+    fun on(event: DirectDebitConnectedEvent) {
+        updateDirectDebitStatus(event.memberId, event.hedvigOrderId, DirectDebitStatus.CONNECTED)
+    }
+
+    @EventHandler
+    fun on(event: DirectDebitPendingConnectionEvent) {
+        updateDirectDebitStatus(event.memberId, event.hedvigOrderId, DirectDebitStatus.PENDING)
+    }
+
+    @EventHandler
+    fun on(event: DirectDebitDisconnectedEvent) {
+        updateDirectDebitStatus(event.memberId, event.hedvigOrderId, DirectDebitStatus.DISCONNECTED)
+    }
+
+    @EventHandler
+    fun on(event: AccountRegistrationRequestCreatedEvent, @Timestamp timestamp: Instant) {
+        update(event.memberId) {
+            if (latestAccountRegistrationInitiatedAt == null || !timestamp.isBefore(latestAccountRegistrationInitiatedAt)) {
+                latestAccountRegistrationId = event.accountRegistrationId
+                latestAccountRegistrationInitiatedAt = timestamp
+                accountRegistrationStatus = AccountRegistrationStatus.INITIATED
+            }
+        }
+    }
+
+    @EventHandler
+    fun on(event: AccountRegistrationResponseReceivedEvent) {
+        val status = memberPaymentStatusRepository.findByLatestAccountRegistrationId(event.accountRegistrationId) ?: return
+        status.accountRegistrationStatus = AccountRegistrationStatus.REQUESTED
+        memberPaymentStatusRepository.save(status)
+    }
+
+    @EventHandler
+    fun on(event: AccountRegistrationNotificationReceivedEvent) {
+        updateAccountRegistrationStatus(event.memberId, event.accountRegistrationId, AccountRegistrationStatus.IN_PROGRESS)
+    }
+
+    @EventHandler
+    fun on(event: AccountRegistrationConfirmationReceivedEvent) {
+        updateAccountRegistrationStatus(event.memberId, event.accountRegistrationId, AccountRegistrationStatus.CONFIRMED)
+    }
+
+    @EventHandler
+    fun on(event: AccountRegistrationCancellationReceivedEvent) {
+        updateAccountRegistrationStatus(event.memberId, event.accountRegistrationId, AccountRegistrationStatus.CANCELLED)
+    }
+
+    @EventHandler
+    fun on(event: PendingAdyenTokenRegistrationCreatedEvent, @Timestamp timestamp: Instant) {
+        update(event.memberId) {
+            setAdyenMerchantAccount(event.adyenMerchantAccount)
+            registerToken(event.adyenTokenRegistrationId, event.isPayoutSetup, AdyenTokenRegistrationStatus.PENDING, timestamp)
+        }
+    }
+
+    @EventHandler
+    fun on(event: AdyenTokenRegistrationAuthorisedEvent, @Timestamp timestamp: Instant) {
+        update(event.memberId) {
+            setAdyenMerchantAccount(event.adyenMerchantAccount)
+            registerToken(event.adyenTokenRegistrationId, event.isPayoutSetup, AdyenTokenRegistrationStatus.AUTHORISED, timestamp)
+        }
+    }
+
+    @EventHandler
+    fun on(event: PendingAdyenTokenRegistrationUpdatedEvent) {
+        update(event.memberId) {
+            updateTokenStatus(event.adyenTokenRegistrationId, AdyenTokenRegistrationStatus.PENDING)
+        }
+    }
+
+    @EventHandler
+    fun on(event: AdyenTokenRegistrationCanceledEvent) {
+        update(event.memberId) {
+            updateTokenStatus(event.adyenTokenRegistrationId, AdyenTokenRegistrationStatus.CANCELLED)
+        }
+    }
+
+    @EventHandler
+    fun on(event: AdyenTokenRegistrationAuthorisedFromNotificationEvent) {
+        update(event.memberId) {
+            updatePayoutTokenStatus(event.adyenTokenRegistrationId, AdyenTokenRegistrationStatus.AUTHORISED)
+        }
+    }
+
+    @EventHandler
+    fun on(event: AdyenTokenRegistrationCanceledFromNotificationEvent) {
+        update(event.memberId) {
+            updatePayoutTokenStatus(event.adyenTokenRegistrationId, AdyenTokenRegistrationStatus.CANCELLED)
+        }
+    }
+
+    @EventHandler
+    fun on(event: AdyenAccountCreatedEvent) {
+        update(event.memberId) { adyenAccountStatus = event.accountStatus }
+    }
+
+    @EventHandler
+    fun on(event: AdyenAccountUpdatedEvent) {
+        update(event.memberId) { adyenAccountStatus = event.accountStatus }
+    }
+
+    private fun update(memberId: String, change: MemberPaymentStatus.() -> Unit) {
+        val status = memberPaymentStatusRepository.findById(memberId).orElseGet { MemberPaymentStatus(memberId) }
+        status.change()
+        memberPaymentStatusRepository.save(status)
+    }
+
+    private fun updateDirectDebitStatus(memberId: String, hedvigOrderId: String, status: DirectDebitStatus) {
+        update(memberId) {
+            if (latestDirectDebitOrderId == UUID.fromString(hedvigOrderId)) {
+                directDebitStatus = status
+            } else {
+                logger.info("Ignoring direct debit status of an order that is not the latest [MemberId: $memberId] [HedvigOrderId: $hedvigOrderId]")
+            }
+        }
+    }
+
+    private fun updateAccountRegistrationStatus(memberId: String, accountRegistrationId: UUID, status: AccountRegistrationStatus) {
+        update(memberId) {
+            if (latestAccountRegistrationId == accountRegistrationId) {
+                accountRegistrationStatus = status
+            }
+        }
+    }
+
+    private fun MemberPaymentStatus.setLatestDirectDebitOrder(
+        hedvigOrderId: UUID,
+        trustlyAccountId: String,
+        bank: String?,
+        descriptor: String?,
+        createdAt: Instant
+    ) {
+        val latestCreatedAt = latestDirectDebitOrderCreatedAt
+        if (latestCreatedAt != null && createdAt.isBefore(latestCreatedAt)) {
+            return
+        }
+        this.latestDirectDebitOrderId = hedvigOrderId
+        this.latestDirectDebitOrderCreatedAt = createdAt
+        this.trustlyAccountId = trustlyAccountId
+        this.bank = bank
+        this.descriptor = descriptor
+        this.directDebitStatus = null
+    }
+
+    private fun MemberPaymentStatus.setAdyenMerchantAccount(merchantAccount: String) {
+        hasAdyenAccount = true
+        adyenMerchantAccount = merchantAccount
+        market = merchantAccounts.merchantAccounts
+            ?.entries
+            ?.firstOrNull { it.value == merchantAccount }
+            ?.let { Market.valueOf(it.key) }
+    }
+
+    private fun MemberPaymentStatus.registerToken(
+        adyenTokenRegistrationId: UUID,
+        isForPayout: Boolean,
+        status: AdyenTokenRegistrationStatus,
+        timestamp: Instant
+    ) {
+        // An authorisation of a pending registration keeps the time the registration was created
+        if (latestAdyenTokenRegistrationId == adyenTokenRegistrationId) {
+            latestAdyenTokenRegistrationStatus = status
+        } else if (latestAdyenTokenRegistrationCreatedAt?.isAfter(timestamp) != true) {
+            latestAdyenTokenRegistrationId = adyenTokenRegistrationId
+            latestAdyenTokenRegistrationCreatedAt = timestamp
+            latestAdyenTokenRegistrationStatus = status
+        }
+        if (!isForPayout) {
+            return
+        }
+        if (latestPayoutTokenRegistrationId == adyenTokenRegistrationId) {
+            payoutTokenRegistrationStatus = status
+        } else if (latestPayoutTokenRegistrationCreatedAt?.isAfter(timestamp) != true) {
+            latestPayoutTokenRegistrationId = adyenTokenRegistrationId
+            latestPayoutTokenRegistrationCreatedAt = timestamp
+            payoutTokenRegistrationStatus = status
+        }
+    }
+
+    private fun MemberPaymentStatus.updateTokenStatus(adyenTokenRegistrationId: UUID, status: AdyenTokenRegistrationStatus) {
+        if (latestAdyenTokenRegistrationId == adyenTokenRegistrationId) {
+            latestAdyenTokenRegistrationStatus = status
+        }
+        updatePayoutTokenStatus(adyenTokenRegistrationId, status)
+    }
+
+    private fun MemberPaymentStatus.updatePayoutTokenStatus(adyenTokenRegistrationId: UUID, status: AdyenTokenRegistrationStatus) {
+        if (latestPayoutTokenRegistrationId == adyenTokenRegistrationId) {
+            payoutTokenRegistrationStatus = status
+        }
+    }
+
+    companion object {
+        val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
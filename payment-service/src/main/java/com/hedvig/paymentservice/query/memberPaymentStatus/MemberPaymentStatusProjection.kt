@@ -0,0 +1,122 @@
+package com.hedvig.paymentservice.query.memberPaymentStatus
+
+import com.hedvig.paymentservice.common.ExecutionLookups
+import java.time.Duration
+import java.time.Instant
+import org.axonframework.eventhandling.TrackingToken
+import org.axonframework.eventsourcing.eventstore.GapAwareTrackingToken
+import org.axonframework.eventsourcing.eventstore.GlobalSequenceTrackingToken
+import org.axonframework.serialization.Serializer
+import org.axonframework.serialization.SimpleSerializedObject
+import org.slf4j.LoggerFactory
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.stereotype.Component
+
+/**
+ * Reads [MemberPaymentStatus] rows, but only while the processor maintaining them is caught up with the
+ * event store. While it is replayed from the tail, or falls behind, a row may hold a half built state, so
+ * [find] returns nothing and callers scan the per-entity projections instead.
+ *
+ * The processor counts as caught up when its token has reached the head of the event store as it was at
+ * the previous check, which tolerates the events appended in between. The processor may run on another
+ * instance, so its token is read from the token store.
+ */
+@Component
+class MemberPaymentStatusProjection(
+    private val memberPaymentStatusRepository: MemberPaymentStatusRepository,
+    private val jdbcTemplate: JdbcTemplate,
+    private val serializer: Serializer
+) {
+    @Volatile
+    private var caughtUp = false
+
+    @Volatile
+    private var checkedAt: Instant? = null
+
+    private var previousHead: Long? = null
+
+    fun find(memberId: String): MemberPaymentStatus? {
+        if (!isCaughtUp()) {
+            return null
+        }
+        return ExecutionLookups.memoize("memberPaymentStatus:$memberId") {
+            memberPaymentStatusRepository.findById(memberId)
+        }.orElse(null)
+    }
+
+    fun isCaughtUp(): Boolean {
+        val now = Instant.now()
+        val lastCheckedAt = checkedAt
+        if (lastCheckedAt == null || !lastCheckedAt.plus(CHECK_INTERVAL).isAfter(now)) {
+            synchronized(this) {
+                if (checkedAt == lastCheckedAt) {
+                    caughtUp = checkCaughtUp()
+                    checkedAt = now
+                }
+            }
+        }
+        return caughtUp
+    }
+
+    private fun checkCaughtUp(): Boolean =
+        try {
+            val head = jdbcTemplate.queryForObject(
+                "SELECT MAX(global_index) FROM domain_event_entry",
+                Long::class.javaObjectType
+            ) ?: -1L
+            val requiredPosition = previousHead ?: head
+            previousHead = head
+
+            val position = trackedPosition()
+            val caughtUp = position != null && position >= requiredPosition
+            if (caughtUp != this.caughtUp) {
+                logger.info(
+                    "Member payment status projection is ${if (caughtUp) "caught up" else "behind"} " +
+                        "[Position: $position] [Head: $head]"
+                )
+            }
+            caughtUp
+        } catch (exception: Exception) {
+            logger.warn("Could not tell if the member payment status projection is caught up [Exception: $exception]")
+            false
+        }
+
+    // The lowest position of the processor's segments, or null if any of them has not started
+    private fun trackedPosition(): Long? {
+        val positions = jdbcTemplate.query(
+            "SELECT token_type, token FROM token_entry WHERE processor_name = ?",
+            { rs, _ ->
+                val tokenType = rs.getString("token_type")
+                val token = rs.getBytes("token")
+                if (tokenType == null || token == null) {
+                    null
+                } else {
+                    positionOf(
+                        serializer.deserialize<ByteArray, TrackingToken>(
+                            SimpleSerializedObject(token, ByteArray::class.java, tokenType, null)
+                        )
+                    )
+                }
+            },
+            PROCESSING_GROUP
+        )
+        if (positions.isEmpty() || positions.any { it == null }) {
+            return null
+        }
+        return positions.filterNotNull().minOrNull()
+    }
+
+    private fun positionOf(token: TrackingToken): Long? =
+        when (token) {
+            is GapAwareTrackingToken -> token.index
+            is GlobalSequenceTrackingToken -> token.globalIndex
+            else -> null
+        }
+
+    companion object {
+        const val PROCESSING_GROUP = "MemberPaymentStatus"
+        private val CHECK_INTERVAL = Duration.ofSeconds(15)
+
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
@@ -0,0 +1,10 @@
+package com.hedvig.paymentservice.query.memberPaymentStatus
+
+import java.util.UUID
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.stereotype.Repository
+
+@Repository
+interface MemberPaymentStatusRepository : JpaRepository<MemberPaymentStatus, String> {
+    fun findByLatestAccountRegistrationId(accountRegistrationId: UUID): MemberPaymentStatus?
+}
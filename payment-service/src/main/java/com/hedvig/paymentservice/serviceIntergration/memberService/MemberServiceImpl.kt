@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.serviceIntergration.memberService
 
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.serviceIntergration.memberService.dto.Member
 import java.util.Optional
 import org.slf4j.LoggerFactory
@@ -24,9 +25,10 @@ class MemberServiceImpl(
         }
     }
 
-    override fun getPickedLocale(memberId: String): String {
-        return memberServiceClient.getPickedLocale(memberId).pickedLocale!!
-    }
+    override fun getPickedLocale(memberId: String): String =
+        ExecutionLookups.memoize("pickedLocale:$memberId") {
+            memberServiceClient.getPickedLocale(memberId).pickedLocale!!
+        }
 
     companion object {
         private val log = LoggerFactory.getLogger(MemberServiceImpl::class.java)
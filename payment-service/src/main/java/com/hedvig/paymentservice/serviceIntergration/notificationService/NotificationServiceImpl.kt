@@ -2,9 +2,11 @@ package com.hedvig.paymentservice.serviceIntergration.notificationService
 
 import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.context.annotation.Primary
 import org.springframework.stereotype.Component
 
 @Component
+@Primary
 class NotificationServiceImpl(
     private val notificationServiceClient: NotificationServiceClient,
     private val objectMapper: ObjectMapper
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.serviceIntergration.productPricing
 
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.query.member.entities.Transaction
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.ContractMarketInfo
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.ContractStateFilter
@@ -29,11 +30,17 @@ class ProductPricingServiceImpl(
         return client.guessPolicyTypes(policyGuessDtos, period).body!!
     }
 
-    override fun getContractMarketInfo(memberId: String): ContractMarketInfo {
-        return client.getContractMarketInfo(memberId).body!!
-    }
+    override fun getContractMarketInfo(memberId: String): ContractMarketInfo =
+        ExecutionLookups.memoize("contractMarketInfo:$memberId") {
+            client.getContractMarketInfo(memberId).body!!
+        }
+
+    override fun hasContractActiveCurrentMonth(memberId: String): Boolean =
+        ExecutionLookups.memoize("hasContractActiveCurrentMonth:$memberId") {
+            fetchHasContractActiveCurrentMonth(memberId)
+        }
 
-    override fun hasContractActiveCurrentMonth(memberId: String): Boolean {
+    private fun fetchHasContractActiveCurrentMonth(memberId: String): Boolean {
         val response = client.hasContract(memberId, ContractStateFilter.ACTIVE_CURRENT_MONTH)
         if (response.statusCode.is2xxSuccessful) {
             return response.body!!
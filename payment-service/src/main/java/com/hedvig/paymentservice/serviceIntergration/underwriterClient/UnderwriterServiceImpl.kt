@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.serviceIntergration.underwriterClient
 
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.serviceIntergration.underwriterClient.dtos.QuoteMarketInfo
 import org.springframework.stereotype.Service
 
@@ -8,6 +9,8 @@ class UnderwriterServiceImpl(
     val underwriterClient: UnderwriterClient
 ) : UnderwriterService {
   override fun getMarketFromQuote(memberId: String): QuoteMarketInfo {
-    return underwriterClient.getQuoteMarketInfoFromMemberId(memberId).body!!
+    return ExecutionLookups.memoize("quoteMarketInfo:$memberId") {
+      underwriterClient.getQuoteMarketInfoFromMemberId(memberId).body!!
+    }
   }
 }
@@ -3,7 +3,6 @@ package com.hedvig.paymentservice.services.accounts;
 import com.hedvig.paymentservice.domain.payments.events.ChargeCompletedEvent;
 import com.hedvig.paymentservice.domain.payments.events.ChargeCreatedEvent;
 import com.hedvig.paymentservice.domain.payments.events.ChargeFailedEvent;
-import com.hedvig.paymentservice.serviceIntergration.accountService.AccountService;
 import org.axonframework.config.ProcessingGroup;
 import org.axonframework.eventhandling.EventHandler;
 import org.axonframework.eventhandling.Timestamp;
@@ -12,35 +11,62 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.money.MonetaryAmount;
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.UUID;
 
+/**
+ * Queues the charge notifications to account-service in the outbox, which is written in the same
+ * transaction as the processor's token. {@link AccountNotificationDispatcher} delivers them.
+ */
 @Component
 @ProcessingGroup("Account")
 public class AccountEventListener {
 
     private static final Logger log = LoggerFactory.getLogger(AccountEventListener.class);
-    private AccountService accountService;
+    private AccountNotificationRepository notificationRepository;
 
     @Autowired
-    public AccountEventListener(AccountService accountService) {
-        this.accountService = accountService;
+    public AccountEventListener(AccountNotificationRepository notificationRepository) {
+        this.notificationRepository = notificationRepository;
     }
 
     @EventHandler
     public void on(ChargeFailedEvent event, @Timestamp Instant timestamp) {
-        accountService.notifyChargeFailed(event.getMemberId(), event.getTransactionId(), timestamp);
-        log.info("Notified FAILED charge to memberId={}", event.getMemberId());
+        enqueue(event.getMemberId(), event.getTransactionId(), AccountNotificationType.CHARGE_FAILED, null, null, timestamp);
+        log.info("Queued FAILED charge notification to memberId={}", event.getMemberId());
     }
 
     @EventHandler
     public void on(ChargeCompletedEvent event, @Timestamp Instant timestamp) {
-        accountService.notifyChargeCompleted(event.getMemberId(), event.getTransactionId(), event.getAmount(), timestamp);
-        log.info("Notified COMPLETED charge to memberId={}", event.getMemberId());
+        enqueue(event.getMemberId(), event.getTransactionId(), AccountNotificationType.CHARGE_COMPLETED, event.getAmount(), null, timestamp);
+        log.info("Queued COMPLETED charge notification to memberId={}", event.getMemberId());
     }
 
     @EventHandler
     public void on(ChargeCreatedEvent event, @Timestamp Instant timestamp) {
-        accountService.notifyChargeInitiated(event.getMemberId(), event.getTransactionId(), event.getAmount(), event.getCreatedBy(), timestamp);
-        log.info("Notified CREATED charge to memberId={}", event.getMemberId());
+        enqueue(event.getMemberId(), event.getTransactionId(), AccountNotificationType.CHARGE_INITIATED, event.getAmount(), event.getCreatedBy(), timestamp);
+        log.info("Queued CREATED charge notification to memberId={}", event.getMemberId());
+    }
+
+    private void enqueue(
+        String memberId,
+        UUID transactionId,
+        AccountNotificationType type,
+        MonetaryAmount amount,
+        String initiatedBy,
+        Instant occurredAt
+    ) {
+        notificationRepository.save(new AccountNotification(
+            memberId,
+            transactionId,
+            type,
+            amount != null ? amount.getNumber().numberValue(BigDecimal.class) : null,
+            amount != null ? amount.getCurrency().getCurrencyCode() : null,
+            initiatedBy,
+            occurredAt,
+            Instant.now()
+        ));
     }
 }
@@ -0,0 +1,53 @@
+package com.hedvig.paymentservice.services.accounts
+
+import com.hedvig.paymentservice.SequenceIdentifierMigration
+import java.math.BigDecimal
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.Entity
+import javax.persistence.EnumType
+import javax.persistence.Enumerated
+import javax.persistence.GeneratedValue
+import javax.persistence.GenerationType
+import javax.persistence.Id
+import javax.persistence.Index
+import javax.persistence.SequenceGenerator
+import javax.persistence.Table
+
+/**
+ * A notification to account-service waiting in the outbox. It is written by [AccountEventListener] in the
+ * same transaction as the event handling and delivered by [AccountNotificationDispatcher].
+ */
+@Entity
+@Table(indexes = [Index(name = "idx_account_notification_member_pending", columnList = "member_id,dispatched_at")])
+class AccountNotification(
+    val memberId: String,
+    val transactionId: UUID,
+    @Enumerated(EnumType.STRING)
+    val type: AccountNotificationType,
+    val amount: BigDecimal?,
+    val currency: String?,
+    val initiatedBy: String?,
+    val occurredAt: Instant,
+    val createdAt: Instant
+) {
+    // Ids order the notifications of a member, so they are drawn one at a time rather than in pooled blocks
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_notification_id")
+    @SequenceGenerator(
+        name = "account_notification_id",
+        sequenceName = SequenceIdentifierMigration.ACCOUNT_NOTIFICATION_SEQUENCE,
+        allocationSize = 1
+    )
+    val id: Long = 0
+    var attempts: Int = 0
+    var claimedAt: Instant? = null
+    var nextAttemptAt: Instant? = null
+    var dispatchedAt: Instant? = null
+}
+
+enum class AccountNotificationType {
+    CHARGE_INITIATED,
+    CHARGE_COMPLETED,
+    CHARGE_FAILED
+}
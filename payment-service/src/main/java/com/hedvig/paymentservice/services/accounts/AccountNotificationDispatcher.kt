@@ -0,0 +1,134 @@
+package com.hedvig.paymentservice.services.accounts
+
+import com.hedvig.paymentservice.common.PolledValue
+import com.hedvig.paymentservice.serviceIntergration.accountService.AccountService
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.annotation.PreDestroy
+import org.javamoney.moneta.Money
+import org.slf4j.LoggerFactory
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Drains the [AccountNotification] outbox. Only the oldest pending notification of a member is dispatched
+ * at a time, so account-service sees the notifications of a member in the order the events happened while
+ * different members are dispatched in parallel. A failing notification is retried with an exponential
+ * backoff and holds back the later notifications of its member until it goes through. Each poll only claims
+ * as many notifications as there are idle workers.
+ */
+@Component
+class AccountNotificationDispatcher(
+    private val notificationRepository: AccountNotificationRepository,
+    private val accountService: AccountService,
+    private val properties: AccountNotificationOutboxProperties,
+    meterRegistry: MeterRegistry
+) {
+    private val executor: ExecutorService = Executors.newFixedThreadPool(properties.workers) { runnable ->
+        Thread(runnable, "account-notification-dispatcher").apply { isDaemon = true }
+    }
+
+    private val dispatchTimer = meterRegistry.timer("account.notifications.outbox.dispatch")
+    private val lagTimer = meterRegistry.timer("account.notifications.outbox.lag")
+    private val failureCounter = meterRegistry.counter("account.notifications.outbox.failures")
+
+    private val pendingNotifications = PolledValue { notificationRepository.countByDispatchedAtIsNull() }
+
+    init {
+        Gauge.builder("account.notifications.outbox.depth", pendingNotifications) { it.value?.toDouble() ?: Double.NaN }
+            .register(meterRegistry)
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.account-service.outbox.poll-interval:1000}")
+    fun dispatchPendingNotifications() {
+        pendingNotifications.refresh()
+        val idle = properties.workers - busy.get()
+        if (idle <= 0) {
+            return
+        }
+
+        val now = Instant.now()
+        val claimExpiredBefore = now.minus(properties.claimTimeout)
+
+        notificationRepository
+            .findDispatchable(now, claimExpiredBefore, PageRequest.of(0, idle))
+            .filter { notificationRepository.claim(it.id, now, claimExpiredBefore) == 1 }
+            .forEach { notification ->
+                busy.incrementAndGet()
+                executor.execute {
+                    try {
+                        dispatch(notification)
+                    } finally {
+                        busy.decrementAndGet()
+                    }
+                }
+            }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+        executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    }
+
+    private fun dispatch(notification: AccountNotification) {
+        try {
+            dispatchTimer.recordCallable { send(notification) }
+            val dispatchedAt = Instant.now()
+            notificationRepository.markDispatched(notification.id, dispatchedAt)
+            lagTimer.record(Duration.between(notification.createdAt, dispatchedAt))
+        } catch (exception: Exception) {
+            val attempts = notification.attempts + 1
+            val nextAttemptAt = Instant.now().plus(backoff(attempts))
+            failureCounter.increment()
+            logger.error(
+                "Could not notify account-service, retrying at $nextAttemptAt " +
+                    "[MemberId: ${notification.memberId}] [TransactionId: ${notification.transactionId}] " +
+                    "[Type: ${notification.type}] [Attempts: $attempts]",
+                exception
+            )
+            notificationRepository.scheduleRetry(notification.id, attempts, nextAttemptAt)
+        }
+    }
+
+    private fun send(notification: AccountNotification) {
+        when (notification.type) {
+            AccountNotificationType.CHARGE_INITIATED -> accountService.notifyChargeInitiated(
+                notification.memberId,
+                notification.transactionId,
+                Money.of(notification.amount, notification.currency),
+                notification.initiatedBy,
+                notification.occurredAt
+            )
+            AccountNotificationType.CHARGE_COMPLETED -> accountService.notifyChargeCompleted(
+                notification.memberId,
+                notification.transactionId,
+                Money.of(notification.amount, notification.currency),
+                notification.occurredAt
+            )
+            AccountNotificationType.CHARGE_FAILED -> accountService.notifyChargeFailed(
+                notification.memberId,
+                notification.transactionId,
+                notification.occurredAt
+            )
+        }
+    }
+
+    private fun backoff(attempts: Int): Duration {
+        val backoff = properties.initialBackoff.multipliedBy(1L shl (attempts - 1).coerceAtMost(MAX_BACKOFF_EXPONENT))
+        return if (backoff > properties.maxBackoff) properties.maxBackoff else backoff
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val MAX_BACKOFF_EXPONENT = 20
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+    }
+}
@@ -0,0 +1,14 @@
+package com.hedvig.paymentservice.services.accounts
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.account-service.outbox")
+class AccountNotificationOutboxProperties {
+    var workers: Int = 4
+    var initialBackoff: Duration = Duration.ofSeconds(1)
+    var maxBackoff: Duration = Duration.ofMinutes(5)
+    var claimTimeout: Duration = Duration.ofMinutes(5)
+}
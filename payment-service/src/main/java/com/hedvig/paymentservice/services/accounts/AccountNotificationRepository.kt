@@ -0,0 +1,68 @@
+package com.hedvig.paymentservice.services.accounts
+
+import java.time.Instant
+import org.springframework.data.domain.Pageable
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+@Repository
+interface AccountNotificationRepository : JpaRepository<AccountNotification, Long> {
+    /**
+     * The oldest pending notification of each member, as long as it is due and not claimed by another
+     * dispatcher. Later notifications of a member are only returned once the ones before are dispatched.
+     */
+    @Query(
+        "SELECT n FROM AccountNotification n " +
+            "WHERE n.dispatchedAt IS NULL " +
+            "AND (n.nextAttemptAt IS NULL OR n.nextAttemptAt <= :now) " +
+            "AND (n.claimedAt IS NULL OR n.claimedAt < :claimExpiredBefore) " +
+            "AND NOT EXISTS (" +
+            "SELECT e.id FROM AccountNotification e " +
+            "WHERE e.memberId = n.memberId AND e.dispatchedAt IS NULL AND e.id < n.id" +
+            ") " +
+            "ORDER BY n.id"
+    )
+    fun findDispatchable(
+        @Param("now") now: Instant,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant,
+        pageable: Pageable
+    ): List<AccountNotification>
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE AccountNotification n SET n.claimedAt = :claimedAt " +
+            "WHERE n.id = :id " +
+            "AND n.dispatchedAt IS NULL " +
+            "AND (n.claimedAt IS NULL OR n.claimedAt < :claimExpiredBefore)"
+    )
+    fun claim(
+        @Param("id") id: Long,
+        @Param("claimedAt") claimedAt: Instant,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant
+    ): Int
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE AccountNotification n SET n.dispatchedAt = :dispatchedAt, n.claimedAt = NULL WHERE n.id = :id")
+    fun markDispatched(@Param("id") id: Long, @Param("dispatchedAt") dispatchedAt: Instant): Int
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE AccountNotification n " +
+            "SET n.attempts = :attempts, n.nextAttemptAt = :nextAttemptAt, n.claimedAt = NULL " +
+            "WHERE n.id = :id"
+    )
+    fun scheduleRetry(
+        @Param("id") id: Long,
+        @Param("attempts") attempts: Int,
+        @Param("nextAttemptAt") nextAttemptAt: Instant
+    ): Int
+
+    fun countByDispatchedAtIsNull(): Long
+}
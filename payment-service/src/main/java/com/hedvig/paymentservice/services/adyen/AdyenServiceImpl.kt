@@ -19,6 +19,7 @@ import com.adyen.model.payout.SubmitResponse
 import com.adyen.model.recurring.Recurring
 import com.adyen.service.Checkout
 import com.adyen.service.Payout
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.common.UUIDGenerator
 import com.hedvig.paymentservice.domain.adyenTokenRegistration.commands.AuthoriseAdyenTokenRegistrationFromNotificationCommand
 import com.hedvig.paymentservice.domain.adyenTokenRegistration.commands.AuthorisedAdyenTokenRegistrationCommand
@@ -54,6 +55,7 @@ import com.hedvig.paymentservice.query.adyenTransaction.entities.AdyenPayoutTran
 import com.hedvig.paymentservice.query.adyenTransaction.entities.AdyenTransaction
 import com.hedvig.paymentservice.query.adyenTransaction.entities.AdyenTransactionRepository
 import com.hedvig.paymentservice.query.member.entities.MemberRepository
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatusProjection
 import com.hedvig.paymentservice.serviceIntergration.memberService.MemberService
 import com.hedvig.paymentservice.services.adyen.dtos.AdyenPaymentsResponse
 import com.hedvig.paymentservice.services.adyen.dtos.ChargeMemberWithTokenRequest
@@ -72,7 +74,6 @@ import org.javamoney.moneta.Money
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.beans.factory.annotation.Value
-import org.springframework.data.repository.findByIdOrNull
 import org.springframework.stereotype.Service
 
 @Service
@@ -91,6 +92,7 @@ class AdyenServiceImpl(
     val adyenPayoutTransactionRepository: AdyenPayoutTransactionRepository,
     val adyenMerchantPicker: AdyenMerchantPicker,
     val memberAdyenAccountRepository: MemberAdyenAccountRepository,
+    val memberPaymentStatusProjection: MemberPaymentStatusProjection,
     @param:Value("\${hedvig.adyen.allow3DS2}")
     val allow3DS2: Boolean,
     @param:Value("\${hedvig.adyen.allowTrustlyPayouts}")
@@ -468,7 +470,9 @@ class AdyenServiceImpl(
     override fun getActivePayinMethods(memberId: String): ActivePaymentMethodsResponse? {
         val activePaymentMethods = getActivePaymentMethodsResponse(memberId) ?: return null
         val activePaymentMethodsWithoutTrustly = excludeTrustlyFromActivePaymentMethods(activePaymentMethods)
-        val memberAdyenAccount = memberAdyenAccountRepository.findByIdOrNull(memberId)
+        val memberAdyenAccount = ExecutionLookups.memoize("memberAdyenAccount:$memberId") {
+            memberAdyenAccountRepository.findById(memberId)
+        }.orElse(null)
 
         return ActivePaymentMethodsResponse(
             storedPaymentMethodsDetails = StoredPaymentMethodsDetails.from(
@@ -485,7 +489,15 @@ class AdyenServiceImpl(
             return null
         }
 
-        val listOfTokens = tokenRegistrationRepository.findByMemberId(memberId)
+        val paymentStatus = memberPaymentStatusProjection.find(memberId)
+        if (paymentStatus != null) {
+            val tokenStatus = paymentStatus.payoutTokenRegistrationStatus ?: return PayoutMethodStatus.NEEDS_SETUP
+            return PayoutMethodStatus.from(tokenStatus)
+        }
+
+        val listOfTokens = ExecutionLookups.memoize("adyenTokenRegistrations:$memberId") {
+            tokenRegistrationRepository.findByMemberId(memberId)
+        }
 
         val lastTokenization = listOfTokens
             .filter { it.isForPayout == true }
@@ -16,8 +16,14 @@ import com.adyen.model.checkout.PaymentsResponse.ResultCodeEnum.REDIRECTSHOPPER
 import com.adyen.model.checkout.PaymentsResponse.ResultCodeEnum.REFUSED
 import com.adyen.model.checkout.PaymentsResponse.ResultCodeEnum.UNKNOWN
 
+/**
+ * When read from an event, [paymentsResponse] only holds the result code and recurring detail reference, and
+ * [payloadReference] points at the full response in the
+ * [com.hedvig.paymentservice.configuration.payloadBlobs.PayloadBlobStore].
+ */
 data class AdyenPaymentsResponse(
-    val paymentsResponse: PaymentsResponse
+    val paymentsResponse: PaymentsResponse,
+    val payloadReference: String? = null
 ) {
     fun getRecurringDetailReference(): String? = paymentsResponse.getAdditionalDataByKey(RECURRING_DETAIL_REFERENCE)
 
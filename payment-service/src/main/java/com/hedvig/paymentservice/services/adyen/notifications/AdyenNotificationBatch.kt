@@ -0,0 +1,27 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.Id
+import javax.persistence.Index
+import javax.persistence.Table
+
+/**
+ * A notification batch exactly as received from Adyen, stored in one insert so the webhook can be
+ * acknowledged before any of its items are processed.
+ */
+@Entity
+@Table(indexes = [Index(name = "idx_adyen_notification_batch_pending", columnList = "processed_at,received_at")])
+class AdyenNotificationBatch(
+    @Id
+    val id: UUID,
+    @Column(columnDefinition = "TEXT")
+    val notificationItems: String,
+    val itemCount: Int,
+    val receivedAt: Instant
+) {
+    var claimedAt: Instant? = null
+    var processedAt: Instant? = null
+}
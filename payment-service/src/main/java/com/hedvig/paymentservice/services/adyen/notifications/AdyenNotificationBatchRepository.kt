@@ -0,0 +1,48 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import java.time.Instant
+import java.util.UUID
+import org.springframework.data.domain.Pageable
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+@Repository
+interface AdyenNotificationBatchRepository : JpaRepository<AdyenNotificationBatch, UUID> {
+    @Query(
+        "SELECT b.id FROM AdyenNotificationBatch b " +
+            "WHERE b.processedAt IS NULL " +
+            "AND (b.claimedAt IS NULL OR b.claimedAt < :claimExpiredBefore) " +
+            "ORDER BY b.receivedAt"
+    )
+    fun findClaimableIds(
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant,
+        pageable: Pageable
+    ): List<UUID>
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE AdyenNotificationBatch b SET b.claimedAt = :claimedAt " +
+            "WHERE b.id = :id " +
+            "AND b.processedAt IS NULL " +
+            "AND (b.claimedAt IS NULL OR b.claimedAt < :claimExpiredBefore)"
+    )
+    fun claim(
+        @Param("id") id: UUID,
+        @Param("claimedAt") claimedAt: Instant,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant
+    ): Int
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE AdyenNotificationBatch b SET b.processedAt = :processedAt WHERE b.id = :id")
+    fun markProcessed(@Param("id") id: UUID, @Param("processedAt") processedAt: Instant): Int
+
+    fun countByProcessedAtIsNull(): Long
+
+    fun findFirstByProcessedAtIsNullOrderByReceivedAtAsc(): AdyenNotificationBatch?
+}
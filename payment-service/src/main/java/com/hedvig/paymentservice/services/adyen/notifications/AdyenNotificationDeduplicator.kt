@@ -0,0 +1,102 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import com.hedvig.paymentservice.common.UUIDGenerator
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Instant
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Value
+import org.springframework.dao.DataIntegrityViolationException
+import org.springframework.stereotype.Component
+
+/**
+ * Keeps track of which Adyen notifications have been processed, keyed on (pspReference, eventCode, success).
+ *
+ * The [ProcessedAdyenNotification] table is the authoritative store. A bounded set of recently seen keys
+ * sits in front of it so that retried batches are recognised without a database round trip.
+ */
+@Component
+class AdyenNotificationDeduplicator(
+    private val processedNotificationRepository: ProcessedAdyenNotificationRepository,
+    private val uuidGenerator: UUIDGenerator,
+    @param:Value("\${hedvig.adyen.notifications.deduplication.recent-keys:100000}")
+    private val recentKeysCapacity: Int,
+    meterRegistry: MeterRegistry
+) {
+    private val recentKeys = object : LinkedHashMap<NotificationKey, Boolean>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<NotificationKey, Boolean>?) =
+            size > recentKeysCapacity
+    }
+
+    private val duplicateCounter = meterRegistry.counter("adyen.notifications.duplicates")
+
+    /**
+     * Only consults the in-memory filter, a `false` does not mean that the notification has not been processed
+     */
+    fun isRecentlyProcessed(item: NotificationRequestItem): Boolean {
+        val key = NotificationKey.from(item) ?: return false
+        return synchronized(recentKeys) { recentKeys.containsKey(key) }
+            .also { if (it) duplicateCounter.increment() }
+    }
+
+    fun isProcessed(item: NotificationRequestItem): Boolean {
+        val key = NotificationKey.from(item) ?: return false
+
+        if (isRecentlyProcessed(item)) {
+            return true
+        }
+
+        val processed = processedNotificationRepository
+            .existsByPspReferenceAndEventCodeAndSuccess(key.pspReference, key.eventCode, key.success)
+
+        if (processed) {
+            remember(key)
+            duplicateCounter.increment()
+        }
+        return processed
+    }
+
+    fun markProcessed(item: NotificationRequestItem) {
+        val key = NotificationKey.from(item) ?: return
+
+        try {
+            processedNotificationRepository.save(
+                ProcessedAdyenNotification(
+                    id = uuidGenerator.generateRandom(),
+                    pspReference = key.pspReference,
+                    eventCode = key.eventCode,
+                    success = key.success,
+                    processedAt = Instant.now()
+                )
+            )
+        } catch (exception: DataIntegrityViolationException) {
+            logger.info("Notification was already marked as processed [Key: $key]")
+        }
+        remember(key)
+    }
+
+    private fun remember(key: NotificationKey) {
+        synchronized(recentKeys) { recentKeys[key] = true }
+    }
+
+    private data class NotificationKey(
+        val pspReference: String,
+        val eventCode: String,
+        val success: Boolean
+    ) {
+        companion object {
+            fun from(item: NotificationRequestItem): NotificationKey? {
+                if (item.pspReference == null || item.eventCode == null) {
+                    return null
+                }
+                return NotificationKey(item.pspReference, item.eventCode, item.success)
+            }
+        }
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val INITIAL_CAPACITY = 1024
+        private const val LOAD_FACTOR = 0.75f
+    }
+}
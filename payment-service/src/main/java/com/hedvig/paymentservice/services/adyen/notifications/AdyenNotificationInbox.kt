@@ -0,0 +1,43 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.hedvig.paymentservice.common.UUIDGenerator
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import java.time.Instant
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+
+@Component
+class AdyenNotificationInbox(
+    private val batchRepository: AdyenNotificationBatchRepository,
+    private val deduplicator: AdyenNotificationDeduplicator,
+    private val uuidGenerator: UUIDGenerator,
+    private val objectMapper: ObjectMapper
+) {
+    /**
+     * Stores the items that are not known duplicates as one batch, returns `null` if every item of the
+     * batch is known to have been processed already
+     */
+    fun receive(items: List<NotificationRequestItem>): AdyenNotificationBatch? {
+        val newItems = items.filterNot { deduplicator.isRecentlyProcessed(it) }
+        if (newItems.isEmpty()) {
+            logger.info("Acknowledging already processed Adyen notification batch [Items: ${items.size}]")
+            return null
+        }
+
+        val batch = batchRepository.save(
+            AdyenNotificationBatch(
+                id = uuidGenerator.generateRandom(),
+                notificationItems = objectMapper.writeValueAsString(newItems),
+                itemCount = newItems.size,
+                receivedAt = Instant.now()
+            )
+        )
+        logger.info("Received Adyen notification batch [BatchId: ${batch.id}] [Items: ${newItems.size}] [Duplicates: ${items.size - newItems.size}]")
+        return batch
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
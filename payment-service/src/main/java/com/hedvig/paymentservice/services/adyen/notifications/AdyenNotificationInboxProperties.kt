@@ -0,0 +1,16 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.adyen.notifications.inbox")
+class AdyenNotificationInboxProperties {
+    var workers: Int = 4
+    var batchesPerPoll: Int = 20
+    var maxAttempts: Int = 5
+    var initialBackoff: Duration = Duration.ofMillis(200)
+    var maxBackoff: Duration = Duration.ofSeconds(10)
+    var claimTimeout: Duration = Duration.ofMinutes(5)
+}
@@ -0,0 +1,164 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.hedvig.paymentservice.common.PolledValue
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.annotation.PreDestroy
+import org.slf4j.LoggerFactory
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.repository.findByIdOrNull
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Drains the [AdyenNotificationBatch] inbox. Items are partitioned on their merchant reference into a
+ * fixed set of single threaded lanes, which keeps the notifications of one transaction in order while
+ * unrelated transactions are processed in parallel. At most `batches-per-poll` batches are in flight, the
+ * lanes retry failing notifications without holding up the scheduler.
+ */
+@Component
+class AdyenNotificationInboxWorker(
+    private val batchRepository: AdyenNotificationBatchRepository,
+    private val notificationProcessor: AdyenNotificationProcessor,
+    private val deduplicator: AdyenNotificationDeduplicator,
+    private val objectMapper: ObjectMapper,
+    private val properties: AdyenNotificationInboxProperties,
+    meterRegistry: MeterRegistry
+) {
+    private val lanes: List<ExecutorService> = List(properties.workers) { lane ->
+        Executors.newSingleThreadExecutor { runnable ->
+            Thread(runnable, "adyen-notification-lane-$lane").apply { isDaemon = true }
+        }
+    }
+    private val inFlightBatches = AtomicInteger()
+
+    private val processingTimer = meterRegistry.timer("adyen.notifications.inbox.processing")
+    private val retryCounter = meterRegistry.counter("adyen.notifications.inbox.retries")
+    private val failureCounter = meterRegistry.counter("adyen.notifications.inbox.failures")
+
+    private val pendingBatches = PolledValue { batchRepository.countByProcessedAtIsNull() }
+    private val oldestPendingBatch = PolledValue { batchRepository.findFirstByProcessedAtIsNullOrderByReceivedAtAsc() }
+
+    init {
+        Gauge.builder("adyen.notifications.inbox.pending", pendingBatches) { it.value?.toDouble() ?: Double.NaN }
+            .description("Number of received Adyen notification batches not yet processed")
+            .register(meterRegistry)
+
+        Gauge.builder("adyen.notifications.inbox.lag", oldestPendingBatch) { oldest ->
+            oldest.value
+                ?.let { Duration.between(it.receivedAt, Instant.now()).toMillis() / 1000.0 }
+                ?: 0.0
+        }
+            .description("Age in seconds of the oldest unprocessed Adyen notification batch")
+            .baseUnit("seconds")
+            .register(meterRegistry)
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.adyen.notifications.inbox.poll-interval:1000}")
+    fun processPendingBatches() {
+        val now = Instant.now()
+        pendingBatches.refresh(now)
+        oldestPendingBatch.refresh(now)
+        val capacity = properties.batchesPerPoll - inFlightBatches.get()
+        if (capacity <= 0) {
+            return
+        }
+        val claimExpiredBefore = now.minus(properties.claimTimeout)
+
+        val claimedBatches = batchRepository
+            .findClaimableIds(claimExpiredBefore, PageRequest.of(0, capacity))
+            .filter { batchRepository.claim(it, now, claimExpiredBefore) == 1 }
+            .mapNotNull { batchRepository.findByIdOrNull(it) }
+
+        // Every item is submitted in the order the batches were received, so each lane sees the
+        // notifications of a merchant reference in the order Adyen sent them. The lanes mark a batch
+        // processed once its last item is done, the scheduler thread does not wait for them.
+        claimedBatches.forEach { batch ->
+            val items = readItems(batch).map { submit(it) }
+            inFlightBatches.incrementAndGet()
+            CompletableFuture.allOf(*items.toTypedArray()).whenComplete { _, exception ->
+                try {
+                    if (exception == null) {
+                        batchRepository.markProcessed(batch.id, Instant.now())
+                    } else {
+                        logger.error(
+                            "Could not process Adyen notification batch, it will be retried once its claim expires [BatchId: ${batch.id}]",
+                            exception
+                        )
+                    }
+                } finally {
+                    inFlightBatches.decrementAndGet()
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        lanes.forEach { it.shutdown() }
+        lanes.forEach { it.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS) }
+    }
+
+    private fun readItems(batch: AdyenNotificationBatch): List<NotificationRequestItem> =
+        objectMapper.readValue(batch.notificationItems, object : TypeReference<List<NotificationRequestItem>>() {})
+
+    private fun submit(item: NotificationRequestItem): CompletableFuture<Void> =
+        CompletableFuture.runAsync(Runnable { process(item) }, laneFor(item))
+
+    private fun laneFor(item: NotificationRequestItem): ExecutorService {
+        val partitionKey = item.merchantReference ?: item.pspReference ?: ""
+        return lanes[Math.floorMod(partitionKey.hashCode(), lanes.size)]
+    }
+
+    private fun process(item: NotificationRequestItem) {
+        if (deduplicator.isProcessed(item)) {
+            logger.info("Skipping already processed notification [Type: ${item.eventCode}] [PspReference: ${item.pspReference}]")
+            return
+        }
+
+        val handled = processingTimer.recordCallable { handleWithRetry(item) }
+        notificationProcessor.record(item)
+        if (handled) {
+            deduplicator.markProcessed(item)
+        }
+    }
+
+    private fun handleWithRetry(item: NotificationRequestItem): Boolean {
+        var backoff = properties.initialBackoff
+        for (attempt in 1..properties.maxAttempts) {
+            try {
+                notificationProcessor.handle(item)
+                return true
+            } catch (exception: Exception) {
+                if (attempt == properties.maxAttempts) {
+                    failureCounter.increment()
+                    logger.error(
+                        "Cannot process notification [Type: ${item.eventCode}] [PspReference: ${item.pspReference}] [Attempts: $attempt]",
+                        exception
+                    )
+                    return false
+                }
+                retryCounter.increment()
+                logger.warn("Retrying notification [Type: ${item.eventCode}] [PspReference: ${item.pspReference}] [Attempt: $attempt] [Exception: $exception]")
+                Thread.sleep(backoff.toMillis())
+                backoff = minOf(backoff.multipliedBy(2), properties.maxBackoff)
+            }
+        }
+        return false
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 30L
+    }
+}
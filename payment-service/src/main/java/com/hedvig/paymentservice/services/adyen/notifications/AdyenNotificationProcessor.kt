@@ -0,0 +1,49 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_AUTHORISATION
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_AUTORESCUE
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_CAPTURE_FAILED
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_PAIDOUT_REVERSED
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_PAYOUT_DECLINE
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_PAYOUT_EXPIRE
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_PAYOUT_THIRDPARTY
+import com.adyen.model.notification.NotificationRequestItem.EVENT_CODE_RECURRING_CONTRACT
+import com.hedvig.paymentservice.query.adyenNotification.AdyenNotification
+import com.hedvig.paymentservice.query.adyenNotification.AdyenNotificationRepository
+import com.hedvig.paymentservice.services.adyen.AdyenService
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import java.util.UUID
+import org.slf4j.LoggerFactory
+import org.springframework.stereotype.Component
+
+@Component
+class AdyenNotificationProcessor(
+    val adyenService: AdyenService,
+    val adyenNotificationRepository: AdyenNotificationRepository
+) {
+    /**
+     * Dispatches a single notification item to [AdyenService]. Exceptions are propagated so that the
+     * caller can retry the item, unsupported event codes are only logged as a retry would not help.
+     */
+    fun handle(item: NotificationRequestItem) {
+        when (item.eventCode) {
+            EVENT_CODE_CAPTURE_FAILED -> adyenService.handleSettlementErrorNotification(UUID.fromString(item.merchantReference!!))
+            EVENT_CODE_AUTHORISATION -> adyenService.handleAuthorisationNotification(item)
+            EVENT_CODE_RECURRING_CONTRACT -> adyenService.handleRecurringContractNotification(item)
+            EVENT_CODE_PAYOUT_THIRDPARTY -> adyenService.handlePayoutThirdPartyNotification(item)
+            EVENT_CODE_PAYOUT_DECLINE -> adyenService.handlePayoutDeclinedNotification(item)
+            EVENT_CODE_PAYOUT_EXPIRE -> adyenService.handlePayoutExpireNotification(item)
+            EVENT_CODE_PAIDOUT_REVERSED -> adyenService.handlePayoutPaidOutReservedNotification(item)
+            EVENT_CODE_AUTORESCUE -> adyenService.handleAutoRescueNotification(item)
+            else -> logger.error("NotificationItem with eventCode=${item.eventCode} is not supported [PspReference: ${item.pspReference}]")
+        }
+    }
+
+    fun record(item: NotificationRequestItem) {
+        adyenNotificationRepository.save(AdyenNotification.fromNotificationRequestItem(item))
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
@@ -0,0 +1,26 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.Entity
+import javax.persistence.Id
+import javax.persistence.Table
+import javax.persistence.UniqueConstraint
+
+@Entity
+@Table(
+    uniqueConstraints = [
+        UniqueConstraint(
+            name = "uq_processed_adyen_notification_key",
+            columnNames = ["psp_reference", "event_code", "success"]
+        )
+    ]
+)
+class ProcessedAdyenNotification(
+    @Id
+    val id: UUID,
+    val pspReference: String,
+    val eventCode: String,
+    val success: Boolean,
+    val processedAt: Instant
+)
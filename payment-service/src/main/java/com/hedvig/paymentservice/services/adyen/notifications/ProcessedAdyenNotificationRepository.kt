@@ -0,0 +1,10 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import java.util.UUID
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.stereotype.Repository
+
+@Repository
+interface ProcessedAdyenNotificationRepository : JpaRepository<ProcessedAdyenNotification, UUID> {
+    fun existsByPspReferenceAndEventCodeAndSuccess(pspReference: String, eventCode: String, success: Boolean): Boolean
+}
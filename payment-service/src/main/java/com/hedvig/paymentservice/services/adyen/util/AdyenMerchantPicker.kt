@@ -1,7 +1,9 @@
 package com.hedvig.paymentservice.services.adyen.util
 
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.configuration.MerchantAccounts
 import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccountRepository
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatusProjection
 import com.hedvig.paymentservice.serviceIntergration.memberService.MemberService
 import com.hedvig.paymentservice.serviceIntergration.productPricing.ProductPricingService
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.Market as ProductPricingMarket
@@ -19,10 +21,14 @@ class AdyenMerchantPicker(
     val underwriterService: UnderwriterService,
     val productPricingService: ProductPricingService,
     val memberAdyenAccountRepository: MemberAdyenAccountRepository,
+    val memberPaymentStatusProjection: MemberPaymentStatusProjection,
     val merchantAccounts: MerchantAccounts
 ) {
     @Throws(NoMerchantAccountForMarket::class)
-    fun getAdyenMerchantInfo(memberId: String): AdyenMerchantInfo {
+    fun getAdyenMerchantInfo(memberId: String): AdyenMerchantInfo =
+        ExecutionLookups.memoize("adyenMerchantInfo:$memberId") { pickAdyenMerchantInfo(memberId) }
+
+    private fun pickAdyenMerchantInfo(memberId: String): AdyenMerchantInfo {
         val marketInfo = getMerchantFromMember(memberId)
             ?: getMarketFromContract(memberId)
             ?: getMarketFromQuote(memberId)
@@ -39,7 +45,12 @@ class AdyenMerchantPicker(
     }
 
     private fun getMerchantFromMember(memberId: String): Market? {
-        val accountMaybe = memberAdyenAccountRepository.findById(memberId)
+        // Rows projected before the market was added can lack it, so only a known market short-circuits the scan
+        memberPaymentStatusProjection.find(memberId)?.market?.let { return it }
+
+        val accountMaybe = ExecutionLookups.memoize("memberAdyenAccount:$memberId") {
+            memberAdyenAccountRepository.findById(memberId)
+        }
 
         if (!accountMaybe.isPresent) return null
 
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.services.bankAccounts
 
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.domain.accountRegistration.enums.AccountRegistrationStatus
 import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
 import com.hedvig.paymentservice.graphQl.types.BankAccount
@@ -11,7 +12,8 @@ import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccountRepository
 import com.hedvig.paymentservice.query.directDebit.DirectDebitAccountOrder
 import com.hedvig.paymentservice.query.directDebit.DirectDebitAccountOrderRepository
 import com.hedvig.paymentservice.query.member.entities.MemberRepository
-import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistration
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatus
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatusProjection
 import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistrationRepository
 import com.hedvig.paymentservice.serviceIntergration.productPricing.ProductPricingService
 import com.hedvig.paymentservice.util.getNextChargeChargeDate
@@ -25,7 +27,8 @@ class BankAccountServiceImpl(
     private val accountRegistrationRepository: AccountRegistrationRepository,
     private val productPricingService: ProductPricingService,
     private val directDebitAccountOrderRepository: DirectDebitAccountOrderRepository,
-    private val memberAdyenAccountRepository: MemberAdyenAccountRepository
+    private val memberAdyenAccountRepository: MemberAdyenAccountRepository,
+    private val memberPaymentStatusProjection: MemberPaymentStatusProjection
 ) : BankAccountService {
 
     override fun getBankAccount(memberId: String): BankAccount? {
@@ -44,38 +47,34 @@ class BankAccountServiceImpl(
     }
 
     override fun getDirectDebitStatus(memberId: String): DirectDebitStatusDTO {
-        val accountRegistration = accountRegistrationRepository
-            .findByMemberId(memberId)
+        val paymentStatus = getMemberPaymentStatus(memberId)
+        if (paymentStatus != null) {
+            return toDirectDebitStatus(paymentStatus.directDebitStatus, paymentStatus.accountRegistrationStatus)
+        }
+
+        val accountRegistration = ExecutionLookups
+            .memoize("accountRegistrations:$memberId") { accountRegistrationRepository.findByMemberId(memberId) }
             .maxByOrNull { it.initiated }
 
-        return when (getLatestDirectDebitAccountOrderEntity(memberId)?.directDebitStatus) {
-            DirectDebitStatus.CONNECTED -> {
-                if (accountRegistration.isNullOrConfirmedOrCancelled()) {
-                    DirectDebitStatusDTO.ACTIVE
-                } else {
-                    DirectDebitStatusDTO.PENDING
-                }
-            }
-            DirectDebitStatus.DISCONNECTED -> {
-                if (accountRegistration.isNullOrConfirmedOrCancelled()) {
-                    DirectDebitStatusDTO.NEEDS_SETUP
-                } else {
-                    DirectDebitStatusDTO.PENDING
-                }
-            }
-            DirectDebitStatus.PENDING -> {
-                if (accountRegistration.isNullOrCancelled()) {
-                    DirectDebitStatusDTO.NEEDS_SETUP
-                } else {
-                    DirectDebitStatusDTO.PENDING
-                }
-            }
-            null -> DirectDebitStatusDTO.NEEDS_SETUP
-        }
+        return toDirectDebitStatus(
+            getLatestDirectDebitAccountOrderEntity(memberId)?.directDebitStatus,
+            accountRegistration?.status
+        )
     }
 
     override fun getPayinMethodStatus(memberId: String): PayinMethodStatus {
-        val adyenAccountMaybe = memberAdyenAccountRepository.findById(memberId)
+        val paymentStatus = getMemberPaymentStatus(memberId)
+        if (paymentStatus != null) {
+            return if (paymentStatus.hasAdyenAccount) {
+                fromAdyenAccountStatus(paymentStatus.adyenAccountStatus)
+            } else {
+                fromTrustlyDirectDebitStatus(getDirectDebitStatus(memberId))
+            }
+        }
+
+        val adyenAccountMaybe = ExecutionLookups.memoize("memberAdyenAccount:$memberId") {
+            memberAdyenAccountRepository.findById(memberId)
+        }
 
         if (adyenAccountMaybe.isPresent) {
             return fromAdyenAccountStatus(adyenAccountMaybe.get().accountStatus)
@@ -90,18 +89,60 @@ class BankAccountServiceImpl(
     }
 
     private fun getLatestDirectDebitAccountOrderEntity(memberId: String): DirectDebitAccountOrder? {
-        val directDebitAccountOrders = directDebitAccountOrderRepository.findAllByMemberId(memberId)
+        val paymentStatus = getMemberPaymentStatus(memberId)
+        if (paymentStatus != null) {
+            return paymentStatus.latestDirectDebitAccountOrder()
+        }
+
+        val directDebitAccountOrders = ExecutionLookups.memoize("directDebitAccountOrders:$memberId") {
+            directDebitAccountOrderRepository.findAllByMemberId(memberId)
+        }
         return directDebitAccountOrders.maxByOrNull { it.createdAt }
     }
 
-    private fun AccountRegistration?.isNullOrConfirmedOrCancelled(): Boolean = (
+    /**
+     * Missing while the projection is behind the event store, e.g. while it is being rebuilt, and for members
+     * without any payment setup, in which case the per-entity projections are scanned instead.
+     */
+    private fun getMemberPaymentStatus(memberId: String): MemberPaymentStatus? =
+        memberPaymentStatusProjection.find(memberId)
+
+    private fun toDirectDebitStatus(
+        directDebitStatus: DirectDebitStatus?,
+        accountRegistrationStatus: AccountRegistrationStatus?
+    ): DirectDebitStatusDTO = when (directDebitStatus) {
+        DirectDebitStatus.CONNECTED -> {
+            if (accountRegistrationStatus.isNullOrConfirmedOrCancelled()) {
+                DirectDebitStatusDTO.ACTIVE
+            } else {
+                DirectDebitStatusDTO.PENDING
+            }
+        }
+        DirectDebitStatus.DISCONNECTED -> {
+            if (accountRegistrationStatus.isNullOrConfirmedOrCancelled()) {
+                DirectDebitStatusDTO.NEEDS_SETUP
+            } else {
+                DirectDebitStatusDTO.PENDING
+            }
+        }
+        DirectDebitStatus.PENDING -> {
+            if (accountRegistrationStatus.isNullOrCancelled()) {
+                DirectDebitStatusDTO.NEEDS_SETUP
+            } else {
+                DirectDebitStatusDTO.PENDING
+            }
+        }
+        null -> DirectDebitStatusDTO.NEEDS_SETUP
+    }
+
+    private fun AccountRegistrationStatus?.isNullOrConfirmedOrCancelled(): Boolean = (
         this == null ||
-            this.status == AccountRegistrationStatus.CONFIRMED ||
-            this.status == AccountRegistrationStatus.CANCELLED
+            this == AccountRegistrationStatus.CONFIRMED ||
+            this == AccountRegistrationStatus.CANCELLED
         )
 
-    private fun AccountRegistration?.isNullOrCancelled(): Boolean = (
+    private fun AccountRegistrationStatus?.isNullOrCancelled(): Boolean = (
         this == null ||
-            this.status == AccountRegistrationStatus.CANCELLED
+            this == AccountRegistrationStatus.CANCELLED
         )
 }
@@ -0,0 +1,18 @@
+package com.hedvig.paymentservice.services.commands
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.commands")
+class CommandTimeoutProperties {
+    var defaultTimeout: Duration = Duration.ofSeconds(10)
+
+    /**
+     * Timeouts for single commands, keyed by the simple class name of the command.
+     */
+    var timeouts: MutableMap<String, Duration> = mutableMapOf()
+
+    fun timeoutFor(command: Any): Duration = timeouts[command::class.java.simpleName] ?: defaultTimeout
+}
@@ -0,0 +1,37 @@
+package com.hedvig.paymentservice.services.commands
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.springframework.stereotype.Component
+
+/**
+ * Sends commands without waiting for them to be handled. The returned future completes exceptionally with
+ * a [TimeoutException] once the timeout configured for the command has passed, so that a request never
+ * waits on the command bus for longer than that. The command itself is not cancelled and may still be
+ * handled after the timeout.
+ *
+ * Only meant for commands that are safe to send again, such as Trustly notifications, which are
+ * acknowledged once handled. A timeout answers a retryable 503, so timing out a command like a charge
+ * would have the caller make it twice.
+ */
+@Component
+class TimedCommandGateway(
+    private val commandGateway: CommandGateway,
+    private val properties: CommandTimeoutProperties
+) {
+    fun <R> send(command: Any): CompletableFuture<R> = send(command) { }
+
+    /**
+     * Like [send], but runs [onHandled] with the result once the command has been handled, also when that
+     * is after the timeout. Work that records the command as done belongs there rather than on the returned
+     * future, which gives up on the command when the timeout passes.
+     */
+    fun <R> send(command: Any, onHandled: (R) -> Unit): CompletableFuture<R> =
+        commandGateway.send<R>(command)
+            .thenApply { result -> result.also(onHandled) }
+            // A copy times out on its own, a timeout on the handled future itself would skip onHandled
+            .copy()
+            .orTimeout(properties.timeoutFor(command).toMillis(), TimeUnit.MILLISECONDS)
+}
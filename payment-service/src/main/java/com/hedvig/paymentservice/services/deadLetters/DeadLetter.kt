@@ -0,0 +1,51 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import java.time.Instant
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.GeneratedValue
+import javax.persistence.GenerationType
+import javax.persistence.Id
+import javax.persistence.Index
+import javax.persistence.SequenceGenerator
+import javax.persistence.Table
+
+/**
+ * An event a processing group could not handle, or one held back because an earlier event with the same
+ * sequence key could not be handled. The event is kept serialized with the Axon serializer, along with
+ * what is needed to hand it to the event handlers again as it was first delivered.
+ */
+@Entity
+@Table(
+    indexes = [
+        Index(name = "idx_dead_letter_group_sequence", columnList = "processing_group,sequence_key,global_index"),
+        Index(name = "idx_dead_letter_group_event", columnList = "processing_group,event_identifier")
+    ]
+)
+class DeadLetter(
+    val processingGroup: String,
+    val sequenceKey: String,
+    val eventIdentifier: String,
+    // Position of the event in the event store, so parked events are retried in the order they were published
+    val globalIndex: Long?,
+    val payloadType: String,
+    val payloadRevision: String?,
+    @Column(columnDefinition = "TEXT")
+    val payload: String,
+    @Column(columnDefinition = "TEXT")
+    val metaData: String,
+    val aggregateType: String?,
+    val aggregateIdentifier: String?,
+    val aggregateSequenceNumber: Long?,
+    val timestamp: Instant,
+    val parkedAt: Instant,
+    var retryAt: Instant
+) {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "dead_letter_id")
+    @SequenceGenerator(name = "dead_letter_id", sequenceName = "dead_letter_seq", allocationSize = 1)
+    val id: Long = 0
+    var attempts: Int = 0
+    @Column(columnDefinition = "TEXT")
+    var lastError: String? = null
+}
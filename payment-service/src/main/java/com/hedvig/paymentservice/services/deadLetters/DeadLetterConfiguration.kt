@@ -0,0 +1,26 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import org.axonframework.config.EventProcessingConfiguration
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+class DeadLetterConfiguration {
+
+    @Autowired
+    fun configure(
+        config: EventProcessingConfiguration,
+        properties: DeadLetterProperties,
+        deadLetterQueue: ObjectProvider<DeadLetterQueue>
+    ) {
+        properties.processingGroups.forEach { processingGroup ->
+            config.registerListenerInvocationErrorHandler(processingGroup) {
+                ParkingErrorHandler(processingGroup, deadLetterQueue.getObject())
+            }
+            config.registerHandlerInterceptor(processingGroup) {
+                ParkedSequenceInterceptor(processingGroup, deadLetterQueue.getObject())
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.dead-letters")
+class DeadLetterProperties {
+    /**
+     * The tracking processing groups that park events their handlers fail on instead of retrying them
+     * in place. Groups without an explicit processing group are named after the package of the handler.
+     */
+    var processingGroups: MutableList<String> = mutableListOf()
+    var initialRetryInterval: Duration = Duration.ofSeconds(30)
+    var maxRetryInterval: Duration = Duration.ofHours(1)
+
+    fun retryInterval(attempts: Int): Duration {
+        val backoff = initialRetryInterval.multipliedBy(1L shl (attempts - 1).coerceIn(0, MAX_DOUBLINGS))
+        return if (backoff > maxRetryInterval) maxRetryInterval else backoff
+    }
+
+    companion object {
+        private const val MAX_DOUBLINGS = 20
+    }
+}
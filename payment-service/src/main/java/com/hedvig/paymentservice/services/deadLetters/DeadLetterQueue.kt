@@ -0,0 +1,183 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import io.micrometer.core.instrument.MeterRegistry
+import java.lang.reflect.Method
+import java.time.Instant
+import java.util.Optional
+import java.util.concurrent.ConcurrentHashMap
+import org.axonframework.eventhandling.EventMessage
+import org.axonframework.eventhandling.GenericEventMessage
+import org.axonframework.eventhandling.TrackedEventMessage
+import org.axonframework.eventsourcing.DomainEventMessage
+import org.axonframework.eventsourcing.GenericDomainEventMessage
+import org.axonframework.eventsourcing.eventstore.GlobalSequenceTrackingToken
+import org.axonframework.messaging.MetaData
+import org.axonframework.serialization.Serializer
+import org.axonframework.serialization.SimpleSerializedObject
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
+import org.springframework.transaction.support.TransactionTemplate
+import org.springframework.util.ReflectionUtils
+
+/**
+ * Parks events a processing group could not handle, and holds back the events that follow them with the
+ * same sequence key, so the events of a member are still handled in order while the events of every other
+ * member keep flowing. The sequence key is the member id of the event, or its aggregate when it has none.
+ *
+ * Dead letters are written in a transaction of their own. If the failure also made the processor roll
+ * back its batch, the retried batch finds the event already parked and passes it by. See
+ * [ParkingErrorHandler] for the failures that do.
+ */
+@Component
+class DeadLetterQueue(
+    private val deadLetterRepository: DeadLetterRepository,
+    private val serializer: Serializer,
+    private val properties: DeadLetterProperties,
+    transactionManager: PlatformTransactionManager,
+    private val meterRegistry: MeterRegistry
+) {
+    private val transactionTemplate = TransactionTemplate(transactionManager).apply {
+        propagationBehavior = TransactionDefinition.PROPAGATION_REQUIRES_NEW
+    }
+
+    // The sequence keys with parked events, per processing group, loaded the first time the group asks
+    private val parkedKeys = ConcurrentHashMap<String, MutableSet<String>>()
+
+    private val memberIdGetters = ConcurrentHashMap<Class<*>, Optional<Method>>()
+
+    fun park(processingGroup: String, event: EventMessage<*>, exception: Exception) {
+        park(processingGroup, event, REASON_FAILED, exception.toString())
+    }
+
+    /**
+     * Parks the event if an earlier event with its sequence key is parked in the group, in which case it
+     * must not be handled yet.
+     */
+    fun holdBackIfParked(processingGroup: String, event: EventMessage<*>): Boolean {
+        val keys = keys(processingGroup)
+        synchronized(keys) {
+            if (!keys.contains(sequenceKey(event))) {
+                return false
+            }
+        }
+        park(processingGroup, event, REASON_HELD_BACK, null)
+        return true
+    }
+
+    /**
+     * Lets events with the sequence key through again, unless some of its events are still parked.
+     */
+    fun release(processingGroup: String, sequenceKey: String) {
+        val keys = keys(processingGroup)
+        synchronized(keys) {
+            if (!deadLetterRepository.existsByProcessingGroupAndSequenceKey(processingGroup, sequenceKey)) {
+                keys.remove(sequenceKey)
+            }
+        }
+    }
+
+    /**
+     * Drops what is known about the parked events of the group, for when it is handled by another instance.
+     */
+    fun forget(processingGroup: String) {
+        parkedKeys.remove(processingGroup)
+    }
+
+    fun sequenceKey(event: EventMessage<*>): String {
+        val getter = memberIdGetters.computeIfAbsent(event.payloadType) {
+            Optional.ofNullable(ReflectionUtils.findMethod(it, "getMemberId"))
+        }
+        val memberId = getter.map { it.invoke(event.payload) }.orElse(null)
+        return memberId?.toString()
+            ?: (event as? DomainEventMessage<*>)?.aggregateIdentifier
+            ?: event.identifier
+    }
+
+    fun toEventMessage(deadLetter: DeadLetter): EventMessage<*> {
+        val payload = serializer.deserialize<String, Any>(
+            SimpleSerializedObject(
+                deadLetter.payload,
+                String::class.java,
+                deadLetter.payloadType,
+                deadLetter.payloadRevision
+            )
+        )
+        val metaData = serializer.deserialize<String, MetaData>(
+            SimpleSerializedObject(deadLetter.metaData, String::class.java, MetaData::class.java.name, null)
+        )
+        return if (deadLetter.aggregateIdentifier != null) {
+            GenericDomainEventMessage(
+                deadLetter.aggregateType,
+                deadLetter.aggregateIdentifier,
+                deadLetter.aggregateSequenceNumber!!,
+                payload,
+                metaData,
+                deadLetter.eventIdentifier,
+                deadLetter.timestamp
+            )
+        } else {
+            GenericEventMessage(deadLetter.eventIdentifier, payload, metaData, deadLetter.timestamp)
+        }
+    }
+
+    private fun park(processingGroup: String, event: EventMessage<*>, reason: String, error: String?) {
+        val sequenceKey = sequenceKey(event)
+        val keys = keys(processingGroup)
+        synchronized(keys) {
+            transactionTemplate.execute {
+                val parked = deadLetterRepository
+                    .existsByProcessingGroupAndEventIdentifier(processingGroup, event.identifier)
+                if (!parked) {
+                    deadLetterRepository.save(toDeadLetter(processingGroup, sequenceKey, event, error))
+                }
+            }
+            keys.add(sequenceKey)
+        }
+        meterRegistry.counter("event.handling.parked", "group", processingGroup, "reason", reason).increment()
+    }
+
+    private fun keys(processingGroup: String): MutableSet<String> =
+        parkedKeys.computeIfAbsent(processingGroup) {
+            ConcurrentHashMap.newKeySet<String>().apply { addAll(deadLetterRepository.findSequenceKeys(it)) }
+        }
+
+    private fun toDeadLetter(
+        processingGroup: String,
+        sequenceKey: String,
+        event: EventMessage<*>,
+        error: String?
+    ): DeadLetter {
+        val payload = serializer.serialize(event.payload, String::class.java)
+        val domainEvent = event as? DomainEventMessage<*>
+        val token = (event as? TrackedEventMessage<*>)?.trackingToken() as? GlobalSequenceTrackingToken
+        val now = Instant.now()
+        return DeadLetter(
+            processingGroup = processingGroup,
+            sequenceKey = sequenceKey,
+            eventIdentifier = event.identifier,
+            globalIndex = token?.globalIndex,
+            payloadType = payload.type.name,
+            payloadRevision = payload.type.revision,
+            payload = payload.data,
+            metaData = serializer.serialize(event.metaData, String::class.java).data,
+            aggregateType = domainEvent?.type,
+            aggregateIdentifier = domainEvent?.aggregateIdentifier,
+            aggregateSequenceNumber = domainEvent?.sequenceNumber,
+            timestamp = event.timestamp,
+            parkedAt = now,
+            // Held back events are retried as soon as the events before them have been handled
+            retryAt = if (error != null) now.plus(properties.retryInterval(1)) else now
+        ).apply {
+            if (error != null) {
+                attempts = 1
+                lastError = error
+            }
+        }
+    }
+
+    companion object {
+        private const val REASON_FAILED = "failed"
+        private const val REASON_HELD_BACK = "held_back"
+    }
+}
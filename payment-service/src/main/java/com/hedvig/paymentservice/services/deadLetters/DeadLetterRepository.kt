@@ -0,0 +1,34 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import java.time.Instant
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+@Repository
+interface DeadLetterRepository : JpaRepository<DeadLetter, Long> {
+    @Query("SELECT DISTINCT d.sequenceKey FROM DeadLetter d WHERE d.processingGroup = :processingGroup")
+    fun findSequenceKeys(@Param("processingGroup") processingGroup: String): List<String>
+
+    fun findByProcessingGroupAndSequenceKeyOrderByGlobalIndexAscIdAsc(
+        processingGroup: String,
+        sequenceKey: String
+    ): List<DeadLetter>
+
+    fun existsByProcessingGroupAndEventIdentifier(processingGroup: String, eventIdentifier: String): Boolean
+
+    fun existsByProcessingGroupAndSequenceKey(processingGroup: String, sequenceKey: String): Boolean
+
+    fun countByProcessingGroup(processingGroup: String): Long
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE DeadLetter d SET d.retryAt = :retryAt WHERE d.processingGroup = :processingGroup")
+    fun retryAllAt(
+        @Param("processingGroup") processingGroup: String,
+        @Param("retryAt") retryAt: Instant
+    ): Int
+}
@@ -0,0 +1,185 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import com.hedvig.paymentservice.common.PolledValue
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.annotation.PreDestroy
+import org.axonframework.config.EventProcessingConfiguration
+import org.axonframework.config.ProcessingGroup
+import org.axonframework.eventhandling.AnnotationEventListenerAdapter
+import org.axonframework.eventhandling.EventHandler
+import org.axonframework.eventhandling.EventListener
+import org.axonframework.eventhandling.EventProcessor
+import org.axonframework.eventhandling.TrackingEventProcessor
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork
+import org.axonframework.spring.config.AxonConfiguration
+import org.slf4j.LoggerFactory
+import org.springframework.context.ApplicationContext
+import org.springframework.core.annotation.AnnotationUtils
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import org.springframework.util.ClassUtils
+import org.springframework.util.ReflectionUtils
+
+/**
+ * Hands parked events back to the event handlers of their processing group once they are due, oldest
+ * first per sequence key. A sequence stops at the first event that fails again, which is then retried with
+ * a growing interval. Only the instance running the processor of a group retries its events, so they are
+ * never handled concurrently with the events the processor lets through. Retries run on a thread of their
+ * own, and a run is skipped while the previous one is still going.
+ */
+@Component
+class DeadLetterRetrier(
+    private val deadLetterRepository: DeadLetterRepository,
+    private val deadLetterQueue: DeadLetterQueue,
+    private val properties: DeadLetterProperties,
+    private val eventProcessingConfiguration: EventProcessingConfiguration,
+    private val axonConfiguration: AxonConfiguration,
+    private val applicationContext: ApplicationContext,
+    transactionManager: PlatformTransactionManager,
+    meterRegistry: MeterRegistry
+) {
+    private val transactionTemplate = TransactionTemplate(transactionManager)
+
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "dead-letter-retrier").apply { isDaemon = true }
+    }
+    private val retrying = AtomicBoolean()
+
+    private val listeners = ConcurrentHashMap<String, List<EventListener>>()
+
+    private val failureCounter = meterRegistry.counter("event.handling.parked.retry.failures")
+
+    private val parkedEvents = properties.processingGroups.associateWith { processingGroup ->
+        PolledValue { deadLetterRepository.countByProcessingGroup(processingGroup) }
+    }
+
+    init {
+        parkedEvents.forEach { (processingGroup, parked) ->
+            Gauge.builder("event.handling.parked.depth", parked) { it.value?.toDouble() ?: Double.NaN }
+                .tag("group", processingGroup)
+                .register(meterRegistry)
+        }
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.dead-letters.retry-poll-interval:10000}")
+    fun retryDueDeadLetters() {
+        parkedEvents.values.forEach { it.refresh() }
+        if (!retrying.compareAndSet(false, true)) {
+            return
+        }
+        executor.execute {
+            try {
+                retryProcessedHere()
+            } finally {
+                retrying.set(false)
+            }
+        }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+        executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    }
+
+    /**
+     * Makes every parked event of the group due, so it is retried on the next run wherever the processor is.
+     */
+    fun replay(processingGroup: String): Int =
+        deadLetterRepository.retryAllAt(processingGroup, Instant.now())
+
+    fun retry(processingGroup: String, now: Instant): Int =
+        deadLetterRepository.findSequenceKeys(processingGroup).sumBy { retrySequence(processingGroup, it, now) }
+
+    private fun retryProcessedHere() {
+        properties.processingGroups.forEach { processingGroup ->
+            if (isProcessedHere(processingGroup)) {
+                retry(processingGroup, Instant.now())
+            } else {
+                deadLetterQueue.forget(processingGroup)
+            }
+        }
+    }
+
+    private fun retrySequence(processingGroup: String, sequenceKey: String, now: Instant): Int {
+        val deadLetters = deadLetterRepository
+            .findByProcessingGroupAndSequenceKeyOrderByGlobalIndexAscIdAsc(processingGroup, sequenceKey)
+        if (deadLetters.isNotEmpty() && deadLetters.first().retryAt.isAfter(now)) {
+            return 0
+        }
+
+        val handled = deadLetters.takeWhile { redeliver(processingGroup, it) }.size
+        deadLetterQueue.release(processingGroup, sequenceKey)
+        return handled
+    }
+
+    private fun redeliver(processingGroup: String, deadLetter: DeadLetter): Boolean {
+        val event = deadLetterQueue.toEventMessage(deadLetter)
+        return try {
+            transactionTemplate.execute {
+                DefaultUnitOfWork.startAndGet(event).executeWithResult {
+                    listeners(processingGroup).filter { it.canHandle(event) }.forEach { it.handle(event) }
+                }
+                deadLetterRepository.deleteById(deadLetter.id)
+            }
+            true
+        } catch (exception: Exception) {
+            failureCounter.increment()
+            deadLetter.attempts += 1
+            deadLetter.lastError = exception.toString()
+            deadLetter.retryAt = Instant.now().plus(properties.retryInterval(deadLetter.attempts))
+            deadLetterRepository.save(deadLetter)
+            logger.warn(
+                "Parked event failed again " +
+                    "[ProcessingGroup: $processingGroup] [SequenceKey: ${deadLetter.sequenceKey}] " +
+                    "[EventId: ${deadLetter.eventIdentifier}] [Attempts: ${deadLetter.attempts}]",
+                exception
+            )
+            false
+        }
+    }
+
+    private fun isProcessedHere(processingGroup: String): Boolean =
+        eventProcessingConfiguration.eventProcessor<EventProcessor>(processingGroup)
+            .map { ((it as? TrackingEventProcessor)?.activeProcessorThreads() ?: 0) > 0 }
+            .orElse(false)
+
+    private fun listeners(processingGroup: String): List<EventListener> =
+        listeners.computeIfAbsent(processingGroup) {
+            applicationContext.beanDefinitionNames
+                .filter { name ->
+                    val type = applicationContext.getType(name)
+                    type != null && processingGroupOf(ClassUtils.getUserClass(type)) == processingGroup
+                }
+                .map { name ->
+                    AnnotationEventListenerAdapter(
+                        applicationContext.getBean(name),
+                        axonConfiguration.parameterResolverFactory()
+                    )
+                }
+        }
+
+    // Handlers without a processing group are assigned to one named after their package
+    private fun processingGroupOf(type: Class<*>): String? {
+        val handlesEvents = ReflectionUtils.getUniqueDeclaredMethods(type)
+            .any { AnnotationUtils.findAnnotation(it, EventHandler::class.java) != null }
+        if (!handlesEvents) {
+            return null
+        }
+        return AnnotationUtils.findAnnotation(type, ProcessingGroup::class.java)?.value ?: type.`package`?.name
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+    }
+}
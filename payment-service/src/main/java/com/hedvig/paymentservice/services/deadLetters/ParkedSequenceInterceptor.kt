@@ -0,0 +1,22 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import org.axonframework.eventhandling.EventMessage
+import org.axonframework.messaging.InterceptorChain
+import org.axonframework.messaging.MessageHandlerInterceptor
+import org.axonframework.messaging.unitofwork.UnitOfWork
+
+/**
+ * Passes events by the handlers of the processing group while an earlier event with the same sequence key
+ * is parked, parking them behind it instead.
+ */
+class ParkedSequenceInterceptor(
+    private val processingGroup: String,
+    private val deadLetterQueue: DeadLetterQueue
+) : MessageHandlerInterceptor<EventMessage<*>> {
+    override fun handle(unitOfWork: UnitOfWork<out EventMessage<*>>, interceptorChain: InterceptorChain): Any? {
+        if (deadLetterQueue.holdBackIfParked(processingGroup, unitOfWork.message)) {
+            return null
+        }
+        return interceptorChain.proceed()
+    }
+}
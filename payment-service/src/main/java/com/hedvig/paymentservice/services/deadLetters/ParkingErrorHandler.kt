@@ -0,0 +1,60 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import java.sql.SQLException
+import java.util.concurrent.ConcurrentHashMap
+import javax.persistence.PersistenceException
+import org.axonframework.eventhandling.EventListener
+import org.axonframework.eventhandling.EventMessage
+import org.axonframework.eventhandling.ListenerInvocationErrorHandler
+import org.slf4j.LoggerFactory
+import org.springframework.dao.DataAccessException
+import org.springframework.transaction.TransactionException
+
+/**
+ * Parks the event a handler of the processing group failed on, so the processor moves on to the next one.
+ *
+ * A handler failing on the database may leave the transaction of the whole batch unusable, which would
+ * fail every event handled after it in the batch. Such failures are rethrown instead, so the processor
+ * rolls the batch back and retries it. Only when the same event fails on the database again is it parked,
+ * and rethrown once more, so that the next retry passes it by and handles the rest of the batch.
+ */
+class ParkingErrorHandler(
+    private val processingGroup: String,
+    private val deadLetterQueue: DeadLetterQueue
+) : ListenerInvocationErrorHandler {
+
+    // The events whose database failure rolled back a batch, until they fail again or are parked
+    private val rolledBack = ConcurrentHashMap.newKeySet<String>()
+
+    override fun onError(exception: Exception, event: EventMessage<*>, eventListener: EventListener) {
+        val context = "[ProcessingGroup: $processingGroup] [EventId: ${event.identifier}] " +
+            "[PayloadType: ${event.payloadType.simpleName}]"
+
+        if (!isDatabaseFailure(exception)) {
+            logger.error("Event handler failed, parking event $context", exception)
+            deadLetterQueue.park(processingGroup, event, exception)
+            return
+        }
+
+        if (rolledBack.add(event.identifier)) {
+            logger.warn("Event handler failed on the database, rolling back the batch $context", exception)
+        } else {
+            rolledBack.remove(event.identifier)
+            logger.error("Event handler failed on the database again, parking event $context", exception)
+            deadLetterQueue.park(processingGroup, event, exception)
+        }
+        throw exception
+    }
+
+    private fun isDatabaseFailure(exception: Exception): Boolean =
+        generateSequence<Throwable>(exception) { it.cause }.any {
+            it is DataAccessException ||
+                it is PersistenceException ||
+                it is SQLException ||
+                it is TransactionException
+        }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+    }
+}
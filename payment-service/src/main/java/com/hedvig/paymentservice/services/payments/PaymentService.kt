@@ -25,6 +25,8 @@ import java.math.BigDecimal
 import java.time.Instant
 import java.util.Optional
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
 
 @Service
 class PaymentService(
@@ -37,19 +39,23 @@ class PaymentService(
         commandGateway.sendAndWait<Any>(CreateMemberCommand(memberId))
     }
 
-    fun chargeMember(request: ChargeMemberRequest): ChargeMemberResult {
+    fun chargeMember(request: ChargeMemberRequest): CompletableFuture<ChargeMemberResult> {
         val transactionId = uuidGenerator.generateRandom()
-        return try {
-            commandGateway.sendAndWait(
-                CreateChargeCommand(
-                    request.memberId,
-                    transactionId,
-                    request.amount,
-                    Instant.now(),
-                    Helpers.createTrustlyInboxfromMemberId(request.memberId),
-                    request.createdBy
-                ))
-        } catch (exception: AggregateNotFoundException) {
+        // Not timed out: a timed out charge would still be made, and a caller retrying it would charge twice
+        return commandGateway.send<ChargeMemberResult>(
+            CreateChargeCommand(
+                request.memberId,
+                transactionId,
+                request.amount,
+                Instant.now(),
+                Helpers.createTrustlyInboxfromMemberId(request.memberId),
+                request.createdBy
+            )
+        ).exceptionally { exception ->
+            val cause = if (exception is CompletionException) exception.cause else exception
+            if (cause !is AggregateNotFoundException) {
+                throw exception
+            }
             logger.error("No aggregate found for member" + request.memberId + "assume member has not connected their direct debit or card")
             ChargeMemberResult(
                 transactionId,
@@ -58,7 +64,7 @@ class PaymentService(
         }
     }
 
-    fun payoutMember(memberId: String, request: PayoutRequestDTO): Optional<UUID> {
+    fun payoutMember(memberId: String, request: PayoutRequestDTO): CompletableFuture<Optional<UUID>> {
         if (request.category != TransactionCategory.CLAIM &&
             request.amount.number.numberValueExact(BigDecimal::class.java) > BigDecimal.valueOf(10000)
         ) {
@@ -84,7 +90,8 @@ class PaymentService(
         }
 
         val transactionId = uuidGenerator.generateRandom()
-        val result = commandGateway.sendAndWait<Boolean>(
+        // Not timed out for the same reason as a charge
+        return commandGateway.send<Boolean>(
             CreatePayoutCommand(
                 memberId,
                 member.street + " " + member.city + " " + member.zipCode,
@@ -103,8 +110,7 @@ class PaymentService(
                 request.carrier,
                 request.payoutDetails?.toCommand() ?: SelectedPayoutDetails.NotSelected
             )
-        )
-        return if (result) Optional.of(transactionId) else Optional.empty()
+        ).thenApply { result -> if (result) Optional.of(transactionId) else Optional.empty<UUID>() }
     }
 
     fun sendCommand(cmd: UpdateTrustlyAccountCommand?) {
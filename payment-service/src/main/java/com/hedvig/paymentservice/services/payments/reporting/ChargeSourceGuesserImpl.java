@@ -6,43 +6,129 @@ import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGu
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.time.Instant;
 import java.time.YearMonth;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
-import static java.util.stream.Collectors.toMap;
-
+/**
+ * Guesses are stored per transaction once product-pricing has answered, so only transactions that have
+ * not been guessed before are sent, in chunks of {@code chunkSize} that are fetched in parallel and retried
+ * on their own. Unsure guesses are only stored for past periods, since the contract they depend on may
+ * still show up during the current one.
+ */
 @Component
 public class ChargeSourceGuesserImpl implements ChargeSourceGuesser {
     private static final Logger log = LoggerFactory.getLogger(ChargeSourceGuesserImpl.class);
+    static final int LOOKUP_CHUNK_SIZE = 1000;
     final ProductPricingService productPricingService;
+    private final PolicyGuessRepository policyGuessRepository;
+    private final int chunkSize;
+    private final ExecutorService executor;
+    private final RetryTemplate retryTemplate;
 
     @Autowired
-    public ChargeSourceGuesserImpl(final ProductPricingService productPricingService) {
+    public ChargeSourceGuesserImpl(
+        final ProductPricingService productPricingService,
+        final PolicyGuessRepository policyGuessRepository,
+        @Value("${hedvig.reporting.policy-guess.chunk-size:500}") final int chunkSize,
+        @Value("${hedvig.reporting.policy-guess.parallelism:4}") final int parallelism,
+        @Value("${hedvig.reporting.policy-guess.max-attempts:3}") final int maxAttempts
+    ) {
         this.productPricingService = productPricingService;
+        this.policyGuessRepository = policyGuessRepository;
+        this.chunkSize = chunkSize;
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "policy-guess");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryTemplate = new RetryTemplate();
+        this.retryTemplate.setRetryPolicy(new SimpleRetryPolicy(maxAttempts));
+        this.retryTemplate.setBackOffPolicy(new ExponentialBackOffPolicy());
     }
 
     @Override
     public Map<UUID, Optional<PolicyGuessResponseDto>> guessChargesMetadata(final Collection<Transaction> transactions, final YearMonth period) {
-        log.info("Guessing charge metadata for {} transactions", transactions.size());
-
-        return productPricingService.guessPolicyTypes(transactions, period).entrySet().stream()
-            .peek(entry -> {
-                if (!entry.getValue().isPresent()) {
-                    log.error("Unsure about guess for transaction {}", entry.getKey());
-                } else {
-                    log.info(
-                        "Guessed transaction {} to be {} of {}",
-                        entry.getKey(),
-                        entry.getValue().get().getProductType(),
-                        entry.getValue().get().getInceptionInStockholm()
-                    );
-                }
-            })
-            .collect(toMap(Map.Entry::getKey, Map.Entry::getValue));
+        final Map<UUID, Optional<PolicyGuessResponseDto>> guesses = findStoredGuesses(transactions);
+
+        final List<Transaction> unguessed = transactions.stream()
+            .filter(transaction -> !guesses.containsKey(transaction.getId()))
+            .collect(Collectors.toList());
+        log.info("Guessing charge metadata for {} transactions, {} already guessed", transactions.size(), guesses.size());
+
+        final Map<UUID, Optional<PolicyGuessResponseDto>> fetched = fetchGuesses(unguessed, period);
+        store(fetched, period);
+        guesses.putAll(fetched);
+
+        guesses.forEach((transactionId, guess) -> {
+            if (!guess.isPresent()) {
+                log.error("Unsure about guess for transaction {}", transactionId);
+            } else {
+                log.info(
+                    "Guessed transaction {} to be {} of {}",
+                    transactionId,
+                    guess.get().getProductType(),
+                    guess.get().getInceptionInStockholm()
+                );
+            }
+        });
+        return guesses;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Looked up in chunks, since the ids of a month of charges can exceed the bind parameter limit of Postgres
+    private Map<UUID, Optional<PolicyGuessResponseDto>> findStoredGuesses(final Collection<Transaction> transactions) {
+        final List<UUID> ids = transactions.stream().map(Transaction::getId).collect(Collectors.toList());
+        final Map<UUID, Optional<PolicyGuessResponseDto>> guesses = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK_SIZE) {
+            policyGuessRepository.findAllById(ids.subList(from, Math.min(from + LOOKUP_CHUNK_SIZE, ids.size())))
+                .forEach(guess -> guesses.put(guess.getTransactionId(), guess.toResponse()));
+        }
+        return guesses;
+    }
+
+    private Map<UUID, Optional<PolicyGuessResponseDto>> fetchGuesses(final List<Transaction> transactions, final YearMonth period) {
+        final List<CompletableFuture<Map<UUID, Optional<PolicyGuessResponseDto>>>> chunks = new ArrayList<>();
+        for (int from = 0; from < transactions.size(); from += chunkSize) {
+            final List<Transaction> chunk = transactions.subList(from, Math.min(from + chunkSize, transactions.size()));
+            chunks.add(CompletableFuture.supplyAsync(
+                () -> retryTemplate.execute(context -> productPricingService.guessPolicyTypes(chunk, period)),
+                executor
+            ));
+        }
+
+        final Map<UUID, Optional<PolicyGuessResponseDto>> guesses = new HashMap<>();
+        chunks.forEach(chunk -> guesses.putAll(chunk.join()));
+        return guesses;
+    }
+
+    private void store(final Map<UUID, Optional<PolicyGuessResponseDto>> guesses, final YearMonth period) {
+        final boolean isPastPeriod = period.isBefore(YearMonth.now());
+        final Instant now = Instant.now();
+        policyGuessRepository.saveAll(guesses.entrySet().stream()
+            .filter(entry -> entry.getValue().isPresent() || isPastPeriod)
+            .map(entry -> PolicyGuess.from(entry.getKey(), entry.getValue(), now))
+            .collect(Collectors.toList()));
     }
 }
@@ -0,0 +1,277 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEntity;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGuessResponseDto;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Year;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sums completed charge events per charge source and underwriting year. The events are first laid out
+ * as columns of primitives: the amount as a long at the largest scale of any amount, the scale of each
+ * amount, the charge source as a byte and the underwriting year as an int. The sums are then made in one
+ * pass, split over the common fork-join pool when there are more than {@code parallelThreshold} events.
+ *
+ * <p>The result is the same as adding up the {@link BigDecimal} amounts, down to the scale of each sum.
+ * Amounts that don't fit in a long, or sums that would overflow one, are added up as BigDecimals instead.
+ */
+final class ColumnarChargeAggregator {
+  static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+  private static final ZoneId STOCKHOLM = ZoneId.of("Europe/Stockholm");
+  private static final byte NO_AMOUNT = -1;
+  private static final int MAX_YEAR_SPAN = 1000;
+
+  private static final int STUDENT = 0;
+  private static final int HOUSEHOLD = 1;
+  private static final int HOUSE = 2;
+  private static final int TOTAL = 3;
+  private static final int BUCKETS = 4;
+
+  private final int parallelThreshold;
+
+  ColumnarChargeAggregator(final int parallelThreshold) {
+    this.parallelThreshold = parallelThreshold;
+  }
+
+  MonthlyTransactionsAggregations aggregate(
+    final List<TransactionHistoryEntity> events,
+    final Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
+  ) {
+    final Columns columns = Columns.of(events, transactionGuesses);
+    if (columns == null) {
+      return aggregateAsBigDecimals(events, transactionGuesses);
+    }
+
+    final Sums sums;
+    try {
+      sums = columns.size > parallelThreshold
+        ? ForkJoinPool.commonPool().invoke(new SumTask(columns, 0, columns.size, parallelThreshold))
+        : columns.sum(0, columns.size);
+    } catch (ArithmeticException overflow) {
+      return aggregateAsBigDecimals(events, transactionGuesses);
+    }
+    return sums.toAggregations(columns);
+  }
+
+  private static MonthlyTransactionsAggregations aggregateAsBigDecimals(
+    final List<TransactionHistoryEntity> events,
+    final Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
+  ) {
+    final List<Map<Year, BigDecimal>> buckets = Arrays.asList(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+    for (final TransactionHistoryEntity event : events) {
+      final Optional<PolicyGuessResponseDto> guess = guessOf(event, transactionGuesses);
+      final Year year = Year.of(underwritingYear(event, guess));
+      final BigDecimal amount = event.getAmount() == null ? BigDecimal.ZERO : event.getAmount();
+      final int bucket = bucketOf(ChargeSource.from(guess.map(PolicyGuessResponseDto::getProductType)));
+      if (bucket != TOTAL) {
+        buckets.get(bucket).merge(year, BigDecimal.ZERO.add(amount), BigDecimal::add);
+      }
+      buckets.get(TOTAL).merge(year, BigDecimal.ZERO.add(amount), BigDecimal::add);
+    }
+    return new MonthlyTransactionsAggregations(buckets.get(STUDENT), buckets.get(HOUSEHOLD), buckets.get(HOUSE), buckets.get(TOTAL));
+  }
+
+  private static Optional<PolicyGuessResponseDto> guessOf(
+    final TransactionHistoryEntity event,
+    final Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
+  ) {
+    final Optional<PolicyGuessResponseDto> guess = transactionGuesses.get(event.getTransactionId());
+    return guess == null ? Optional.empty() : guess;
+  }
+
+  private static int underwritingYear(final TransactionHistoryEntity event, final Optional<PolicyGuessResponseDto> guess) {
+    return guess
+      .map(PolicyGuessResponseDto::getInceptionInStockholm)
+      .orElseGet(() -> event.getTime().atZone(STOCKHOLM).toLocalDate())
+      .getYear();
+  }
+
+  private static int bucketOf(final ChargeSource chargeSource) {
+    switch (chargeSource) {
+      case STUDENT_INSURANCE:
+        return STUDENT;
+      case HOUSEHOLD_INSURANCE:
+        return HOUSEHOLD;
+      case HOUSE_INSURANCE:
+        return HOUSE;
+      default:
+        return TOTAL;
+    }
+  }
+
+  private static final class Columns {
+    final int size;
+    final long[] amounts;
+    final byte[] scales;
+    final byte[] buckets;
+    final int[] years;
+    final int scale;
+    final int minYear;
+    final int yearSpan;
+
+    private Columns(long[] amounts, byte[] scales, byte[] buckets, int[] years, int scale, int minYear, int yearSpan) {
+      this.size = amounts.length;
+      this.amounts = amounts;
+      this.scales = scales;
+      this.buckets = buckets;
+      this.years = years;
+      this.scale = scale;
+      this.minYear = minYear;
+      this.yearSpan = yearSpan;
+    }
+
+    /**
+     * @return the events as columns, or null if they can't be summed as longs
+     */
+    static Columns of(
+      final List<TransactionHistoryEntity> events,
+      final Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
+    ) {
+      final int size = events.size();
+      final long[] amounts = new long[size];
+      final byte[] scales = new byte[size];
+      final byte[] buckets = new byte[size];
+      final int[] years = new int[size];
+
+      int scale = 0;
+      int minYear = Integer.MAX_VALUE;
+      int maxYear = Integer.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        final TransactionHistoryEntity event = events.get(i);
+        final Optional<PolicyGuessResponseDto> guess = guessOf(event, transactionGuesses);
+        buckets[i] = (byte) bucketOf(ChargeSource.from(guess.map(PolicyGuessResponseDto::getProductType)));
+        years[i] = underwritingYear(event, guess);
+        minYear = Math.min(minYear, years[i]);
+        maxYear = Math.max(maxYear, years[i]);
+
+        final BigDecimal amount = event.getAmount();
+        if (amount == null) {
+          scales[i] = NO_AMOUNT;
+        } else {
+          final int amountScale = Math.max(amount.scale(), 0);
+          if (amountScale > Byte.MAX_VALUE) {
+            return null;
+          }
+          scales[i] = (byte) amountScale;
+          scale = Math.max(scale, amountScale);
+        }
+      }
+      if (size > 0 && maxYear - minYear >= MAX_YEAR_SPAN) {
+        return null;
+      }
+
+      for (int i = 0; i < size; i++) {
+        if (scales[i] == NO_AMOUNT) {
+          continue;
+        }
+        final BigInteger unscaled = events.get(i).getAmount().setScale(scale).unscaledValue();
+        if (unscaled.bitLength() > 63) {
+          return null;
+        }
+        amounts[i] = unscaled.longValue();
+      }
+      return new Columns(amounts, scales, buckets, years, scale, minYear, size == 0 ? 0 : maxYear - minYear + 1);
+    }
+
+    Sums sum(final int from, final int to) {
+      final Sums sums = new Sums(yearSpan);
+      for (int i = from; i < to; i++) {
+        final int year = years[i] - minYear;
+        final int amountScale = scales[i] == NO_AMOUNT ? 0 : scales[i];
+        if (buckets[i] != TOTAL) {
+          sums.add(buckets[i] * yearSpan + year, amounts[i], amountScale);
+        }
+        sums.add(TOTAL * yearSpan + year, amounts[i], amountScale);
+      }
+      return sums;
+    }
+  }
+
+  private static final class Sums {
+    final long[] amounts;
+    /**
+     * The largest scale of the amounts in each sum, or -1 where nothing was added.
+     */
+    final int[] scales;
+
+    Sums(final int yearSpan) {
+      amounts = new long[BUCKETS * yearSpan];
+      scales = new int[BUCKETS * yearSpan];
+      Arrays.fill(scales, -1);
+    }
+
+    void add(final int index, final long amount, final int scale) {
+      amounts[index] = Math.addExact(amounts[index], amount);
+      scales[index] = Math.max(scales[index], scale);
+    }
+
+    Sums merge(final Sums other) {
+      for (int i = 0; i < amounts.length; i++) {
+        amounts[i] = Math.addExact(amounts[i], other.amounts[i]);
+        scales[i] = Math.max(scales[i], other.scales[i]);
+      }
+      return this;
+    }
+
+    MonthlyTransactionsAggregations toAggregations(final Columns columns) {
+      return new MonthlyTransactionsAggregations(
+        toMap(STUDENT, columns),
+        toMap(HOUSEHOLD, columns),
+        toMap(HOUSE, columns),
+        toMap(TOTAL, columns)
+      );
+    }
+
+    private Map<Year, BigDecimal> toMap(final int bucket, final Columns columns) {
+      final Map<Year, BigDecimal> sums = new HashMap<>();
+      for (int year = 0; year < columns.yearSpan; year++) {
+        final int index = bucket * columns.yearSpan + year;
+        if (scales[index] >= 0) {
+          sums.put(
+            Year.of(columns.minYear + year),
+            BigDecimal.valueOf(amounts[index], columns.scale).setScale(scales[index], RoundingMode.UNNECESSARY)
+          );
+        }
+      }
+      return sums;
+    }
+  }
+
+  private static final class SumTask extends RecursiveTask<Sums> {
+    private final Columns columns;
+    private final int from;
+    private final int to;
+    private final int threshold;
+
+    SumTask(final Columns columns, final int from, final int to, final int threshold) {
+      this.columns = columns;
+      this.from = from;
+      this.to = to;
+      this.threshold = threshold;
+    }
+
+    @Override
+    protected Sums compute() {
+      if (to - from <= threshold) {
+        return columns.sum(from, to);
+      }
+      final int middle = (from + to) >>> 1;
+      final SumTask left = new SumTask(columns, from, middle, threshold);
+      left.fork();
+      final Sums right = new SumTask(columns, middle, to, threshold).compute();
+      return left.join().merge(right);
+    }
+  }
+}
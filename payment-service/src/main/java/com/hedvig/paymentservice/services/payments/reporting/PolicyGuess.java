@@ -0,0 +1,52 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGuessResponseDto;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A policy type guessed by product-pricing for a transaction, kept so reports don't ask again.
+ * A transaction product-pricing was unsure about has neither a product type nor an inception date.
+ */
+@Data
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+public class PolicyGuess {
+  @Id
+  private UUID transactionId;
+
+  @Enumerated(EnumType.STRING)
+  private PolicyType productType;
+
+  private LocalDate inceptionInStockholm;
+
+  private Instant guessedAt;
+
+  public static PolicyGuess from(final UUID transactionId, final Optional<PolicyGuessResponseDto> guess, final Instant guessedAt) {
+    return new PolicyGuess(
+      transactionId,
+      guess.map(PolicyGuessResponseDto::getProductType).orElse(null),
+      guess.map(PolicyGuessResponseDto::getInceptionInStockholm).orElse(null),
+      guessedAt
+    );
+  }
+
+  public Optional<PolicyGuessResponseDto> toResponse() {
+    if (productType == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new PolicyGuessResponseDto(productType, inceptionInStockholm));
+  }
+}
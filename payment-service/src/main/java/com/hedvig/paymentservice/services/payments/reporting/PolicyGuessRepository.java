@@ -0,0 +1,20 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+@Repository
+public interface PolicyGuessRepository extends CrudRepository<PolicyGuess, UUID> {
+
+    /**
+     * Guesses are stored while serving reports, whose reads may be pinned to the read replica, so they
+     * are written in a transaction of their own.
+     */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    <S extends PolicyGuess> Iterable<S> saveAll(Iterable<S> entities);
+}
@@ -9,18 +9,14 @@ import com.hedvig.paymentservice.services.payments.TransactionHistoryDao;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.Year;
 import java.time.YearMonth;
 import java.time.ZoneId;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
@@ -30,6 +26,7 @@ import static java.util.stream.Collectors.toMap;
 public class TransactionAggregatorImpl implements TransactionAggregator {
   private final TransactionHistoryDao transactionHistoryDao;
   private final ChargeSourceGuesser chargeSourceGuesser;
+  private final ColumnarChargeAggregator chargeAggregator = new ColumnarChargeAggregator(ColumnarChargeAggregator.DEFAULT_PARALLEL_THRESHOLD);
 
   @Autowired
   public TransactionAggregatorImpl(final TransactionHistoryDao transactionHistoryDao, final ChargeSourceGuesser chargeSourceGuesser) {
@@ -49,56 +46,16 @@ public class TransactionAggregatorImpl implements TransactionAggregator {
       .filter(isWithinPeriod(period))
       .collect(toMap(Transaction::getId, tx -> tx));
     final Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses = chargeSourceGuesser.guessChargesMetadata(transactionsById.values(), period);
-    final Map<UUID, ChargeSource> transactionChargeSources = transactionGuesses.entrySet().stream()
-      .collect(toMap(
-        Map.Entry::getKey,
-        entry -> ChargeSource.from(entry.getValue().map(PolicyGuessResponseDto::getProductType))
-      ));
 
     final List<TransactionHistoryEntity> allTxEvents = historyEntitiesByTxId.values().stream()
-      .filter(this::hasNoFailedEvents)
-      .filter(this::hasCompleted)
+      .filter(this::hasCompletedWithoutFailures)
       .filter(isCharge(transactionsById))
       .flatMap(transactionHistoryEvents ->
         transactionHistoryEvents.stream()
           .filter(event -> event.getType().equals(TransactionHistoryEventType.COMPLETED)))
       .collect(toList());
 
-    final Map<Year, BigDecimal> studentAggregation = aggregateByUnderwritingYear(
-      allTxEvents.stream()
-        .filter(txe -> transactionChargeSources.get(txe.getTransactionId()).equals(ChargeSource.STUDENT_INSURANCE)),
-      transactionGuesses
-    );
-    final Map<Year, BigDecimal> householdAggregation = aggregateByUnderwritingYear(allTxEvents.stream()
-        .filter(txe -> transactionChargeSources.get(txe.getTransactionId()).equals(ChargeSource.HOUSEHOLD_INSURANCE)),
-      transactionGuesses
-    );
-    final Map<Year, BigDecimal> houseAggregation = aggregateByUnderwritingYear(allTxEvents.stream()
-        .filter(txe -> transactionChargeSources.get(txe.getTransactionId()).equals(ChargeSource.HOUSE_INSURANCE)),
-      transactionGuesses
-    );
-    final Map<Year, BigDecimal> totalAggregation = aggregateByUnderwritingYear(allTxEvents.stream(), transactionGuesses);
-    return new MonthlyTransactionsAggregations(studentAggregation, householdAggregation, houseAggregation, totalAggregation);
-  }
-
-  private Map<Year, BigDecimal> aggregateByUnderwritingYear(
-    final Stream<TransactionHistoryEntity> txes,
-    Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
-  ) {
-    return txes
-      .collect(groupingBy(txe -> Year.from(
-        transactionGuesses.get(txe.getTransactionId())
-          .map(PolicyGuessResponseDto::getInceptionInStockholm)
-          .orElseGet(() -> txe.getTime().atZone(ZoneId.of("Europe/Stockholm")).toLocalDate()))
-      ))
-      .entrySet().stream()
-      .collect(toMap(
-        Map.Entry::getKey,
-        entry -> entry.getValue().stream()
-          .map(TransactionHistoryEntity::getAmount)
-          .filter(Objects::nonNull)
-          .reduce(BigDecimal.ZERO, BigDecimal::add)
-      ));
+    return chargeAggregator.aggregate(allTxEvents, transactionGuesses);
   }
 
   private Predicate<Transaction> isWithinPeriod(final YearMonth period) {
@@ -108,16 +65,21 @@ public class TransactionAggregatorImpl implements TransactionAggregator {
     };
   }
 
-  private boolean hasNoFailedEvents(final List<TransactionHistoryEntity> transactionHistoryEvents) {
-    return transactionHistoryEvents.parallelStream().noneMatch(
-      event ->
-        event.getType().equals(TransactionHistoryEventType.FAILED)
-          || event.getType().equals(TransactionHistoryEventType.ERROR)
-    );
-  }
-
-  private boolean hasCompleted(final List<TransactionHistoryEntity> transactionHistoryEvents) {
-    return transactionHistoryEvents.parallelStream().anyMatch(event -> event.getType().equals(TransactionHistoryEventType.COMPLETED));
+  private boolean hasCompletedWithoutFailures(final List<TransactionHistoryEntity> transactionHistoryEvents) {
+    boolean hasCompleted = false;
+    for (final TransactionHistoryEntity event : transactionHistoryEvents) {
+      switch (event.getType()) {
+        case FAILED:
+        case ERROR:
+          return false;
+        case COMPLETED:
+          hasCompleted = true;
+          break;
+        default:
+          break;
+      }
+    }
+    return hasCompleted;
   }
 
   private Predicate<List<TransactionHistoryEntity>> isCharge(final Map<UUID, Transaction> transactionsById) {
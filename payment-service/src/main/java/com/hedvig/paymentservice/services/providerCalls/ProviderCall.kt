@@ -0,0 +1,52 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.EnumType
+import javax.persistence.Enumerated
+import javax.persistence.GeneratedValue
+import javax.persistence.GenerationType
+import javax.persistence.Id
+import javax.persistence.Index
+import javax.persistence.SequenceGenerator
+import javax.persistence.Table
+
+/**
+ * A call to a payment provider waiting to be made by [ProviderCallDispatcher]. It is written by the event
+ * handler that needs the call in the same transaction as the event handling, so it is made even if the
+ * service restarts in between. The request is kept serialized with the Axon serializer.
+ */
+@Entity
+@Table(
+    indexes = [
+        Index(name = "idx_provider_call_provider_pending", columnList = "provider,completed_at"),
+        Index(name = "idx_provider_call_transaction", columnList = "transaction_id")
+    ]
+)
+class ProviderCall(
+    val memberId: String,
+    val transactionId: UUID,
+    @Enumerated(EnumType.STRING)
+    val provider: PaymentProvider,
+    val requestType: String,
+    @Column(columnDefinition = "TEXT")
+    val request: String,
+    val createdAt: Instant
+) {
+    // Ids are taken one at a time so they follow the order the calls were enqueued in
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "provider_call_id")
+    @SequenceGenerator(name = "provider_call_id", sequenceName = "provider_call_seq", allocationSize = 1)
+    val id: Long = 0
+    var claimedAt: Instant? = null
+    var completedAt: Instant? = null
+    var failed: Boolean = false
+}
+
+enum class PaymentProvider {
+    TRUSTLY,
+    ADYEN,
+    SWISH
+}
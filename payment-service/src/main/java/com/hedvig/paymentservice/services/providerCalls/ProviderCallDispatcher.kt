@@ -0,0 +1,149 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import com.hedvig.paymentservice.common.PolledValue
+import com.hedvig.paymentservice.services.trustly.TrustlyService
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import java.time.Instant
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.annotation.PreDestroy
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.axonframework.serialization.Serializer
+import org.axonframework.serialization.SimpleSerializedObject
+import org.slf4j.LoggerFactory
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Makes the calls enqueued in [ProviderCallQueue]. Every provider has its own bounded pool of workers, so
+ * a slow provider only holds back its own calls, and no more calls are claimed than there are idle
+ * workers. Only the oldest pending call of a transaction is made at a time.
+ *
+ * The outcome of a call is reported back as commands by the code making it, as it was when the calls
+ * were made during event handling. A failing call is logged and not retried, since the provider may
+ * have acted on it. Calls that were in flight when the service stopped are made again once their claim
+ * expires.
+ *
+ * Trustly orders are created right before the call starting them, not by the event handler enqueueing the
+ * call. That handler runs on a lane of the command bus, where it cannot wait for a command for another
+ * aggregate to be handled. A call made again fails on creating its order, which already exists.
+ */
+@Component
+class ProviderCallDispatcher(
+    private val providerCallRepository: ProviderCallRepository,
+    private val trustlyService: TrustlyService,
+    private val commandGateway: CommandGateway,
+    private val serializer: Serializer,
+    private val properties: ProviderCallProperties,
+    meterRegistry: MeterRegistry
+) {
+    private val pools = PaymentProvider.values().associate { provider ->
+        provider to WorkerPool(
+            provider,
+            properties.workers(provider),
+            meterRegistry.timer("provider.calls", "provider", provider.name)
+        )
+    }
+
+    private val failureCounter = meterRegistry.counter("provider.calls.failures")
+
+    private val pendingCalls = PaymentProvider.values().associate { provider ->
+        provider to PolledValue { providerCallRepository.countByProviderAndCompletedAtIsNull(provider) }
+    }
+
+    init {
+        pendingCalls.forEach { (provider, pending) ->
+            Gauge.builder("provider.calls.depth", pending) { it.value?.toDouble() ?: Double.NaN }
+                .tag("provider", provider.name)
+                .register(meterRegistry)
+        }
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.provider-calls.poll-interval:500}")
+    fun dispatchPendingCalls() {
+        pendingCalls.values.forEach { it.refresh() }
+        pools.values.forEach { dispatch(it) }
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        pools.values.forEach { it.executor.shutdown() }
+        pools.values.forEach { it.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS) }
+    }
+
+    private fun dispatch(pool: WorkerPool) {
+        val idle = pool.size - pool.busy.get()
+        if (idle <= 0) {
+            return
+        }
+
+        val now = Instant.now()
+        val claimExpiredBefore = now.minus(properties.claimTimeout)
+
+        providerCallRepository
+            .findDispatchable(pool.provider, claimExpiredBefore, PageRequest.of(0, idle))
+            .filter { providerCallRepository.claim(it.id, now, claimExpiredBefore) == 1 }
+            .forEach { call ->
+                pool.busy.incrementAndGet()
+                pool.executor.execute {
+                    try {
+                        pool.timer.recordCallable { execute(call) }
+                    } finally {
+                        pool.busy.decrementAndGet()
+                    }
+                }
+            }
+    }
+
+    internal fun execute(call: ProviderCall) {
+        val failed = try {
+            perform(deserialize(call))
+            false
+        } catch (exception: Exception) {
+            failureCounter.increment()
+            logger.error(
+                "Call to payment provider failed " +
+                    "[Provider: ${call.provider}] [MemberId: ${call.memberId}] " +
+                    "[TransactionId: ${call.transactionId}] [RequestType: ${call.requestType}]",
+                exception
+            )
+            true
+        }
+        providerCallRepository.markCompleted(call.id, Instant.now(), failed)
+    }
+
+    private fun perform(request: ProviderCallRequest) {
+        when (request) {
+            is ProviderCallRequest.TrustlyPaymentOrder -> {
+                commandGateway.sendAndWait<Any>(request.createOrder)
+                trustlyService.startPaymentOrder(request.request, request.hedvigOrderId)
+            }
+            is ProviderCallRequest.TrustlyPayoutOrder -> {
+                commandGateway.sendAndWait<Any>(request.createOrder)
+                trustlyService.startPayoutOrder(request.request, request.hedvigOrderId)
+            }
+            is ProviderCallRequest.Command ->
+                commandGateway.sendAndWait<Any>(request.command)
+        }
+    }
+
+    private fun deserialize(call: ProviderCall): ProviderCallRequest =
+        serializer.deserialize(SimpleSerializedObject(call.request, String::class.java, call.requestType, null))
+
+    private class WorkerPool(val provider: PaymentProvider, val size: Int, val timer: Timer) {
+        val executor: ExecutorService = Executors.newFixedThreadPool(size) { runnable ->
+            Thread(runnable, "provider-calls-${provider.name.toLowerCase()}").apply { isDaemon = true }
+        }
+        val busy = AtomicInteger()
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+    }
+}
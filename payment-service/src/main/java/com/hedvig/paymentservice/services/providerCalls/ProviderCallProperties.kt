@@ -0,0 +1,20 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.provider-calls")
+class ProviderCallProperties {
+    var trustlyWorkers: Int = 4
+    var adyenWorkers: Int = 4
+    var swishWorkers: Int = 2
+    var claimTimeout: Duration = Duration.ofMinutes(10)
+
+    fun workers(provider: PaymentProvider): Int = when (provider) {
+        PaymentProvider.TRUSTLY -> trustlyWorkers
+        PaymentProvider.ADYEN -> adyenWorkers
+        PaymentProvider.SWISH -> swishWorkers
+    }
+}
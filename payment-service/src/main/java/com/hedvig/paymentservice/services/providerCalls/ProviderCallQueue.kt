@@ -0,0 +1,68 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePaymentOrderCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePayoutOrderCommand
+import com.hedvig.paymentservice.services.trustly.dto.PaymentRequest
+import com.hedvig.paymentservice.services.trustly.dto.PayoutRequest
+import java.time.Instant
+import java.util.UUID
+import org.axonframework.serialization.Serializer
+import org.springframework.stereotype.Component
+
+/**
+ * Lets event handlers hand calls to payment providers over to [ProviderCallDispatcher] instead of making
+ * them on the event processing thread. Must be called within the transaction of the event handler.
+ */
+@Component
+class ProviderCallQueue(
+    private val providerCallRepository: ProviderCallRepository,
+    private val serializer: Serializer
+) {
+    fun enqueueTrustlyPaymentOrder(
+        transactionId: UUID,
+        hedvigOrderId: UUID,
+        request: PaymentRequest,
+        createOrder: CreatePaymentOrderCommand
+    ) =
+        enqueue(
+            PaymentProvider.TRUSTLY,
+            request.memberId,
+            transactionId,
+            ProviderCallRequest.TrustlyPaymentOrder(hedvigOrderId, request, createOrder)
+        )
+
+    fun enqueueTrustlyPayoutOrder(
+        transactionId: UUID,
+        hedvigOrderId: UUID,
+        request: PayoutRequest,
+        createOrder: CreatePayoutOrderCommand
+    ) =
+        enqueue(
+            PaymentProvider.TRUSTLY,
+            request.memberId,
+            transactionId,
+            ProviderCallRequest.TrustlyPayoutOrder(hedvigOrderId, request, createOrder)
+        )
+
+    fun enqueueCommand(provider: PaymentProvider, memberId: String, transactionId: UUID, command: Any) =
+        enqueue(provider, memberId, transactionId, ProviderCallRequest.Command(command))
+
+    private fun enqueue(
+        provider: PaymentProvider,
+        memberId: String,
+        transactionId: UUID,
+        request: ProviderCallRequest
+    ) {
+        val serialized = serializer.serialize(request, String::class.java)
+        providerCallRepository.save(
+            ProviderCall(
+                memberId = memberId,
+                transactionId = transactionId,
+                provider = provider,
+                requestType = serialized.type.name,
+                request = serialized.data,
+                createdAt = Instant.now()
+            )
+        )
+    }
+}
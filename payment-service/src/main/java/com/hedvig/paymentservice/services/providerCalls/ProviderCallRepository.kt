@@ -0,0 +1,59 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import java.time.Instant
+import org.springframework.data.domain.Pageable
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.data.repository.query.Param
+import org.springframework.stereotype.Repository
+import org.springframework.transaction.annotation.Transactional
+
+@Repository
+interface ProviderCallRepository : JpaRepository<ProviderCall, Long> {
+    /**
+     * The oldest pending call of each transaction to the provider, as long as it is not claimed by another
+     * dispatcher. Later calls of a transaction are only returned once the ones before are completed.
+     */
+    @Query(
+        "SELECT c FROM ProviderCall c " +
+            "WHERE c.provider = :provider " +
+            "AND c.completedAt IS NULL " +
+            "AND (c.claimedAt IS NULL OR c.claimedAt < :claimExpiredBefore) " +
+            "AND NOT EXISTS (" +
+            "SELECT e.id FROM ProviderCall e " +
+            "WHERE e.transactionId = c.transactionId AND e.completedAt IS NULL AND e.id < c.id" +
+            ") " +
+            "ORDER BY c.id"
+    )
+    fun findDispatchable(
+        @Param("provider") provider: PaymentProvider,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant,
+        pageable: Pageable
+    ): List<ProviderCall>
+
+    @Transactional
+    @Modifying
+    @Query(
+        "UPDATE ProviderCall c SET c.claimedAt = :claimedAt " +
+            "WHERE c.id = :id " +
+            "AND c.completedAt IS NULL " +
+            "AND (c.claimedAt IS NULL OR c.claimedAt < :claimExpiredBefore)"
+    )
+    fun claim(
+        @Param("id") id: Long,
+        @Param("claimedAt") claimedAt: Instant,
+        @Param("claimExpiredBefore") claimExpiredBefore: Instant
+    ): Int
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProviderCall c SET c.completedAt = :completedAt, c.failed = :failed WHERE c.id = :id")
+    fun markCompleted(
+        @Param("id") id: Long,
+        @Param("completedAt") completedAt: Instant,
+        @Param("failed") failed: Boolean
+    ): Int
+
+    fun countByProviderAndCompletedAtIsNull(provider: PaymentProvider): Long
+}
@@ -0,0 +1,34 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePaymentOrderCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePayoutOrderCommand
+import com.hedvig.paymentservice.services.trustly.dto.PaymentRequest
+import com.hedvig.paymentservice.services.trustly.dto.PayoutRequest
+import java.util.UUID
+
+sealed class ProviderCallRequest {
+    /**
+     * [createOrder] creates the order the call is made for, before it is made.
+     */
+    data class TrustlyPaymentOrder(
+        val hedvigOrderId: UUID,
+        val request: PaymentRequest,
+        val createOrder: CreatePaymentOrderCommand
+    ) : ProviderCallRequest()
+
+    /**
+     * See [TrustlyPaymentOrder].
+     */
+    data class TrustlyPayoutOrder(
+        val hedvigOrderId: UUID,
+        val request: PayoutRequest,
+        val createOrder: CreatePayoutOrderCommand
+    ) : ProviderCallRequest()
+
+    /**
+     * A command whose handler calls the provider, like the ones initiating Adyen and Swish transactions.
+     */
+    data class Command(
+        val command: Any
+    ) : ProviderCallRequest()
+}
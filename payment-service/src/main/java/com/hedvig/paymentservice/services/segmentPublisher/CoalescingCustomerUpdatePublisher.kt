@@ -0,0 +1,185 @@
+package com.hedvig.paymentservice.services.segmentPublisher
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.hedvig.paymentservice.serviceIntergration.notificationService.NotificationService
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import javax.annotation.PreDestroy
+import org.slf4j.LoggerFactory
+import org.springframework.context.annotation.Profile
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.repository.findByIdOrNull
+import org.springframework.scheduling.annotation.Scheduled
+import org.springframework.stereotype.Component
+
+/**
+ * Buffers customer.io trait updates and coalesces them per member, so a burst of events for one member
+ * turns into a single call to notification-service with the latest value of each trait. Pending updates
+ * are flushed on a thread of their own every window, or as soon as
+ * [CustomerUpdatePublisherProperties.maxPendingMembers] members are waiting. Updates of members beyond
+ * that are stored as [PendingCustomerUpdate], as is whatever can not be flushed on shutdown, and picked up
+ * again by a later flush. A flush stops at the first failure and the next one waits for a growing backoff.
+ */
+@Component(CoalescingCustomerUpdatePublisher.NAME)
+@Profile("customer.io")
+class CoalescingCustomerUpdatePublisher(
+    private val notificationService: NotificationService,
+    private val pendingCustomerUpdateRepository: PendingCustomerUpdateRepository,
+    private val objectMapper: ObjectMapper,
+    private val properties: CustomerUpdatePublisherProperties,
+    meterRegistry: MeterRegistry
+) : NotificationService {
+    private val pending = ConcurrentHashMap<String, Map<String, Any?>>()
+
+    private val executor: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "customer-io-publisher").apply { isDaemon = true }
+    }
+    private val flushRequested = AtomicBoolean()
+    private val storeLock = Any()
+
+    @Volatile
+    private var nextFlushAt = Instant.MIN
+    private var consecutiveFailures = 0
+
+    private val receivedCounter = meterRegistry.counter("customerio.updates.received")
+    private val sentCounter = meterRegistry.counter("customerio.updates.sent")
+    private val failureCounter = meterRegistry.counter("customerio.updates.failures")
+    private val storedCounter = meterRegistry.counter("customerio.updates.stored")
+
+    init {
+        Gauge.builder("customerio.updates.pending", pending) { it.size.toDouble() }
+            .register(meterRegistry)
+    }
+
+    override fun updateCustomer(memberId: String, data: Map<String, Any?>) {
+        receivedCounter.increment()
+        pending.merge(memberId, data) { previous, latest -> previous + latest }
+        if (pending.size > properties.maxPendingMembers) {
+            store(memberId)
+        }
+        if (pending.size >= properties.maxPendingMembers) {
+            requestFlush()
+        }
+    }
+
+    override fun updateCustomer(memberId: String, data: JsonNode) {
+        updateCustomer(memberId, objectMapper.convertValue<Map<String, Any?>>(data, TRAITS_TYPE))
+    }
+
+    @Scheduled(fixedDelayString = "\${hedvig.customer-io.publisher.window:2000}")
+    fun requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            executor.execute {
+                flushRequested.set(false)
+                flush()
+            }
+        }
+    }
+
+    @Synchronized
+    fun flush() {
+        if (Instant.now().isBefore(nextFlushAt)) {
+            return
+        }
+        restoreStored()
+        publishPending()
+    }
+
+    @PreDestroy
+    fun shutdown() {
+        executor.shutdown()
+        executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        synchronized(this) {
+            if (!Instant.now().isBefore(nextFlushAt)) {
+                publishPending()
+            }
+        }
+        if (pending.isEmpty()) {
+            return
+        }
+        val count = pending.size
+        pending.keys.forEach { store(it) }
+        logger.info("Stored pending customer updates until next start [Count: $count]")
+    }
+
+    private fun publishPending() {
+        for (memberId in pending.keys) {
+            val traits = pending.remove(memberId) ?: continue
+            try {
+                notificationService.updateCustomer(memberId, traits)
+                sentCounter.increment()
+            } catch (exception: Exception) {
+                failureCounter.increment()
+                // Updates that arrived in the meantime are newer than the failed ones
+                pending.merge(memberId, traits) { latest, failed -> failed + latest }
+                consecutiveFailures += 1
+                nextFlushAt = Instant.now().plus(backoff(consecutiveFailures))
+                logger.error(
+                    "Could not update customer, retrying at $nextFlushAt " +
+                        "[MemberId: $memberId] [ConsecutiveFailures: $consecutiveFailures]",
+                    exception
+                )
+                return
+            }
+        }
+        consecutiveFailures = 0
+    }
+
+    /**
+     * Takes stored updates back in while there is room, oldest first. Traits pending in memory are newer
+     * than the stored ones.
+     */
+    private fun restoreStored() {
+        val room = properties.maxPendingMembers - pending.size
+        if (room <= 0) {
+            return
+        }
+        synchronized(storeLock) {
+            val stored = pendingCustomerUpdateRepository.findByOrderBySavedAtAsc(PageRequest.of(0, room))
+            stored.forEach { update ->
+                pending.merge(update.memberId, readTraits(update)) { latest, restored -> restored + latest }
+            }
+            pendingCustomerUpdateRepository.deleteAll(stored)
+        }
+    }
+
+    private fun store(memberId: String) {
+        val traits = pending.remove(memberId) ?: return
+        synchronized(storeLock) {
+            val stored = pendingCustomerUpdateRepository.findByIdOrNull(memberId)
+            pendingCustomerUpdateRepository.save(
+                PendingCustomerUpdate(
+                    memberId,
+                    objectMapper.writeValueAsString(stored?.let { readTraits(it) + traits } ?: traits),
+                    stored?.savedAt ?: Instant.now()
+                )
+            )
+        }
+        storedCounter.increment()
+    }
+
+    private fun readTraits(update: PendingCustomerUpdate): Map<String, Any?> =
+        objectMapper.readValue(update.traits, TRAITS_TYPE)
+
+    private fun backoff(failures: Int): Duration {
+        val backoff = properties.initialBackoff.multipliedBy(1L shl (failures - 1).coerceAtMost(MAX_BACKOFF_EXPONENT))
+        return if (backoff > properties.maxBackoff) properties.maxBackoff else backoff
+    }
+
+    companion object {
+        const val NAME = "coalescingCustomerUpdatePublisher"
+        private val TRAITS_TYPE = object : TypeReference<Map<String, Any?>>() {}
+        private val logger = LoggerFactory.getLogger(this::class.java)!!
+        private const val MAX_BACKOFF_EXPONENT = 20
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 10L
+    }
+}
@@ -0,0 +1,21 @@
+package com.hedvig.paymentservice.services.segmentPublisher
+
+import java.time.Duration
+import org.springframework.boot.context.properties.ConfigurationProperties
+import org.springframework.context.annotation.Configuration
+
+@Configuration
+@ConfigurationProperties("hedvig.customer-io.publisher")
+class CustomerUpdatePublisherProperties {
+    /**
+     * Members kept in memory. A flush is requested once this many are waiting, and the updates of members
+     * beyond it are stored as [PendingCustomerUpdate] until there is room again.
+     */
+    var maxPendingMembers: Int = 10_000
+
+    /**
+     * How long flushing pauses after notification-service failed, doubling with every failed flush in a row.
+     */
+    var initialBackoff: Duration = Duration.ofSeconds(1)
+    var maxBackoff: Duration = Duration.ofMinutes(5)
+}
@@ -0,0 +1,19 @@
+package com.hedvig.paymentservice.services.segmentPublisher
+
+import java.time.Instant
+import javax.persistence.Column
+import javax.persistence.Entity
+import javax.persistence.Id
+
+/**
+ * Traits that [CoalescingCustomerUpdatePublisher] could not keep in memory, either because too many members
+ * were pending or because it was shutting down. They are picked up again once there is room.
+ */
+@Entity
+class PendingCustomerUpdate(
+    @Id
+    val memberId: String,
+    @Column(columnDefinition = "TEXT")
+    val traits: String,
+    val savedAt: Instant
+)
@@ -0,0 +1,10 @@
+package com.hedvig.paymentservice.services.segmentPublisher
+
+import org.springframework.data.domain.Pageable
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.stereotype.Repository
+
+@Repository
+interface PendingCustomerUpdateRepository : JpaRepository<PendingCustomerUpdate, String> {
+    fun findByOrderBySavedAtAsc(pageable: Pageable): List<PendingCustomerUpdate>
+}
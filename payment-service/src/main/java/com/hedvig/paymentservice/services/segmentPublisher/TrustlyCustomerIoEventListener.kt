@@ -7,6 +7,7 @@ import com.hedvig.paymentservice.serviceIntergration.notificationService.Notific
 import org.axonframework.config.ProcessingGroup
 import org.axonframework.eventhandling.EventHandler
 import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.context.annotation.Profile
 import org.springframework.stereotype.Component
 
@@ -14,6 +15,7 @@ import org.springframework.stereotype.Component
 @Profile("customer.io")
 @ProcessingGroup("TrustlySegmentProcessorGroup")
 class TrustlyCustomerIoEventListener(
+    @Qualifier(CoalescingCustomerUpdatePublisher.NAME)
     val notificationService: NotificationService
 ) {
     @EventHandler
@@ -0,0 +1,22 @@
+package com.hedvig.paymentservice.services.trustly
+
+import com.hedvig.paymentService.trustly.commons.Method
+import java.time.Instant
+import javax.persistence.Entity
+import javax.persistence.EnumType
+import javax.persistence.Enumerated
+import javax.persistence.Id
+
+/**
+ * Index of Trustly notification ids that have been dispatched successfully, consulted before dispatching
+ * so that retried notifications do not load the TrustlyOrder aggregate again. The aggregate's own
+ * `handledNotifications` remain the authoritative guard.
+ */
+@Entity
+class HandledTrustlyNotification(
+    @Id
+    val notificationId: String,
+    @Enumerated(EnumType.STRING)
+    val method: Method,
+    val handledAt: Instant
+)
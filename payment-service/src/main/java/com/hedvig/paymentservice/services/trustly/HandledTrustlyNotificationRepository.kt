@@ -0,0 +1,7 @@
+package com.hedvig.paymentservice.services.trustly
+
+import org.springframework.data.jpa.repository.JpaRepository
+import org.springframework.stereotype.Repository
+
+@Repository
+interface HandledTrustlyNotificationRepository : JpaRepository<HandledTrustlyNotification, String>
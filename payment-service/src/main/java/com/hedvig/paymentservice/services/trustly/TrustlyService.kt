@@ -36,6 +36,7 @@ import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistrat
 import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistrationRepository
 import com.hedvig.paymentservice.query.trustlyOrder.enteties.TrustlyOrderRepository
 import com.hedvig.paymentservice.services.Helpers
+import com.hedvig.paymentservice.services.commands.TimedCommandGateway
 import com.hedvig.paymentservice.services.exceptions.OrderNotFoundException
 import com.hedvig.paymentservice.services.trustly.dto.DirectDebitOrderInfo
 import com.hedvig.paymentservice.services.trustly.dto.OrderInformation
@@ -47,12 +48,14 @@ import java.math.BigDecimal
 import java.net.URI
 import java.text.DecimalFormat
 import java.text.DecimalFormatSymbols
+import java.time.Instant
 import java.time.OffsetDateTime
 import java.time.format.DateTimeFormatter
 import java.time.format.DateTimeFormatterBuilder
 import java.time.temporal.ChronoField
 import java.util.Locale
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
 import javax.money.CurrencyContextBuilder
 import javax.money.CurrencyUnit
 import org.axonframework.commandhandling.gateway.CommandGateway
@@ -61,15 +64,18 @@ import org.javamoney.moneta.Money
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.core.env.Environment
+import org.springframework.dao.DataIntegrityViolationException
 import org.springframework.stereotype.Component
 
 @Component
 class TrustlyService(
     private val api: SignedAPI,
     private val commandGateway: CommandGateway,
+    private val timedCommandGateway: TimedCommandGateway,
     private val uuidGenerator: UUIDGenerator,
     private val orderRepository: TrustlyOrderRepository,
     private val accountRegistrationRepository: AccountRegistrationRepository,
+    private val handledNotificationRepository: HandledTrustlyNotificationRepository,
     private val trustlyConfiguration: HedvigTrustlyConfiguration,
     @param:Value("\${hedvig.trustly.successURL}") private val redirectingToBotServiceSuccessUrl: String,
     @param:Value("\${hedvig.trustly.failURL}") private val redirectingToBotServiceFailUrl: String,
@@ -376,13 +382,19 @@ class TrustlyService(
         return api.sendRequest(request, Account.PREMIUM)
     }
 
-    fun receiveNotification(notification: Notification): ResponseStatus {
+    fun receiveNotification(notification: Notification): CompletableFuture<ResponseStatus> {
 
         log.info("Received notification from Trustly: {}", notification.method)
 
         val requestId = UUID.fromString(notification.params.data.messageId)
+        val notificationId: String? = notification.params.data.notificationId
 
-        when (notification.method) {
+        if (notificationId != null && handledNotificationRepository.existsById(notificationId)) {
+            log.info("Acknowledging already handled notification from Trustly [NotificationId: {}]", notificationId)
+            return CompletableFuture.completedFuture(ResponseStatus.OK)
+        }
+
+        val command: Any = when (notification.method) {
             Method.ACCOUNT -> {
                 val accountData = notification.params.data as AccountNotificationData
 
@@ -402,23 +414,21 @@ class TrustlyService(
                 val notificationId = accountData.notificationId
                 val orderId = accountData.orderId
 
-                commandGateway.sendAndWait<Void>(
-                    AccountNotificationReceivedCommand(
-                        requestId,
-                        notificationId,
-                        orderId!!,
-                        accountId,
-                        address,
-                        bank,
-                        city,
-                        clearingHouse,
-                        descriptor,
-                        directDebitMandate?.equals("1"),
-                        lastDigits,
-                        name,
-                        personId,
-                        zipCode
-                    )
+                AccountNotificationReceivedCommand(
+                    requestId,
+                    notificationId,
+                    orderId!!,
+                    accountId,
+                    address,
+                    bank,
+                    city,
+                    clearingHouse,
+                    descriptor,
+                    directDebitMandate?.equals("1"),
+                    lastDigits,
+                    name,
+                    personId,
+                    zipCode
                 )
             }
 
@@ -430,15 +440,13 @@ class TrustlyService(
 
                 val pendingTimestamp = OffsetDateTime.parse(pendingData.timestamp, trustlyTimestampFormat).toInstant()
 
-                commandGateway.sendAndWait<Void>(
-                    PendingNotificationReceivedCommand(
-                        requestId,
-                        pendingData.notificationId,
-                        pendingData.orderId,
-                        pendingAmount,
-                        pendingData.endUserId,
-                        pendingTimestamp
-                    )
+                PendingNotificationReceivedCommand(
+                    requestId,
+                    pendingData.notificationId,
+                    pendingData.orderId,
+                    pendingAmount,
+                    pendingData.endUserId,
+                    pendingTimestamp
                 )
             }
 
@@ -450,28 +458,24 @@ class TrustlyService(
 
                 val creditedAmount = Money.of(BigDecimal(creditData.amount), creditedCurrency)
 
-                commandGateway.sendAndWait<Void>(
-                    CreditNotificationReceivedCommand(
-                        requestId,
-                        creditData.notificationId,
-                        creditData.orderId,
-                        creditData.endUserId,
-                        creditedAmount,
-                        creditTimestamp
-                    )
+                CreditNotificationReceivedCommand(
+                    requestId,
+                    creditData.notificationId,
+                    creditData.orderId,
+                    creditData.endUserId,
+                    creditedAmount,
+                    creditTimestamp
                 )
             }
 
             Method.CANCEL -> {
                 val cancelData = notification.params.data as CancelNotificationData
 
-                commandGateway.sendAndWait<Void>(
-                    CancelNotificationReceivedCommand(
-                        requestId,
-                        cancelData.notificationId,
-                        cancelData.orderId,
-                        cancelData.endUserId
-                    )
+                CancelNotificationReceivedCommand(
+                    requestId,
+                    cancelData.notificationId,
+                    cancelData.orderId,
+                    cancelData.endUserId
                 )
             }
 
@@ -482,7 +486,22 @@ class TrustlyService(
             )
         }
 
-        return ResponseStatus.OK
+        // A command still in flight when the timeout passes is answered with 503 rather than OK: Trustly
+        // redelivers the notification, which is acknowledged without sending the command again once the
+        // command has been handled and the notification marked.
+        return timedCommandGateway.send<Any>(command) {
+            if (notificationId != null) {
+                markNotificationHandled(notificationId, notification.method)
+            }
+        }.thenApply { ResponseStatus.OK }
+    }
+
+    private fun markNotificationHandled(notificationId: String, method: Method) {
+        try {
+            handledNotificationRepository.save(HandledTrustlyNotification(notificationId, method, Instant.now()))
+        } catch (exception: DataIntegrityViolationException) {
+            log.info("Notification from Trustly was already marked as handled [NotificationId: {}]", notificationId)
+        }
     }
 
     private fun trustlyCurrencyToCurrencyUnit(c: Currency): CurrencyUnit {
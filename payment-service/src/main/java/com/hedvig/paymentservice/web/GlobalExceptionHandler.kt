@@ -1,6 +1,8 @@
 package com.hedvig.paymentservice.web
 
 import com.hedvig.paymentservice.services.payments.exception.PayoutFailedException
+import java.util.concurrent.TimeoutException
+import org.springframework.http.HttpStatus
 import org.springframework.http.ResponseEntity
 import org.springframework.web.bind.annotation.ControllerAdvice
 import org.springframework.web.bind.annotation.ExceptionHandler
@@ -14,4 +16,9 @@ class GlobalExceptionHandler {
         return ResponseEntity.status(exception.httpStatus).build()
     }
 
+    @ExceptionHandler(value = [TimeoutException::class])
+    fun handleTimeout(exception: TimeoutException, request: WebRequest): ResponseEntity<String> {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build()
+    }
+
 }
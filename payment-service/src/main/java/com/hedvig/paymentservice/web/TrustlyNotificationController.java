@@ -2,7 +2,6 @@ package com.hedvig.paymentservice.web;
 
 import com.google.gson.Gson;
 import com.hedvig.paymentService.trustly.NotificationHandler;
-import com.hedvig.paymentService.trustly.commons.ResponseStatus;
 import com.hedvig.paymentService.trustly.data.notification.Notification;
 import com.hedvig.paymentService.trustly.data.response.Response;
 import com.hedvig.paymentservice.services.trustly.TrustlyService;
@@ -14,6 +13,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/hooks/trustly/")
 public class TrustlyNotificationController {
@@ -29,19 +30,19 @@ public class TrustlyNotificationController {
     }
 
     @PostMapping(value = "notifications", produces = "application/json")
-    public ResponseEntity<?> notifications(@RequestBody String requestBody) {
+    public CompletableFuture<ResponseEntity<?>> notifications(@RequestBody String requestBody) {
 
         final Notification notification = notificationHandler.handleNotification(requestBody);
 
         log.info("Notification received from trustly: {}", requestBody);
 
-        final ResponseStatus responseStatus = trustlyService.receiveNotification(notification);
-
-        final Response response =
-            notificationHandler.prepareNotificationResponse(
-                notification.getMethod(), notification.getUUID(), responseStatus);
+        return trustlyService.receiveNotification(notification).thenApply(responseStatus -> {
+            final Response response =
+                notificationHandler.prepareNotificationResponse(
+                    notification.getMethod(), notification.getUUID(), responseStatus);
 
-        final Gson gson = new Gson();
-        return ResponseEntity.ok(gson.toJson(response));
+            final Gson gson = new Gson();
+            return ResponseEntity.ok(gson.toJson(response));
+        });
     }
 }
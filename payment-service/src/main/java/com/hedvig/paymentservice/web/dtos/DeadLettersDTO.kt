@@ -0,0 +1,6 @@
+package com.hedvig.paymentservice.web.dtos
+
+data class DeadLettersDTO(
+    val processingGroup: String,
+    val parked: Long
+)
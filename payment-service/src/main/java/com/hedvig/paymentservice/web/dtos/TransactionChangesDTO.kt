@@ -0,0 +1,13 @@
+package com.hedvig.paymentservice.web.dtos
+
+data class TransactionChangesDTO(
+    /**
+     * Transactions created or updated since the given token, oldest change first
+     */
+    val transactions: List<TransactionDTO>,
+    /**
+     * Pass as `since` to get the changes after these
+     */
+    val nextToken: String,
+    val hasMore: Boolean
+)
@@ -0,0 +1,37 @@
+package com.hedvig.paymentservice.web.dtos
+
+import java.nio.charset.StandardCharsets
+import java.time.Instant
+import java.util.Base64
+import java.util.UUID
+
+/**
+ * Position of a transaction in a member's transactions, ordered on an instant and then on the id.
+ * Handed to clients as an opaque string.
+ */
+data class TransactionCursor(
+    val instant: Instant,
+    val id: UUID
+) {
+    fun encode(): String =
+        Base64.getUrlEncoder().withoutPadding().encodeToString("$instant|$id".toByteArray(StandardCharsets.UTF_8))
+
+    companion object {
+        @JvmField
+        val START = TransactionCursor(Instant.EPOCH, UUID(0, 0))
+
+        @JvmStatic
+        fun decode(cursor: String): TransactionCursor {
+            val (instant, id) = try {
+                String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("|", limit = 2)
+            } catch (exception: IndexOutOfBoundsException) {
+                throw IllegalArgumentException("Malformed cursor $cursor", exception)
+            }
+            return try {
+                TransactionCursor(Instant.parse(instant), UUID.fromString(id))
+            } catch (exception: RuntimeException) {
+                throw IllegalArgumentException("Malformed cursor $cursor", exception)
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.hedvig.paymentservice.web.dtos
+
+data class TransactionPageDTO(
+    val transactions: List<TransactionDTO>,
+    /**
+     * Pass as `after` to get the next page, null when this is the last page
+     */
+    val nextCursor: String?
+)
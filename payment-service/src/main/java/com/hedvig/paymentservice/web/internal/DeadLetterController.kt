@@ -0,0 +1,40 @@
+package com.hedvig.paymentservice.web.internal
+
+import com.hedvig.paymentservice.services.deadLetters.DeadLetterProperties
+import com.hedvig.paymentservice.services.deadLetters.DeadLetterRepository
+import com.hedvig.paymentservice.services.deadLetters.DeadLetterRetrier
+import com.hedvig.paymentservice.web.dtos.DeadLettersDTO
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.PathVariable
+import org.springframework.web.bind.annotation.PostMapping
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RestController
+
+@RestController
+@RequestMapping("/_/deadLetters/")
+class DeadLetterController(
+    private val deadLetterRepository: DeadLetterRepository,
+    private val deadLetterRetrier: DeadLetterRetrier,
+    private val properties: DeadLetterProperties
+) {
+    @GetMapping
+    fun deadLetters(): ResponseEntity<List<DeadLettersDTO>> =
+        ResponseEntity.ok(properties.processingGroups.map { deadLetters(it) })
+
+    /**
+     * Retries every parked event of the processing group on the next run of the retrier, regardless of when
+     * it was due.
+     */
+    @PostMapping("{processingGroup}/replay")
+    fun replay(@PathVariable processingGroup: String): ResponseEntity<DeadLettersDTO> {
+        if (!properties.processingGroups.contains(processingGroup)) {
+            return ResponseEntity.notFound().build()
+        }
+        deadLetterRetrier.replay(processingGroup)
+        return ResponseEntity.accepted().body(deadLetters(processingGroup))
+    }
+
+    private fun deadLetters(processingGroup: String) =
+        DeadLettersDTO(processingGroup, deadLetterRepository.countByProcessingGroup(processingGroup))
+}
@@ -1,15 +1,17 @@
 package com.hedvig.paymentservice.web.internal;
 
+import com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica;
 import com.hedvig.paymentservice.domain.payments.DirectDebitStatus;
 import com.hedvig.paymentservice.domain.payments.commands.UpdateTrustlyAccountCommand;
 import com.hedvig.paymentservice.graphQl.types.PayoutMethodStatus;
 import com.hedvig.paymentservice.query.member.entities.Member;
 import com.hedvig.paymentservice.query.member.entities.MemberRepository;
+import com.hedvig.paymentservice.query.member.entities.Transaction;
+import com.hedvig.paymentservice.query.member.entities.TransactionRepository;
 import com.hedvig.paymentservice.services.adyen.AdyenService;
 import com.hedvig.paymentservice.services.bankAccounts.BankAccountService;
 import com.hedvig.paymentservice.services.payments.PaymentService;
 import com.hedvig.paymentservice.services.payments.dto.ChargeMemberRequest;
-import com.hedvig.paymentservice.services.payments.dto.ChargeMemberResult;
 import com.hedvig.paymentservice.services.payments.dto.ChargeMemberResultType;
 import com.hedvig.paymentservice.services.payments.dto.PayoutMemberRequest;
 import com.hedvig.paymentservice.web.dtos.ChargeRequest;
@@ -18,8 +20,14 @@ import com.hedvig.paymentservice.web.dtos.DirectDebitStatusDTO;
 import com.hedvig.paymentservice.web.dtos.PaymentMemberDTO;
 import com.hedvig.paymentservice.web.dtos.PayoutMethodStatusDTO;
 import com.hedvig.paymentservice.web.dtos.PayoutRequest;
+import com.hedvig.paymentservice.web.dtos.TransactionChangesDTO;
+import com.hedvig.paymentservice.web.dtos.TransactionCursor;
+import com.hedvig.paymentservice.web.dtos.TransactionDTO;
+import com.hedvig.paymentservice.web.dtos.TransactionPageDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -27,45 +35,59 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping(path = "/_/members/")
 public class MemberController {
 
     private static final Logger log = LoggerFactory.getLogger(MemberController.class);
+    private static final int DEFAULT_TRANSACTIONS_LIMIT = 50;
+    private static final int MAX_TRANSACTIONS_LIMIT = 200;
     private final PaymentService paymentService;
     private final MemberRepository memberRepository;
     private final BankAccountService bankAccountService;
     private final AdyenService adyenService;
+    private final TransactionRepository transactionRepository;
+    private final Duration changesSettleWindow;
 
     public MemberController(
         PaymentService paymentService,
         MemberRepository memberRepository,
         BankAccountService bankAccountService,
-        AdyenService adyenService
+        AdyenService adyenService,
+        TransactionRepository transactionRepository,
+        @Value("${hedvig.transactions.changes-settle-window:30s}") Duration changesSettleWindow
     ) {
         this.paymentService = paymentService;
         this.memberRepository = memberRepository;
         this.bankAccountService = bankAccountService;
         this.adyenService = adyenService;
+        this.transactionRepository = transactionRepository;
+        this.changesSettleWindow = changesSettleWindow;
     }
 
     @PostMapping(path = "{memberId}/charge")
-    public ResponseEntity<?> chargeMember(
+    public CompletableFuture<ResponseEntity<?>> chargeMember(
         @PathVariable String memberId, @RequestBody ChargeRequest request) {
         ChargeMemberRequest chargeMemberRequest = new ChargeMemberRequest(memberId, request.getAmount(), request.getRequestedBy());
-        ChargeMemberResult result = paymentService.chargeMember(chargeMemberRequest);
 
-        if (result.getType() != ChargeMemberResultType.SUCCESS) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("");
-        }
+        return paymentService.chargeMember(chargeMemberRequest).thenApply(result -> {
+            if (result.getType() != ChargeMemberResultType.SUCCESS) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body("");
+            }
 
-        return ResponseEntity.accepted().body("");
+            return ResponseEntity.accepted().body("");
+        });
     }
 
     @PostMapping(path = "{memberId}/create")
@@ -79,10 +101,11 @@ public class MemberController {
         return ResponseEntity.ok().body(res);
     }
 
+    @ReadFromReplica
     @GetMapping(path = "{memberId}/transactions")
     public ResponseEntity<PaymentMemberDTO> getTransactionsByMember(@PathVariable String memberId) {
 
-        Optional<Member> memberMaybe = memberRepository.findById(memberId);
+        Optional<Member> memberMaybe = memberRepository.findWithTransactionsById(memberId);
 
         if (memberMaybe.isPresent()) {
             Member member = memberMaybe.get();
@@ -95,6 +118,88 @@ public class MemberController {
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * The transactions of a member ordered on when they happened, {@code limit} at a time. Transactions
+     * stored before they had an orderable time are left out until {@code TransactionOrderingBackfill} has
+     * reached them.
+     */
+    @ReadFromReplica
+    @GetMapping(path = "{memberId}/transactions/paged")
+    public ResponseEntity<TransactionPageDTO> getTransactionPageByMember(
+        @PathVariable String memberId,
+        @RequestParam(required = false) String after,
+        @RequestParam(defaultValue = "" + DEFAULT_TRANSACTIONS_LIMIT) int limit
+    ) {
+        if (limit < 1 || limit > MAX_TRANSACTIONS_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final List<Transaction> transactions;
+        try {
+            // One more than asked for tells if there is a next page
+            final PageRequest page = PageRequest.of(0, limit + 1);
+            if (after == null) {
+                transactions = transactionRepository.findFirstPageByMemberId(memberId, page);
+            } else {
+                final TransactionCursor cursor = TransactionCursor.decode(after);
+                transactions = transactionRepository.findPageByMemberIdAfter(memberId, cursor.getInstant(), cursor.getId(), page);
+            }
+        } catch (IllegalArgumentException exception) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final boolean hasMore = transactions.size() > limit;
+        final List<Transaction> pageTransactions = hasMore ? transactions.subList(0, limit) : transactions;
+        final String nextCursor = hasMore
+            ? cursorOf(pageTransactions.get(limit - 1), pageTransactions.get(limit - 1).getOccurredAt()).encode()
+            : null;
+
+        return ResponseEntity.ok(new TransactionPageDTO(toDtos(pageTransactions), nextCursor));
+    }
+
+    /**
+     * The transactions of a member created or updated since {@code since}, for callers keeping their own copy
+     * in sync. Leaving out {@code since} returns all transactions, {@code limit} at a time.
+     *
+     * <p>A change is keyed on the time it was flushed, and the transaction writing it may commit, or reach the
+     * replica, some time later. Changes are therefore only handed out once they are older than the settle
+     * window, so no change can show up behind a token that was already handed out.
+     */
+    @ReadFromReplica
+    @GetMapping(path = "{memberId}/transactions/changes")
+    public ResponseEntity<TransactionChangesDTO> getTransactionChangesByMember(
+        @PathVariable String memberId,
+        @RequestParam(required = false) String since,
+        @RequestParam(defaultValue = "" + DEFAULT_TRANSACTIONS_LIMIT) int limit
+    ) {
+        if (limit < 1 || limit > MAX_TRANSACTIONS_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final TransactionCursor token;
+        try {
+            token = since == null ? TransactionCursor.START : TransactionCursor.decode(since);
+        } catch (IllegalArgumentException exception) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        final List<Transaction> transactions = transactionRepository.findChangedByMemberIdSince(
+            memberId,
+            token.getInstant(),
+            token.getId(),
+            Instant.now().minus(changesSettleWindow),
+            PageRequest.of(0, limit + 1)
+        );
+
+        final boolean hasMore = transactions.size() > limit;
+        final List<Transaction> changes = hasMore ? transactions.subList(0, limit) : transactions;
+        final TransactionCursor nextToken = changes.isEmpty()
+            ? token
+            : cursorOf(changes.get(changes.size() - 1), changes.get(changes.size() - 1).getUpdatedAt());
+
+        return ResponseEntity.ok(new TransactionChangesDTO(toDtos(changes), nextToken.encode(), hasMore));
+    }
+
     @PostMapping(path = "{memberId}/updateTrustlyAccount")
     public ResponseEntity<?> updateTrustlyAccount(@RequestBody UpdateTrustlyAccountCommand cmd) {
 
@@ -109,6 +214,7 @@ public class MemberController {
             " on getDirectDebitStatuses");
     }
 
+    @ReadFromReplica
     @GetMapping("/{memberId}/payoutMethod/status")
     public ResponseEntity<PayoutMethodStatusDTO> getPayoutMethodStatus(@PathVariable String memberId) {
         PayoutMethodStatus latestStatus = adyenService.getLatestPayoutTokenRegistrationStatus(memberId);
@@ -123,4 +229,12 @@ public class MemberController {
 
         return ResponseEntity.ok(new PayoutMethodStatusDTO(memberId, false));
     }
+
+    private static TransactionCursor cursorOf(Transaction transaction, Instant instant) {
+        return new TransactionCursor(instant, transaction.getId());
+    }
+
+    private static List<TransactionDTO> toDtos(List<Transaction> transactions) {
+        return transactions.stream().map(TransactionDTO.Companion::fromTransaction).collect(Collectors.toList());
+    }
 }
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.web.internal;
 
+import com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica;
 import com.hedvig.paymentservice.services.payments.reporting.MonthlyTransactionsAggregations;
 import com.hedvig.paymentservice.services.payments.reporting.TransactionAggregator;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +21,7 @@ public class ReportingController {
     this.transactionAggregator = transactionAggregator;
   }
 
+  @ReadFromReplica
   @GetMapping(path = "monthlyPaidGrossPremium")
   public MonthlyTransactionsAggregations getMonthlyEarnedGrossPremium(@RequestParam("period") final YearMonth period) {
     return transactionAggregator.aggregateAllChargesMonthlyInSek(period);
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.web.internal;
 
+import com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica;
 import com.hedvig.paymentservice.query.member.entities.Transaction;
 import com.hedvig.paymentservice.query.member.entities.TransactionRepository;
 import com.hedvig.paymentservice.web.dtos.TransactionDTO;
@@ -12,6 +13,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
+@ReadFromReplica
 @RequestMapping(path = "/_/transactions/")
 public class TransactionController {
 
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.web.internal;
 
+import com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica;
 import com.hedvig.paymentservice.services.trustly.TrustlyService;
 import com.hedvig.paymentservice.services.trustly.dto.DirectDebitOrderInfo;
 import com.hedvig.paymentservice.services.trustly.dto.DirectDebitRequest;
@@ -43,6 +44,7 @@ public class TrustlyController {
     return ResponseEntity.ok(directDebitResponse);
   }
 
+  @ReadFromReplica
   @GetMapping("{orderId}")
   public ResponseEntity<OrderInformation> orderInformation(@PathVariable UUID orderId) {
     OrderInformation order = service.orderInformation(orderId);
@@ -1,5 +1,6 @@
 package com.hedvig.paymentservice.web.v2
 
+import com.hedvig.paymentservice.configuration.readReplica.ReadFromReplica
 import com.hedvig.paymentservice.domain.payments.TransactionCategory
 import com.hedvig.paymentservice.domain.payments.enums.Carrier
 import com.hedvig.paymentservice.serviceIntergration.meerkat.Meerkat
@@ -16,6 +17,7 @@ import com.hedvig.paymentservice.web.dtos.ChargeRequest
 import com.hedvig.paymentservice.web.dtos.PayoutRequestDTO
 import java.math.BigDecimal
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
 import org.slf4j.LoggerFactory
 import org.springframework.http.HttpStatus
 import org.springframework.http.ResponseEntity
@@ -34,23 +36,24 @@ class MemberControllerV2(
 ) {
 
     @PostMapping("{memberId}/charge")
-    fun chargeMember(@PathVariable memberId: String, @RequestBody request: ChargeRequest): ResponseEntity<UUID> {
-        val result = paymentService.chargeMember(ChargeMemberRequest.fromChargeRequest(memberId, request))
-
-        return if (result.type != ChargeMemberResultType.SUCCESS) {
-            ResponseEntity.status(HttpStatus.FORBIDDEN)
-                .body(result.transactionId)
-        } else ResponseEntity.accepted().body(result.transactionId)
-    }
+    fun chargeMember(
+        @PathVariable memberId: String,
+        @RequestBody request: ChargeRequest
+    ): CompletableFuture<ResponseEntity<UUID>> =
+        paymentService.chargeMember(ChargeMemberRequest.fromChargeRequest(memberId, request)).thenApply { result ->
+            if (result.type != ChargeMemberResultType.SUCCESS) {
+                ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(result.transactionId)
+            } else ResponseEntity.accepted().body(result.transactionId)
+        }
 
     @PostMapping("{memberId}/autocharge")
     fun chargeMemberAutomatically(
         @PathVariable memberId: String,
         @RequestBody request: ChargeRequest
-    ): ResponseEntity<ChargeMemberResult> {
-        val result = paymentService.chargeMember(ChargeMemberRequest.fromChargeRequest(memberId, request))
-        return ResponseEntity.ok(result)
-    }
+    ): CompletableFuture<ResponseEntity<ChargeMemberResult>> =
+        paymentService.chargeMember(ChargeMemberRequest.fromChargeRequest(memberId, request))
+            .thenApply { result -> ResponseEntity.ok(result) }
 
 
     @PostMapping(path = ["{memberId}/payout"])
@@ -62,7 +65,7 @@ class MemberControllerV2(
         @RequestParam(name = "handler", required = false) handler: String?, // Deprecated use request
         @RequestParam(required = false) carrier: Carrier?, // Deprecated use request
         @RequestBody request: PayoutRequestDTO
-    ): ResponseEntity<UUID> {
+    ): CompletableFuture<ResponseEntity<UUID>> {
         // Yes this is a bit messy but let's stop using RequestParam
         val payoutRequest = request.copy(
             category = request.category ?: category,
@@ -72,13 +75,14 @@ class MemberControllerV2(
             carrier = request.carrier ?: carrier ?: if (category == TransactionCategory.CLAIM) Carrier.HDI else null // TODO: FIXME remove this logic once carrier is sent from claims-service
         )
 
-        val result = paymentService.payoutMember(memberId, payoutRequest)
-
-        return result.map { uuid -> ResponseEntity.accepted().body(uuid) }.orElseGet {
-            ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build()
+        return paymentService.payoutMember(memberId, payoutRequest).thenApply { result ->
+            result.map { uuid -> ResponseEntity.accepted().body(uuid) }.orElseGet {
+                ResponseEntity.status(HttpStatus.NOT_ACCEPTABLE).build()
+            }
         }
     }
 
+    @ReadFromReplica
     @PostMapping("/connectedPayinProviders/markets/{market}")
     fun getMembersWithConnectedPayinMethodForMarket(
         @PathVariable market: Market,
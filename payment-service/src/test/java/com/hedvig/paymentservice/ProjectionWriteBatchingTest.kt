@@ -0,0 +1,95 @@
+package com.hedvig.paymentservice
+
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEntity
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEventRepository
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEventType
+import com.hedvig.paymentservice.services.accounts.AccountNotification
+import com.hedvig.paymentservice.services.accounts.AccountNotificationRepository
+import com.hedvig.paymentservice.services.accounts.AccountNotificationType
+import java.math.BigDecimal
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.EntityManager
+import org.assertj.core.api.Assertions.assertThat
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.TestPropertySource
+import org.springframework.test.context.junit4.SpringRunner
+
+/**
+ * Guards the number of statements a batch of projection writes costs. With IDENTITY ids or merging
+ * saves every row would need its own round trip.
+ */
+@RunWith(SpringRunner::class)
+@DataJpaTest
+@ContextConfiguration(classes = [PaymentServiceTestConfiguration::class])
+@TestPropertySource(properties = ["spring.jpa.properties.hibernate.generate_statistics=true"])
+class ProjectionWriteBatchingTest {
+
+    @Autowired
+    lateinit var entityManager: EntityManager
+
+    @Autowired
+    lateinit var accountNotificationRepository: AccountNotificationRepository
+
+    @Autowired
+    lateinit var transactionHistoryEventRepository: TransactionHistoryEventRepository
+
+    lateinit var statistics: Statistics
+
+    @Before
+    fun setUp() {
+        statistics = entityManager.entityManagerFactory.unwrap(SessionFactory::class.java).statistics
+        statistics.clear()
+    }
+
+    @Test
+    fun `account notifications are inserted in batches`() {
+        repeat(ROWS) {
+            accountNotificationRepository.save(
+                AccountNotification(
+                    memberId = "member$it",
+                    transactionId = UUID.randomUUID(),
+                    type = AccountNotificationType.CHARGE_INITIATED,
+                    amount = BigDecimal.TEN,
+                    currency = "SEK",
+                    initiatedBy = "test",
+                    occurredAt = Instant.now(),
+                    createdAt = Instant.now()
+                )
+            )
+        }
+        entityManager.flush()
+
+        assertThat(statistics.entityInsertCount).isEqualTo(ROWS.toLong())
+        assertThat(statistics.prepareStatementCount).isLessThanOrEqualTo(MAX_ACCOUNT_NOTIFICATION_STATEMENTS)
+    }
+
+    @Test
+    fun `transaction history is inserted in batches without selecting first`() {
+        repeat(ROWS) {
+            transactionHistoryEventRepository.save(
+                TransactionHistoryEntity(UUID.randomUUID(), Instant.now(), TransactionHistoryEventType.CREATED)
+            )
+        }
+        entityManager.flush()
+
+        assertThat(statistics.entityInsertCount).isEqualTo(ROWS.toLong())
+        assertThat(statistics.prepareStatementCount).isLessThanOrEqualTo(INSERT_BATCHES)
+    }
+
+    companion object {
+        private const val ROWS = 100
+        private const val BATCH_SIZE = 50
+        private const val INSERT_BATCHES = (ROWS / BATCH_SIZE).toLong()
+
+        // Account notification ids are drawn one at a time to keep them in order, the inserts are still batched
+        private const val MAX_ACCOUNT_NOTIFICATION_STATEMENTS = INSERT_BATCHES + ROWS
+    }
+}
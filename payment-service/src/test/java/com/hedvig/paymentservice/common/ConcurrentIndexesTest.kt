@@ -0,0 +1,56 @@
+package com.hedvig.paymentservice.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+
+class ConcurrentIndexesTest {
+
+    private lateinit var database: EmbeddedDatabase
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var indexes: ConcurrentIndexes
+
+    @Before
+    fun setUp() {
+        database = EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build()
+        jdbcTemplate = JdbcTemplate(database)
+        jdbcTemplate.execute("CREATE TABLE projection (id BIGINT PRIMARY KEY, member_id VARCHAR(255))")
+        indexes = ConcurrentIndexes(jdbcTemplate)
+    }
+
+    @After
+    fun tearDown() {
+        database.shutdown()
+    }
+
+    @Test
+    fun `creates a missing index once`() {
+        indexes.create(INDEX, "projection (member_id)")
+        indexes.create(INDEX, "projection (member_id)")
+
+        assertThat(indexNames()).containsOnlyOnce(INDEX.toUpperCase())
+    }
+
+    @Test
+    fun `a failing index build does not fail the caller`() {
+        indexes.create(INDEX, "missing_table (member_id)")
+        indexes.create("idx_projection_id", "projection (id)")
+
+        assertThat(indexNames()).contains("IDX_PROJECTION_ID").doesNotContain(INDEX.toUpperCase())
+    }
+
+    private fun indexNames(): List<String> =
+        jdbcTemplate.queryForList("SELECT index_name FROM information_schema.indexes", String::class.java)
+
+    companion object {
+        private const val INDEX = "idx_projection_member"
+    }
+}
@@ -0,0 +1,129 @@
+package com.hedvig.paymentservice.common
+
+import com.hedvig.paymentservice.configuration.readReplica.ReplicaReads
+import graphql.execution.ExecutionId
+import graphql.schema.DataFetchingEnvironment
+import io.mockk.every
+import io.mockk.mockk
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.web.context.request.RequestContextHolder
+import org.springframework.web.context.request.ServletRequestAttributes
+
+class ExecutionLookupsTest {
+
+    @Before
+    fun setUp() {
+        RequestContextHolder.setRequestAttributes(ServletRequestAttributes(MockHttpServletRequest()))
+    }
+
+    @After
+    fun tearDown() {
+        RequestContextHolder.resetRequestAttributes()
+    }
+
+    @Test
+    fun `lookups outside of an execution are never memoized`() {
+        var calls = 0
+
+        ExecutionLookups.memoize("key") { ++calls }
+        ExecutionLookups.memoize("key") { ++calls }
+
+        assertThat(calls).isEqualTo(2)
+    }
+
+    @Test
+    fun `fields of the same execution share lookups`() {
+        val env = makeEnvironment("execution-1")
+        var calls = 0
+
+        val first = ExecutionLookups.withinExecution(env) { ExecutionLookups.memoize("key") { ++calls } }
+        val second = ExecutionLookups.withinExecution(env) { ExecutionLookups.memoize("key") { ++calls } }
+
+        assertThat(calls).isEqualTo(1)
+        assertThat(first).isEqualTo(second)
+    }
+
+    @Test
+    fun `different executions do not share lookups`() {
+        var calls = 0
+
+        ExecutionLookups.withinExecution(makeEnvironment("execution-1")) { ExecutionLookups.memoize("key") { ++calls } }
+        ExecutionLookups.withinExecution(makeEnvironment("execution-2")) { ExecutionLookups.memoize("key") { ++calls } }
+
+        assertThat(calls).isEqualTo(2)
+    }
+
+    @Test
+    fun `replica reads do not share lookups with primary reads`() {
+        val env = makeEnvironment("execution-1")
+        var calls = 0
+
+        val fromReplica = ExecutionLookups.withinExecution(env) {
+            ReplicaReads.within { ExecutionLookups.memoize("key") { ++calls } }
+        }
+        val fromPrimary = ExecutionLookups.withinExecution(env) { ExecutionLookups.memoize("key") { ++calls } }
+
+        assertThat(fromReplica).isEqualTo(1)
+        assertThat(fromPrimary).isEqualTo(2)
+    }
+
+    @Test
+    fun `null results and failures are memoized as well`() {
+        val env = makeEnvironment("execution-1")
+        var nullCalls = 0
+        var failingCalls = 0
+
+        ExecutionLookups.withinExecution(env) {
+            ExecutionLookups.memoize<String?>("null") { nullCalls++; null }
+            ExecutionLookups.memoize<String?>("null") { nullCalls++; null }
+
+            repeat(2) {
+                assertThatThrownBy {
+                    ExecutionLookups.memoize<String>("failing") { failingCalls++; throw IllegalStateException("boom") }
+                }.isInstanceOf(IllegalStateException::class.java)
+            }
+        }
+
+        assertThat(nullCalls).isEqualTo(1)
+        assertThat(failingCalls).isEqualTo(1)
+    }
+
+    @Test
+    fun `concurrently resolved fields run a shared lookup once`() {
+        val env = makeEnvironment("execution-1")
+        val attributes = RequestContextHolder.getRequestAttributes()
+        val calls = AtomicInteger()
+        val started = CountDownLatch(2)
+        val executor = Executors.newFixedThreadPool(2)
+
+        val results = (1..2).map {
+            executor.submit(Callable {
+                RequestContextHolder.setRequestAttributes(attributes)
+                started.countDown()
+                started.await()
+                ExecutionLookups.withinExecution(env) {
+                    ExecutionLookups.memoize("key") { Thread.sleep(50); calls.incrementAndGet() }
+                }
+            })
+        }.map { it.get() }
+        executor.shutdown()
+
+        assertThat(results).containsExactly(1, 1)
+        assertThat(calls.get()).isEqualTo(1)
+    }
+
+    private fun makeEnvironment(executionId: String): DataFetchingEnvironment {
+        val env = mockk<DataFetchingEnvironment>()
+        every { env.executionId } returns ExecutionId.from(executionId)
+        return env
+    }
+}
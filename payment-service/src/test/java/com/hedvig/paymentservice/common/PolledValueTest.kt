@@ -0,0 +1,36 @@
+package com.hedvig.paymentservice.common
+
+import java.time.Duration
+import java.time.Instant
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class PolledValueTest {
+
+    @Test
+    fun `reads the value again only once it is older than the refresh interval`() {
+        var reads = 0L
+        val polled = PolledValue(Duration.ofSeconds(15)) { ++reads }
+        val now = Instant.parse("2020-01-01T00:00:00Z")
+
+        polled.refresh(now)
+        polled.refresh(now.plusSeconds(10))
+        assertThat(polled.value).isEqualTo(1L)
+
+        polled.refresh(now.plusSeconds(15))
+        assertThat(polled.value).isEqualTo(2L)
+    }
+
+    @Test
+    fun `failed reads clear the value`() {
+        var failing = false
+        val polled = PolledValue(Duration.ZERO) { if (failing) throw IllegalStateException("database is down") else 1L }
+
+        polled.refresh()
+        assertThat(polled.value).isEqualTo(1L)
+
+        failing = true
+        polled.refresh()
+        assertThat(polled.value).isNull()
+    }
+}
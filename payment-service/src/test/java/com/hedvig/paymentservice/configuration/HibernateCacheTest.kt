@@ -0,0 +1,107 @@
+package com.hedvig.paymentservice.configuration
+
+import com.hedvig.paymentservice.PaymentServiceTestConfiguration
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus
+import com.hedvig.paymentservice.domain.payments.enums.AdyenAccountStatus
+import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccount
+import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccountRepository
+import com.hedvig.paymentservice.query.adyenTokenRegistration.entities.AdyenTokenRegistration
+import com.hedvig.paymentservice.query.adyenTokenRegistration.entities.AdyenTokenRegistrationRepository
+import java.util.UUID
+import javax.persistence.EntityManagerFactory
+import org.assertj.core.api.Assertions.assertThat
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest
+import org.springframework.context.annotation.Import
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.TestPropertySource
+import org.springframework.test.context.junit4.SpringRunner
+import org.springframework.transaction.annotation.Propagation
+import org.springframework.transaction.annotation.Transactional
+
+@RunWith(SpringRunner::class)
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = [PaymentServiceTestConfiguration::class])
+@Import(HibernateCache::class, HibernateCacheProperties::class)
+@TestPropertySource(properties = ["hedvig.hibernate.cache.enabled=true", "hedvig.hibernate.cache.statistics=true"])
+class HibernateCacheTest {
+
+    @Autowired
+    lateinit var entityManagerFactory: EntityManagerFactory
+
+    @Autowired
+    lateinit var memberAdyenAccountRepository: MemberAdyenAccountRepository
+
+    @Autowired
+    lateinit var adyenTokenRegistrationRepository: AdyenTokenRegistrationRepository
+
+    lateinit var statistics: Statistics
+
+    @Before
+    fun setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory::class.java).statistics
+        memberAdyenAccountRepository.save(MemberAdyenAccount(MEMBER_ID, "HedvigABCOM"))
+        adyenTokenRegistrationRepository.save(makeAdyenTokenRegistration())
+        statistics.clear()
+    }
+
+    @After
+    fun tearDown() {
+        memberAdyenAccountRepository.deleteAll()
+        adyenTokenRegistrationRepository.deleteAll()
+    }
+
+    @Test
+    fun `repeated entity lookups are served from the second-level cache`() {
+        repeat(3) {
+            assertThat(memberAdyenAccountRepository.findById(MEMBER_ID)).isPresent
+        }
+
+        assertThat(statistics.prepareStatementCount).isEqualTo(0)
+        assertThat(statistics.secondLevelCacheHitCount).isEqualTo(3)
+    }
+
+    @Test
+    fun `repeated token registration queries are served from the query cache`() {
+        repeat(3) {
+            assertThat(adyenTokenRegistrationRepository.findByMemberId(MEMBER_ID)).hasSize(1)
+        }
+
+        assertThat(statistics.prepareStatementCount).isEqualTo(1)
+        assertThat(statistics.queryCacheHitCount).isEqualTo(2)
+    }
+
+    @Test
+    fun `projection writes are visible to the next lookup`() {
+        memberAdyenAccountRepository.findById(MEMBER_ID)
+        adyenTokenRegistrationRepository.findByMemberId(MEMBER_ID)
+
+        val account = memberAdyenAccountRepository.findById(MEMBER_ID).get()
+        account.accountStatus = AdyenAccountStatus.AUTHORISED
+        memberAdyenAccountRepository.save(account)
+        adyenTokenRegistrationRepository.save(makeAdyenTokenRegistration())
+
+        assertThat(memberAdyenAccountRepository.findById(MEMBER_ID).get().accountStatus)
+            .isEqualTo(AdyenAccountStatus.AUTHORISED)
+        assertThat(adyenTokenRegistrationRepository.findByMemberId(MEMBER_ID)).hasSize(2)
+    }
+
+    private fun makeAdyenTokenRegistration() = AdyenTokenRegistration().apply {
+        adyenTokenRegistrationId = UUID.randomUUID()
+        memberId = MEMBER_ID
+        tokenStatus = AdyenTokenRegistrationStatus.AUTHORISED
+        shopperReference = MEMBER_ID
+        isForPayout = true
+    }
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+    }
+}
@@ -0,0 +1,138 @@
+package com.hedvig.paymentservice.configuration.aggregateCache
+
+import com.hedvig.paymentservice.domain.trustlyOrder.TrustlyOrder
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreateOrderCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.PaymentResponseReceivedCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.SelectAccountResponseReceivedCommand
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import java.net.URI
+import java.util.UUID
+import javax.cache.CacheManager
+import javax.cache.Caching
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.axonframework.commandhandling.AggregateAnnotationCommandHandler
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.commandhandling.SimpleCommandBus
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway
+import org.axonframework.eventsourcing.DomainEventStream
+import org.axonframework.eventsourcing.eventstore.EmbeddedEventStore
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine
+import org.axonframework.messaging.MessageHandlerInterceptor
+import org.axonframework.messaging.annotation.ClasspathParameterResolverFactory
+import org.ehcache.jsr107.EhcacheCachingProvider
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class AggregateCacheConfigurationTest {
+
+    private val storageEngine = CountingStorageEngine()
+    private val eventStore = EmbeddedEventStore(storageEngine)
+    private val meterRegistry = SimpleMeterRegistry()
+    private val properties = AggregateCacheProperties().apply { enabled = true }
+    private val commandBus = SimpleCommandBus()
+    private val commandGateway = DefaultCommandGateway(commandBus)
+    private lateinit var cacheManager: CacheManager
+
+    private var failNextCommand = false
+
+    @Before
+    fun setUp() {
+        cacheManager = Caching.getCachingProvider(EhcacheCachingProvider::class.java.name).getCacheManager(
+            URI.create("aggregate-cache-test-${UUID.randomUUID()}"),
+            javaClass.classLoader
+        )
+        commandBus.registerHandlerInterceptor(MessageHandlerInterceptor<CommandMessage<*>> { _, chain ->
+            val result = chain.proceed()
+            if (failNextCommand) {
+                failNextCommand = false
+                throw IllegalStateException("Command failed after handling")
+            }
+            result
+        })
+    }
+
+    @After
+    fun tearDown() {
+        eventStore.shutDown()
+        cacheManager.close()
+    }
+
+    @Test
+    fun `repeated commands against a cached aggregate do not read the event store`() {
+        subscribeTrustlyOrders()
+
+        commandGateway.sendAndWait<Any>(CreateOrderCommand(MEMBER_ID, ORDER_ID))
+        commandGateway.sendAndWait<Any>(SelectAccountResponseReceivedCommand(ORDER_ID, IFRAME_URL, TRUSTLY_ORDER_ID))
+        commandGateway.sendAndWait<Any>(PaymentResponseReceivedCommand(ORDER_ID, PAYMENT_URL, TRUSTLY_ORDER_ID))
+        commandGateway.sendAndWait<Any>(PaymentResponseReceivedCommand(ORDER_ID, PAYMENT_URL, TRUSTLY_ORDER_ID))
+
+        assertThat(storageEngine.reads).isZero()
+        assertThat(cacheGets("hit")).isEqualTo(3.0)
+        assertThat(cacheGets("miss")).isZero()
+    }
+
+    @Test
+    fun `every command reads the event store when the cache is disabled`() {
+        properties.enabled = false
+        subscribeTrustlyOrders()
+
+        commandGateway.sendAndWait<Any>(CreateOrderCommand(MEMBER_ID, ORDER_ID))
+        commandGateway.sendAndWait<Any>(SelectAccountResponseReceivedCommand(ORDER_ID, IFRAME_URL, TRUSTLY_ORDER_ID))
+        commandGateway.sendAndWait<Any>(PaymentResponseReceivedCommand(ORDER_ID, PAYMENT_URL, TRUSTLY_ORDER_ID))
+        commandGateway.sendAndWait<Any>(PaymentResponseReceivedCommand(ORDER_ID, PAYMENT_URL, TRUSTLY_ORDER_ID))
+
+        assertThat(storageEngine.reads).isEqualTo(3)
+    }
+
+    @Test
+    fun `an aggregate is evicted when its unit of work is rolled back`() {
+        subscribeTrustlyOrders()
+        commandGateway.sendAndWait<Any>(CreateOrderCommand(MEMBER_ID, ORDER_ID))
+
+        failNextCommand = true
+        assertThatThrownBy {
+            commandGateway.sendAndWait<Any>(SelectAccountResponseReceivedCommand(ORDER_ID, IFRAME_URL, TRUSTLY_ORDER_ID))
+        }.isInstanceOf(IllegalStateException::class.java)
+        commandGateway.sendAndWait<Any>(PaymentResponseReceivedCommand(ORDER_ID, PAYMENT_URL, TRUSTLY_ORDER_ID))
+
+        assertThat(storageEngine.reads).isEqualTo(1)
+        assertThat(cacheGets("miss")).isEqualTo(1.0)
+    }
+
+    private fun subscribeTrustlyOrders() {
+        val configuration = AggregateCacheConfiguration(
+            eventStore,
+            ClasspathParameterResolverFactory.forClass(TrustlyOrder::class.java),
+            cacheManager,
+            properties,
+            meterRegistry
+        )
+        AggregateAnnotationCommandHandler(TrustlyOrder::class.java, configuration.trustlyOrderAggregateRepository())
+            .subscribe(commandBus)
+    }
+
+    private fun cacheGets(result: String) =
+        meterRegistry.find(AggregateCacheConfiguration.CACHE_GETS)
+            .tags("aggregate", "TrustlyOrder", "result", result)
+            .counter()
+            ?.count() ?: 0.0
+
+    private class CountingStorageEngine : InMemoryEventStorageEngine() {
+        var reads = 0
+
+        override fun readEvents(aggregateIdentifier: String, firstSequenceNumber: Long): DomainEventStream {
+            reads++
+            return super.readEvents(aggregateIdentifier, firstSequenceNumber)
+        }
+    }
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+        private const val IFRAME_URL = "https://trustly.test/iframe"
+        private const val PAYMENT_URL = "https://trustly.test/payment"
+        private const val TRUSTLY_ORDER_ID = "trustlyOrderId"
+        private val ORDER_ID = UUID.randomUUID()
+    }
+}
@@ -0,0 +1,153 @@
+package com.hedvig.paymentservice.configuration.aggregateCache
+
+import com.hedvig.paymentservice.PaymentServiceTestConfiguration
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus
+import com.hedvig.paymentservice.domain.payments.commands.ChargeCompletedCommand
+import com.hedvig.paymentservice.domain.payments.commands.CreateMemberCommand
+import com.hedvig.paymentservice.domain.payments.commands.UpdateAdyenAccountCommand
+import com.hedvig.paymentservice.domain.payments.enums.AdyenAccountStatus
+import com.hedvig.paymentservice.domain.payments.enums.PayinProvider
+import com.hedvig.paymentservice.domain.payments.events.AdyenAccountCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.AdyenAccountUpdatedEvent
+import com.hedvig.paymentservice.domain.payments.events.ChargeCompletedEvent
+import com.hedvig.paymentservice.domain.payments.events.ChargeCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.MemberCreatedEvent
+import io.micrometer.core.instrument.MeterRegistry
+import java.time.Instant
+import java.util.UUID
+import java.util.stream.Collectors
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.axonframework.eventsourcing.GenericDomainEventMessage
+import org.axonframework.eventsourcing.eventstore.EventStore
+import org.javamoney.moneta.Money
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.TestPropertySource
+import org.springframework.test.context.junit4.SpringRunner
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+
+/**
+ * Runs commands against the cached aggregates of the application, which the other tests load from the
+ * event store every time. Events appended straight to the event store stand in for the commands another
+ * instance handled.
+ */
+@RunWith(SpringRunner::class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = [PaymentServiceTestConfiguration::class])
+@SpringBootTest
+@TestPropertySource(properties = ["hedvig.aggregate-cache.enabled=true"])
+class AggregateCacheIntegrationTest {
+
+    @Autowired
+    lateinit var commandGateway: CommandGateway
+
+    @Autowired
+    lateinit var eventStore: EventStore
+
+    @Autowired
+    lateinit var transactionManager: PlatformTransactionManager
+
+    @Autowired
+    lateinit var meterRegistry: MeterRegistry
+
+    @Test
+    fun `serves the following commands for a member from the cache`() {
+        val memberId = UUID.randomUUID().toString()
+        val hitsBefore = memberCacheHits()
+
+        commandGateway.sendAndWait<Any>(CreateMemberCommand(memberId))
+        commandGateway.sendAndWait<Any>(UpdateAdyenAccountCommand(memberId, RECURRING_DETAIL_REFERENCE, AUTHORISED))
+        commandGateway.sendAndWait<Any>(UpdateAdyenAccountCommand(memberId, RECURRING_DETAIL_REFERENCE, AUTHORISED))
+
+        assertThat(memberCacheHits() - hitsBefore).isEqualTo(2.0)
+        assertThat(memberEvents(memberId)).containsExactly(
+            MemberCreatedEvent::class.java,
+            AdyenAccountCreatedEvent::class.java,
+            AdyenAccountUpdatedEvent::class.java
+        )
+    }
+
+    @Test
+    fun `retries a command appending on top of a member changed by another instance`() {
+        val memberId = UUID.randomUUID().toString()
+        commandGateway.sendAndWait<Any>(CreateMemberCommand(memberId))
+        appendByAnotherInstance(
+            memberId,
+            1,
+            AdyenAccountCreatedEvent(
+                memberId,
+                RECURRING_DETAIL_REFERENCE,
+                AdyenAccountStatus.fromTokenRegistrationStatus(AUTHORISED)
+            )
+        )
+
+        commandGateway.sendAndWait<Any>(UpdateAdyenAccountCommand(memberId, RECURRING_DETAIL_REFERENCE, AUTHORISED))
+
+        assertThat(memberEvents(memberId)).containsExactly(
+            MemberCreatedEvent::class.java,
+            AdyenAccountCreatedEvent::class.java,
+            AdyenAccountUpdatedEvent::class.java
+        )
+    }
+
+    @Test
+    fun `fails a command acting on a stale member and reloads the member for the next one`() {
+        val memberId = UUID.randomUUID().toString()
+        val transactionId = UUID.randomUUID()
+        val amount = Money.of(100, "SEK")
+        commandGateway.sendAndWait<Any>(CreateMemberCommand(memberId))
+        appendByAnotherInstance(
+            memberId,
+            1,
+            ChargeCreatedEvent(
+                memberId,
+                transactionId,
+                amount,
+                Instant.now(),
+                "providerId",
+                PayinProvider.ADYEN,
+                "member@hedvig.com",
+                "test"
+            )
+        )
+        val chargeCompleted = ChargeCompletedCommand(memberId, transactionId, amount, Instant.now())
+
+        // The cached member does not know the charge, which is why the cache is disabled by default
+        assertThatThrownBy { commandGateway.sendAndWait<Any>(chargeCompleted) }
+            .hasMessageContaining("Unexpected number of matching transactions: 0")
+        commandGateway.sendAndWait<Any>(chargeCompleted)
+
+        assertThat(memberEvents(memberId)).containsExactly(
+            MemberCreatedEvent::class.java,
+            ChargeCreatedEvent::class.java,
+            ChargeCompletedEvent::class.java
+        )
+    }
+
+    private fun appendByAnotherInstance(memberId: String, sequenceNumber: Long, event: Any) {
+        TransactionTemplate(transactionManager).execute {
+            eventStore.publish(GenericDomainEventMessage("Member", memberId, sequenceNumber, event))
+        }
+    }
+
+    private fun memberEvents(memberId: String): List<Class<*>> =
+        eventStore.readEvents(memberId).asStream().map { it.payloadType }.collect(Collectors.toList())
+
+    private fun memberCacheHits(): Double =
+        meterRegistry.find(AggregateCacheConfiguration.CACHE_GETS)
+            .tags("aggregate", "Member", "result", "hit")
+            .counter()
+            ?.count() ?: 0.0
+
+    companion object {
+        private const val RECURRING_DETAIL_REFERENCE = "recurringDetailReference"
+        private val AUTHORISED = AdyenTokenRegistrationStatus.AUTHORISED
+    }
+}
@@ -0,0 +1,68 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.commandhandling.SimpleCommandBus
+import org.axonframework.commandhandling.gateway.DefaultCommandGateway
+import org.axonframework.commandhandling.model.ConcurrencyException
+import org.axonframework.messaging.MessageHandler
+import org.junit.After
+import org.junit.Test
+
+class ConcurrencyRetrySchedulerTest {
+
+    private val commandBus = SimpleCommandBus()
+    private val retryScheduler = ConcurrencyRetryScheduler(Duration.ofMillis(1), MAX_RETRIES)
+    private val commandGateway = DefaultCommandGateway(commandBus, retryScheduler)
+    private val attempts = AtomicInteger()
+
+    @After
+    fun tearDown() {
+        retryScheduler.shutdown()
+    }
+
+    @Test
+    fun `retries commands failing on a concurrent change of their aggregate`() {
+        subscribe { attempt ->
+            if (attempt < 2) {
+                throw ConcurrencyException("The aggregate was changed in the meantime")
+            }
+            "handled"
+        }
+
+        assertThat(commandGateway.sendAndWait<String>(COMMAND)).isEqualTo("handled")
+        assertThat(attempts.get()).isEqualTo(3)
+    }
+
+    @Test
+    fun `gives up after the configured number of retries`() {
+        subscribe { throw ConcurrencyException("The aggregate was changed in the meantime") }
+
+        assertThatThrownBy { commandGateway.sendAndWait<Any>(COMMAND) }
+            .isInstanceOf(ConcurrencyException::class.java)
+        assertThat(attempts.get()).isEqualTo(MAX_RETRIES + 1)
+    }
+
+    @Test
+    fun `does not retry other failures`() {
+        subscribe { throw IllegalStateException("The command was rejected") }
+
+        assertThatThrownBy { commandGateway.sendAndWait<Any>(COMMAND) }
+            .isInstanceOf(IllegalStateException::class.java)
+        assertThat(attempts.get()).isEqualTo(1)
+    }
+
+    private fun subscribe(handle: (Int) -> Any) {
+        commandBus.subscribe(String::class.java.name, MessageHandler<CommandMessage<*>> {
+            handle(attempts.getAndIncrement())
+        })
+    }
+
+    companion object {
+        private const val COMMAND = "command"
+        private const val MAX_RETRIES = 3
+    }
+}
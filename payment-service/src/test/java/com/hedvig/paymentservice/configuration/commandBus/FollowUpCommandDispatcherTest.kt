@@ -0,0 +1,114 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.time.Duration
+import java.time.Instant
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class FollowUpCommandDispatcherTest {
+
+    private val followUpCommandRepository = mockk<FollowUpCommandRepository>(relaxed = true)
+    private val serializer = XStreamSerializer()
+    private val followUpCommandOutbox = FollowUpCommandOutbox(followUpCommandRepository, serializer)
+    private val commandGateway = mockk<CommandGateway>()
+    private val meterRegistry = SimpleMeterRegistry()
+    private val properties = CommandBusProperties().apply {
+        followUpMaxAttempts = 3
+        followUpInitialBackoff = Duration.ofSeconds(1)
+        followUpMaxBackoff = Duration.ofSeconds(4)
+    }
+
+    private lateinit var dispatcher: FollowUpCommandDispatcher
+
+    @Before
+    fun setUp() {
+        dispatcher = FollowUpCommandDispatcher(
+            followUpCommandRepository,
+            followUpCommandOutbox,
+            commandGateway,
+            properties,
+            meterRegistry
+        )
+    }
+
+    @After
+    fun tearDown() {
+        dispatcher.shutdown()
+    }
+
+    @Test
+    fun `sends stored commands and marks them completed`() {
+        val command = followUpCommand()
+        every { followUpCommandRepository.findDispatchable(any(), any(), any()) } returns listOf(command)
+        every { followUpCommandRepository.claim(command.id, any(), any()) } returns 1
+        every { commandGateway.sendAndWait<Any>(any()) } returns null
+
+        dispatcher.dispatchPendingCommands()
+        dispatcher.shutdown()
+
+        verify { commandGateway.sendAndWait<Any>(TestCommand(AGGREGATE_ID)) }
+        verify { followUpCommandRepository.markCompleted(command.id, any(), false, 1) }
+        assertThat(meterRegistry.get("command.bus.follow-ups.lag").timer().count()).isEqualTo(1)
+    }
+
+    @Test
+    fun `does not send commands claimed by another dispatcher`() {
+        val command = followUpCommand()
+        every { followUpCommandRepository.findDispatchable(any(), any(), any()) } returns listOf(command)
+        every { followUpCommandRepository.claim(command.id, any(), any()) } returns 0
+
+        dispatcher.dispatchPendingCommands()
+        dispatcher.shutdown()
+
+        verify(exactly = 0) { commandGateway.sendAndWait<Any>(any()) }
+    }
+
+    @Test
+    fun `schedules a retry with backoff when the command fails`() {
+        val command = followUpCommand(attempts = 1)
+        every { commandGateway.sendAndWait<Any>(any()) } throws IllegalStateException("handler failed")
+
+        val before = Instant.now()
+        dispatcher.dispatch(command)
+
+        verify(exactly = 0) { followUpCommandRepository.markCompleted(any(), any(), any(), any()) }
+        verify {
+            followUpCommandRepository.scheduleRetry(
+                command.id,
+                2,
+                match { it >= before.plusSeconds(2) && it <= Instant.now().plusSeconds(2) }
+            )
+        }
+    }
+
+    @Test
+    fun `gives up on commands failing the maximum number of times`() {
+        val command = followUpCommand(attempts = 2)
+        every { commandGateway.sendAndWait<Any>(any()) } throws IllegalStateException("handler failed")
+
+        dispatcher.dispatch(command)
+
+        verify { followUpCommandRepository.markCompleted(command.id, any(), true, 3) }
+        verify(exactly = 0) { followUpCommandRepository.scheduleRetry(any(), any(), any()) }
+    }
+
+    private fun followUpCommand(attempts: Int = 0): FollowUpCommand {
+        val serialized = serializer.serialize(TestCommand(AGGREGATE_ID), String::class.java)
+        return FollowUpCommand(AGGREGATE_ID, serialized.type.name, serialized.data, Instant.now())
+            .also { it.attempts = attempts }
+    }
+
+    data class TestCommand(val aggregateId: String)
+
+    companion object {
+        private const val AGGREGATE_ID = "aggregate"
+    }
+}
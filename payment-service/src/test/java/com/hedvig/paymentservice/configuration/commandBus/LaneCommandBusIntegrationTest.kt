@@ -0,0 +1,81 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import com.hedvig.paymentservice.PaymentServiceTestConfiguration
+import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.AccountNotificationReceivedCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreateOrderCommand
+import java.util.UUID
+import java.util.stream.Collectors
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.axonframework.eventsourcing.eventstore.EventStore
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.TestPropertySource
+import org.springframework.test.context.junit4.SpringRunner
+
+/**
+ * Runs commands through the lanes of the application's command bus, which the other tests handle on the
+ * dispatching thread.
+ */
+@RunWith(SpringRunner::class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = [PaymentServiceTestConfiguration::class])
+@SpringBootTest
+@TestPropertySource(properties = ["hedvig.command-bus.async-enabled=true"])
+class LaneCommandBusIntegrationTest {
+
+    @Autowired
+    lateinit var commandGateway: CommandGateway
+
+    @Autowired
+    lateinit var eventStore: EventStore
+
+    @Test
+    fun `creates the member of an account notification from the saga handling it on the order's lane`() {
+        val memberId = UUID.randomUUID().toString()
+        val hedvigOrderId = UUID.randomUUID()
+
+        commandGateway.sendAndWait<Any>(CreateOrderCommand(memberId, hedvigOrderId))
+        commandGateway.sendAndWait<Any>(
+            AccountNotificationReceivedCommand(
+                hedvigOrderId,
+                "notificationId",
+                "trustlyOrderId",
+                "accountId",
+                null,
+                null,
+                null,
+                null,
+                null,
+                true,
+                null,
+                null,
+                null,
+                null
+            )
+        )
+
+        assertThat(awaitMemberEvents(memberId) { events -> events.any { it is TrustlyAccountCreatedEvent } }).isTrue()
+    }
+
+    private fun awaitMemberEvents(memberId: String, condition: (List<Any?>) -> Boolean): Boolean {
+        val deadline = System.currentTimeMillis() + TIMEOUT_MILLIS
+        while (System.currentTimeMillis() < deadline) {
+            val events = eventStore.readEvents(memberId).asStream().map { it.payload }.collect(Collectors.toList())
+            if (condition(events)) {
+                return true
+            }
+            Thread.sleep(50)
+        }
+        return false
+    }
+
+    companion object {
+        private const val TIMEOUT_MILLIS = 10_000L
+    }
+}
@@ -0,0 +1,222 @@
+package com.hedvig.paymentservice.configuration.commandBus
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.mockk
+import io.mockk.verify
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.commandhandling.CommandCallback
+import org.axonframework.commandhandling.CommandMessage
+import org.axonframework.commandhandling.GenericCommandMessage.asCommandMessage
+import org.axonframework.commandhandling.TargetAggregateIdentifier
+import org.axonframework.common.transaction.NoTransactionManager
+import org.axonframework.messaging.MessageHandler
+import org.axonframework.monitoring.NoOpMessageMonitor
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class LaneCommandBusTest {
+
+    private val meterRegistry = SimpleMeterRegistry()
+    private val properties = CommandBusProperties().apply { lanes = 4 }
+    private val followUpCommandOutbox = mockk<FollowUpCommandOutbox>(relaxed = true)
+    private lateinit var commandBus: LaneCommandBus
+
+    @Before
+    fun setUp() {
+        commandBus = newCommandBus()
+    }
+
+    @After
+    fun tearDown() {
+        commandBus.shutdown()
+    }
+
+    @Test
+    fun `handles the commands for one aggregate one at a time and in order`() {
+        val handled = Collections.synchronizedList(mutableListOf<Int>())
+        val running = AtomicInteger()
+        val overlapping = AtomicInteger()
+        subscribe { command ->
+            if (running.incrementAndGet() > 1) {
+                overlapping.incrementAndGet()
+            }
+            Thread.sleep(1)
+            handled.add(command.sequence)
+            running.decrementAndGet()
+        }
+
+        val done = CountDownLatch(COMMANDS)
+        (0 until COMMANDS).forEach { dispatch(TestCommand(AGGREGATE_ID, it), done) }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue()
+        assertThat(handled).containsExactlyElementsOf(0 until COMMANDS)
+        assertThat(overlapping.get()).isZero()
+    }
+
+    @Test
+    fun `handles the commands for different aggregates in parallel`() {
+        val blockedAggregateId = AGGREGATE_ID
+        val otherAggregateId = (0 until 100).map { "aggregate-$it" }.first { laneOf(it) != laneOf(blockedAggregateId) }
+        val bothStarted = CountDownLatch(2)
+
+        subscribe {
+            bothStarted.countDown()
+            // Only returns once the command for the other aggregate has started as well
+            check(bothStarted.await(10, TimeUnit.SECONDS))
+        }
+
+        val done = CountDownLatch(2)
+        dispatch(TestCommand(blockedAggregateId, 0), done)
+        dispatch(TestCommand(otherAggregateId, 0), done)
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue()
+    }
+
+    @Test
+    fun `handles commands sent while handling a command on the same lane`() {
+        val handledNested = CountDownLatch(1)
+        subscribe { command ->
+            if (command.sequence == 0) {
+                commandBus.dispatch(asCommandMessage<TestCommand>(TestCommand(command.aggregateId, 1)))
+            } else {
+                handledNested.countDown()
+            }
+        }
+
+        dispatch(TestCommand(AGGREGATE_ID, 0), CountDownLatch(1))
+
+        assertThat(handledNested.await(10, TimeUnit.SECONDS)).isTrue()
+    }
+
+    @Test
+    fun `stores commands sent for another lane as follow-ups instead of handling them`() {
+        val otherAggregateId = (0 until 100).map { "aggregate-$it" }.first { laneOf(it) != laneOf(AGGREGATE_ID) }
+        val handled = Collections.synchronizedList(mutableListOf<String>())
+        val accepted = AtomicReference<Boolean>()
+        subscribe { command ->
+            handled.add(command.aggregateId)
+            if (command.aggregateId == AGGREGATE_ID) {
+                commandBus.dispatch(
+                    asCommandMessage<TestCommand>(TestCommand(otherAggregateId, 0)),
+                    object : CommandCallback<TestCommand, Any?> {
+                        override fun onSuccess(commandMessage: CommandMessage<out TestCommand>, result: Any?) {
+                            accepted.set(true)
+                        }
+
+                        override fun onFailure(commandMessage: CommandMessage<out TestCommand>, cause: Throwable) {
+                            accepted.set(false)
+                        }
+                    }
+                )
+            }
+        }
+
+        val done = CountDownLatch(1)
+        dispatch(TestCommand(AGGREGATE_ID, 0), done)
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue()
+        assertThat(accepted.get()).isTrue()
+        assertThat(handled).containsExactly(AGGREGATE_ID)
+        verify { followUpCommandOutbox.enqueue(match { it.payload == TestCommand(otherAggregateId, 0) }, otherAggregateId) }
+    }
+
+    @Test
+    fun `fails commands that do not fit into the queue of their lane`() {
+        commandBus.shutdown()
+        properties.lanes = 1
+        properties.laneQueueCapacity = 1
+        commandBus = newCommandBus()
+        val laneFree = CountDownLatch(1)
+        subscribe { check(laneFree.await(10, TimeUnit.SECONDS)) }
+
+        dispatch(TestCommand(AGGREGATE_ID, 0), CountDownLatch(1))
+        // Waits for the first command to be taken off the queue by the lane
+        while (meterRegistry.get("command.bus.lane.depth").gauge().value() > 0) {
+            Thread.sleep(1)
+        }
+        dispatch(TestCommand(AGGREGATE_ID, 1), CountDownLatch(1))
+        val failure = AtomicReference<Throwable>()
+        commandBus.dispatch(asCommandMessage<TestCommand>(TestCommand(AGGREGATE_ID, 2)), object : CommandCallback<TestCommand, Any?> {
+            override fun onSuccess(commandMessage: CommandMessage<out TestCommand>, result: Any?) {
+            }
+
+            override fun onFailure(commandMessage: CommandMessage<out TestCommand>, cause: Throwable) {
+                failure.set(cause)
+            }
+        })
+        laneFree.countDown()
+
+        assertThat(failure.get()).isInstanceOf(RejectedExecutionException::class.java)
+    }
+
+    @Test
+    fun `handles commands on the dispatching thread when disabled`() {
+        commandBus.shutdown()
+        properties.asyncEnabled = false
+        commandBus = newCommandBus()
+        val handlingThread = mutableListOf<Thread>()
+        subscribe { handlingThread.add(Thread.currentThread()) }
+
+        dispatch(TestCommand(AGGREGATE_ID, 0), CountDownLatch(1))
+
+        assertThat(handlingThread).containsExactly(Thread.currentThread())
+    }
+
+    @Test
+    fun `exposes queue depth and latency per lane`() {
+        subscribe { }
+
+        val done = CountDownLatch(1)
+        dispatch(TestCommand(AGGREGATE_ID, 0), done)
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue()
+        commandBus.shutdown()
+
+        assertThat(meterRegistry.find("command.bus.lane.depth").gauges()).hasSize(properties.lanes)
+        assertThat(meterRegistry.find("command.bus.lane.latency").timers().sumBy { it.count().toInt() })
+            .isEqualTo(1)
+    }
+
+    private fun newCommandBus() =
+        LaneCommandBus(
+            NoTransactionManager.INSTANCE,
+            NoOpMessageMonitor.INSTANCE,
+            properties,
+            followUpCommandOutbox,
+            meterRegistry
+        )
+
+    private fun subscribe(handle: (TestCommand) -> Unit) {
+        commandBus.subscribe(TestCommand::class.java.name, MessageHandler<CommandMessage<*>> { message ->
+            handle(message.payload as TestCommand)
+            null
+        })
+    }
+
+    private fun dispatch(command: TestCommand, done: CountDownLatch) {
+        commandBus.dispatch(asCommandMessage<TestCommand>(command), object : CommandCallback<TestCommand, Any?> {
+            override fun onSuccess(commandMessage: CommandMessage<out TestCommand>, result: Any?) {
+                done.countDown()
+            }
+
+            override fun onFailure(commandMessage: CommandMessage<out TestCommand>, cause: Throwable) {
+                throw AssertionError(cause)
+            }
+        })
+    }
+
+    private fun laneOf(aggregateId: String) = Math.floorMod(aggregateId.hashCode(), properties.lanes)
+
+    data class TestCommand(@TargetAggregateIdentifier val aggregateId: String, val sequence: Int)
+
+    companion object {
+        private const val AGGREGATE_ID = "aggregate"
+        private const val COMMANDS = 50
+    }
+}
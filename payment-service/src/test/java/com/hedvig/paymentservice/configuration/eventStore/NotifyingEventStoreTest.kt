@@ -0,0 +1,61 @@
+package com.hedvig.paymentservice.configuration.eventStore
+
+import java.util.concurrent.TimeUnit
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.eventsourcing.GenericDomainEventMessage
+import org.axonframework.eventsourcing.eventstore.inmemory.InMemoryEventStorageEngine
+import org.axonframework.messaging.Message
+import org.axonframework.messaging.unitofwork.DefaultUnitOfWork
+import org.axonframework.monitoring.NoOpMessageMonitor
+import org.junit.After
+import org.junit.Test
+
+class NotifyingEventStoreTest {
+
+    private val storageEngine = InMemoryEventStorageEngine()
+    private var notifications = 0
+    private val eventStore = NotifyingEventStore(
+        storageEngine,
+        NoOpMessageMonitor.INSTANCE,
+        TimeUnit.MINUTES.toMillis(1)
+    ) { notifications++ }
+
+    @After
+    fun tearDown() {
+        eventStore.shutDown()
+    }
+
+    @Test
+    fun `announces appends once per unit of work`() {
+        DefaultUnitOfWork.startAndGet<Message<*>>(null).execute {
+            eventStore.publish(event(0), event(1))
+            eventStore.publish(event(2))
+        }
+
+        assertThat(notifications).isEqualTo(1)
+    }
+
+    @Test
+    fun `fetches events appended elsewhere without waiting for the next poll`() {
+        val stream = eventStore.openStream(null)
+        // Lets the store fetch once, after which it waits for its next poll a minute from now
+        assertThat(stream.hasNextAvailable(200, TimeUnit.MILLISECONDS)).isFalse()
+        assertThat(stream.hasNextAvailable(200, TimeUnit.MILLISECONDS)).isFalse()
+
+        // Appended by another instance, straight into the shared storage
+        storageEngine.appendEvents(event(0))
+        assertThat(stream.hasNextAvailable(200, TimeUnit.MILLISECONDS)).isFalse()
+
+        eventStore.fetchNewEvents()
+
+        assertThat(stream.hasNextAvailable(5, TimeUnit.SECONDS)).isTrue()
+        stream.close()
+    }
+
+    private fun event(sequenceNumber: Long) =
+        GenericDomainEventMessage("Member", MEMBER_ID, sequenceNumber, "payload-$sequenceNumber")
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+    }
+}
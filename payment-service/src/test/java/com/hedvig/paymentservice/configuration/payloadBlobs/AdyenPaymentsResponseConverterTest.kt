@@ -0,0 +1,136 @@
+package com.hedvig.paymentservice.configuration.payloadBlobs
+
+import com.adyen.model.checkout.PaymentsResponse
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationAuthorisedEvent
+import com.hedvig.paymentservice.services.adyen.dtos.AdyenPaymentsResponse
+import com.hedvig.paymentservice.services.adyen.dtos.PaymentResponseResultCode
+import java.util.UUID
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.serialization.SerializedObject
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+
+class AdyenPaymentsResponseConverterTest {
+
+    private lateinit var database: EmbeddedDatabase
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var payloadBlobStore: PayloadBlobStore
+    private lateinit var serializer: XStreamSerializer
+
+    @Before
+    fun setUp() {
+        database = EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build()
+        jdbcTemplate = JdbcTemplate(database)
+        // The table as mapped by PayloadBlob
+        jdbcTemplate.execute(
+            "CREATE TABLE payload_blob (hash VARCHAR(64) PRIMARY KEY, content TEXT, created_at TIMESTAMP)"
+        )
+        payloadBlobStore = PayloadBlobStore(jdbcTemplate)
+        serializer = XStreamSerializer().apply {
+            xStream.registerConverter(AdyenPaymentsResponseConverter(xStream) { payloadBlobStore })
+        }
+    }
+
+    @After
+    fun tearDown() {
+        database.shutdown()
+    }
+
+    @Test
+    fun `writes the response to the blob store and reads back the fields kept in the event`() {
+        val serialized = serializer.serialize(authorisedEvent(paymentsResponse()), String::class.java)
+
+        assertThat(serialized.data).doesNotContain(PAYMENT_DATA)
+        val event = deserialize(serialized)
+        assertThat(event.adyenPaymentsResponse.getResultCode()).isEqualTo(PaymentResponseResultCode.AUTHORISED)
+        assertThat(event.adyenPaymentsResponse.getRecurringDetailReference()).isEqualTo(RECURRING_DETAIL_REFERENCE)
+        assertThat(event.adyenPaymentsResponse.paymentsResponse.paymentData).isNull()
+        assertThat(blobContent(event.adyenPaymentsResponse.payloadReference!!)).contains(PAYMENT_DATA)
+    }
+
+    @Test
+    fun `stores identical responses once`() {
+        serializer.serialize(authorisedEvent(paymentsResponse()), String::class.java)
+        serializer.serialize(authorisedEvent(paymentsResponse()), String::class.java)
+
+        assertThat(blobCount()).isEqualTo(1)
+    }
+
+    @Test
+    fun `keeps the reference of a response read from an event`() {
+        val event = deserialize(serializer.serialize(authorisedEvent(paymentsResponse()), String::class.java))
+
+        val reserialized = deserialize(serializer.serialize(event, String::class.java))
+
+        assertThat(reserialized.adyenPaymentsResponse.payloadReference)
+            .isEqualTo(event.adyenPaymentsResponse.payloadReference)
+        assertThat(blobCount()).isEqualTo(1)
+    }
+
+    @Test
+    fun `reads responses written in full before they were stored apart`() {
+        val serialized = XStreamSerializer().serialize(authorisedEvent(paymentsResponse()), String::class.java)
+
+        val event = deserialize(serialized)
+
+        assertThat(event.adyenPaymentsResponse.payloadReference).isNull()
+        assertThat(event.adyenPaymentsResponse.paymentsResponse.paymentData).isEqualTo(PAYMENT_DATA)
+        assertThat(blobCount()).isEqualTo(0)
+    }
+
+    @Test
+    fun `writes responses in full without a blob store and still reads those stored apart`() {
+        val readOnlySerializer = XStreamSerializer().apply {
+            xStream.registerConverter(AdyenPaymentsResponseConverter(xStream, null))
+        }
+
+        val serialized = readOnlySerializer.serialize(authorisedEvent(paymentsResponse()), String::class.java)
+        val stored: AdyenTokenRegistrationAuthorisedEvent =
+            readOnlySerializer.deserialize(serializer.serialize(authorisedEvent(paymentsResponse()), String::class.java))
+
+        assertThat(serialized.data).contains(PAYMENT_DATA)
+        assertThat(stored.adyenPaymentsResponse.getResultCode()).isEqualTo(PaymentResponseResultCode.AUTHORISED)
+        assertThat(stored.adyenPaymentsResponse.payloadReference).isNotNull()
+        assertThat(blobCount()).isEqualTo(1)
+    }
+
+    private fun deserialize(serialized: SerializedObject<String>): AdyenTokenRegistrationAuthorisedEvent =
+        serializer.deserialize(serialized)
+
+    private fun blobCount(): Int =
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payload_blob", Int::class.java)!!
+
+    private fun blobContent(hash: String): String =
+        jdbcTemplate.queryForObject("SELECT content FROM payload_blob WHERE hash = ?", String::class.java, hash)!!
+
+    private fun paymentsResponse() = AdyenPaymentsResponse(
+        PaymentsResponse()
+            .resultCode(PaymentsResponse.ResultCodeEnum.AUTHORISED)
+            .paymentData(PAYMENT_DATA)
+            .additionalData(mapOf(AdyenPaymentsResponse.RECURRING_DETAIL_REFERENCE to RECURRING_DETAIL_REFERENCE))
+    )
+
+    private fun authorisedEvent(response: AdyenPaymentsResponse) = AdyenTokenRegistrationAuthorisedEvent(
+        adyenTokenRegistrationId = TOKEN_REGISTRATION_ID,
+        memberId = "12345",
+        adyenPaymentsResponse = response,
+        adyenMerchantAccount = "merchantAccount",
+        isPayoutSetup = false,
+        shopperReference = "shopperReference"
+    )
+
+    companion object {
+        private val TOKEN_REGISTRATION_ID = UUID.fromString("00000000-0000-0000-0000-000000000001")
+        private const val PAYMENT_DATA = "paymentDataOnlyKeptInTheBlob"
+        private const val RECURRING_DETAIL_REFERENCE = "recurringDetailReference"
+    }
+}
@@ -0,0 +1,91 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import java.time.Duration
+import javax.sql.DataSource
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.jdbc.datasource.DriverManagerDataSource
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy
+import org.springframework.transaction.support.TransactionTemplate
+
+class ReadReplicaRoutingDataSourceTest {
+
+    private val primary = h2("primary")
+    private val replica = h2("replica")
+    private val properties = ReadReplicaProperties().apply {
+        maxLag = Duration.ofSeconds(10)
+        lagQuery = "SELECT lag_seconds FROM replication_lag"
+    }
+    private val lagMonitor = ReplicaLagMonitor(replica, properties, SimpleMeterRegistry())
+    private val routingDataSource = LazyConnectionDataSourceProxy(
+        ReadReplicaRoutingDataSource(primary, replica, lagMonitor)
+    )
+    private val jdbcTemplate = JdbcTemplate(routingDataSource)
+    private val transactionManager = DataSourceTransactionManager(routingDataSource)
+
+    @Before
+    fun setUp() {
+        listOf(primary to "primary", replica to "replica").forEach { (dataSource, name) ->
+            JdbcTemplate(dataSource).apply {
+                execute("CREATE TABLE IF NOT EXISTS origin (name VARCHAR(16))")
+                execute("DELETE FROM origin")
+                update("INSERT INTO origin VALUES (?)", name)
+            }
+        }
+        JdbcTemplate(replica).apply {
+            execute("CREATE TABLE IF NOT EXISTS replication_lag (lag_seconds DOUBLE)")
+            execute("DELETE FROM replication_lag")
+            execute("INSERT INTO replication_lag VALUES (0)")
+        }
+        lagMonitor.checkLag()
+    }
+
+    @Test
+    fun `read-only transactions within replica reads go to the replica`() {
+        assertThat(ReplicaReads.within { readOrigin(readOnly = true) }).isEqualTo("replica")
+    }
+
+    @Test
+    fun `read-write transactions within replica reads go to the primary`() {
+        assertThat(ReplicaReads.within { readOrigin(readOnly = false) }).isEqualTo("primary")
+    }
+
+    @Test
+    fun `read-only transactions outside replica reads go to the primary`() {
+        assertThat(readOrigin(readOnly = true)).isEqualTo("primary")
+    }
+
+    @Test
+    fun `reads go to the primary while the replica lags behind`() {
+        JdbcTemplate(replica).update("UPDATE replication_lag SET lag_seconds = 60")
+        lagMonitor.checkLag()
+
+        assertThat(lagMonitor.isReplicaUsable()).isFalse()
+        assertThat(ReplicaReads.within { readOrigin(readOnly = true) }).isEqualTo("primary")
+
+        JdbcTemplate(replica).update("UPDATE replication_lag SET lag_seconds = 1")
+        lagMonitor.checkLag()
+
+        assertThat(ReplicaReads.within { readOrigin(readOnly = true) }).isEqualTo("replica")
+    }
+
+    @Test
+    fun `reads go to the primary when the replica lag cannot be determined`() {
+        JdbcTemplate(replica).execute("DROP TABLE replication_lag")
+        lagMonitor.checkLag()
+
+        assertThat(ReplicaReads.within { readOrigin(readOnly = true) }).isEqualTo("primary")
+    }
+
+    private fun readOrigin(readOnly: Boolean): String? =
+        TransactionTemplate(transactionManager).apply { isReadOnly = readOnly }.execute {
+            jdbcTemplate.queryForObject("SELECT name FROM origin", String::class.java)
+        }
+
+    private fun h2(name: String): DataSource =
+        DriverManagerDataSource("jdbc:h2:mem:read-replica-$name;DB_CLOSE_DELAY=-1", "sa", "")
+}
@@ -0,0 +1,119 @@
+package com.hedvig.paymentservice.configuration.readReplica
+
+import com.hedvig.paymentservice.PaymentServiceTestConfiguration
+import com.hedvig.paymentservice.services.payments.reporting.PolicyGuess
+import com.hedvig.paymentservice.services.payments.reporting.PolicyGuessRepository
+import java.time.Instant
+import java.util.UUID
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+import javax.sql.DataSource
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.ObjectProvider
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor
+import org.springframework.test.context.ActiveProfiles
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.TestPropertySource
+import org.springframework.test.context.junit4.SpringRunner
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import org.springframework.web.context.request.ServletWebRequest
+
+/**
+ * Serves requests the way the web layer does, with a separate H2 database standing in for the replica.
+ * The replica only has the table read here, so anything written to it fails.
+ */
+@RunWith(SpringRunner::class)
+@ActiveProfiles("test")
+@ContextConfiguration(classes = [PaymentServiceTestConfiguration::class])
+@SpringBootTest
+@TestPropertySource(
+    properties = [
+        "hedvig.read-replica.enabled=true",
+        "hedvig.read-replica.datasource.url=jdbc:h2:mem:replica-reads-jpa;DB_CLOSE_DELAY=-1",
+        "hedvig.read-replica.datasource.username=sa",
+        "hedvig.read-replica.lag-query=SELECT 0"
+    ]
+)
+class ReplicaReadsJpaTest {
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    lateinit var primaryDataSource: DataSource
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    lateinit var replicaDataSource: DataSource
+
+    @Autowired
+    lateinit var transactionManager: PlatformTransactionManager
+
+    @Autowired
+    lateinit var openEntityManagerInViewInterceptor: ObjectProvider<OpenEntityManagerInViewInterceptor>
+
+    @Autowired
+    lateinit var policyGuessRepository: PolicyGuessRepository
+
+    @PersistenceContext
+    lateinit var entityManager: EntityManager
+
+    @Before
+    fun setUp() {
+        listOf(primaryDataSource to "primary", replicaDataSource to "replica").forEach { (dataSource, name) ->
+            JdbcTemplate(dataSource).apply {
+                execute("CREATE TABLE IF NOT EXISTS origin (name VARCHAR(16))")
+                execute("DELETE FROM origin")
+                update("INSERT INTO origin VALUES (?)", name)
+            }
+        }
+    }
+
+    @Test
+    fun `stores policy guesses on the primary after reading from the replica within a request`() {
+        val transactionId = UUID.randomUUID()
+
+        inRequest {
+            ReplicaReads.within {
+                assertThat(readOrigin()).isEqualTo("replica")
+                policyGuessRepository.saveAll(listOf(PolicyGuess(transactionId, null, null, Instant.now())))
+            }
+        }
+
+        assertThat(policyGuessRepository.findById(transactionId)).isPresent
+    }
+
+    @Test
+    fun `reads outside replica reads go to the primary after a replica read within the same request`() {
+        inRequest {
+            assertThat(ReplicaReads.within { readOrigin() }).isEqualTo("replica")
+            assertThat(readOrigin()).isEqualTo("primary")
+        }
+    }
+
+    private fun readOrigin(): String? =
+        TransactionTemplate(transactionManager).apply { isReadOnly = true }.execute {
+            entityManager.createNativeQuery("SELECT name FROM origin").singleResult as String
+        }
+
+    /**
+     * Runs [block] with the interceptors Spring Boot adds around every request, if it adds any.
+     */
+    private fun <T> inRequest(block: () -> T): T {
+        val interceptor = openEntityManagerInViewInterceptor.ifAvailable ?: return block()
+        val request = ServletWebRequest(MockHttpServletRequest())
+        interceptor.preHandle(request)
+        try {
+            return block()
+        } finally {
+            interceptor.afterCompletion(request, null)
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.hedvig.paymentservice.configuration.sagaStore
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+
+class SagaStoreMaintenanceTest {
+
+    private lateinit var database: EmbeddedDatabase
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var maintenance: SagaStoreMaintenance
+
+    @Before
+    fun setUp() {
+        database = EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build()
+        jdbcTemplate = JdbcTemplate(database)
+        // The tables as mapped by the JPA saga store
+        jdbcTemplate.execute(
+            "CREATE TABLE saga_entry (" +
+                "saga_id VARCHAR(255) PRIMARY KEY, revision VARCHAR(255), saga_type VARCHAR(255), serialized_saga BLOB)"
+        )
+        jdbcTemplate.execute(
+            "CREATE TABLE association_value_entry (" +
+                "id BIGINT PRIMARY KEY, association_key VARCHAR(255) NOT NULL, association_value VARCHAR(255), " +
+                "saga_id VARCHAR(255) NOT NULL, saga_type VARCHAR(255))"
+        )
+        maintenance = SagaStoreMaintenance(jdbcTemplate)
+    }
+
+    @After
+    fun tearDown() {
+        database.shutdown()
+    }
+
+    @Test
+    fun `saga lookups stay indexed and flat as the store grows`() {
+        maintenance.createIndexes()
+        maintenance.createIndexes()
+
+        val lookupNanos = STORE_SIZES.map { size ->
+            growStoreTo(size)
+            assertThat(explain(LOOKUP)).containsIgnoringCase(SagaStoreMaintenance.LOOKUP_INDEX)
+            assertThat(explain(LOOKUP)).doesNotContainIgnoringCase("tableScan")
+            medianLookupNanos()
+        }
+
+        assertThat(lookupNanos.last()).isLessThan(lookupNanos.first() * MAX_SLOWDOWN)
+    }
+
+    @Test
+    fun `removes associations of missing sagas and sagas without associations`() {
+        insertSaga("reachable")
+        insertAssociation(1, "reachable")
+        insertSaga("withoutAssociations")
+        insertAssociation(2, "missing")
+
+        maintenance.removeUnreachableSagas()
+
+        assertThat(jdbcTemplate.queryForList("SELECT saga_id FROM saga_entry", String::class.java))
+            .containsExactly("reachable")
+        assertThat(jdbcTemplate.queryForList("SELECT saga_id FROM association_value_entry", String::class.java))
+            .containsExactly("reachable")
+    }
+
+    private fun growStoreTo(size: Int) {
+        val existing = jdbcTemplate.queryForObject("SELECT count(*) FROM association_value_entry", Int::class.java)!!
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO association_value_entry VALUES (?, 'transactionId', ?, ?, ?)",
+            (existing until size).map { id -> arrayOf<Any>(id, "value$id", "saga$id", SAGA_TYPE) }
+        )
+    }
+
+    private fun medianLookupNanos(): Long =
+        (0 until LOOKUPS)
+            .map { lookup ->
+                val start = System.nanoTime()
+                jdbcTemplate.queryForList(
+                    "SELECT saga_id FROM association_value_entry " +
+                        "WHERE association_key = 'transactionId' AND association_value = ? AND saga_type = ?",
+                    String::class.java,
+                    "value${lookup * 7}",
+                    SAGA_TYPE
+                )
+                System.nanoTime() - start
+            }
+            .sorted()[LOOKUPS / 2]
+
+    private fun explain(sql: String): String =
+        jdbcTemplate.queryForList("EXPLAIN $sql", String::class.java).joinToString("\n")
+
+    private fun insertSaga(sagaId: String) {
+        jdbcTemplate.update("INSERT INTO saga_entry (saga_id, saga_type) VALUES (?, ?)", sagaId, SAGA_TYPE)
+    }
+
+    private fun insertAssociation(id: Long, sagaId: String) {
+        jdbcTemplate.update(
+            "INSERT INTO association_value_entry VALUES (?, 'transactionId', ?, ?, ?)",
+            id,
+            "value$id",
+            sagaId,
+            SAGA_TYPE
+        )
+    }
+
+    companion object {
+        private const val SAGA_TYPE = "com.hedvig.paymentservice.domain.adyenTransaction.sagas.AdyenTransactionSaga"
+        private const val LOOKUP = "SELECT saga_id FROM association_value_entry " +
+            "WHERE association_key = 'transactionId' AND association_value = 'value1' AND saga_type = '$SAGA_TYPE'"
+        private val STORE_SIZES = listOf(1_000, 10_000, 50_000)
+        private const val LOOKUPS = 200
+        private const val MAX_SLOWDOWN = 10
+    }
+}
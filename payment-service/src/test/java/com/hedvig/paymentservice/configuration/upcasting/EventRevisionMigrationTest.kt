@@ -0,0 +1,133 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutDetails
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.messaging.MetaData
+import org.axonframework.serialization.SimpleSerializedObject
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+
+class EventRevisionMigrationTest {
+
+    private val serializer = XStreamSerializer()
+    private val properties = UpcastingProperties()
+
+    private lateinit var database: EmbeddedDatabase
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var migration: EventRevisionMigration
+
+    @Before
+    fun setUp() {
+        database = EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build()
+        jdbcTemplate = JdbcTemplate(database)
+        // The table as mapped by the JPA event storage engine
+        jdbcTemplate.execute(
+            "CREATE TABLE domain_event_entry (" +
+                "global_index BIGINT PRIMARY KEY, event_identifier VARCHAR(255) NOT NULL, " +
+                "meta_data BLOB, payload BLOB NOT NULL, payload_revision VARCHAR(255), " +
+                "payload_type VARCHAR(255) NOT NULL, time_stamp VARCHAR(255) NOT NULL, " +
+                "aggregate_identifier VARCHAR(255) NOT NULL, sequence_number BIGINT NOT NULL, type VARCHAR(255))"
+        )
+        properties.migration.batchSize = 2
+        migration = EventRevisionMigration(jdbcTemplate, serializer, DataSourceTransactionManager(database), properties)
+    }
+
+    @After
+    fun tearDown() {
+        database.shutdown()
+    }
+
+    @Test
+    fun `rewrites legacy events to their latest revision in batches`() {
+        (1L..5L).forEach { insertEvent(it, PAYOUT_CREATED_EVENT, null, PAYOUT_CREATED_V0_PAYLOAD) }
+        insertEvent(6L, "com.hedvig.paymentservice.domain.payments.events.MemberCreatedEvent", null, "<event/>")
+
+        migration.migrate()
+
+        assertThat(revisions()).containsExactly("3.0", "3.0", "3.0", "3.0", "3.0", null)
+        assertThat(storedPayout(3L).payoutDetails).isEqualTo(PayoutDetails.Trustly("TrustlyAccountId"))
+        assertThat(progress()).isEqualTo(5L to true)
+    }
+
+    @Test
+    fun `carries on from the position an interrupted migration reached`() {
+        (1L..4L).forEach { insertEvent(it, PAYOUT_CREATED_EVENT, null, PAYOUT_CREATED_V0_PAYLOAD) }
+        jdbcTemplate.execute(
+            "CREATE TABLE ${EventRevisionMigration.PROGRESS_TABLE} " +
+                "(id VARCHAR(64) PRIMARY KEY, last_global_index BIGINT NOT NULL, completed_at TIMESTAMP)"
+        )
+        jdbcTemplate.update("INSERT INTO ${EventRevisionMigration.PROGRESS_TABLE} VALUES ('latest-revision', 2, NULL)")
+
+        migration.migrate()
+
+        assertThat(revisions()).containsExactly(null, null, "3.0", "3.0")
+        assertThat(progress()).isEqualTo(4L to true)
+    }
+
+    @Test
+    fun `does nothing once the migration has completed`() {
+        migration.migrate()
+        insertEvent(1L, PAYOUT_CREATED_EVENT, null, PAYOUT_CREATED_V0_PAYLOAD)
+
+        migration.migrate()
+
+        assertThat(revisions()).containsExactly(null)
+    }
+
+    private fun insertEvent(globalIndex: Long, payloadType: String, revision: String?, payload: String) {
+        jdbcTemplate.update(
+            "INSERT INTO domain_event_entry (global_index, event_identifier, meta_data, payload, payload_revision, " +
+                "payload_type, time_stamp, aggregate_identifier, sequence_number, type) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            globalIndex,
+            "event-$globalIndex",
+            serializer.serialize(MetaData.emptyInstance(), ByteArray::class.java).data,
+            payload.toByteArray(),
+            revision,
+            payloadType,
+            "2021-02-17T09:32:33.809Z",
+            "aggregate-$globalIndex",
+            0L,
+            "Member"
+        )
+    }
+
+    private fun revisions(): List<String?> =
+        jdbcTemplate.queryForList(
+            "SELECT payload_revision FROM domain_event_entry ORDER BY global_index",
+            String::class.java
+        )
+
+    private fun storedPayout(globalIndex: Long): PayoutCreatedEvent =
+        jdbcTemplate.queryForObject(
+            "SELECT payload, payload_revision FROM domain_event_entry WHERE global_index = ?",
+            { rs, _ ->
+                serializer.deserialize<ByteArray, PayoutCreatedEvent>(
+                    SimpleSerializedObject(
+                        rs.getBytes("payload"),
+                        ByteArray::class.java,
+                        PAYOUT_CREATED_EVENT,
+                        rs.getString("payload_revision")
+                    )
+                )
+            },
+            globalIndex
+        )!!
+
+    private fun progress(): Pair<Long, Boolean> =
+        jdbcTemplate.queryForObject(
+            "SELECT last_global_index, completed_at FROM ${EventRevisionMigration.PROGRESS_TABLE}",
+            { rs, _ -> rs.getLong("last_global_index") to (rs.getTimestamp("completed_at") != null) }
+        )!!
+}
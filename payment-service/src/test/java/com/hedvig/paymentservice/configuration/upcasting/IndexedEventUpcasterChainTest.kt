@@ -0,0 +1,88 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import com.hedvig.paymentservice.domain.payments.TransactionCategory
+import com.hedvig.paymentservice.domain.payments.enums.Carrier
+import com.hedvig.paymentservice.domain.payments.events.DirectDebitPendingConnectionEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutDetails
+import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.util.stream.Collectors.toList
+import java.util.stream.Stream
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.serialization.SerializedObject
+import org.axonframework.serialization.SimpleSerializedType
+import org.axonframework.serialization.upcasting.event.InitialEventRepresentation
+import org.axonframework.serialization.upcasting.event.IntermediateEventRepresentation
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.junit.Test
+
+class IndexedEventUpcasterChainTest {
+
+    private val serializer = XStreamSerializer()
+    private val chain = IndexedEventUpcasterChain(EventUpcasters.splitting() + EventUpcasters.legacy())
+
+    @Test
+    fun `upcasts events through every revision they are behind`() {
+        val result = upcast(PAYOUT_CREATED_EVENT, null, PAYOUT_CREATED_V0_PAYLOAD)
+
+        assertThat(result).hasSize(1)
+        assertThat(result.single().type.revision).isEqualTo("3.0")
+        @Suppress("UNCHECKED_CAST")
+        val event = serializer.deserialize<PayoutCreatedEvent, PayoutCreatedEvent>(
+            result.single().getData(String::class.java) as SerializedObject<PayoutCreatedEvent>
+        )
+        assertThat(event.category).isEqualTo(TransactionCategory.CLAIM)
+        assertThat(event.carrier).isEqualTo(Carrier.HDI)
+        assertThat(event.payoutDetails).isEqualTo(PayoutDetails.Trustly("TrustlyAccountId"))
+    }
+
+    @Test
+    fun `passes events at their latest revision by without handing them to any upcaster`() {
+        val upcaster = mockk<IndexedEventUpcaster>()
+        every { upcaster.upcastedTypes() } returns setOf(SimpleSerializedType(PAYOUT_CREATED_EVENT, "2.0"))
+        val representation = representation(PAYOUT_CREATED_EVENT, "3.0", "<payout/>")
+
+        val result = IndexedEventUpcasterChain(listOf(upcaster))
+            .upcast(Stream.of(representation))
+            .collect(toList())
+
+        assertThat(result).containsExactly(representation)
+        verify(exactly = 0) { upcaster.upcast(any()) }
+    }
+
+    @Test
+    fun `keeps upcasters that split one event into several`() {
+        val result = upcast(
+            TrustlyAccountCreatedEvent::class.java.typeName,
+            null,
+            "<com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent>" +
+                "<memberId>123</memberId><hedvigOrderId>7d762438-5d14-434e-851a-3833a3a92b9e</hedvigOrderId>" +
+                "<trustlyAccountId>accountId</trustlyAccountId><address>address</address><bank>bank</bank>" +
+                "<city>city</city><clearingHouse>clearingHouse</clearingHouse><descriptor>descriptor</descriptor>" +
+                "<lastDigits>1234</lastDigits><name>name</name><personId>personId</personId><zipCode>12345</zipCode>" +
+                "</com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent>"
+        )
+
+        assertThat(result.map { it.type.name to it.type.revision }).containsExactly(
+            TrustlyAccountCreatedEvent::class.java.typeName to "1.0",
+            DirectDebitPendingConnectionEvent::class.java.typeName to null
+        )
+    }
+
+    @Test
+    fun `indexes the types of every registered upcaster`() {
+        assertThat(chain.canUpcast(SimpleSerializedType(PAYOUT_CREATED_EVENT, null))).isTrue()
+        assertThat(chain.canUpcast(SimpleSerializedType(PAYOUT_CREATED_EVENT, "2.0"))).isTrue()
+        assertThat(chain.canUpcast(SimpleSerializedType(PAYOUT_CREATED_EVENT, "3.0"))).isFalse()
+        assertThat(chain.upcastedTypes).hasSize(10)
+    }
+
+    private fun upcast(payloadType: String, revision: String?, payload: String): List<IntermediateEventRepresentation> =
+        chain.upcast(Stream.of(representation(payloadType, revision, payload))).collect(toList())
+
+    private fun representation(payloadType: String, revision: String?, payload: String) =
+        InitialEventRepresentation(storedEvent(serializer, payloadType, revision, payload), serializer)
+}
@@ -0,0 +1,22 @@
+package com.hedvig.paymentservice.configuration.upcasting
+
+import org.axonframework.eventsourcing.GenericDomainEventMessage
+import org.axonframework.eventsourcing.eventstore.jpa.DomainEventEntry
+import org.axonframework.messaging.MetaData
+import org.axonframework.serialization.Serializer
+import org.springframework.test.util.ReflectionTestUtils
+
+internal const val PAYOUT_CREATED_EVENT = "com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent"
+
+// A trustly PayoutCreatedEvent as it was stored before it had a revision
+internal const val PAYOUT_CREATED_V0_PAYLOAD = "<com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent><memberId>123</memberId><transactionId>7d762438-5d14-434e-851a-3833a3a92b9e</transactionId><amount class=\"org.javamoney.moneta.Money\"><currency class=\"org.javamoney.moneta.internal.JDKCurrencyAdapter\"><baseCurrency>SEK</baseCurrency><context><data><entry><string>provider</string><string>java.util.Currency</string></entry></data></context></currency><monetaryContext><data><entry><string>amountType</string><java-class>org.javamoney.moneta.Money</java-class></entry><entry><string>java.lang.Class</string><java-class>org.javamoney.moneta.Money</java-class></entry><entry><string>precision</string><int>256</int></entry><entry><string>java.math.RoundingMode</string><java.math.RoundingMode>HALF_EVEN</java.math.RoundingMode></entry></data></monetaryContext><number>12</number></amount><address>street</address><countryCode>SE</countryCode><dateOfBirth>2020-01-01</dateOfBirth><firstName>first</firstName><lastName>last</lastName><timestamp>2021-02-17T09:32:33.809126Z</timestamp><trustlyAccountId>TrustlyAccountId</trustlyAccountId><referenceId>ref</referenceId><note>note</note><email>em@i.l</email></com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent>"
+
+internal fun storedEvent(serializer: Serializer, payloadType: String, revision: String?, payload: String) =
+    DomainEventEntry(
+        GenericDomainEventMessage("Member", "aggregateId", 0, "The payload will be replaced", MetaData.emptyInstance()),
+        serializer
+    ).apply {
+        ReflectionTestUtils.setField(this, "payload", payload.toByteArray())
+        ReflectionTestUtils.setField(this, "payloadType", payloadType)
+        ReflectionTestUtils.setField(this, "payloadRevision", revision)
+    }
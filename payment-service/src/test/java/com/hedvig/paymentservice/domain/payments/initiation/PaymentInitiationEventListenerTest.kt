@@ -0,0 +1,139 @@
+package com.hedvig.paymentservice.domain.payments.initiation
+
+import com.hedvig.paymentservice.common.UUIDGenerator
+import com.hedvig.paymentservice.domain.adyenTransaction.commands.InitiateAdyenTransactionCommand
+import com.hedvig.paymentservice.domain.payments.TransactionCategory
+import com.hedvig.paymentservice.domain.payments.enums.Carrier
+import com.hedvig.paymentservice.domain.payments.enums.PayinProvider
+import com.hedvig.paymentservice.domain.payments.events.ChargeCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutCreatedEvent
+import com.hedvig.paymentservice.domain.payments.events.PayoutDetails
+import com.hedvig.paymentservice.domain.swish.commands.InitiateSwishTransactionPayoutCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePaymentOrderCommand
+import com.hedvig.paymentservice.services.providerCalls.PaymentProvider
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallQueue
+import com.hedvig.paymentservice.services.trustly.dto.PaymentRequest
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.time.Instant
+import java.util.UUID
+import org.javamoney.moneta.Money
+import org.junit.Before
+import org.junit.Test
+
+class PaymentInitiationEventListenerTest {
+
+    private val providerCallQueue = mockk<ProviderCallQueue>(relaxed = true)
+    private val uuidGenerator = mockk<UUIDGenerator>()
+
+    private val listener = PaymentInitiationEventListener(providerCallQueue, uuidGenerator)
+
+    @Before
+    fun setUp() {
+        every { uuidGenerator.generateRandom() } returns HEDVIG_ORDER_ID
+    }
+
+    @Test
+    fun `enqueues the trustly call creating the payment order for trustly charges`() {
+        listener.on(makeChargeCreatedEvent(PayinProvider.TRUSTLY))
+
+        verify {
+            providerCallQueue.enqueueTrustlyPaymentOrder(
+                TRANSACTION_ID,
+                HEDVIG_ORDER_ID,
+                PaymentRequest(MEMBER_ID, AMOUNT, "accountId", "member@hedvig.com"),
+                CreatePaymentOrderCommand(HEDVIG_ORDER_ID, TRANSACTION_ID, MEMBER_ID, AMOUNT, "accountId")
+            )
+        }
+    }
+
+    @Test
+    fun `enqueues the initiate command for adyen charges`() {
+        listener.on(makeChargeCreatedEvent(PayinProvider.ADYEN, providerId = "recurringDetailReference"))
+
+        verify {
+            providerCallQueue.enqueueCommand(
+                PaymentProvider.ADYEN,
+                MEMBER_ID,
+                TRANSACTION_ID,
+                InitiateAdyenTransactionCommand(TRANSACTION_ID, MEMBER_ID, "recurringDetailReference", AMOUNT)
+            )
+        }
+        verify(exactly = 0) { providerCallQueue.enqueueTrustlyPaymentOrder(any(), any(), any(), any()) }
+    }
+
+    @Test
+    fun `enqueues the trustly call creating the payout order for trustly payouts`() {
+        listener.on(makePayoutCreatedEvent(PayoutDetails.Trustly("accountId")))
+
+        verify {
+            providerCallQueue.enqueueTrustlyPayoutOrder(
+                TRANSACTION_ID,
+                HEDVIG_ORDER_ID,
+                any(),
+                match { it.hedvigOrderId == HEDVIG_ORDER_ID && it.trustlyAccountId == "accountId" }
+            )
+        }
+    }
+
+    @Test
+    fun `enqueues the initiate command for swish payouts`() {
+        listener.on(makePayoutCreatedEvent(PayoutDetails.Swish("0701234567", "199001011234", "Hedvig")))
+
+        verify {
+            providerCallQueue.enqueueCommand(
+                PaymentProvider.SWISH,
+                MEMBER_ID,
+                TRANSACTION_ID,
+                InitiateSwishTransactionPayoutCommand(
+                    TRANSACTION_ID,
+                    MEMBER_ID,
+                    "0701234567",
+                    "199001011234",
+                    "Hedvig",
+                    AMOUNT
+                )
+            )
+        }
+    }
+
+    private fun makeChargeCreatedEvent(provider: PayinProvider, providerId: String = "accountId") =
+        ChargeCreatedEvent(
+            memberId = MEMBER_ID,
+            transactionId = TRANSACTION_ID,
+            amount = AMOUNT,
+            timestamp = Instant.now(),
+            providerId = providerId,
+            provider = provider,
+            email = "member@hedvig.com",
+            createdBy = "test"
+        )
+
+    private fun makePayoutCreatedEvent(payoutDetails: PayoutDetails) =
+        PayoutCreatedEvent(
+            memberId = MEMBER_ID,
+            transactionId = TRANSACTION_ID,
+            amount = AMOUNT,
+            address = null,
+            countryCode = null,
+            dateOfBirth = null,
+            firstName = null,
+            lastName = null,
+            timestamp = Instant.now(),
+            category = TransactionCategory.CLAIM,
+            referenceId = null,
+            note = null,
+            handler = null,
+            email = null,
+            carrier = Carrier.HEDVIG,
+            payoutDetails = payoutDetails
+        )
+
+    companion object {
+        private const val MEMBER_ID = "1337"
+        private val TRANSACTION_ID = UUID.fromString("6a3f3c7e-0f5b-4d8e-9d0e-2a1b3c4d5e6f")
+        private val HEDVIG_ORDER_ID = UUID.fromString("2b1c9d8e-7f6a-4b5c-8d9e-0f1a2b3c4d5e")
+        private val AMOUNT = Money.of(100, "SEK")
+    }
+}
@@ -0,0 +1,168 @@
+package com.hedvig.paymentservice.query
+
+import com.hedvig.paymentservice.PaymentServiceTestConfiguration
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.context.ContextConfiguration
+import org.springframework.test.context.junit4.SpringRunner
+
+/**
+ * Runs the SQL of the finders used on hot paths through EXPLAIN against the schema generated from the
+ * entities and the indexes of [ProjectionIndexes], and fails if any of them has to scan the whole table.
+ */
+@RunWith(SpringRunner::class)
+@DataJpaTest
+@ContextConfiguration(classes = [PaymentServiceTestConfiguration::class])
+class ProjectionIndexCoverageTest {
+
+    @Autowired
+    lateinit var jdbcTemplate: JdbcTemplate
+
+    @Before
+    fun setUp() {
+        ProjectionIndexes(jdbcTemplate).createIndexes()
+    }
+
+    @Test
+    fun `direct debit account orders by member use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM direct_debit_account_order WHERE member_id = '$MEMBER_ID'",
+            ProjectionIndexes.DIRECT_DEBIT_ACCOUNT_ORDER_MEMBER_INDEX
+        )
+    }
+
+    @Test
+    fun `account registrations by member use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM account_registration WHERE member_id = '$MEMBER_ID'",
+            ProjectionIndexes.ACCOUNT_REGISTRATION_MEMBER_INDEX
+        )
+    }
+
+    @Test
+    fun `requested account registrations by date use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM account_registration WHERE initiated < $TIMESTAMP AND status = 'REQUESTED'",
+            ProjectionIndexes.ACCOUNT_REGISTRATION_STATUS_INDEX
+        )
+    }
+
+    @Test
+    fun `adyen token registrations by member use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM adyen_token_registration WHERE member_id = '$MEMBER_ID'",
+            ProjectionIndexes.ADYEN_TOKEN_REGISTRATION_MEMBER_INDEX
+        )
+        assertUsesIndex(
+            "SELECT * FROM adyen_token_registration " +
+                "WHERE member_id = '$MEMBER_ID' AND token_status = 'AUTHORISED' AND is_for_payout = TRUE",
+            ProjectionIndexes.ADYEN_TOKEN_REGISTRATION_MEMBER_INDEX
+        )
+    }
+
+    @Test
+    fun `trustly orders by trustly order id use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM trustly_order WHERE trustly_order_id = 'trustlyOrderId'",
+            ProjectionIndexes.TRUSTLY_ORDER_TRUSTLY_ORDER_ID_INDEX
+        )
+    }
+
+    @Test
+    fun `transaction history by transaction use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM transaction_history_entity WHERE transaction_id = '$UUID'",
+            ProjectionIndexes.TRANSACTION_HISTORY_TRANSACTION_INDEX
+        )
+    }
+
+    @Test
+    fun `transactions by member use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM transaction WHERE member_id = '$MEMBER_ID' AND occurred_at IS NOT NULL " +
+                "ORDER BY occurred_at, id",
+            ProjectionIndexes.TRANSACTION_MEMBER_OCCURRED_AT_INDEX
+        )
+        assertUsesIndex(
+            "SELECT * FROM transaction WHERE member_id = '$MEMBER_ID' " +
+                "AND (updated_at > $TIMESTAMP OR (updated_at = $TIMESTAMP AND id > '$UUID')) " +
+                "AND updated_at < $TIMESTAMP ORDER BY updated_at, id",
+            ProjectionIndexes.TRANSACTION_MEMBER_UPDATED_AT_INDEX
+        )
+    }
+
+    @Test
+    fun `transactions by id do not scan`() {
+        assertDoesNotScan(
+            "SELECT * FROM transaction WHERE id IN ('$UUID')"
+        )
+    }
+
+    @Test
+    fun `claimable adyen notification batches use an index`() {
+        assertUsesIndex(
+            "SELECT id FROM adyen_notification_batch " +
+                "WHERE processed_at IS NULL AND (claimed_at IS NULL OR claimed_at < $TIMESTAMP) " +
+                "ORDER BY received_at",
+            "idx_adyen_notification_batch_pending"
+        )
+    }
+
+    @Test
+    fun `dispatchable account notifications use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM account_notification WHERE member_id = '$MEMBER_ID' AND dispatched_at IS NULL",
+            "idx_account_notification_member_pending"
+        )
+    }
+
+    @Test
+    fun `pending provider calls use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM provider_call WHERE provider = 'TRUSTLY' AND completed_at IS NULL ORDER BY id",
+            "idx_provider_call_provider_pending"
+        )
+        assertUsesIndex(
+            "SELECT id FROM provider_call WHERE transaction_id = '$UUID' AND completed_at IS NULL",
+            "idx_provider_call_transaction"
+        )
+    }
+
+    @Test
+    fun `parked events by sequence key use an index`() {
+        assertUsesIndex(
+            "SELECT * FROM dead_letter WHERE processing_group = 'Account' AND sequence_key = '$MEMBER_ID' " +
+                "ORDER BY global_index, id",
+            "idx_dead_letter_group_sequence"
+        )
+        assertUsesIndex(
+            "SELECT id FROM dead_letter WHERE processing_group = 'Account' AND event_identifier = '$UUID'",
+            "idx_dead_letter_group_event"
+        )
+    }
+
+    private fun assertUsesIndex(sql: String, index: String) {
+        val plan = explain(sql)
+        assertThat(plan).describedAs(sql).containsIgnoringCase(index)
+        assertThat(plan).describedAs(sql).doesNotContainIgnoringCase(TABLE_SCAN)
+    }
+
+    private fun assertDoesNotScan(sql: String) {
+        assertThat(explain(sql)).describedAs(sql).doesNotContainIgnoringCase(TABLE_SCAN)
+    }
+
+    private fun explain(sql: String): String =
+        jdbcTemplate.queryForList("EXPLAIN $sql", String::class.java).joinToString("\n")
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+        private const val UUID = "00000000-0000-0000-0000-000000000000"
+        private const val TIMESTAMP = "TIMESTAMP '2020-01-01 00:00:00'"
+        private const val TABLE_SCAN = "tableScan"
+    }
+}
@@ -0,0 +1,37 @@
+package com.hedvig.paymentservice.query.adyenNotification
+
+import com.hedvig.paymentservice.web.dtos.adyen.Amount
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class AdyenNotificationTest {
+
+    @Test
+    fun `keeps the whole notification item in the payload`() {
+        val notification = AdyenNotification.fromNotificationRequestItem(
+            NotificationRequestItem(
+                amount = Amount(1000, "SEK"),
+                eventCode = "AUTHORISATION",
+                eventDate = "2020-01-01T00:00:00+01:00",
+                merchantAccountCode = "HedvigABCOM",
+                merchantReference = "merchantReference",
+                originalReference = null,
+                pspReference = "pspReference",
+                reason = null,
+                success = true,
+                paymentMethod = "visa",
+                operations = listOf("CANCEL", "CAPTURE"),
+                additionalData = mapOf("shopperReference" to "1337")
+            )
+        )
+
+        val payload = notification.payload
+        assertThat(payload["merchantReference"].asText()).isEqualTo("merchantReference")
+        assertThat(payload["pspReference"].asText()).isEqualTo("pspReference")
+        assertThat(payload["success"].asBoolean()).isTrue()
+        assertThat(payload["amount"]["value"].asLong()).isEqualTo(1000)
+        assertThat(payload["operations"].map { it.asText() }).containsExactly("CANCEL", "CAPTURE")
+        assertThat(payload["additionalData"]["shopperReference"].asText()).isEqualTo("1337")
+    }
+}
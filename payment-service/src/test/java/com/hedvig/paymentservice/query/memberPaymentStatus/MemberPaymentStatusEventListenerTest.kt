@@ -0,0 +1,120 @@
+package com.hedvig.paymentservice.query.memberPaymentStatus
+
+import com.hedvig.paymentservice.configuration.MerchantAccounts
+import com.hedvig.paymentservice.domain.accountRegistration.enums.AccountRegistrationStatus
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationConfirmationReceivedEvent
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationRequestCreatedEvent
+import com.hedvig.paymentservice.domain.accountRegistration.events.AccountRegistrationResponseReceivedEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.enums.AdyenTokenRegistrationStatus
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.AdyenTokenRegistrationCanceledFromNotificationEvent
+import com.hedvig.paymentservice.domain.adyenTokenRegistration.events.PendingAdyenTokenRegistrationCreatedEvent
+import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
+import com.hedvig.paymentservice.domain.payments.events.DirectDebitConnectedEvent
+import com.hedvig.paymentservice.domain.payments.events.TrustlyAccountCreatedEvent
+import com.hedvig.paymentservice.services.adyen.util.AdyenMerchantPicker.Market
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.slot
+import java.time.Instant
+import java.util.Optional
+import java.util.UUID
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+
+class MemberPaymentStatusEventListenerTest {
+
+    private val rows = mutableMapOf<String, MemberPaymentStatus>()
+    private val repository = mockk<MemberPaymentStatusRepository>()
+    private val merchantAccounts = MerchantAccounts().apply {
+        merchantAccounts = mapOf("SWEDEN" to "HedvigABCOM", "NORWAY" to "HedvigNorway")
+    }
+    private val listener = MemberPaymentStatusEventListener(repository, merchantAccounts)
+
+    @Before
+    fun setUp() {
+        val saved = slot<MemberPaymentStatus>()
+        every { repository.findById(any()) } answers { Optional.ofNullable(rows[firstArg()]) }
+        every { repository.save(capture(saved)) } answers { saved.captured.also { rows[it.memberId] = it } }
+        every { repository.findByLatestAccountRegistrationId(any()) } answers {
+            rows.values.firstOrNull { it.latestAccountRegistrationId == firstArg() }
+        }
+    }
+
+    @Test
+    fun `direct debit status of the latest order is projected`() {
+        val orderId = UUID.randomUUID()
+        listener.on(trustlyAccountCreated(orderId), NOW)
+        listener.on(DirectDebitConnectedEvent(MEMBER_ID, orderId.toString(), TRUSTLY_ACCOUNT_ID))
+
+        val order = rows.getValue(MEMBER_ID).latestDirectDebitAccountOrder()!!
+        assertThat(order.hedvigOrderId).isEqualTo(orderId)
+        assertThat(order.bank).isEqualTo("Bank")
+        assertThat(order.directDebitStatus).isEqualTo(DirectDebitStatus.CONNECTED)
+    }
+
+    @Test
+    fun `direct debit status of an older order is ignored`() {
+        val olderOrderId = UUID.randomUUID()
+        val latestOrderId = UUID.randomUUID()
+        listener.on(trustlyAccountCreated(olderOrderId), NOW.minusSeconds(60))
+        listener.on(trustlyAccountCreated(latestOrderId), NOW)
+        listener.on(DirectDebitConnectedEvent(MEMBER_ID, olderOrderId.toString(), TRUSTLY_ACCOUNT_ID))
+
+        val status = rows.getValue(MEMBER_ID)
+        assertThat(status.latestDirectDebitOrderId).isEqualTo(latestOrderId)
+        assertThat(status.directDebitStatus).isNull()
+    }
+
+    @Test
+    fun `account registration status follows the latest registration`() {
+        val registrationId = UUID.randomUUID()
+        listener.on(
+            AccountRegistrationRequestCreatedEvent(registrationId, UUID.randomUUID(), MEMBER_ID, "order", "url"),
+            NOW
+        )
+        listener.on(AccountRegistrationResponseReceivedEvent(registrationId))
+        assertThat(rows.getValue(MEMBER_ID).accountRegistrationStatus).isEqualTo(AccountRegistrationStatus.REQUESTED)
+
+        listener.on(AccountRegistrationConfirmationReceivedEvent(registrationId, MEMBER_ID))
+        assertThat(rows.getValue(MEMBER_ID).accountRegistrationStatus).isEqualTo(AccountRegistrationStatus.CONFIRMED)
+    }
+
+    @Test
+    fun `payout token status is tracked separately from payin tokens`() {
+        val payoutTokenId = UUID.randomUUID()
+        listener.on(pendingTokenCreated(payoutTokenId, isPayoutSetup = true), NOW.minusSeconds(60))
+        listener.on(pendingTokenCreated(UUID.randomUUID(), isPayoutSetup = false), NOW)
+        listener.on(AdyenTokenRegistrationCanceledFromNotificationEvent(payoutTokenId, MEMBER_ID))
+
+        val status = rows.getValue(MEMBER_ID)
+        assertThat(status.hasAdyenAccount).isTrue()
+        assertThat(status.latestAdyenTokenRegistrationStatus).isEqualTo(AdyenTokenRegistrationStatus.PENDING)
+        assertThat(status.latestPayoutTokenRegistrationId).isEqualTo(payoutTokenId)
+        assertThat(status.payoutTokenRegistrationStatus).isEqualTo(AdyenTokenRegistrationStatus.CANCELLED)
+    }
+
+    @Test
+    fun `market follows the merchant account of the token registration`() {
+        listener.on(pendingTokenCreated(UUID.randomUUID(), isPayoutSetup = false), NOW)
+
+        val status = rows.getValue(MEMBER_ID)
+        assertThat(status.adyenMerchantAccount).isEqualTo("HedvigABCOM")
+        assertThat(status.market).isEqualTo(Market.SWEDEN)
+    }
+
+    private fun trustlyAccountCreated(hedvigOrderId: UUID) = TrustlyAccountCreatedEvent(
+        MEMBER_ID, hedvigOrderId, TRUSTLY_ACCOUNT_ID, null, "Bank", null, null, "**1234", null, null, null, null
+    )
+
+    private fun pendingTokenCreated(adyenTokenRegistrationId: UUID, isPayoutSetup: Boolean) =
+        PendingAdyenTokenRegistrationCreatedEvent(
+            adyenTokenRegistrationId, MEMBER_ID, mockk(relaxed = true), "paymentData", "HedvigABCOM", isPayoutSetup, "shopperReference"
+        )
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+        private const val TRUSTLY_ACCOUNT_ID = "trustlyAccountId"
+        private val NOW = Instant.parse("2021-03-01T10:00:00Z")
+    }
+}
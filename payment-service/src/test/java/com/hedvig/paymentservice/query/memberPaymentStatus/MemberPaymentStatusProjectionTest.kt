@@ -0,0 +1,89 @@
+package com.hedvig.paymentservice.query.memberPaymentStatus
+
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.util.Optional
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.eventsourcing.eventstore.GlobalSequenceTrackingToken
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType
+
+class MemberPaymentStatusProjectionTest {
+
+    private val repository = mockk<MemberPaymentStatusRepository>()
+    private val serializer = XStreamSerializer()
+
+    private lateinit var database: EmbeddedDatabase
+    private lateinit var jdbcTemplate: JdbcTemplate
+    private lateinit var projection: MemberPaymentStatusProjection
+
+    @Before
+    fun setUp() {
+        database = EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build()
+        jdbcTemplate = JdbcTemplate(database)
+        // The columns of the event and token store that are read
+        jdbcTemplate.execute("CREATE TABLE domain_event_entry (global_index BIGINT PRIMARY KEY)")
+        jdbcTemplate.execute(
+            "CREATE TABLE token_entry (" +
+                "processor_name VARCHAR(255), segment INT, token BLOB, token_type VARCHAR(255))"
+        )
+        (0L..HEAD).forEach { jdbcTemplate.update("INSERT INTO domain_event_entry VALUES (?)", it) }
+        projection = MemberPaymentStatusProjection(repository, jdbcTemplate, serializer)
+
+        every { repository.findById(MEMBER_ID) } returns Optional.of(MemberPaymentStatus(MEMBER_ID))
+    }
+
+    @After
+    fun tearDown() {
+        database.shutdown()
+    }
+
+    @Test
+    fun `returns nothing before the processor has claimed a token`() {
+        assertThat(projection.find(MEMBER_ID)).isNull()
+        verify(exactly = 0) { repository.findById(any()) }
+    }
+
+    @Test
+    fun `returns nothing while the processor is behind the head`() {
+        insertToken(0, HEAD - 1)
+        insertToken(1, HEAD)
+
+        assertThat(projection.find(MEMBER_ID)).isNull()
+        verify(exactly = 0) { repository.findById(any()) }
+    }
+
+    @Test
+    fun `reads the projection once every segment has reached the head`() {
+        insertToken(0, HEAD)
+        insertToken(1, HEAD)
+
+        assertThat(projection.find(MEMBER_ID)?.memberId).isEqualTo(MEMBER_ID)
+    }
+
+    private fun insertToken(segment: Int, position: Long) {
+        val token = serializer.serialize(GlobalSequenceTrackingToken(position), ByteArray::class.java)
+        jdbcTemplate.update(
+            "INSERT INTO token_entry VALUES (?, ?, ?, ?)",
+            MemberPaymentStatusProjection.PROCESSING_GROUP,
+            segment,
+            token.data,
+            token.type.name
+        )
+    }
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+        private const val HEAD = 5L
+    }
+}
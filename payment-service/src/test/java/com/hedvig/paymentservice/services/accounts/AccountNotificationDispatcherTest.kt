@@ -0,0 +1,109 @@
+package com.hedvig.paymentservice.services.accounts
+
+import com.hedvig.paymentservice.serviceIntergration.accountService.AccountService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.math.BigDecimal
+import java.time.Duration
+import java.time.Instant
+import java.util.UUID
+import org.assertj.core.api.Assertions.assertThat
+import org.javamoney.moneta.Money
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.springframework.http.ResponseEntity
+
+class AccountNotificationDispatcherTest {
+
+    private val notificationRepository = mockk<AccountNotificationRepository>(relaxed = true)
+    private val accountService = mockk<AccountService>()
+    private val meterRegistry = SimpleMeterRegistry()
+
+    private lateinit var dispatcher: AccountNotificationDispatcher
+
+    @Before
+    fun setUp() {
+        val properties = AccountNotificationOutboxProperties()
+        properties.initialBackoff = Duration.ofSeconds(1)
+        properties.maxBackoff = Duration.ofSeconds(4)
+
+        dispatcher = AccountNotificationDispatcher(notificationRepository, accountService, properties, meterRegistry)
+
+        every { notificationRepository.claim(any(), any(), any()) } returns 1
+    }
+
+    @After
+    fun tearDown() {
+        dispatcher.shutdown()
+    }
+
+    @Test
+    fun `dispatches pending notifications and marks them dispatched`() {
+        val notification = makeNotification(AccountNotificationType.CHARGE_COMPLETED)
+        every { notificationRepository.findDispatchable(any(), any(), any()) } returnsMany listOf(listOf(notification), emptyList())
+        every { accountService.notifyChargeCompleted(any(), any(), any(), any()) } returns ResponseEntity.ok().build()
+
+        dispatcher.dispatchPendingNotifications()
+        dispatcher.shutdown()
+
+        verify {
+            accountService.notifyChargeCompleted(
+                notification.memberId,
+                notification.transactionId,
+                Money.of(BigDecimal.TEN, "SEK"),
+                notification.occurredAt
+            )
+        }
+        verify { notificationRepository.markDispatched(notification.id, any()) }
+        assertThat(meterRegistry.get("account.notifications.outbox.lag").timer().count()).isEqualTo(1)
+    }
+
+    @Test
+    fun `schedules a retry with backoff when account-service fails`() {
+        val notification = makeNotification(AccountNotificationType.CHARGE_FAILED, attempts = 3)
+        every { notificationRepository.findDispatchable(any(), any(), any()) } returns listOf(notification)
+        every { accountService.notifyChargeFailed(any(), any(), any()) } throws RuntimeException("account-service is down")
+
+        val before = Instant.now()
+        dispatcher.dispatchPendingNotifications()
+        dispatcher.shutdown()
+
+        verify(exactly = 1) { accountService.notifyChargeFailed(any(), any(), any()) }
+        verify(exactly = 0) { notificationRepository.markDispatched(any(), any()) }
+        verify {
+            notificationRepository.scheduleRetry(
+                notification.id,
+                4,
+                match { it >= before.plusSeconds(4) && it <= Instant.now().plusSeconds(4) }
+            )
+        }
+        assertThat(meterRegistry.get("account.notifications.outbox.failures").counter().count()).isEqualTo(1.0)
+    }
+
+    @Test
+    fun `does not dispatch notifications claimed by another dispatcher`() {
+        val notification = makeNotification(AccountNotificationType.CHARGE_FAILED)
+        every { notificationRepository.findDispatchable(any(), any(), any()) } returns listOf(notification)
+        every { notificationRepository.claim(any(), any(), any()) } returns 0
+
+        dispatcher.dispatchPendingNotifications()
+        dispatcher.shutdown()
+
+        verify(exactly = 0) { accountService.notifyChargeFailed(any(), any(), any()) }
+    }
+
+    private fun makeNotification(type: AccountNotificationType, attempts: Int = 0) =
+        AccountNotification(
+            memberId = "1337",
+            transactionId = UUID.randomUUID(),
+            type = type,
+            amount = BigDecimal.TEN,
+            currency = "SEK",
+            initiatedBy = null,
+            occurredAt = Instant.now(),
+            createdAt = Instant.now()
+        ).also { it.attempts = attempts }
+}
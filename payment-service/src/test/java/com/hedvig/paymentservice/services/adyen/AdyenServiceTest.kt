@@ -19,6 +19,8 @@ import com.hedvig.paymentservice.query.adyenTransaction.entities.AdyenPayoutTran
 import com.hedvig.paymentservice.query.adyenTransaction.entities.AdyenTransaction
 import com.hedvig.paymentservice.query.adyenTransaction.entities.AdyenTransactionRepository
 import com.hedvig.paymentservice.query.member.entities.MemberRepository
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatus
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatusProjection
 import com.hedvig.paymentservice.serviceIntergration.memberService.MemberService
 import com.hedvig.paymentservice.services.adyen.dtos.AdyenMerchantInfo
 import com.hedvig.paymentservice.services.adyen.extentions.NoMerchantAccountForMarket
@@ -74,6 +76,9 @@ class AdyenServiceTest {
     @MockkBean
     lateinit var memberAdyenAccountRepository: MemberAdyenAccountRepository
 
+    @MockkBean
+    lateinit var memberPaymentStatusProjection: MemberPaymentStatusProjection
+
     lateinit var adyenService: AdyenService
 
     @Before
@@ -91,11 +96,13 @@ class AdyenServiceTest {
             adyenPayoutTransactionRepository = adyenPayoutTransactionRepository,
             adyenMerchantPicker = adyenMerchantPicker,
             memberAdyenAccountRepository = memberAdyenAccountRepository,
+            memberPaymentStatusProjection = memberPaymentStatusProjection,
             allow3DS2 = true,
             allowTrustlyPayouts = true,
             adyenPublicKey = "",
             autoRescueScenario = null
         )
+        every { memberPaymentStatusProjection.find(any()) } returns null
     }
 
     @Test
@@ -295,6 +302,24 @@ class AdyenServiceTest {
         assertThat(status).isEqualTo(PayoutMethodStatus.NEEDS_SETUP)
     }
 
+    @Test
+    fun`expect the payout token status from the payment status projection when the member is projected`() {
+        every { adyenMerchantPicker.getAdyenMerchantInfo(any()) } returns AdyenMerchantInfo(
+            "account",
+            CountryCode.NO,
+            CurrencyCode.NOK
+        )
+        every { memberPaymentStatusProjection.find("1234") } returns
+            MemberPaymentStatus("1234").apply {
+                payoutTokenRegistrationStatus = AdyenTokenRegistrationStatus.PENDING
+            }
+
+        val status = adyenService.getLatestPayoutTokenRegistrationStatus("1234")
+
+        assertThat(status).isEqualTo(PayoutMethodStatus.PENDING)
+        verify(exactly = 0) { adyenTokenRegistrationRepository.findByMemberId(any()) }
+    }
+
     private fun makePaymentMethodResponse(isTrustlyIncluded: Boolean = true): PaymentMethodsResponse {
         val response = PaymentMethodsResponse()
 
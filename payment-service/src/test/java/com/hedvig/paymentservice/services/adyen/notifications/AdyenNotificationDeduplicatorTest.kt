@@ -0,0 +1,84 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import com.hedvig.paymentservice.common.UUIDGeneratorImpl
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Before
+import org.junit.Test
+
+class AdyenNotificationDeduplicatorTest {
+
+    private val repository = mockk<ProcessedAdyenNotificationRepository>(relaxed = true)
+
+    private lateinit var deduplicator: AdyenNotificationDeduplicator
+
+    @Before
+    fun setUp() {
+        deduplicator = AdyenNotificationDeduplicator(repository, UUIDGeneratorImpl(), 20_000, SimpleMeterRegistry())
+        every { repository.existsByPspReferenceAndEventCodeAndSuccess(any(), any(), any()) } returns false
+    }
+
+    @Test
+    fun `a replayed batch of processed notifications is recognised without touching the store`() {
+        val items = (1..10_000).map { makeItem(pspReference = "psp-$it") }
+        items.forEach { deduplicator.markProcessed(it) }
+
+        val start = System.nanoTime()
+        val duplicates = items.count { deduplicator.isProcessed(it) }
+        val elapsedMillis = (System.nanoTime() - start) / 1_000_000
+
+        assertThat(duplicates).isEqualTo(10_000)
+        assertThat(elapsedMillis).isLessThan(500)
+        verify(exactly = 0) { repository.existsByPspReferenceAndEventCodeAndSuccess(any(), any(), any()) }
+    }
+
+    @Test
+    fun `falls back to the store for keys that are not in memory`() {
+        val item = makeItem(pspReference = "psp")
+        every { repository.existsByPspReferenceAndEventCodeAndSuccess("psp", "AUTHORISATION", true) } returns true
+
+        assertThat(deduplicator.isRecentlyProcessed(item)).isFalse()
+        assertThat(deduplicator.isProcessed(item)).isTrue()
+        assertThat(deduplicator.isRecentlyProcessed(item)).isTrue()
+    }
+
+    @Test
+    fun `the same psp reference with another event code or outcome is not a duplicate`() {
+        deduplicator.markProcessed(makeItem(pspReference = "psp"))
+
+        assertThat(deduplicator.isProcessed(makeItem(pspReference = "psp", success = false))).isFalse()
+        assertThat(deduplicator.isProcessed(makeItem(pspReference = "psp", eventCode = "AUTORESCUE"))).isFalse()
+    }
+
+    @Test
+    fun `the in-memory filter is bounded`() {
+        val bounded = AdyenNotificationDeduplicator(repository, UUIDGeneratorImpl(), 2, SimpleMeterRegistry())
+        (1..3).forEach { bounded.markProcessed(makeItem(pspReference = "psp-$it")) }
+
+        assertThat(bounded.isRecentlyProcessed(makeItem(pspReference = "psp-1"))).isFalse()
+        assertThat(bounded.isRecentlyProcessed(makeItem(pspReference = "psp-3"))).isTrue()
+    }
+
+    private fun makeItem(
+        pspReference: String,
+        eventCode: String = "AUTHORISATION",
+        success: Boolean = true
+    ) = NotificationRequestItem(
+        amount = null,
+        eventCode = eventCode,
+        eventDate = null,
+        merchantAccountCode = null,
+        merchantReference = "transaction",
+        originalReference = null,
+        pspReference = pspReference,
+        reason = null,
+        success = success,
+        paymentMethod = null,
+        operations = null,
+        additionalData = null
+    )
+}
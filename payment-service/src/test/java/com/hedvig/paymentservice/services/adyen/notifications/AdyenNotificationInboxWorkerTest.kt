@@ -0,0 +1,176 @@
+package com.hedvig.paymentservice.services.adyen.notifications
+
+import com.hedvig.paymentservice.configuration.jackson.JacksonConfig
+import com.hedvig.paymentservice.web.dtos.adyen.NotificationRequestItem
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.just
+import io.mockk.mockk
+import io.mockk.runs
+import io.mockk.verify
+import java.time.Duration
+import java.time.Instant
+import java.util.Collections
+import java.util.Optional
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class AdyenNotificationInboxWorkerTest {
+
+    private val objectMapper = JacksonConfig().objectMapper()
+    private val batchRepository = mockk<AdyenNotificationBatchRepository>(relaxed = true)
+    private val notificationProcessor = mockk<AdyenNotificationProcessor>()
+    private val deduplicator = mockk<AdyenNotificationDeduplicator>(relaxed = true)
+    private val meterRegistry = SimpleMeterRegistry()
+
+    private lateinit var worker: AdyenNotificationInboxWorker
+
+    @Before
+    fun setUp() {
+        val properties = AdyenNotificationInboxProperties()
+        properties.initialBackoff = Duration.ZERO
+        properties.maxAttempts = 3
+
+        worker = AdyenNotificationInboxWorker(
+            batchRepository,
+            notificationProcessor,
+            deduplicator,
+            objectMapper,
+            properties,
+            meterRegistry
+        )
+
+        every { notificationProcessor.record(any()) } just runs
+        every { deduplicator.isProcessed(any()) } returns false
+    }
+
+    @After
+    fun tearDown() {
+        worker.shutdown()
+    }
+
+    @Test
+    fun `processes notifications of the same merchant reference in order and marks the batch processed`() {
+        val handled = Collections.synchronizedList(mutableListOf<String>())
+        every { notificationProcessor.handle(any()) } answers { handled.add(firstArg<NotificationRequestItem>().pspReference!!) }
+
+        val items = (1..50).map { makeItem(merchantReference = "transaction-${it % 3}", pspReference = "$it") }
+        val batch = stubClaimableBatch(items)
+
+        worker.processPendingBatches()
+        worker.shutdown()
+
+        assertThat(handled).hasSize(50)
+        (0..2).forEach { reference ->
+            val expectedOrder = items.filter { it.merchantReference == "transaction-$reference" }.map { it.pspReference }
+            assertThat(handled.filter { psp -> expectedOrder.contains(psp) }).containsExactlyElementsOf(expectedOrder)
+        }
+        verify(exactly = 50) { notificationProcessor.record(any()) }
+        verify { batchRepository.markProcessed(batch.id, any()) }
+    }
+
+    @Test
+    fun `retries a failing notification with backoff until it succeeds`() {
+        var attempts = 0
+        every { notificationProcessor.handle(any()) } answers {
+            if (++attempts < 3) throw IllegalStateException("projection not yet up to date")
+        }
+        val batch = stubClaimableBatch(listOf(makeItem(merchantReference = "transaction", pspReference = "1")))
+
+        worker.processPendingBatches()
+        worker.shutdown()
+
+        assertThat(attempts).isEqualTo(3)
+        assertThat(meterRegistry.counter("adyen.notifications.inbox.retries").count()).isEqualTo(2.0)
+        verify(exactly = 1) { notificationProcessor.record(any()) }
+        verify { batchRepository.markProcessed(batch.id, any()) }
+    }
+
+    @Test
+    fun `skips already processed notifications without dispatching them`() {
+        every { notificationProcessor.handle(any()) } just runs
+        val duplicate = makeItem(merchantReference = "transaction", pspReference = "1")
+        val fresh = makeItem(merchantReference = "transaction", pspReference = "2")
+        every { deduplicator.isProcessed(duplicate) } returns true
+        stubClaimableBatch(listOf(duplicate, fresh))
+
+        worker.processPendingBatches()
+        worker.shutdown()
+
+        verify(exactly = 0) { notificationProcessor.handle(duplicate) }
+        verify(exactly = 1) { notificationProcessor.handle(fresh) }
+        verify(exactly = 1) { deduplicator.markProcessed(fresh) }
+    }
+
+    @Test
+    fun `does not mark a notification as processed when all attempts fail`() {
+        every { notificationProcessor.handle(any()) } throws IllegalStateException("boom")
+        val item = makeItem(merchantReference = "transaction", pspReference = "1")
+        stubClaimableBatch(listOf(item))
+
+        worker.processPendingBatches()
+        worker.shutdown()
+
+        verify(exactly = 3) { notificationProcessor.handle(item) }
+        verify(exactly = 1) { notificationProcessor.record(item) }
+        verify(exactly = 0) { deduplicator.markProcessed(any()) }
+    }
+
+    @Test
+    fun `does not process batches claimed by another instance`() {
+        val batch = stubClaimableBatch(listOf(makeItem(merchantReference = "transaction", pspReference = "1")))
+        every { batchRepository.claim(batch.id, any(), any()) } returns 0
+
+        worker.processPendingBatches()
+        worker.shutdown()
+
+        verify(exactly = 0) { notificationProcessor.handle(any()) }
+        verify(exactly = 0) { batchRepository.markProcessed(any(), any()) }
+    }
+
+    @Test
+    fun `does not wait for the lanes to process the claimed batches`() {
+        val release = CountDownLatch(1)
+        every { notificationProcessor.handle(any()) } answers { release.await() }
+        val batch = stubClaimableBatch(listOf(makeItem(merchantReference = "transaction", pspReference = "1")))
+
+        worker.processPendingBatches()
+
+        verify(exactly = 0) { batchRepository.markProcessed(any(), any()) }
+        release.countDown()
+        worker.shutdown()
+        verify { batchRepository.markProcessed(batch.id, any()) }
+    }
+
+    private fun stubClaimableBatch(items: List<NotificationRequestItem>): AdyenNotificationBatch {
+        val batch = AdyenNotificationBatch(
+            id = UUID.randomUUID(),
+            notificationItems = objectMapper.writeValueAsString(items),
+            itemCount = items.size,
+            receivedAt = Instant.now()
+        )
+        every { batchRepository.findClaimableIds(any(), any()) } returns listOf(batch.id)
+        every { batchRepository.claim(batch.id, any(), any()) } returns 1
+        every { batchRepository.findById(batch.id) } returns Optional.of(batch)
+        return batch
+    }
+
+    private fun makeItem(merchantReference: String, pspReference: String) = NotificationRequestItem(
+        amount = null,
+        eventCode = "AUTHORISATION",
+        eventDate = null,
+        merchantAccountCode = null,
+        merchantReference = merchantReference,
+        originalReference = null,
+        pspReference = pspReference,
+        reason = null,
+        success = true,
+        paymentMethod = null,
+        operations = null,
+        additionalData = null
+    )
+}
@@ -3,6 +3,7 @@ package com.hedvig.paymentservice.services.adyen.util
 import com.hedvig.paymentservice.configuration.MerchantAccounts
 import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccount
 import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccountRepository
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatusProjection
 import com.hedvig.paymentservice.serviceIntergration.memberService.MemberService
 import com.hedvig.paymentservice.serviceIntergration.productPricing.ProductPricingService
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.ContractMarketInfo
@@ -39,6 +40,9 @@ class AdyenMerchantPickerTest() {
     @MockkBean
     lateinit var memberAdyenAccountRepository: MemberAdyenAccountRepository
 
+    @MockkBean
+    lateinit var memberPaymentStatusProjection: MemberPaymentStatusProjection
+
     lateinit var adyenMerchantPicker: AdyenMerchantPicker
 
     @Before
@@ -48,10 +52,12 @@ class AdyenMerchantPickerTest() {
             underwriterService = underwriterService,
             productPricingService = productPricingService,
             memberAdyenAccountRepository = memberAdyenAccountRepository,
+            memberPaymentStatusProjection = memberPaymentStatusProjection,
             merchantAccounts = makeMerchantAccount()
         )
 
         every { memberAdyenAccountRepository.findById(any()) } returns Optional.empty()
+        every { memberPaymentStatusProjection.find(any()) } returns null
     }
 
     @Test
@@ -1,6 +1,7 @@
 package com.hedvig.paymentservice.services.bankAccounts
 
 import com.google.common.collect.Lists
+import com.hedvig.paymentservice.common.ExecutionLookups
 import com.hedvig.paymentservice.domain.accountRegistration.enums.AccountRegistrationStatus
 import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
 import com.hedvig.paymentservice.domain.payments.enums.AdyenAccountStatus
@@ -12,11 +13,17 @@ import com.hedvig.paymentservice.query.adyenAccount.MemberAdyenAccountRepository
 import com.hedvig.paymentservice.query.directDebit.DirectDebitAccountOrder
 import com.hedvig.paymentservice.query.directDebit.DirectDebitAccountOrderRepository
 import com.hedvig.paymentservice.query.member.entities.MemberRepository
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatus
+import com.hedvig.paymentservice.query.memberPaymentStatus.MemberPaymentStatusProjection
 import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistration
 import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistrationRepository
 import com.hedvig.paymentservice.serviceIntergration.productPricing.ProductPricingService
 import com.ninjasquad.springmockk.MockkBean
+import graphql.execution.ExecutionId
+import graphql.schema.DataFetchingEnvironment
 import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
 import java.time.Instant
 import java.time.temporal.ChronoUnit
 import java.util.*
@@ -44,6 +51,9 @@ class BankAccountServiceTest {
     @MockkBean
     lateinit var adyenAccountRepository: MemberAdyenAccountRepository
 
+    @MockkBean
+    lateinit var memberPaymentStatusProjection: MemberPaymentStatusProjection
+
     lateinit var bankAccountService: BankAccountService
 
     @Before
@@ -54,8 +64,10 @@ class BankAccountServiceTest {
                 accountRegistrationRepository,
                 productPricingService,
                 directDebitAccountOrderRepository,
-                adyenAccountRepository
+                adyenAccountRepository,
+                memberPaymentStatusProjection
             )
+        every { memberPaymentStatusProjection.find(any()) } returns null
     }
 
     @Test
@@ -187,6 +199,61 @@ class BankAccountServiceTest {
             .isEqualTo(PayinMethodStatus.PENDING)
     }
 
+    @Test
+    fun `when resolving several fields within one graphql execution, expect each lookup to run once`() {
+        every { adyenAccountRepository.findById(any()) } returns Optional.empty()
+        makeStub(
+            directDebitStatus = DirectDebitStatus.CONNECTED,
+            accountRegistrationStatus = AccountRegistrationStatus.CONFIRMED
+        )
+        val env = mockk<DataFetchingEnvironment>()
+        every { env.executionId } returns ExecutionId.from("execution")
+
+        ExecutionLookups.withinExecution(env) {
+            bankAccountService.getBankAccount(MEMBER_ID)
+            bankAccountService.getDirectDebitStatus(MEMBER_ID)
+            bankAccountService.getPayinMethodStatus(MEMBER_ID)
+        }
+
+        verify(exactly = 1) { directDebitAccountOrderRepository.findAllByMemberId(MEMBER_ID) }
+        verify(exactly = 1) { accountRegistrationRepository.findByMemberId(MEMBER_ID) }
+        verify(exactly = 1) { adyenAccountRepository.findById(MEMBER_ID) }
+    }
+
+    @Test
+    fun `when the payment status projection has the member, expect no per-entity lookups`() {
+        every { memberPaymentStatusProjection.find(MEMBER_ID) } returns
+            MemberPaymentStatus(MEMBER_ID).apply {
+                latestDirectDebitOrderId = UUID.randomUUID()
+                latestDirectDebitOrderCreatedAt = Instant.now()
+                trustlyAccountId = TRUSTLY_ORDER_ID
+                bank = "Bank"
+                descriptor = "**1234"
+                directDebitStatus = DirectDebitStatus.CONNECTED
+                accountRegistrationStatus = AccountRegistrationStatus.IN_PROGRESS
+            }
+
+        assertThat(bankAccountService.getDirectDebitStatus(MEMBER_ID)).isEqualTo(DirectDebitStatusDTO.PENDING)
+        assertThat(bankAccountService.getPayinMethodStatus(MEMBER_ID)).isEqualTo(PayinMethodStatus.PENDING)
+        assertThat(bankAccountService.getBankAccount(MEMBER_ID)!!.bankName).isEqualTo("Bank")
+
+        verify(exactly = 0) { directDebitAccountOrderRepository.findAllByMemberId(any()) }
+        verify(exactly = 0) { accountRegistrationRepository.findByMemberId(any()) }
+        verify(exactly = 0) { adyenAccountRepository.findById(any()) }
+    }
+
+    @Test
+    fun `when the payment status projection has an adyen account, expect PayinMethodStatus from the adyen account`() {
+        every { memberPaymentStatusProjection.find(MEMBER_ID) } returns
+            MemberPaymentStatus(MEMBER_ID).apply {
+                hasAdyenAccount = true
+                adyenAccountStatus = AdyenAccountStatus.AUTHORISED
+            }
+
+        assertThat(bankAccountService.getPayinMethodStatus(MEMBER_ID)).isEqualTo(PayinMethodStatus.ACTIVE)
+        assertThat(bankAccountService.getBankAccount(MEMBER_ID)).isNull()
+    }
+
     private fun makeStub(
         directDebitStatus: DirectDebitStatus?,
         accountRegistrationStatus: AccountRegistrationStatus?
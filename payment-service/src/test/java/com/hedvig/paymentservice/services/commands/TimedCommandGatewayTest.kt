@@ -0,0 +1,70 @@
+package com.hedvig.paymentservice.services.commands
+
+import com.hedvig.paymentservice.domain.payments.commands.CreateMemberCommand
+import io.mockk.every
+import io.mockk.mockk
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.junit.Test
+
+class TimedCommandGatewayTest {
+
+    private val commandGateway = mockk<CommandGateway>()
+    private val properties = CommandTimeoutProperties()
+    private val timedCommandGateway = TimedCommandGateway(commandGateway, properties)
+
+    @Test
+    fun `completes with the result of the command`() {
+        every { commandGateway.send<String>(any()) } returns CompletableFuture.completedFuture("result")
+
+        val result = timedCommandGateway.send<String>(CreateMemberCommand(MEMBER_ID))
+
+        assertThat(result.get(1, TimeUnit.SECONDS)).isEqualTo("result")
+    }
+
+    @Test
+    fun `fails once the timeout of the command has passed`() {
+        properties.timeouts["CreateMemberCommand"] = Duration.ofMillis(50)
+        every { commandGateway.send<String>(any()) } returns CompletableFuture()
+
+        val result = timedCommandGateway.send<String>(CreateMemberCommand(MEMBER_ID))
+
+        assertThatThrownBy { result.get(5, TimeUnit.SECONDS) }
+            .isInstanceOf(ExecutionException::class.java)
+            .hasCauseInstanceOf(TimeoutException::class.java)
+    }
+
+    @Test
+    fun `runs the completion hook of a command handled after the timeout`() {
+        properties.timeouts["CreateMemberCommand"] = Duration.ofMillis(50)
+        val handled = CompletableFuture<String>()
+        every { commandGateway.send<String>(any()) } returns handled
+        val results = mutableListOf<String>()
+
+        val result = timedCommandGateway.send<String>(CreateMemberCommand(MEMBER_ID)) { results.add(it) }
+        assertThatThrownBy { result.get(5, TimeUnit.SECONDS) }
+            .hasCauseInstanceOf(TimeoutException::class.java)
+        handled.complete("result")
+
+        assertThat(results).containsExactly("result")
+    }
+
+    @Test
+    fun `uses the default timeout for commands without their own`() {
+        properties.defaultTimeout = Duration.ofMillis(50)
+        properties.timeouts["CreateMemberCommand"] = Duration.ofMinutes(1)
+
+        assertThat(properties.timeoutFor(CreateMemberCommand(MEMBER_ID))).isEqualTo(Duration.ofMinutes(1))
+        assertThat(properties.timeoutFor(Any())).isEqualTo(Duration.ofMillis(50))
+    }
+
+    companion object {
+        private const val MEMBER_ID = "12345"
+    }
+}
@@ -0,0 +1,131 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.time.Instant
+import java.util.UUID
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.eventhandling.GenericEventMessage
+import org.axonframework.eventsourcing.DomainEventMessage
+import org.axonframework.eventsourcing.GenericDomainEventMessage
+import org.axonframework.messaging.MetaData
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.junit.Before
+import org.junit.Test
+import org.springframework.transaction.PlatformTransactionManager
+
+class DeadLetterQueueTest {
+
+    private val deadLetterRepository = mockk<DeadLetterRepository>(relaxed = true)
+    private val meterRegistry = SimpleMeterRegistry()
+    private val saved = mutableListOf<DeadLetter>()
+
+    private val queue = DeadLetterQueue(
+        deadLetterRepository,
+        XStreamSerializer(),
+        DeadLetterProperties(),
+        mockk<PlatformTransactionManager>(relaxed = true),
+        meterRegistry
+    )
+
+    @Before
+    fun setUp() {
+        every { deadLetterRepository.findSequenceKeys(GROUP) } returns emptyList()
+        every { deadLetterRepository.existsByProcessingGroupAndEventIdentifier(GROUP, any()) } returns false
+        every { deadLetterRepository.save(capture(saved)) } answers { firstArg() }
+    }
+
+    @Test
+    fun `holds back later events of a member with a parked event and lets other members through`() {
+        queue.park(GROUP, event(MEMBER_ID), RuntimeException("handler failed"))
+
+        assertThat(queue.holdBackIfParked(GROUP, event(MEMBER_ID))).isTrue()
+        assertThat(queue.holdBackIfParked(GROUP, event(OTHER_MEMBER_ID))).isFalse()
+
+        assertThat(saved).hasSize(2)
+        assertThat(saved.map { it.sequenceKey }).containsOnly(MEMBER_ID)
+        assertThat(saved[0].attempts).isEqualTo(1)
+        assertThat(saved[0].lastError).contains("handler failed")
+        assertThat(saved[0].retryAt).isAfter(saved[0].parkedAt)
+        assertThat(saved[1].attempts).isEqualTo(0)
+        assertThat(saved[1].retryAt).isEqualTo(saved[1].parkedAt)
+        assertThat(meterRegistry.get("event.handling.parked").tag("reason", "held_back").counter().count())
+            .isEqualTo(1.0)
+    }
+
+    @Test
+    fun `does not park an event twice when the processor retries its batch`() {
+        val event = event(MEMBER_ID)
+        queue.park(GROUP, event, RuntimeException("handler failed"))
+        every { deadLetterRepository.existsByProcessingGroupAndEventIdentifier(GROUP, event.identifier) } returns true
+
+        assertThat(queue.holdBackIfParked(GROUP, event)).isTrue()
+
+        verify(exactly = 1) { deadLetterRepository.save(any<DeadLetter>()) }
+    }
+
+    @Test
+    fun `lets a member through again once its parked events are handled`() {
+        queue.park(GROUP, event(MEMBER_ID), RuntimeException("handler failed"))
+
+        every { deadLetterRepository.existsByProcessingGroupAndSequenceKey(GROUP, MEMBER_ID) } returns true
+        queue.release(GROUP, MEMBER_ID)
+        assertThat(queue.holdBackIfParked(GROUP, event(MEMBER_ID))).isTrue()
+
+        every { deadLetterRepository.existsByProcessingGroupAndSequenceKey(GROUP, MEMBER_ID) } returns false
+        queue.release(GROUP, MEMBER_ID)
+        assertThat(queue.holdBackIfParked(GROUP, event(MEMBER_ID))).isFalse()
+    }
+
+    @Test
+    fun `holds back members parked before the queue was started`() {
+        every { deadLetterRepository.findSequenceKeys(GROUP) } returns listOf(MEMBER_ID)
+
+        assertThat(queue.holdBackIfParked(GROUP, event(MEMBER_ID))).isTrue()
+        assertThat(queue.holdBackIfParked(GROUP, event(OTHER_MEMBER_ID))).isFalse()
+    }
+
+    @Test
+    fun `restores parked events as they were published`() {
+        val timestamp = Instant.parse("2020-01-01T10:00:00Z")
+        val event = GenericDomainEventMessage(
+            "Member",
+            MEMBER_ID,
+            3L,
+            TestEvent(MEMBER_ID),
+            MetaData.with("traceId", "trace"),
+            UUID.randomUUID().toString(),
+            timestamp
+        )
+        queue.park(GROUP, event, RuntimeException("handler failed"))
+
+        val restored = queue.toEventMessage(saved.single()) as DomainEventMessage<*>
+
+        assertThat(restored.identifier).isEqualTo(event.identifier)
+        assertThat(restored.payload).isEqualTo(TestEvent(MEMBER_ID))
+        assertThat(restored.metaData).isEqualTo(event.metaData)
+        assertThat(restored.timestamp).isEqualTo(timestamp)
+        assertThat(restored.type).isEqualTo("Member")
+        assertThat(restored.aggregateIdentifier).isEqualTo(MEMBER_ID)
+        assertThat(restored.sequenceNumber).isEqualTo(3L)
+    }
+
+    @Test
+    fun `uses the aggregate as sequence key for events without a member`() {
+        val event = GenericDomainEventMessage("TrustlyOrder", "orderId", 0L, "payload")
+
+        assertThat(queue.sequenceKey(event)).isEqualTo("orderId")
+    }
+
+    private fun event(memberId: String) = GenericEventMessage.asEventMessage<TestEvent>(TestEvent(memberId))
+
+    data class TestEvent(val memberId: String)
+
+    companion object {
+        private const val GROUP = "Account"
+        private const val MEMBER_ID = "12345"
+        private const val OTHER_MEMBER_ID = "67890"
+    }
+}
@@ -0,0 +1,54 @@
+package com.hedvig.paymentservice.services.deadLetters
+
+import io.mockk.mockk
+import io.mockk.verify
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.axonframework.eventhandling.EventListener
+import org.axonframework.eventhandling.GenericEventMessage
+import org.junit.Test
+import org.springframework.dao.DataIntegrityViolationException
+
+class ParkingErrorHandlerTest {
+
+    private val deadLetterQueue = mockk<DeadLetterQueue>(relaxed = true)
+    private val eventListener = mockk<EventListener>()
+    private val errorHandler = ParkingErrorHandler(GROUP, deadLetterQueue)
+
+    @Test
+    fun `parks events whose handler failed and moves on`() {
+        val event = GenericEventMessage.asEventMessage<Any>("payload")
+        val exception = IllegalStateException("handler failed")
+
+        errorHandler.onError(exception, event, eventListener)
+
+        verify { deadLetterQueue.park(GROUP, event, exception) }
+    }
+
+    @Test
+    fun `rolls the batch back on a database failure and parks the event when it fails again`() {
+        val event = GenericEventMessage.asEventMessage<Any>("payload")
+        val exception = RuntimeException("handler failed", DataIntegrityViolationException("duplicate key"))
+
+        assertThatThrownBy { errorHandler.onError(exception, event, eventListener) }.isSameAs(exception)
+        verify(exactly = 0) { deadLetterQueue.park(any(), any(), any()) }
+
+        assertThatThrownBy { errorHandler.onError(exception, event, eventListener) }.isSameAs(exception)
+        verify(exactly = 1) { deadLetterQueue.park(GROUP, event, exception) }
+    }
+
+    @Test
+    fun `does not park other events of a batch rolled back on a database failure`() {
+        val failing = GenericEventMessage.asEventMessage<Any>("failing")
+        val other = GenericEventMessage.asEventMessage<Any>("other")
+        val exception = DataIntegrityViolationException("duplicate key")
+
+        assertThatThrownBy { errorHandler.onError(exception, failing, eventListener) }.isSameAs(exception)
+        assertThatThrownBy { errorHandler.onError(exception, other, eventListener) }.isSameAs(exception)
+
+        verify(exactly = 0) { deadLetterQueue.park(any(), any(), any()) }
+    }
+
+    companion object {
+        private const val GROUP = "group"
+    }
+}
@@ -16,6 +16,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static com.hedvig.paymentservice.trustly.testHelpers.TestData.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -41,13 +42,14 @@ public class PaymentServiceTest {
       givenChargeMemberRequest_whenChargeMember_thenSendCreateChargeCommand_WithTrustlyInboxEmail() {
     given(uuidGenerator.generateRandom()).willReturn(UUID.fromString(REQUEST_ID));
 
-    given(gateway.sendAndWait(captor.capture()))
-      .willReturn(new ChargeMemberResult(UUID.fromString(REQUEST_ID), ChargeMemberResultType.SUCCESS));
+    given(gateway.send(captor.capture()))
+      .willReturn(CompletableFuture.completedFuture(
+        new ChargeMemberResult(UUID.fromString(REQUEST_ID), ChargeMemberResultType.SUCCESS)));
 
 
     PaymentService paymentService = new PaymentService(gateway, uuidGenerator, memberService, meerkat);
 
-    paymentService.chargeMember(makeChargeMemberRequest());
+    paymentService.chargeMember(makeChargeMemberRequest()).join();
 
     assertThat(captor.getValue().getEmail()).matches(TRUSTLY_CUSTOMER_INBOX_PATTERN);
   }
@@ -0,0 +1,61 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEntity;
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEventType;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGuessResponseDto;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyType;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Random completed charge events with their policy guesses, shared by the aggregation tests and benchmark.
+ */
+final class ChargeEvents {
+  final List<TransactionHistoryEntity> events;
+  final Map<UUID, Optional<PolicyGuessResponseDto>> guesses;
+
+  private ChargeEvents(final List<TransactionHistoryEntity> events, final Map<UUID, Optional<PolicyGuessResponseDto>> guesses) {
+    this.events = events;
+    this.guesses = guesses;
+  }
+
+  static ChargeEvents random(final int count, final long seed) {
+    final Random random = new Random(seed);
+    final PolicyType[] policyTypes = PolicyType.values();
+    final List<TransactionHistoryEntity> events = new ArrayList<>(count);
+    final Map<UUID, Optional<PolicyGuessResponseDto>> guesses = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      final UUID transactionId = new UUID(seed, i);
+      final BigDecimal amount = random.nextInt(50) == 0
+        ? null
+        : BigDecimal.valueOf(random.nextInt(100_000), random.nextInt(3));
+      events.add(new TransactionHistoryEntity(
+        transactionId,
+        amount,
+        "SEK",
+        Instant.ofEpochSecond(1_546_300_800L + random.nextInt(60 * 60 * 24 * 365 * 2)),
+        TransactionHistoryEventType.COMPLETED,
+        null
+      ));
+      guesses.put(
+        transactionId,
+        random.nextInt(10) == 0
+          ? Optional.empty()
+          : Optional.of(new PolicyGuessResponseDto(
+          policyTypes[random.nextInt(policyTypes.length)],
+          LocalDate.of(2017 + random.nextInt(4), 1 + random.nextInt(12), 1)
+        ))
+      );
+    }
+    return new ChargeEvents(events, guesses);
+  }
+}
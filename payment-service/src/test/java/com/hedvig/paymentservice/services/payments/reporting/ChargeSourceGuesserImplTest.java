@@ -4,26 +4,49 @@ import com.hedvig.paymentservice.query.member.entities.Transaction;
 import com.hedvig.paymentservice.serviceIntergration.productPricing.ProductPricingService;
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGuessResponseDto;
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyType;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.YearMonth;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ChargeSourceGuesserImplTest {
+  private ProductPricingService productPricingServiceStub;
+  private PolicyGuessRepository policyGuessRepositoryStub;
+  private ChargeSourceGuesserImpl chargeSourceGuesser;
+
+  @Before
+  public void setUp() {
+    productPricingServiceStub = mock(ProductPricingService.class);
+    policyGuessRepositoryStub = mock(PolicyGuessRepository.class);
+    when(policyGuessRepositoryStub.findAllById(any())).thenReturn(Collections.emptyList());
+    chargeSourceGuesser = new ChargeSourceGuesserImpl(productPricingServiceStub, policyGuessRepositoryStub, 2, 2, 3);
+  }
+
+  @After
+  public void tearDown() {
+    chargeSourceGuesser.shutdown();
+  }
+
   @Test
   public void testGuessesChargeInsuranceType() {
-    final ProductPricingService productPricingServiceStub = mock(ProductPricingService.class);
-    final ChargeSourceGuesser chargeSourceGuesser = new ChargeSourceGuesserImpl(productPricingServiceStub);
-
-    final Collection<Transaction> transactions = new ArrayList<>();
-    final Map<UUID, Optional<PolicyGuessResponseDto>> policyTypes = new HashMap<>();
     final UUID policyId = UUID.randomUUID();
+    final Collection<Transaction> transactions = Collections.singletonList(makeTransaction(policyId));
+    final Map<UUID, Optional<PolicyGuessResponseDto>> policyTypes = new HashMap<>();
     policyTypes.put(policyId, Optional.of(new PolicyGuessResponseDto(PolicyType.BRF, LocalDate.of(2019, 1, 1))));
     when(productPricingServiceStub.guessPolicyTypes(any(), any())).thenReturn(policyTypes);
 
@@ -31,4 +54,70 @@ public class ChargeSourceGuesserImplTest {
     assertEquals(result.size(), 1);
     assertEquals(result.get(policyId).get().getProductType(), PolicyType.BRF);
   }
+
+  @Test
+  public void testDoesNotAskProductPricingForAlreadyGuessedTransactions() {
+    final UUID policyId = UUID.randomUUID();
+    when(policyGuessRepositoryStub.findAllById(any())).thenReturn(Collections.singletonList(
+      new PolicyGuess(policyId, PolicyType.HOUSE, LocalDate.of(2019, 1, 1), Instant.now())
+    ));
+
+    final Map<UUID, Optional<PolicyGuessResponseDto>> result = chargeSourceGuesser.guessChargesMetadata(
+      Collections.singletonList(makeTransaction(policyId)),
+      YearMonth.of(2019, 2)
+    );
+
+    assertEquals(result.get(policyId).get().getProductType(), PolicyType.HOUSE);
+    verify(productPricingServiceStub, never()).guessPolicyTypes(any(), any());
+  }
+
+  @Test
+  public void testFetchesUnguessedTransactionsInChunksAndRetriesFailedChunks() {
+    final List<Transaction> transactions = IntStream.range(0, 5)
+      .mapToObj(i -> makeTransaction(UUID.randomUUID()))
+      .collect(Collectors.toList());
+    final Set<Collection<Transaction>> failedOnce = Collections.synchronizedSet(new HashSet<>());
+    when(productPricingServiceStub.guessPolicyTypes(anyCollection(), any())).thenAnswer(invocation -> {
+      final Collection<Transaction> chunk = invocation.getArgument(0);
+      assertTrue(chunk.size() <= 2);
+      if (failedOnce.add(new ArrayList<>(chunk))) {
+        throw new RuntimeException("product-pricing is down");
+      }
+      return chunk.stream().collect(Collectors.toMap(
+        Transaction::getId,
+        tx -> Optional.of(new PolicyGuessResponseDto(PolicyType.RENT, LocalDate.of(2019, 1, 1)))
+      ));
+    });
+
+    final Map<UUID, Optional<PolicyGuessResponseDto>> result = chargeSourceGuesser.guessChargesMetadata(transactions, YearMonth.of(2019, 2));
+
+    assertEquals(5, result.size());
+    verify(productPricingServiceStub, times(6)).guessPolicyTypes(anyCollection(), any());
+  }
+
+  @Test
+  public void testLooksUpStoredGuessesInChunks() {
+    final List<Transaction> transactions = IntStream.range(0, 2 * ChargeSourceGuesserImpl.LOOKUP_CHUNK_SIZE + 1)
+      .mapToObj(i -> makeTransaction(UUID.randomUUID()))
+      .collect(Collectors.toList());
+    when(policyGuessRepositoryStub.findAllById(any())).thenAnswer(invocation -> {
+      final Collection<UUID> ids = invocation.getArgument(0);
+      assertTrue(ids.size() <= ChargeSourceGuesserImpl.LOOKUP_CHUNK_SIZE);
+      return ids.stream()
+        .map(id -> new PolicyGuess(id, PolicyType.RENT, LocalDate.of(2019, 1, 1), Instant.now()))
+        .collect(Collectors.toList());
+    });
+
+    final Map<UUID, Optional<PolicyGuessResponseDto>> result = chargeSourceGuesser.guessChargesMetadata(transactions, YearMonth.of(2019, 2));
+
+    assertEquals(transactions.size(), result.size());
+    verify(policyGuessRepositoryStub, times(3)).findAllById(any());
+    verify(productPricingServiceStub, never()).guessPolicyTypes(any(), any());
+  }
+
+  private static Transaction makeTransaction(final UUID id) {
+    final Transaction transaction = new Transaction();
+    transaction.setId(id);
+    return transaction;
+  }
 }
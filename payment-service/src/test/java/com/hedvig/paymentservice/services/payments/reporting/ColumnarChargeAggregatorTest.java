@@ -0,0 +1,94 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEntity;
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEventType;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGuessResponseDto;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ColumnarChargeAggregatorTest {
+
+  @Test
+  public void aggregatesLikeTheStreamAggregation() {
+    final ChargeEvents chargeEvents = ChargeEvents.random(10_000, 42);
+
+    final MonthlyTransactionsAggregations aggregations = new ColumnarChargeAggregator(ColumnarChargeAggregator.DEFAULT_PARALLEL_THRESHOLD)
+      .aggregate(chargeEvents.events, chargeEvents.guesses);
+
+    assertThat(aggregations).isEqualTo(StreamChargeAggregation.aggregate(chargeEvents.events, chargeEvents.guesses));
+  }
+
+  @Test
+  public void aggregatesLikeTheStreamAggregationWhenSplitOverTheForkJoinPool() {
+    final ChargeEvents chargeEvents = ChargeEvents.random(10_000, 1337);
+
+    final MonthlyTransactionsAggregations aggregations = new ColumnarChargeAggregator(100)
+      .aggregate(chargeEvents.events, chargeEvents.guesses);
+
+    assertThat(aggregations).isEqualTo(StreamChargeAggregation.aggregate(chargeEvents.events, chargeEvents.guesses));
+  }
+
+  @Test
+  public void keepsTheScaleOfTheAmountsInEachSum() {
+    final UUID student = UUID.randomUUID();
+    final UUID house = UUID.randomUUID();
+    final UUID houseWithoutAmount = UUID.randomUUID();
+    final List<TransactionHistoryEntity> events = Arrays.asList(
+      event(student, new BigDecimal("10")),
+      event(house, new BigDecimal("1.50")),
+      event(houseWithoutAmount, null)
+    );
+    final Map<UUID, Optional<PolicyGuessResponseDto>> guesses = new HashMap<>();
+    guesses.put(student, guess(PolicyType.STUDENT_RENT, 2019));
+    guesses.put(house, guess(PolicyType.HOUSE, 2020));
+    guesses.put(houseWithoutAmount, guess(PolicyType.HOUSE, 2018));
+
+    final MonthlyTransactionsAggregations aggregations = new ColumnarChargeAggregator(ColumnarChargeAggregator.DEFAULT_PARALLEL_THRESHOLD)
+      .aggregate(events, guesses);
+
+    assertThat(aggregations.getStudent()).containsExactly(Map.entry(Year.of(2019), new BigDecimal("10")));
+    assertThat(aggregations.getHouse()).containsOnly(
+      Map.entry(Year.of(2020), new BigDecimal("1.50")),
+      Map.entry(Year.of(2018), BigDecimal.ZERO)
+    );
+    assertThat(aggregations.getHousehold()).isEmpty();
+    assertThat(aggregations).isEqualTo(StreamChargeAggregation.aggregate(events, guesses));
+  }
+
+  @Test
+  public void fallsBackToBigDecimalsForAmountsTooLargeForALong() {
+    final UUID transactionId = UUID.randomUUID();
+    final List<TransactionHistoryEntity> events = Arrays.asList(
+      event(transactionId, new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE)),
+      event(transactionId, new BigDecimal("0.01"))
+    );
+    final Map<UUID, Optional<PolicyGuessResponseDto>> guesses = new HashMap<>();
+    guesses.put(transactionId, guess(PolicyType.RENT, 2019));
+
+    final MonthlyTransactionsAggregations aggregations = new ColumnarChargeAggregator(ColumnarChargeAggregator.DEFAULT_PARALLEL_THRESHOLD)
+      .aggregate(events, guesses);
+
+    assertThat(aggregations).isEqualTo(StreamChargeAggregation.aggregate(events, guesses));
+  }
+
+  private static TransactionHistoryEntity event(final UUID transactionId, final BigDecimal amount) {
+    return new TransactionHistoryEntity(transactionId, amount, "SEK", Instant.parse("2019-02-01T13:37:00.0Z"), TransactionHistoryEventType.COMPLETED, null);
+  }
+
+  private static Optional<PolicyGuessResponseDto> guess(final PolicyType policyType, final int inceptionYear) {
+    return Optional.of(new PolicyGuessResponseDto(policyType, LocalDate.of(inceptionYear, 1, 1)));
+  }
+}
@@ -0,0 +1,73 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import com.hedvig.paymentservice.query.member.entities.TransactionHistoryEntity;
+import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.PolicyGuessResponseDto;
+
+import java.math.BigDecimal;
+import java.time.Year;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * The stream based aggregation {@link ColumnarChargeAggregator} replaced, kept as a reference for its
+ * output and as the baseline of {@link TransactionAggregatorBenchmark}.
+ */
+final class StreamChargeAggregation {
+  private StreamChargeAggregation() {
+  }
+
+  static MonthlyTransactionsAggregations aggregate(
+    final List<TransactionHistoryEntity> allTxEvents,
+    final Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
+  ) {
+    final Map<UUID, ChargeSource> transactionChargeSources = transactionGuesses.entrySet().stream()
+      .collect(toMap(
+        Map.Entry::getKey,
+        entry -> ChargeSource.from(entry.getValue().map(PolicyGuessResponseDto::getProductType))
+      ));
+
+    final Map<Year, BigDecimal> studentAggregation = aggregateByUnderwritingYear(
+      allTxEvents.stream()
+        .filter(txe -> transactionChargeSources.get(txe.getTransactionId()).equals(ChargeSource.STUDENT_INSURANCE)),
+      transactionGuesses
+    );
+    final Map<Year, BigDecimal> householdAggregation = aggregateByUnderwritingYear(allTxEvents.stream()
+        .filter(txe -> transactionChargeSources.get(txe.getTransactionId()).equals(ChargeSource.HOUSEHOLD_INSURANCE)),
+      transactionGuesses
+    );
+    final Map<Year, BigDecimal> houseAggregation = aggregateByUnderwritingYear(allTxEvents.stream()
+        .filter(txe -> transactionChargeSources.get(txe.getTransactionId()).equals(ChargeSource.HOUSE_INSURANCE)),
+      transactionGuesses
+    );
+    final Map<Year, BigDecimal> totalAggregation = aggregateByUnderwritingYear(allTxEvents.stream(), transactionGuesses);
+    return new MonthlyTransactionsAggregations(studentAggregation, householdAggregation, houseAggregation, totalAggregation);
+  }
+
+  private static Map<Year, BigDecimal> aggregateByUnderwritingYear(
+    final Stream<TransactionHistoryEntity> txes,
+    Map<UUID, Optional<PolicyGuessResponseDto>> transactionGuesses
+  ) {
+    return txes
+      .collect(groupingBy(txe -> Year.from(
+        transactionGuesses.get(txe.getTransactionId())
+          .map(PolicyGuessResponseDto::getInceptionInStockholm)
+          .orElseGet(() -> txe.getTime().atZone(ZoneId.of("Europe/Stockholm")).toLocalDate()))
+      ))
+      .entrySet().stream()
+      .collect(toMap(
+        Map.Entry::getKey,
+        entry -> entry.getValue().stream()
+          .map(TransactionHistoryEntity::getAmount)
+          .filter(Objects::nonNull)
+          .reduce(BigDecimal.ZERO, BigDecimal::add)
+      ));
+  }
+}
@@ -0,0 +1,62 @@
+package com.hedvig.paymentservice.services.payments.reporting;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ColumnarChargeAggregator} with the stream based aggregation it replaced. Not run as
+ * part of the build, start it from the test classpath with {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransactionAggregatorBenchmark {
+  @Param({"1000000"})
+  public int transactions;
+
+  private ChargeEvents chargeEvents;
+  private final ColumnarChargeAggregator columnarAggregator = new ColumnarChargeAggregator(ColumnarChargeAggregator.DEFAULT_PARALLEL_THRESHOLD);
+  private final ColumnarChargeAggregator sequentialColumnarAggregator = new ColumnarChargeAggregator(Integer.MAX_VALUE);
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    chargeEvents = ChargeEvents.random(transactions, 42);
+  }
+
+  @Benchmark
+  public MonthlyTransactionsAggregations streams() {
+    return StreamChargeAggregation.aggregate(chargeEvents.events, chargeEvents.guesses);
+  }
+
+  @Benchmark
+  public MonthlyTransactionsAggregations columnar() {
+    return columnarAggregator.aggregate(chargeEvents.events, chargeEvents.guesses);
+  }
+
+  @Benchmark
+  public MonthlyTransactionsAggregations columnarSequential() {
+    return sequentialColumnarAggregator.aggregate(chargeEvents.events, chargeEvents.guesses);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(TransactionAggregatorBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,20 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import java.time.Instant
+import org.springframework.data.domain.PageRequest
+
+/**
+ * Makes the pending provider calls on the calling thread and within its transaction, for integration
+ * tests whose transaction is rolled back, so the calls it enqueued never reach the dispatcher's workers.
+ */
+object InlineProviderCalls {
+
+    @JvmStatic
+    fun dispatch(dispatcher: ProviderCallDispatcher, providerCallRepository: ProviderCallRepository) {
+        PaymentProvider.values().forEach { provider ->
+            providerCallRepository
+                .findDispatchable(provider, Instant.now(), PageRequest.of(0, Int.MAX_VALUE))
+                .forEach { dispatcher.execute(it) }
+        }
+    }
+}
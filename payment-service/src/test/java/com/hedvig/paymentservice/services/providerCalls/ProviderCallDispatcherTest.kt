@@ -0,0 +1,140 @@
+package com.hedvig.paymentservice.services.providerCalls
+
+import com.hedvig.paymentservice.domain.swish.commands.InitiateSwishTransactionPayoutCommand
+import com.hedvig.paymentservice.domain.trustlyOrder.commands.CreatePaymentOrderCommand
+import com.hedvig.paymentservice.services.trustly.TrustlyService
+import com.hedvig.paymentservice.services.trustly.dto.PaymentRequest
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.slot
+import io.mockk.verify
+import io.mockk.verifyOrder
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import org.assertj.core.api.Assertions.assertThat
+import org.axonframework.commandhandling.gateway.CommandGateway
+import org.axonframework.serialization.xml.XStreamSerializer
+import org.javamoney.moneta.Money
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class ProviderCallDispatcherTest {
+
+    private val providerCallRepository = mockk<ProviderCallRepository>(relaxed = true)
+    private val trustlyService = mockk<TrustlyService>(relaxed = true)
+    private val commandGateway = mockk<CommandGateway>()
+    private val serializer = XStreamSerializer()
+    private val meterRegistry = SimpleMeterRegistry()
+    private val properties = ProviderCallProperties()
+
+    private val queue = ProviderCallQueue(providerCallRepository, serializer)
+    private lateinit var dispatcher: ProviderCallDispatcher
+
+    @Before
+    fun setUp() {
+        properties.swishWorkers = 1
+        dispatcher = ProviderCallDispatcher(
+            providerCallRepository,
+            trustlyService,
+            commandGateway,
+            serializer,
+            properties,
+            meterRegistry
+        )
+
+        every { providerCallRepository.findDispatchable(any(), any(), any()) } returns emptyList()
+        every { providerCallRepository.claim(any(), any(), any()) } returns 1
+    }
+
+    @After
+    fun tearDown() {
+        dispatcher.shutdown()
+    }
+
+    @Test
+    fun `creates enqueued trustly payment orders, starts them and marks them completed`() {
+        val hedvigOrderId = UUID.randomUUID()
+        val request = PaymentRequest(MEMBER_ID, Money.of(100, "SEK"), "accountId", "member@hedvig.com")
+        val createOrder = CreatePaymentOrderCommand(hedvigOrderId, TRANSACTION_ID, MEMBER_ID, request.amount, "accountId")
+        val call = enqueue { queue.enqueueTrustlyPaymentOrder(TRANSACTION_ID, hedvigOrderId, request, createOrder) }
+        every { providerCallRepository.findDispatchable(PaymentProvider.TRUSTLY, any(), any()) } returns listOf(call)
+        every { commandGateway.sendAndWait<Any>(any()) } returns null
+
+        dispatcher.dispatchPendingCalls()
+        dispatcher.shutdown()
+
+        verifyOrder {
+            commandGateway.sendAndWait<Any>(createOrder)
+            trustlyService.startPaymentOrder(request, hedvigOrderId)
+        }
+        verify { providerCallRepository.markCompleted(call.id, any(), false) }
+    }
+
+    @Test
+    fun `marks failing calls as failed without retrying them`() {
+        val call = enqueue { queue.enqueueCommand(PaymentProvider.SWISH, MEMBER_ID, TRANSACTION_ID, makeSwishCommand()) }
+        every { providerCallRepository.findDispatchable(PaymentProvider.SWISH, any(), any()) } returns listOf(call)
+        every { commandGateway.sendAndWait<Any>(any()) } throws RuntimeException("swish is down")
+
+        dispatcher.dispatchPendingCalls()
+        dispatcher.shutdown()
+
+        verify(exactly = 1) { commandGateway.sendAndWait<Any>(makeSwishCommand()) }
+        verify { providerCallRepository.markCompleted(call.id, any(), true) }
+        assertThat(meterRegistry.get("provider.calls.failures").counter().count()).isEqualTo(1.0)
+    }
+
+    @Test
+    fun `does not claim more calls than there are idle workers`() {
+        val call = enqueue { queue.enqueueCommand(PaymentProvider.SWISH, MEMBER_ID, TRANSACTION_ID, makeSwishCommand()) }
+        every { providerCallRepository.findDispatchable(PaymentProvider.SWISH, any(), any()) } returns listOf(call)
+        val providerResponds = CountDownLatch(1)
+        every { commandGateway.sendAndWait<Any>(any()) } answers { providerResponds.await(); null }
+
+        dispatcher.dispatchPendingCalls()
+        dispatcher.dispatchPendingCalls()
+        providerResponds.countDown()
+        dispatcher.shutdown()
+
+        verify(exactly = 1) {
+            providerCallRepository.findDispatchable(PaymentProvider.SWISH, any(), match { it.pageSize == 1 })
+        }
+        verify(exactly = 1) { commandGateway.sendAndWait<Any>(any()) }
+    }
+
+    @Test
+    fun `does not make calls claimed by another dispatcher`() {
+        val call = enqueue { queue.enqueueCommand(PaymentProvider.SWISH, MEMBER_ID, TRANSACTION_ID, makeSwishCommand()) }
+        every { providerCallRepository.findDispatchable(PaymentProvider.SWISH, any(), any()) } returns listOf(call)
+        every { providerCallRepository.claim(any(), any(), any()) } returns 0
+
+        dispatcher.dispatchPendingCalls()
+        dispatcher.shutdown()
+
+        verify(exactly = 0) { commandGateway.sendAndWait<Any>(any()) }
+    }
+
+    private fun enqueue(enqueue: () -> Unit): ProviderCall {
+        val saved = slot<ProviderCall>()
+        every { providerCallRepository.save(capture(saved)) } answers { saved.captured }
+        enqueue()
+        return saved.captured
+    }
+
+    private fun makeSwishCommand() =
+        InitiateSwishTransactionPayoutCommand(
+            TRANSACTION_ID,
+            MEMBER_ID,
+            "0701234567",
+            "199001011234",
+            "Hedvig",
+            Money.of(100, "SEK")
+        )
+
+    companion object {
+        private const val MEMBER_ID = "1337"
+        private val TRANSACTION_ID = UUID.fromString("b5c1fcd8-1e5b-4a3c-9b43-6f3f3f2f9e8a")
+    }
+}
@@ -0,0 +1,165 @@
+package com.hedvig.paymentservice.services.segmentPublisher
+
+import com.hedvig.paymentservice.configuration.jackson.JacksonConfig
+import com.hedvig.paymentservice.serviceIntergration.notificationService.NotificationService
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.just
+import io.mockk.mockk
+import io.mockk.runs
+import io.mockk.slot
+import io.mockk.verify
+import java.time.Duration
+import java.time.Instant
+import java.util.Optional
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class CoalescingCustomerUpdatePublisherTest {
+
+    private val notificationService = mockk<NotificationService>()
+    private val pendingCustomerUpdateRepository = mockk<PendingCustomerUpdateRepository>(relaxed = true)
+    private val objectMapper = JacksonConfig().objectMapper()
+    private val properties = CustomerUpdatePublisherProperties()
+
+    private lateinit var publisher: CoalescingCustomerUpdatePublisher
+
+    @Before
+    fun setUp() {
+        publisher = CoalescingCustomerUpdatePublisher(
+            notificationService,
+            pendingCustomerUpdateRepository,
+            objectMapper,
+            properties,
+            SimpleMeterRegistry()
+        )
+        every { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) } just runs
+        every { pendingCustomerUpdateRepository.findByOrderBySavedAtAsc(any()) } returns emptyList()
+        every { pendingCustomerUpdateRepository.findById(any()) } returns Optional.empty()
+    }
+
+    @After
+    fun tearDown() {
+        publisher.shutdown()
+    }
+
+    @Test
+    fun `coalesces updates of a member into one call with the latest traits`() {
+        repeat(100) {
+            publisher.updateCustomer(MEMBER_ID, mapOf(IS_CARD_CONNECTED to (it % 2 == 1)))
+        }
+        publisher.updateCustomer(MEMBER_ID, mapOf(IS_DIRECT_DEBIT_ACTIVATED to false))
+
+        publisher.flush()
+
+        verify(exactly = 1) {
+            notificationService.updateCustomer(
+                MEMBER_ID,
+                mapOf(IS_CARD_CONNECTED to true, IS_DIRECT_DEBIT_ACTIVATED to false)
+            )
+        }
+    }
+
+    @Test
+    fun `flushes right away once too many members are pending`() {
+        properties.maxPendingMembers = 2
+
+        publisher.updateCustomer("1", mapOf(IS_CARD_CONNECTED to true))
+        verify(exactly = 0) { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) }
+
+        publisher.updateCustomer("2", mapOf(IS_CARD_CONNECTED to true))
+        verify(timeout = 1000, exactly = 2) { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) }
+    }
+
+    @Test
+    fun `keeps failed updates for the next flush without overwriting newer traits`() {
+        properties.initialBackoff = Duration.ZERO
+        every { notificationService.updateCustomer(MEMBER_ID, any<Map<String, Any?>>()) } throws RuntimeException("notification-service is down")
+        publisher.updateCustomer(MEMBER_ID, mapOf(IS_CARD_CONNECTED to false, IS_DIRECT_DEBIT_ACTIVATED to true))
+        publisher.flush()
+
+        every { notificationService.updateCustomer(MEMBER_ID, any<Map<String, Any?>>()) } just runs
+        publisher.updateCustomer(MEMBER_ID, mapOf(IS_CARD_CONNECTED to true))
+        publisher.flush()
+
+        verify {
+            notificationService.updateCustomer(
+                MEMBER_ID,
+                mapOf(IS_CARD_CONNECTED to true, IS_DIRECT_DEBIT_ACTIVATED to true)
+            )
+        }
+    }
+
+    @Test
+    fun `does not call notification-service again before the backoff has passed`() {
+        properties.initialBackoff = Duration.ofMinutes(1)
+        every { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) } throws RuntimeException("notification-service is down")
+        publisher.updateCustomer("1", mapOf(IS_CARD_CONNECTED to true))
+        publisher.updateCustomer("2", mapOf(IS_CARD_CONNECTED to true))
+
+        publisher.flush()
+        publisher.flush()
+
+        verify(exactly = 1) { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) }
+    }
+
+    @Test
+    fun `stores updates of members beyond the bound instead of keeping them in memory`() {
+        properties.maxPendingMembers = 2
+        properties.initialBackoff = Duration.ofMinutes(1)
+        every { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) } throws RuntimeException("notification-service is down")
+        val stored = slot<PendingCustomerUpdate>()
+        every { pendingCustomerUpdateRepository.save(capture(stored)) } answers { stored.captured }
+        publisher.updateCustomer("1", mapOf(IS_CARD_CONNECTED to true))
+        publisher.flush()
+
+        publisher.updateCustomer("2", mapOf(IS_CARD_CONNECTED to true))
+        publisher.updateCustomer("3", mapOf(IS_CARD_CONNECTED to false))
+
+        assertThat(stored.captured.memberId).isEqualTo("3")
+        assertThat(objectMapper.readTree(stored.captured.traits)[IS_CARD_CONNECTED].asBoolean()).isFalse()
+        verify(exactly = 1) { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) }
+    }
+
+    @Test
+    fun `restores stored updates under the newer pending traits`() {
+        val update = PendingCustomerUpdate(
+            MEMBER_ID,
+            objectMapper.writeValueAsString(mapOf(IS_CARD_CONNECTED to false, IS_DIRECT_DEBIT_ACTIVATED to true)),
+            Instant.now()
+        )
+        every { pendingCustomerUpdateRepository.findByOrderBySavedAtAsc(any()) } returns listOf(update) andThen emptyList()
+        publisher.updateCustomer(MEMBER_ID, mapOf(IS_CARD_CONNECTED to true))
+
+        publisher.flush()
+
+        verify(exactly = 1) {
+            notificationService.updateCustomer(
+                MEMBER_ID,
+                mapOf(IS_CARD_CONNECTED to true, IS_DIRECT_DEBIT_ACTIVATED to true)
+            )
+        }
+        verify { pendingCustomerUpdateRepository.deleteAll(listOf(update)) }
+    }
+
+    @Test
+    fun `stores updates that could not be flushed on shutdown`() {
+        every { notificationService.updateCustomer(any(), any<Map<String, Any?>>()) } throws RuntimeException("notification-service is down")
+        val stored = slot<PendingCustomerUpdate>()
+        every { pendingCustomerUpdateRepository.save(capture(stored)) } answers { stored.captured }
+
+        publisher.updateCustomer(MEMBER_ID, mapOf(IS_CARD_CONNECTED to true))
+        publisher.shutdown()
+
+        assertThat(stored.captured.memberId).isEqualTo(MEMBER_ID)
+        assertThat(objectMapper.readTree(stored.captured.traits)[IS_CARD_CONNECTED].asBoolean()).isTrue()
+    }
+
+    companion object {
+        private const val MEMBER_ID = "1337"
+        private const val IS_CARD_CONNECTED = AdyenCustomerIoEventListener.IS_CARD_CONNECTED
+        private const val IS_DIRECT_DEBIT_ACTIVATED = TrustlyCustomerIoEventListener.IS_DIRECT_DEBIT_ACTIVATED
+    }
+}
@@ -10,6 +10,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import com.hedvig.paymentService.trustly.SignedAPI;
 import com.hedvig.paymentService.trustly.commons.Method;
@@ -35,6 +36,8 @@ import com.hedvig.paymentservice.graphQl.types.DirectDebitStatus;
 import com.hedvig.paymentservice.query.registerAccount.enteties.AccountRegistrationRepository;
 import com.hedvig.paymentservice.query.trustlyOrder.enteties.TrustlyOrder;
 import com.hedvig.paymentservice.query.trustlyOrder.enteties.TrustlyOrderRepository;
+import com.hedvig.paymentservice.services.commands.CommandTimeoutProperties;
+import com.hedvig.paymentservice.services.commands.TimedCommandGateway;
 import com.hedvig.paymentservice.services.exceptions.OrderNotFoundException;
 import com.hedvig.paymentservice.services.trustly.dto.DirectDebitOrderInfo;
 import com.hedvig.paymentservice.services.trustly.exceptions.InvalidRedirectException;
@@ -43,6 +46,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -90,6 +94,9 @@ public class TrustlyServiceTest {
     @Mock
     private AccountRegistrationRepository accountRegistrationRepository;
 
+    @Mock
+    private HandledTrustlyNotificationRepository handledNotificationRepository;
+
     private TrustlyService testService;
 
     @Captor
@@ -112,9 +119,11 @@ public class TrustlyServiceTest {
             new TrustlyService(
                 signedAPI,
                 gateway,
+                new TimedCommandGateway(gateway, new CommandTimeoutProperties()),
                 uuidGenerator,
                 orderRepository,
                 accountRegistrationRepository,
+                handledNotificationRepository,
                 new HedvigTrustlyConfiguration(new ArrayList<String>() {{
                     add("hedvig.com");
                 }}),
@@ -320,8 +329,9 @@ public class TrustlyServiceTest {
     public void test_Notification() {
 
         Notification notification = makeAccountNotification(DirectDebitStatus.ACTIVE);
+        given(gateway.send(any())).willReturn(CompletableFuture.completedFuture(null));
 
-        final ResponseStatus responseStatus = testService.receiveNotification(notification);
+        final ResponseStatus responseStatus = testService.receiveNotification(notification).join();
 
         assertThat(responseStatus).isEqualTo(ResponseStatus.OK);
     }
@@ -330,10 +340,11 @@ public class TrustlyServiceTest {
     public void emptyDirectDebit() {
 
         Notification notification = makeAccountNotification(DirectDebitStatus.PENDING);
+        given(gateway.send(any())).willReturn(CompletableFuture.completedFuture(null));
 
-        final ResponseStatus responseStatus = testService.receiveNotification(notification);
+        final ResponseStatus responseStatus = testService.receiveNotification(notification).join();
 
-        verify(gateway, atLeastOnce()).sendAndWait(accountNotificationReceivedCommandArgumentCaptor.capture());
+        verify(gateway, atLeastOnce()).send(accountNotificationReceivedCommandArgumentCaptor.capture());
         assertThat(accountNotificationReceivedCommandArgumentCaptor.getValue().getDirectDebitMandateActivated()).isNull();
 
     }
@@ -353,10 +364,34 @@ public class TrustlyServiceTest {
         data.setOrderId("1234");
         final HashMap<String, Object> attributes = new HashMap<>();
         data.setAttributes(attributes);
+        given(gateway.send(any())).willReturn(CompletableFuture.completedFuture(null));
+
+        final ResponseStatus responseStatus = testService.receiveNotification(notification).join();
+
+        verify(gateway, atLeastOnce()).send(new CancelNotificationReceivedCommand(REQUEST_ID, "0182309810381", "1234", MEMBER_ID));
+    }
+
+    @Test
+    public void givenAlreadyHandledNotification_whenReceiveNotification_thenNoCommandIsSentAndOkIsReturned() {
+        given(handledNotificationRepository.existsById("0182309810381")).willReturn(true);
+
+        Notification notification = makeAccountNotification(DirectDebitStatus.ACTIVE);
+
+        final ResponseStatus responseStatus = testService.receiveNotification(notification).join();
+
+        assertThat(responseStatus).isEqualTo(ResponseStatus.OK);
+        verify(gateway, never()).send(any());
+    }
+
+    @Test
+    public void givenNewNotification_whenReceiveNotification_thenNotificationIsMarkedAsHandled() {
+        Notification notification = makeAccountNotification(DirectDebitStatus.ACTIVE);
+        given(gateway.send(any())).willReturn(CompletableFuture.completedFuture(null));
 
-        final ResponseStatus responseStatus = testService.receiveNotification(notification);
+        testService.receiveNotification(notification).join();
 
-        verify(gateway, atLeastOnce()).sendAndWait(new CancelNotificationReceivedCommand(REQUEST_ID, "0182309810381", "1234", MEMBER_ID));
+        verify(gateway).send(isA(AccountNotificationReceivedCommand.class));
+        verify(handledNotificationRepository).save(isA(HandledTrustlyNotification.class));
     }
 
     private String withQuotes(String requestId) {
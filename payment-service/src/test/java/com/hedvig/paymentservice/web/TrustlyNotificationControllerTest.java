@@ -27,6 +27,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import javax.transaction.Transactional;
 import java.util.List;
@@ -47,7 +48,9 @@ import static com.hedvig.paymentservice.trustly.testHelpers.TestData.makeTrustly
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -89,11 +92,15 @@ public class TrustlyNotificationControllerTest {
         final Notification request = makeTrustlyCreditNotificationRequest();
         given(notificationHandler.handleNotification(any())).willReturn(request);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post("/hooks/trustly/notifications")
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(gson.toJson(request)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isOk());
 
         final List<? extends DomainEventMessage<?>> orderEvents =
@@ -117,11 +124,15 @@ public class TrustlyNotificationControllerTest {
         final Notification request = makeTrustlyCreditNotificationRequest();
         given(notificationHandler.handleNotification(any())).willReturn(request);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post("/hooks/trustly/notifications")
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(gson.toJson(request)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().is5xxServerError());
     }
 
@@ -136,11 +147,15 @@ public class TrustlyNotificationControllerTest {
         final Notification request = makeTrustlyAccountNotificationRequest();
         given(notificationHandler.handleNotification(any())).willReturn(request);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post("/hooks/trustly/notifications")
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(gson.toJson(request)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isOk());
 
         final List<? extends DomainEventMessage<?>> memberEvents =
@@ -163,11 +178,15 @@ public class TrustlyNotificationControllerTest {
         final Notification request = makeTrustlyAccountNotificationRequest();
         given(notificationHandler.handleNotification(any())).willReturn(request);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post("/hooks/trustly/notifications")
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(gson.toJson(request)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isOk());
 
         final List<? extends DomainEventMessage<?>> memberEvents =
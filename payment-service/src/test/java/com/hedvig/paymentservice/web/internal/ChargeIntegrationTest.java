@@ -16,6 +16,9 @@ import com.hedvig.paymentservice.domain.trustlyOrder.events.PaymentResponseRecei
 import com.hedvig.paymentservice.serviceIntergration.productPricing.ProductPricingService;
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.ContractMarketInfo;
 import com.hedvig.paymentservice.serviceIntergration.productPricing.dto.Market;
+import com.hedvig.paymentservice.services.providerCalls.InlineProviderCalls;
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallDispatcher;
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallRepository;
 import com.hedvig.paymentservice.web.dtos.ChargeRequest;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.axonframework.eventsourcing.DomainEventMessage;
@@ -31,6 +34,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.money.Monetary;
@@ -59,8 +63,10 @@ import static com.hedvig.paymentservice.trustly.testHelpers.TestData.TRUSTLY_ORD
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -82,6 +88,12 @@ public class ChargeIntegrationTest {
     @Autowired
     private EventStore eventStore;
 
+    @Autowired
+    private ProviderCallDispatcher providerCallDispatcher;
+
+    @Autowired
+    private ProviderCallRepository providerCallRepository;
+
     @MockBean
     private SignedAPI signedApi;
 
@@ -104,11 +116,15 @@ public class ChargeIntegrationTest {
 
         final ChargeRequest chargeRequest = new ChargeRequest(TRANSACTION_AMOUNT, CREATED_BY);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/_/members/%s/charge", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(chargeRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isForbidden());
 
         final List<? extends DomainEventMessage<?>> memberEvents =
@@ -145,12 +161,17 @@ public class ChargeIntegrationTest {
 
         final ChargeRequest chargeRequest = new ChargeRequest(TRANSACTION_AMOUNT, CREATED_BY);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/_/members/%s/charge", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(chargeRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted());
+        InlineProviderCalls.dispatch(providerCallDispatcher, providerCallRepository);
 
         final List<? extends DomainEventMessage<?>> memberEvents =
             eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
@@ -189,12 +210,17 @@ public class ChargeIntegrationTest {
 
         final ChargeRequest chargeRequest = new ChargeRequest(TRANSACTION_AMOUNT, CREATED_BY);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/_/members/%s/charge", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(chargeRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted());
+        InlineProviderCalls.dispatch(providerCallDispatcher, providerCallRepository);
 
         final List<? extends DomainEventMessage<?>> memberEvents =
             eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
@@ -232,12 +258,17 @@ public class ChargeIntegrationTest {
 
         final ChargeRequest chargeRequest = new ChargeRequest(TRANSACTION_AMOUNT, CREATED_BY);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/v2/_/members/%s/charge", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(chargeRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted()).andExpect(content().string('"' + HEDVIG_ORDER_ID.toString() + '"'));
+        InlineProviderCalls.dispatch(providerCallDispatcher, providerCallRepository);
 
         final List<? extends DomainEventMessage<?>> memberEvents =
             eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
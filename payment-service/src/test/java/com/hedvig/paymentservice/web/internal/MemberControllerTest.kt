@@ -2,18 +2,29 @@ package com.hedvig.paymentservice.web.internal
 
 import com.hedvig.paymentservice.domain.payments.DirectDebitStatus
 import com.hedvig.paymentservice.graphQl.types.PayoutMethodStatus
+import com.hedvig.paymentservice.domain.payments.TransactionStatus
+import com.hedvig.paymentservice.domain.payments.TransactionType
 import com.hedvig.paymentservice.query.member.entities.MemberRepository
+import com.hedvig.paymentservice.query.member.entities.Transaction
+import com.hedvig.paymentservice.query.member.entities.TransactionRepository
 import com.hedvig.paymentservice.services.adyen.AdyenService
 import com.hedvig.paymentservice.services.bankAccounts.BankAccountService
 import com.hedvig.paymentservice.services.payments.PaymentService
 import com.hedvig.paymentservice.web.dtos.DirectDebitAccountOrderDTO
+import com.hedvig.paymentservice.web.dtos.TransactionCursor
 import io.mockk.MockKAnnotations
 import io.mockk.every
 import io.mockk.impl.annotations.MockK
+import io.mockk.slot
+import java.math.BigDecimal
+import java.time.Duration
+import java.time.Instant
 import java.util.UUID
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import org.springframework.data.domain.PageRequest
+import org.springframework.http.HttpStatus
 
 internal class MemberControllerTest {
 
@@ -25,6 +36,8 @@ internal class MemberControllerTest {
     private lateinit var bankAccountService: BankAccountService
     @MockK
     private lateinit var adyenService: AdyenService
+    @MockK
+    private lateinit var transactionRepository: TransactionRepository
 
     @BeforeEach
     internal fun setUp() = MockKAnnotations.init(this)
@@ -74,7 +87,84 @@ internal class MemberControllerTest {
         assertThat(response.activated).isFalse()
     }
 
+    @Test
+    fun `getTransactionPageByMember - returns a cursor to the next page when there are more transactions`() {
+        val transactions = (1..3).map { makeTransaction(Instant.ofEpochSecond(it.toLong())) }
+        every {
+            transactionRepository.findFirstPageByMemberId("mem", PageRequest.of(0, 3))
+        } returns transactions
+
+        val response = create().getTransactionPageByMember("mem", null, 2).body!!
+
+        assertThat(response.transactions.map { it.id }).containsExactly(transactions[0].id, transactions[1].id)
+        assertThat(TransactionCursor.decode(response.nextCursor!!))
+            .isEqualTo(TransactionCursor(transactions[1].occurredAt, transactions[1].id))
+    }
+
+    @Test
+    fun `getTransactionPageByMember - continues after the cursor and ends without a next cursor`() {
+        val cursor = TransactionCursor(Instant.ofEpochSecond(2), UUID.randomUUID())
+        val transaction = makeTransaction(Instant.ofEpochSecond(3))
+        every {
+            transactionRepository.findPageByMemberIdAfter("mem", cursor.instant, cursor.id, PageRequest.of(0, 3))
+        } returns listOf(transaction)
+
+        val response = create().getTransactionPageByMember("mem", cursor.encode(), 2).body!!
+
+        assertThat(response.transactions.map { it.id }).containsExactly(transaction.id)
+        assertThat(response.nextCursor).isNull()
+    }
+
+    @Test
+    fun `getTransactionPageByMember - rejects malformed cursors and too large pages`() {
+        assertThat(create().getTransactionPageByMember("mem", "not a cursor", 2).statusCode).isEqualTo(HttpStatus.BAD_REQUEST)
+        assertThat(create().getTransactionPageByMember("mem", null, 10_000).statusCode).isEqualTo(HttpStatus.BAD_REQUEST)
+    }
+
+    @Test
+    fun `getTransactionChangesByMember - keeps the token when nothing changed`() {
+        val since = TransactionCursor(Instant.ofEpochSecond(2), UUID.randomUUID())
+        every {
+            transactionRepository.findChangedByMemberIdSince("mem", since.instant, since.id, any(), PageRequest.of(0, 51))
+        } returns emptyList()
+
+        val response = create().getTransactionChangesByMember("mem", since.encode(), 50).body!!
+
+        assertThat(response.transactions).isEmpty()
+        assertThat(response.nextToken).isEqualTo(since.encode())
+        assertThat(response.hasMore).isFalse()
+    }
+
+    @Test
+    fun `getTransactionChangesByMember - only hands out changes older than the settle window`() {
+        val settledBefore = slot<Instant>()
+        every {
+            transactionRepository.findChangedByMemberIdSince(
+                "mem", TransactionCursor.START.instant, TransactionCursor.START.id, capture(settledBefore), any()
+            )
+        } returns emptyList()
+
+        val requestedAt = Instant.now()
+        create().getTransactionChangesByMember("mem", null, 50)
+
+        assertThat(settledBefore.captured)
+            .isBetween(requestedAt.minus(CHANGES_SETTLE_WINDOW), Instant.now().minus(CHANGES_SETTLE_WINDOW))
+    }
+
+    private fun makeTransaction(timestamp: Instant) = Transaction().apply {
+        id = UUID.randomUUID()
+        setAmount(BigDecimal.TEN)
+        setCurrency("SEK")
+        setTimestamp(timestamp)
+        transactionType = TransactionType.CHARGE
+        transactionStatus = TransactionStatus.COMPLETED
+    }
+
     private fun create() = MemberController(
-        paymentService, memberRepository, bankAccountService, adyenService
+        paymentService, memberRepository, bankAccountService, adyenService, transactionRepository, CHANGES_SETTLE_WINDOW
     )
+
+    companion object {
+        private val CHANGES_SETTLE_WINDOW = Duration.ofSeconds(30)
+    }
 }
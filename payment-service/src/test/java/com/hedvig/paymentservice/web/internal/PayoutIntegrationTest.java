@@ -6,7 +6,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.not;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,6 +29,9 @@ import com.hedvig.paymentservice.serviceIntergration.meerkat.Meerkat;
 import com.hedvig.paymentservice.serviceIntergration.memberService.dto.Member;
 import com.hedvig.paymentservice.serviceIntergration.memberService.MemberService;
 import com.hedvig.paymentservice.serviceIntergration.memberService.dto.SanctionStatus;
+import com.hedvig.paymentservice.services.providerCalls.InlineProviderCalls;
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallDispatcher;
+import com.hedvig.paymentservice.services.providerCalls.ProviderCallRepository;
 import com.hedvig.paymentservice.web.dtos.PayoutRequestDTO;
 
 import java.util.HashMap;
@@ -52,6 +57,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @RunWith(SpringRunner.class)
 @ActiveProfiles("test")
@@ -72,6 +78,12 @@ public class PayoutIntegrationTest {
     @Autowired
     private EventStore eventStore;
 
+    @Autowired
+    private ProviderCallDispatcher providerCallDispatcher;
+
+    @Autowired
+    private ProviderCallRepository providerCallRepository;
+
     @MockBean
     private SignedAPI signedApi;
 
@@ -120,11 +132,15 @@ public class PayoutIntegrationTest {
             SelectedPayoutDetails.NotSelected.INSTANCE
         );
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/v2/_/members/%s/payout", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(payoutRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isNotAcceptable());
 
         final List<? extends DomainEventMessage<?>> memberEvents = eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
@@ -152,12 +168,17 @@ public class PayoutIntegrationTest {
 
         mockTrustlyApiResponse(TrustlyApiResponseResult.SHOULD_SUCCEED);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/v2/_/members/%s/payout", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(payoutRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted());
+        InlineProviderCalls.dispatch(providerCallDispatcher, providerCallRepository);
 
         final List<? extends DomainEventMessage<?>> memberEvents = eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
 
@@ -188,12 +209,17 @@ public class PayoutIntegrationTest {
 
         mockTrustlyApiResponse(TrustlyApiResponseResult.SHOULD_FAIL);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/v2/_/members/%s/payout", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(payoutRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted());
+        InlineProviderCalls.dispatch(providerCallDispatcher, providerCallRepository);
 
         final List<? extends DomainEventMessage<?>> memberEvents = eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
 
@@ -242,12 +268,17 @@ public class PayoutIntegrationTest {
 
         mockTrustlyApiResponse(TrustlyApiResponseResult.SHOULD_SUCCEED);
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/v2/_/members/%s/payout?category=MARKETING", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(payoutRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted());
+        InlineProviderCalls.dispatch(providerCallDispatcher, providerCallRepository);
 
         final List<? extends DomainEventMessage<?>> memberEvents = eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());
 
@@ -278,11 +309,15 @@ public class PayoutIntegrationTest {
             )
         );
 
-        mockMvc
+        final MvcResult mvcResult = mockMvc
             .perform(
                 post(String.format("/v2/_/members/%s/payout", TOLVANSSON_MEMBER_ID))
                     .contentType(MediaType.APPLICATION_JSON)
                     .content(objectMapper.writeValueAsString(payoutRequest)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        mockMvc
+            .perform(asyncDispatch(mvcResult))
             .andExpect(status().isAccepted());
 
         final List<? extends DomainEventMessage<?>> memberEvents = eventStore.readEvents(TOLVANSSON_MEMBER_ID).asStream().collect(Collectors.toList());